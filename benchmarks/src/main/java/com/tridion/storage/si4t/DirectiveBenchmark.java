@@ -0,0 +1,111 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t;
+
+import com.tridion.storage.services.LocalThreadTransaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Node;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DirectiveBenchmark.
+ * <p/>
+ * Measures the per item work of TridionPublishableItemProcessor through its public
+ * API: processing a component presentation (finding the INDEX-DATA directive, parsing
+ * its fields, registering the action and stripping the directive), stripping alone
+ * and serializing nested field markup.
+ * <p/>
+ * The storage is not configured, so the directive cache is bypassed and every parse
+ * is measured. Every item is registered under the same id in each round, so the
+ * register stays bounded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DirectiveBenchmark {
+
+    private static final int ITEMS = 16;
+    private static final String STORAGE_ID = "directive-benchmark";
+    private static final String TRANSACTION_ID = "tcm:0-4712-66560";
+
+    @Param({"SMALL", "LARGE", "NESTED", "MULTI_MB"})
+    public SyntheticCorpus.Shape shape;
+
+    private TridionPublishableItemProcessor[] processors;
+    private String[] pages;
+    private Node[] directiveNodes;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        SyntheticCorpus corpus = new SyntheticCorpus(this.shape, 42);
+        this.processors = new TridionPublishableItemProcessor[ITEMS];
+        this.pages = new String[ITEMS];
+        this.directiveNodes = new Node[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            this.pages[i] = corpus.page(i);
+            this.directiveNodes[i] = XMLHelpers.getXMLDocumentFromString(corpus.directive(i)).getFirstChild();
+            this.processors[i] = new TridionPublishableItemProcessor(this.pages[i], FactoryAction.PERSIST,
+                    IndexType.COMPONENT_PRESENTATION, "tcm:0-5-1", corpus.itemId(i), STORAGE_ID);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanup() {
+        SearchIndexProcessor.cleanupRegister(TRANSACTION_ID, STORAGE_ID);
+    }
+
+    // Cycles through the items, so the results do not depend on a single input.
+    private int nextItem() {
+        int item = this.next;
+        this.next = (item + 1) % ITEMS;
+        return item;
+    }
+
+    @Benchmark
+    public String processComponentPresentation() throws Exception {
+        LocalThreadTransaction.setTransactionId(TRANSACTION_ID);
+        return this.processors[this.nextItem()].processComponentPresentationSource();
+    }
+
+    @Benchmark
+    public String removeTags() {
+        return TridionPublishableItemProcessor.removeTags(this.pages[this.nextItem()]);
+    }
+
+    @Benchmark
+    public String nodeToString() {
+        return XMLHelpers.nodeToString(this.directiveNodes[this.nextItem()], false);
+    }
+}
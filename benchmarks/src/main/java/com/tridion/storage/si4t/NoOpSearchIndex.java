@@ -0,0 +1,62 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationException;
+
+/**
+ * NoOpSearchIndex.
+ * <p/>
+ * A SearchIndex which accepts everything and does nothing, so benchmarks of
+ * SearchIndexProcessor measure the processor itself.
+ */
+public class NoOpSearchIndex implements SearchIndex {
+
+    @Override
+    public void configure(Configuration configuration) throws ConfigurationException {
+    }
+
+    @Override
+    public void addItemToIndex(SearchIndexData data) throws IndexingException {
+    }
+
+    @Override
+    public void removeItemFromIndex(BaseIndexData data) throws IndexingException {
+    }
+
+    @Override
+    public void updateItemInIndex(SearchIndexData data) throws IndexingException {
+    }
+
+    @Override
+    public void addBinaryToIndex(BinaryIndexData data) throws IndexingException {
+    }
+
+    @Override
+    public void removeBinaryFromIndex(BaseIndexData data) throws IndexingException {
+    }
+
+    @Override
+    public void commit(String publicationId) throws IndexingException {
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RegisterActionBenchmark.
+ * <p/>
+ * Measures SearchIndexProcessor.registerAction when several deployer threads
+ * register items at the same time, either into one shared transaction or into a
+ * transaction per thread. Every thread cycles through a fixed set of items, so
+ * after the first round actions are replaced, and the register stays bounded.
+ * Use -t to change the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class RegisterActionBenchmark {
+
+    private static final String STORAGE_ID = "benchmark";
+    private static final String TRANSACTION_PREFIX = "tcm:0-4711-66560";
+    private static final int ITEMS_PER_THREAD = 4096;
+
+    @Param({"true", "false"})
+    public boolean sharedTransaction;
+
+    /**
+     * The items of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadItems {
+
+        private String transactionId;
+        private BaseIndexData[] items;
+        private int next;
+
+        @Setup
+        public void setUp(RegisterActionBenchmark benchmark, ThreadParams thread) {
+            int threadIndex = thread.getThreadIndex();
+            this.transactionId = benchmark.sharedTransaction ? TRANSACTION_PREFIX
+                    : TRANSACTION_PREFIX + "-" + threadIndex;
+            SyntheticCorpus corpus = new SyntheticCorpus(SyntheticCorpus.Shape.SMALL, threadIndex);
+            this.items = new BaseIndexData[ITEMS_PER_THREAD];
+            for (int i = 0; i < ITEMS_PER_THREAD; i++) {
+                SearchIndexData data = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, "tcm:0-5-1",
+                        STORAGE_ID);
+                data.setUniqueIndexId(corpus.itemId(threadIndex * ITEMS_PER_THREAD + i));
+                this.items[i] = data;
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void cleanup() {
+            SearchIndexProcessor.cleanupRegister(this.transactionId, STORAGE_ID);
+        }
+
+        BaseIndexData nextItem() {
+            BaseIndexData item = this.items[this.next];
+            this.next = (this.next + 1) % ITEMS_PER_THREAD;
+            return item;
+        }
+    }
+
+    @Benchmark
+    public void registerAction(ThreadItems thread) {
+        SearchIndexProcessor.registerAction(thread.transactionId, thread.nextItem());
+    }
+}
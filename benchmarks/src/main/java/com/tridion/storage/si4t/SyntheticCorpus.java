@@ -0,0 +1,194 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t;
+
+import java.util.Random;
+
+/**
+ * SyntheticCorpus.
+ * <p/>
+ * Generates published pages and dynamic component presentations with an INDEX-DATA
+ * directive, as the Tridion templates of a typical SI4T implementation render them.
+ * The output only depends on the shape, the seed and the item number, so benchmark
+ * runs are comparable.
+ */
+public final class SyntheticCorpus {
+
+    /**
+     * The kinds of items to generate.
+     */
+    public enum Shape {
+        /**
+         * A 4 KB page with a handful of fields.
+         */
+        SMALL(4 * 1024, 6, false),
+        /**
+         * A 256 KB page with many fields.
+         */
+        LARGE(256 * 1024, 40, false),
+        /**
+         * A 32 KB page with rich text fields and Custom fields, which contain markup.
+         */
+        NESTED(32 * 1024, 20, true),
+        /**
+         * A 4 MB page, for instance a long product listing.
+         */
+        MULTI_MB(4 * 1024 * 1024, 40, false);
+
+        private final int pageSize;
+        private final int fieldCount;
+        private final boolean nested;
+
+        Shape(int pageSize, int fieldCount, boolean nested) {
+            this.pageSize = pageSize;
+            this.fieldCount = fieldCount;
+            this.nested = nested;
+        }
+    }
+
+    private static final String[] WORDS = {
+            "search", "index", "tridion", "content", "delivery", "publication", "component", "template",
+            "page", "schema", "keyword", "category", "metadata", "binary", "deployer", "storage",
+            "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit",
+            "caf\u00e9", "na\u00efve", "stra\u00dfe", "&amp;", "r\u00e9sum\u00e9", "\u65e5\u672c"
+    };
+
+    private final Shape shape;
+    private final long seed;
+
+    /**
+     * Instantiates a new corpus.
+     *
+     * @param shape the kind of items
+     * @param seed  the seed
+     */
+    public SyntheticCorpus(Shape shape, long seed) {
+        this.shape = shape;
+        this.seed = seed;
+    }
+
+    /**
+     * Gets the unique index id of an item.
+     *
+     * @param item the item number
+     * @return a TCM URI
+     */
+    public String itemId(int item) {
+        return "tcm:5-" + (1000 + item) + "-64";
+    }
+
+    /**
+     * Generates the XML inside the directive markers of an item.
+     *
+     * @param item the item number
+     * @return the directive XML
+     */
+    public String directive(int item) {
+        return this.directive(item, this.random(item));
+    }
+
+    /**
+     * Generates plain text fields of the same shape as the directive of an item, for
+     * benchmarks which start after the directive is parsed.
+     *
+     * @param item the item number
+     * @return the fields
+     */
+    public IndexFieldSet fields(int item) {
+        Random random = this.random(item);
+        IndexFieldSet.Builder fields = IndexFieldSet.builder()
+                .add("id", this.itemId(item))
+                .add("title", this.words(random, 6))
+                .add("url", "/" + this.words(random, 3).replace(' ', '/') + ".html");
+        for (int i = 2; i < this.shape.fieldCount; i++) {
+            fields.add("field" + i, this.words(random, 1 + random.nextInt(12)));
+        }
+        return fields.build();
+    }
+
+    /**
+     * Generates a full page with the directive in the middle of the body.
+     *
+     * @param item the item number
+     * @return the page source
+     */
+    public String page(int item) {
+        Random random = this.random(item);
+        String directive = this.directive(item, random);
+        StringBuilder page = new StringBuilder(this.shape.pageSize + directive.length() + 256);
+        page.append("<!DOCTYPE html>\n<html><head><title>").append(this.itemId(item))
+                .append("</title></head>\n<body>\n");
+        int half = this.shape.pageSize / 2;
+        this.appendParagraphs(page, random, half);
+        page.append("<!-- INDEX-DATA-START:").append(directive).append(":INDEX-DATA-END -->\n");
+        this.appendParagraphs(page, random, this.shape.pageSize);
+        page.append("</body></html>\n");
+        return page.toString();
+    }
+
+    private String directive(int item, Random random) {
+        StringBuilder xml = new StringBuilder(256 + this.shape.fieldCount * 128);
+        xml.append("<indexdata><id>").append(this.itemId(item)).append("</id>");
+        xml.append("<title>").append(this.words(random, 6)).append("</title>");
+        xml.append("<url>/").append(this.words(random, 3).replace(' ', '/')).append(".html</url>");
+        int custom = this.shape.fieldCount / 2;
+        for (int i = 2; i < this.shape.fieldCount - custom; i++) {
+            this.appendField(xml, "field" + i, random);
+        }
+        xml.append("<Custom>");
+        for (int i = 0; i < custom; i++) {
+            this.appendField(xml, "custom" + i, random);
+        }
+        xml.append("</Custom></indexdata>");
+        return xml.toString();
+    }
+
+    private void appendField(StringBuilder xml, String name, Random random) {
+        xml.append('<').append(name).append('>');
+        if (this.shape.nested && random.nextBoolean()) {
+            xml.append("<p>").append(this.words(random, 8)).append(" <strong>")
+                    .append(this.words(random, 2)).append("</strong></p><ul><li>")
+                    .append(this.words(random, 4)).append("</li><li>")
+                    .append(this.words(random, 4)).append("</li></ul>");
+        } else {
+            xml.append(this.words(random, 1 + random.nextInt(12)));
+        }
+        xml.append("</").append(name).append('>');
+    }
+
+    private void appendParagraphs(StringBuilder page, Random random, int untilLength) {
+        while (page.length() < untilLength) {
+            page.append("<div class=\"text\"><p>").append(this.words(random, 40)).append("</p></div>\n");
+        }
+    }
+
+    private String words(Random random, int count) {
+        StringBuilder words = new StringBuilder(count * 8);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return words.toString();
+    }
+
+    private Random random(int item) {
+        return new Random(this.seed * 1000003L + item);
+    }
+}
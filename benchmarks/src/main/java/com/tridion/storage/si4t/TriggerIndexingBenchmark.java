@@ -0,0 +1,109 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationHelper;
+import com.tridion.configuration.XMLConfigurationReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TriggerIndexingBenchmark.
+ * <p/>
+ * Measures SearchIndexProcessor.triggerIndexing for a transaction of a given size,
+ * against the NoOpSearchIndex. The storage is configured from
+ * bench_storage_conf.xml. Every invocation indexes a freshly registered
+ * transaction, so only the dispatch and commit overhead of the processor is
+ * measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TriggerIndexingBenchmark {
+
+    private static final String STORAGE_CONF = "bench_storage_conf.xml";
+    private static final String TRANSACTION_PREFIX = "tcm:0-4711-66560-";
+
+    @Param({"benchmark", "benchmark-adaptive"})
+    public String storageId;
+
+    @Param({"10", "100", "1000"})
+    public int items;
+
+    @Param({"1", "8"})
+    public int publications;
+
+    private SearchIndexProcessor processor;
+    private IndexFieldSet[] fields;
+    private String transactionId;
+    private long transactionCount;
+
+    @Setup
+    public void setUp() throws Exception {
+        Configuration configuration = ConfigurationHelper.getConfiguration(
+                new XMLConfigurationReader().readConfiguration(STORAGE_CONF),
+                "//Storage[@Id='" + this.storageId + "']");
+        this.processor = SearchIndexProcessor.getInstance();
+        this.processor.configureStorageInstance(this.storageId, configuration);
+
+        SyntheticCorpus corpus = new SyntheticCorpus(SyntheticCorpus.Shape.SMALL, 42);
+        this.fields = new IndexFieldSet[this.items];
+        for (int i = 0; i < this.items; i++) {
+            this.fields[i] = corpus.fields(i);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void registerTransaction() {
+        this.transactionId = TRANSACTION_PREFIX + this.transactionCount++;
+        for (int i = 0; i < this.items; i++) {
+            int publication = 5 + i % this.publications;
+            SearchIndexData data = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE,
+                    "tcm:0-" + publication + "-1", this.storageId, this.fields[i]);
+            data.setUniqueIndexId("tcm:" + publication + "-" + (1000 + i) + "-64");
+            SearchIndexProcessor.registerAction(this.transactionId, data);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void cleanup() {
+        SearchIndexProcessor.cleanupRegister(this.transactionId, this.storageId);
+    }
+
+    @Benchmark
+    public void triggerIndexing() throws IndexingException {
+        this.processor.triggerIndexing(this.transactionId, this.storageId);
+    }
+}
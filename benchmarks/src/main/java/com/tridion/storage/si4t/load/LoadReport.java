@@ -0,0 +1,161 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.load;
+
+import com.tridion.storage.si4t.metrics.IndexingMetrics;
+import com.tridion.storage.si4t.metrics.StorageMetrics;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.si4t.LatencyInjectingIndexer;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LoadReport.
+ * <p/>
+ * Collects the latencies of the stages of a load test run and prints them.
+ * <p/>
+ * When the run has a target rate, latencies are corrected for coordinated omission:
+ * the latency of a whole transaction is measured from the moment it should have
+ * started according to the schedule, and stage latencies are back-filled with the
+ * samples which a stalled worker could not take.
+ */
+final class LoadReport {
+
+    /**
+     * The stages of a publish transaction, as seen by the deployer.
+     */
+    enum Stage {
+        /**
+         * All DAO calls of the transaction: extracting the directives and registering the actions.
+         */
+        DEPLOY,
+        /**
+         * The commit of the transaction: sending the actions to the indexer and committing.
+         */
+        INDEX,
+        /**
+         * The transaction as a whole, including the time it waited for a free deployer thread.
+         */
+        TRANSACTION
+    }
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Histogram[] histograms = new Histogram[Stage.values().length];
+    private final long expectedIntervalNanos;
+    private final AtomicLong items = new AtomicLong();
+    private final AtomicLong failedTransactions = new AtomicLong();
+    private long startNanos;
+    private long endNanos;
+
+    /**
+     * Instantiates a new report.
+     *
+     * @param expectedIntervalNanos the scheduled time between two transactions of one
+     *                              deployer thread, or 0 when transactions are not scheduled
+     */
+    LoadReport(long expectedIntervalNanos) {
+        this.expectedIntervalNanos = expectedIntervalNanos;
+        for (int i = 0; i < this.histograms.length; i++) {
+            this.histograms[i] = new ConcurrentHistogram(3);
+        }
+    }
+
+    void start() {
+        this.startNanos = System.nanoTime();
+    }
+
+    void end() {
+        this.endNanos = System.nanoTime();
+    }
+
+    void record(Stage stage, long nanos) {
+        Histogram histogram = this.histograms[stage.ordinal()];
+        if (this.expectedIntervalNanos > 0 && stage != Stage.TRANSACTION) {
+            histogram.recordValueWithExpectedInterval(nanos, this.expectedIntervalNanos);
+        } else {
+            histogram.recordValue(nanos);
+        }
+    }
+
+    void recordTransaction(int itemCount, boolean failed) {
+        this.items.addAndGet(itemCount);
+        if (failed) {
+            this.failedTransactions.incrementAndGet();
+        }
+    }
+
+    void print(PrintStream out, String storageId) {
+        long transactions = this.histograms[Stage.TRANSACTION.ordinal()].getTotalCount();
+        double seconds = (this.endNanos - this.startNanos) / 1e9;
+        out.printf("Transactions: %d (%d failed), items: %d, duration: %.1f s%n",
+                transactions, this.failedTransactions.get(), this.items.get(), seconds);
+        out.printf("Throughput: %.1f transactions/s, %.0f items/s%n%n",
+                transactions / seconds, this.items.get() / seconds);
+
+        out.println(this.expectedIntervalNanos > 0
+                ? "Stage latencies in ms, corrected for coordinated omission:"
+                : "Stage latencies in ms, not corrected for coordinated omission (no target rate):");
+        out.printf("%-12s %10s %10s", "stage", "count", "mean");
+        for (double percentile : PERCENTILES) {
+            out.printf(" %10s", "p" + formatPercentile(percentile));
+        }
+        out.printf(" %10s%n", "max");
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = this.histograms[stage.ordinal()];
+            out.printf("%-12s %10d %10.1f", stage, histogram.getTotalCount(), histogram.getMean() / 1e6);
+            for (double percentile : PERCENTILES) {
+                out.printf(" %10.1f", histogram.getValueAtPercentile(percentile) / 1e6);
+            }
+            out.printf(" %10.1f%n", histogram.getMaxValue() / 1e6);
+        }
+
+        StorageMetrics metrics = IndexingMetrics.forStorage(storageId);
+        Map<String, Long> counts = metrics.getCounts();
+        Map<String, Long> errors = metrics.getErrorCounts();
+        Map<String, Long> p50 = metrics.getP50Micros();
+        Map<String, Long> p99 = metrics.getP99Micros();
+        Map<String, Long> max = metrics.getMaxMicros();
+        out.printf("%nIndexing stages as recorded by SI4T, in ms, not corrected:%n");
+        out.printf("%-24s %10s %10s %10s %10s %10s%n", "stage", "count", "errors", "p50", "p99", "max");
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            String key = count.getKey();
+            out.printf("%-24s %10d %10d %10.1f %10.1f %10.1f%n", key, count.getValue(), errors.get(key),
+                    toMillis(p50.get(key)), toMillis(p99.get(key)), toMillis(max.get(key)));
+        }
+        Map<String, Long> gauges = metrics.getGauges();
+        if (!gauges.isEmpty()) {
+            out.printf("%nGauges: %s%n", gauges);
+        }
+
+        out.printf("%nIndexer: %d calls, %d commits, %d injected failures, %d injected timeouts%n",
+                LatencyInjectingIndexer.getCallCount(), LatencyInjectingIndexer.getCommitCount(),
+                LatencyInjectingIndexer.getFailureCount(), LatencyInjectingIndexer.getTimeoutCount());
+    }
+
+    private static double toMillis(Long micros) {
+        return micros == null ? 0 : micros / 1e3;
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+}
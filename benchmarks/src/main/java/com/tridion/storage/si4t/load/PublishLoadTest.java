@@ -0,0 +1,219 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.load;
+
+import com.tridion.broker.StorageException;
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationException;
+import com.tridion.configuration.ConfigurationHelper;
+import com.tridion.configuration.XMLConfigurationReader;
+import com.tridion.data.CharacterDataString;
+import com.tridion.storage.services.LocalThreadTransaction;
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.SearchIndexProcessor;
+import com.tridion.storage.si4t.SyntheticCorpus;
+import com.tridion.storage.si4t.TridionBaseItemProcessor;
+import com.tridion.storage.si4t.TridionPublishableItemProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * PublishLoadTest.
+ * <p/>
+ * Replays synthetic publish transactions through the same calls the Search DAOs
+ * and DAO factories make during a deployment: every item is processed like
+ * FSSearchPageDAO.create or remove does, and every transaction is committed like
+ * FSSearchDAOFactory.commitTransaction does. The storage is configured from
+ * load_storage_conf.xml, which uses the LatencyInjectingIndexer as search backend.
+ * <p/>
+ * Options are given as name=value arguments:
+ * <ul>
+ * <li>config: the storage configuration (default load_storage_conf.xml)</li>
+ * <li>storage: the storage Id (default load)</li>
+ * <li>transactions: the number of transactions (default 100)</li>
+ * <li>items: the number of items per transaction (default 1000)</li>
+ * <li>concurrency: the number of transactions deployed at the same time (default 4)</li>
+ * <li>rate: the target number of transactions per second, 0 to deploy as fast as
+ * possible (default 0)</li>
+ * <li>shape: the SyntheticCorpus shape of the pages (default SMALL)</li>
+ * <li>publications: the number of publications the items are spread over (default 4)</li>
+ * <li>removePercent: the percentage of items which are unpublished (default 10)</li>
+ * <li>seed: the seed of the corpus and the item selection (default 42)</li>
+ * </ul>
+ * With a target rate, transactions are started on a fixed schedule regardless of
+ * how long earlier transactions take, and the reported latencies are corrected for
+ * coordinated omission.
+ */
+public final class PublishLoadTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PublishLoadTest.class);
+    private static final int FIRST_PUBLICATION_ID = 5;
+    private static final int FIRST_PAGE_ID = 1000;
+    // Pages are reused across transactions, to bound the memory of large runs.
+    private static final int MAX_DISTINCT_PAGES = 1000;
+
+    private final String storageId;
+    private final int transactions;
+    private final int items;
+    private final int concurrency;
+    private final double rate;
+    private final int publications;
+    private final int removePercent;
+    private final long seed;
+    private final String[] pages;
+    private final SearchIndexProcessor processor = SearchIndexProcessor.getInstance();
+
+    private PublishLoadTest(Map<String, String> options) throws ConfigurationException {
+        this.storageId = option(options, "storage", "load");
+        this.transactions = Integer.parseInt(option(options, "transactions", "100"));
+        this.items = Integer.parseInt(option(options, "items", "1000"));
+        this.concurrency = Integer.parseInt(option(options, "concurrency", "4"));
+        this.rate = Double.parseDouble(option(options, "rate", "0"));
+        this.publications = Integer.parseInt(option(options, "publications", "4"));
+        this.removePercent = Integer.parseInt(option(options, "removePercent", "10"));
+        this.seed = Long.parseLong(option(options, "seed", "42"));
+
+        SyntheticCorpus corpus = new SyntheticCorpus(
+                SyntheticCorpus.Shape.valueOf(option(options, "shape", "SMALL")), this.seed);
+        this.pages = new String[Math.min(this.items, MAX_DISTINCT_PAGES)];
+        for (int i = 0; i < this.pages.length; i++) {
+            this.pages[i] = corpus.page(i);
+        }
+
+        Configuration configuration = ConfigurationHelper.getConfiguration(
+                new XMLConfigurationReader().readConfiguration(option(options, "config", "load_storage_conf.xml")),
+                "//Storage[@Id='" + this.storageId + "']");
+        this.processor.configureStorageInstance(this.storageId, configuration);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 1) {
+                System.err.println("Options should be given as name=value, not: " + arg);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        PublishLoadTest test = new PublishLoadTest(options);
+        LoadReport report = test.run();
+        report.print(System.out, test.storageId);
+        System.exit(0);
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private LoadReport run() throws Exception {
+        long intervalNanos = this.rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / this.rate) : 0;
+        LoadReport report = new LoadReport(intervalNanos * this.concurrency);
+        AtomicInteger nextTransaction = new AtomicInteger();
+        ExecutorService deployers = Executors.newFixedThreadPool(this.concurrency);
+        List<Future<?>> workers = new ArrayList<>();
+
+        report.start();
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < this.concurrency; i++) {
+            workers.add(deployers.submit(() -> {
+                int transaction;
+                while ((transaction = nextTransaction.getAndIncrement()) < this.transactions) {
+                    long intendedStart = System.nanoTime();
+                    if (intervalNanos > 0) {
+                        intendedStart = startNanos + transaction * intervalNanos;
+                        waitUntil(intendedStart);
+                    }
+                    this.deployTransaction(transaction, intendedStart, report);
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        report.end();
+        deployers.shutdown();
+        return report;
+    }
+
+    private void deployTransaction(int transaction, long intendedStart, LoadReport report) {
+        String transactionId = "tcm:0-" + (transaction + 1) + "-66560";
+        Random random = new Random(this.seed * 31 + transaction);
+        LocalThreadTransaction.setTransactionId(transactionId);
+        boolean failed = false;
+        long deployStart = System.nanoTime();
+        try {
+            for (int i = 0; i < this.items; i++) {
+                this.deployItem(i, random.nextInt(100) < this.removePercent);
+            }
+            long indexStart = System.nanoTime();
+            report.record(LoadReport.Stage.DEPLOY, indexStart - deployStart);
+            try {
+                this.processor.triggerIndexing(transactionId, this.storageId);
+            } catch (IndexingException e) {
+                LOG.warn("Indexing failed for transaction: " + transactionId, e);
+                failed = true;
+            }
+            report.record(LoadReport.Stage.INDEX, System.nanoTime() - indexStart);
+        } catch (StorageException e) {
+            LOG.warn("Deployment failed for transaction: " + transactionId, e);
+            failed = true;
+        } finally {
+            SearchIndexProcessor.cleanupRegister(transactionId, this.storageId);
+        }
+        report.record(LoadReport.Stage.TRANSACTION, System.nanoTime() - intendedStart);
+        report.recordTransaction(this.items, failed);
+    }
+
+    private void deployItem(int item, boolean remove) throws StorageException {
+        int publicationId = FIRST_PUBLICATION_ID + item % this.publications;
+        int pageId = FIRST_PAGE_ID + item;
+        String indexId = "tcm:" + publicationId + "-" + pageId + "-64";
+        if (remove) {
+            TridionBaseItemProcessor.registerItemRemoval(indexId, IndexType.PAGE, LOG,
+                    Integer.toString(publicationId), this.storageId);
+            return;
+        }
+        String page = this.pages[item % this.pages.length];
+        TridionPublishableItemProcessor processor = new TridionPublishableItemProcessor(page, FactoryAction.UPDATE,
+                IndexType.PAGE, Integer.toString(publicationId), indexId, this.storageId);
+        processor.processPageSource(new CharacterDataString(publicationId, pageId, page));
+    }
+
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
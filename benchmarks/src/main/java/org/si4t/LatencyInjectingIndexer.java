@@ -0,0 +1,186 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.si4t;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationException;
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.BinaryIndexData;
+import com.tridion.storage.si4t.IndexerAttributes;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.SearchIndex;
+import com.tridion.storage.si4t.SearchIndexData;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LatencyInjectingIndexer.
+ * <p/>
+ * A DummyIndexer which behaves like a slow search backend. Every call takes a
+ * log-normally distributed time, and can fail or time out. Configured with these
+ * optional attributes of the Indexer node:
+ * <ul>
+ * <li>LatencyMedian, LatencyP99: the latency of add, update and remove calls in
+ * microseconds (defaults 2000 and 20000)</li>
+ * <li>CommitLatencyMedian, CommitLatencyP99: the latency of commits in
+ * microseconds (defaults 20000 and 200000)</li>
+ * <li>FailurePermille: the number of calls per thousand which fail at once
+ * (default 0)</li>
+ * <li>TimeoutPermille, Timeout: the number of calls per thousand which fail after
+ * Timeout milliseconds (defaults 0 and 5000)</li>
+ * <li>Seed: the seed of the random generator (default 42)</li>
+ * </ul>
+ */
+public class LatencyInjectingIndexer implements SearchIndex {
+
+    private static final String INDEXER_NODE = "Indexer";
+    // The 99th percentile of the standard normal distribution.
+    private static final double Z_99 = 2.3263;
+
+    private static final AtomicLong INSTANCES = new AtomicLong();
+    private static final AtomicLong CALLS = new AtomicLong();
+    private static final AtomicLong COMMITS = new AtomicLong();
+    private static final AtomicLong FAILURES = new AtomicLong();
+    private static final AtomicLong TIMEOUTS = new AtomicLong();
+
+    private Distribution callLatency;
+    private Distribution commitLatency;
+    private int failurePermille;
+    private int timeoutPermille;
+    private long timeoutMillis;
+    private Random random;
+
+    @Override
+    public void configure(final Configuration configuration) throws ConfigurationException {
+        Configuration indexerConfiguration = configuration.getChild(INDEXER_NODE);
+        this.callLatency = new Distribution(
+                IndexerAttributes.getLong(indexerConfiguration, "LatencyMedian", 2000),
+                IndexerAttributes.getLong(indexerConfiguration, "LatencyP99", 20000));
+        this.commitLatency = new Distribution(
+                IndexerAttributes.getLong(indexerConfiguration, "CommitLatencyMedian", 20000),
+                IndexerAttributes.getLong(indexerConfiguration, "CommitLatencyP99", 200000));
+        this.failurePermille = IndexerAttributes.getInt(indexerConfiguration, "FailurePermille", 0);
+        this.timeoutPermille = IndexerAttributes.getInt(indexerConfiguration, "TimeoutPermille", 0);
+        this.timeoutMillis = IndexerAttributes.getLong(indexerConfiguration, "Timeout", 5000);
+        // The processor instantiates a SearchIndex per transaction, give each its own sequence.
+        this.random = new Random(IndexerAttributes.getLong(indexerConfiguration, "Seed", 42) * 31 +
+                INSTANCES.getAndIncrement());
+    }
+
+    @Override
+    public void addItemToIndex(final SearchIndexData data) throws IndexingException {
+        this.call(this.callLatency, data.getUniqueIndexId());
+    }
+
+    @Override
+    public void removeItemFromIndex(final BaseIndexData data) throws IndexingException {
+        this.call(this.callLatency, data.getUniqueIndexId());
+    }
+
+    @Override
+    public void updateItemInIndex(final SearchIndexData data) throws IndexingException {
+        this.call(this.callLatency, data.getUniqueIndexId());
+    }
+
+    @Override
+    public void addBinaryToIndex(final BinaryIndexData data) throws IndexingException {
+        this.call(this.callLatency, data.getUniqueIndexId());
+    }
+
+    @Override
+    public void removeBinaryFromIndex(final BaseIndexData data) throws IndexingException {
+        this.call(this.callLatency, data.getUniqueIndexId());
+    }
+
+    @Override
+    public void commit(final String publicationId) throws IndexingException {
+        COMMITS.incrementAndGet();
+        this.call(this.commitLatency, "commit of publication " + publicationId);
+    }
+
+    @Override
+    public void destroy() {
+
+    }
+
+    private void call(Distribution latency, String subject) throws IndexingException {
+        CALLS.incrementAndGet();
+        int dice = this.random.nextInt(1000);
+        if (dice < this.failurePermille) {
+            FAILURES.incrementAndGet();
+            throw new IndexingException("Injected failure for: " + subject);
+        }
+        if (dice < this.failurePermille + this.timeoutPermille) {
+            TIMEOUTS.incrementAndGet();
+            pause(TimeUnit.MILLISECONDS.toNanos(this.timeoutMillis));
+            throw new IndexingException("Injected timeout after " + this.timeoutMillis + " ms for: " + subject);
+        }
+        pause(latency.nextNanos(this.random));
+    }
+
+    // parkNanos may return early, so park until the deadline has passed.
+    private static void pause(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    public static long getCallCount() {
+        return CALLS.get();
+    }
+
+    public static long getCommitCount() {
+        return COMMITS.get();
+    }
+
+    public static long getFailureCount() {
+        return FAILURES.get();
+    }
+
+    public static long getTimeoutCount() {
+        return TIMEOUTS.get();
+    }
+
+    /**
+     * A log-normal distribution, given by its median and 99th percentile.
+     */
+    private static final class Distribution {
+
+        private final double median;
+        private final double sigma;
+
+        Distribution(long medianMicros, long p99Micros) throws ConfigurationException {
+            if (medianMicros < 0 || p99Micros < medianMicros) {
+                throw new ConfigurationException("Latency median should be positive and at most the 99th percentile: " +
+                        medianMicros + ", " + p99Micros);
+            }
+            this.median = TimeUnit.MICROSECONDS.toNanos(medianMicros);
+            this.sigma = medianMicros == 0 ? 0 : Math.log((double) p99Micros / medianMicros) / Z_99;
+        }
+
+        long nextNanos(Random random) {
+            return (long) (this.median * Math.exp(this.sigma * random.nextGaussian()));
+        }
+    }
+}
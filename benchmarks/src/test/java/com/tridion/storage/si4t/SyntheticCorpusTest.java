@@ -0,0 +1,50 @@
+package com.tridion.storage.si4t;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SyntheticCorpusTest.
+ */
+public class SyntheticCorpusTest {
+
+    @Test
+    public void testOutputOnlyDependsOnShapeSeedAndItem() {
+        SyntheticCorpus corpus = new SyntheticCorpus(SyntheticCorpus.Shape.NESTED, 42);
+        SyntheticCorpus same = new SyntheticCorpus(SyntheticCorpus.Shape.NESTED, 42);
+        SyntheticCorpus other = new SyntheticCorpus(SyntheticCorpus.Shape.NESTED, 43);
+
+        assertEquals(corpus.page(3), same.page(3));
+        assertEquals(corpus.directive(3), same.directive(3));
+        assertEquals(corpus.fields(3).asMap(), same.fields(3).asMap());
+        assertNotEquals(corpus.directive(3), corpus.directive(4));
+        assertNotEquals(corpus.directive(3), other.directive(3));
+    }
+
+    @Test
+    public void testPageHoldsTheDirective() {
+        SyntheticCorpus corpus = new SyntheticCorpus(SyntheticCorpus.Shape.SMALL, 42);
+        String page = corpus.page(0);
+
+        assertTrue(page.length() >= 4 * 1024);
+        assertTrue(page.contains("<!-- INDEX-DATA-START:" + corpus.directive(0) + ":INDEX-DATA-END -->"));
+        assertTrue(TridionPublishableItemProcessor.hasIndexData(page));
+        assertFalse(TridionPublishableItemProcessor.removeTags(page).contains("INDEX-DATA"));
+    }
+
+    @Test
+    public void testFieldsHaveTheShapeOfTheDirective() {
+        SyntheticCorpus corpus = new SyntheticCorpus(SyntheticCorpus.Shape.SMALL, 42);
+        IndexFieldSet fields = corpus.fields(7);
+
+        assertEquals(7, fields.size());
+        assertEquals(Collections.<Object>singletonList("tcm:5-1007-64"), fields.get("id"));
+        assertTrue(corpus.directive(7).startsWith("<indexdata><id>tcm:5-1007-64</id>"));
+    }
+}
@@ -0,0 +1,67 @@
+package com.tridion.storage.si4t.load;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LoadReportTest.
+ */
+public class LoadReportTest {
+
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static String print(LoadReport report) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        report.print(out, "load-report-test");
+        return bytes.toString("UTF-8");
+    }
+
+    private static String countOf(String output, LoadReport.Stage stage) {
+        for (String line : output.split("\n")) {
+            String[] columns = line.trim().split(" +");
+            if (columns[0].equals(stage.name())) {
+                return columns[1];
+            }
+        }
+        throw new AssertionError("No line for " + stage + " in: " + output);
+    }
+
+    @Test
+    public void testStagesAreCorrectedForCoordinatedOmission() throws Exception {
+        LoadReport report = new LoadReport(10 * MILLISECOND);
+        report.start();
+        report.record(LoadReport.Stage.DEPLOY, 100 * MILLISECOND);
+        report.record(LoadReport.Stage.TRANSACTION, 100 * MILLISECOND);
+        report.recordTransaction(5, false);
+        report.end();
+
+        String output = print(report);
+        assertTrue(output, output.contains("corrected for coordinated omission:"));
+        // The stalled worker missed the samples at 90, 80, .. 10 ms.
+        assertEquals(output, "10", countOf(output, LoadReport.Stage.DEPLOY));
+        // Transactions are measured from their scheduled start, so they need no correction.
+        assertEquals(output, "1", countOf(output, LoadReport.Stage.TRANSACTION));
+    }
+
+    @Test
+    public void testStagesAreNotCorrectedWithoutTargetRate() throws Exception {
+        LoadReport report = new LoadReport(0);
+        report.start();
+        report.record(LoadReport.Stage.DEPLOY, 100 * MILLISECOND);
+        report.record(LoadReport.Stage.TRANSACTION, 100 * MILLISECOND);
+        report.recordTransaction(5, true);
+        report.end();
+
+        String output = print(report);
+        assertTrue(output, output.contains("not corrected for coordinated omission"));
+        assertTrue(output, output.contains("Transactions: 1 (1 failed), items: 5"));
+        assertEquals(output, "1", countOf(output, LoadReport.Stage.DEPLOY));
+    }
+}
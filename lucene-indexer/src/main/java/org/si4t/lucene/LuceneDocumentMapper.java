@@ -0,0 +1,169 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.si4t.lucene;
+
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.BinaryIndexData;
+import com.tridion.storage.si4t.ExtractedText;
+import com.tridion.storage.si4t.SearchIndexData;
+import com.tridion.storage.si4t.Utils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.Term;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LuceneDocumentMapper.
+ * <p/>
+ * Maps SI4T index data onto Lucene documents.
+ * <p/>
+ * Every field of the INDEX-DATA directive becomes a stored, analyzed field with the
+ * same name. Short values are also indexed verbatim in a "name.exact" field, so
+ * ids and urls can be matched exactly. All values are copied into the catch-all
+ * "text" field.
+ * <p/>
+ * The extracted text of a binary is indexed, but not stored, in the "content" field
+ * and its metadata in "meta.name" fields.
+ * <p/>
+ * Pages and component presentations store their field digest in "fielddigest", so the
+ * index can be reconciled with the deployed items.
+ */
+final class LuceneDocumentMapper {
+
+    static final String ID_FIELD = "id";
+    static final String PUBLICATION_FIELD = "publicationid";
+    static final String INDEX_TYPE_FIELD = "indextype";
+    static final String TEXT_FIELD = "text";
+    static final String FIELD_DIGEST_FIELD = "fielddigest";
+    static final String EXACT_SUFFIX = ".exact";
+
+    static final String FILE_NAME_FIELD = "filename";
+    static final String FILE_TYPE_FIELD = "filetype";
+    static final String FILE_SIZE_FIELD = "filesize";
+    static final String URL_FIELD = "url";
+    static final String CONTENT_DIGEST_FIELD = "contentdigest";
+    static final String CONTENT_FIELD = "content";
+    static final String METADATA_PREFIX = "meta.";
+
+    // Longer values are not useful as exact terms and only bloat the terms dictionary.
+    private static final int MAX_EXACT_LENGTH = 256;
+
+    private LuceneDocumentMapper() {
+    }
+
+    /**
+     * Gets the term which identifies the document of an item.
+     *
+     * @param data the index data
+     * @return the id term
+     */
+    static Term idTerm(BaseIndexData data) {
+        return new Term(ID_FIELD, data.getUniqueIndexId());
+    }
+
+    /**
+     * Maps a page or component presentation.
+     *
+     * @param data the index data
+     * @return the Lucene document
+     */
+    static Document toDocument(SearchIndexData data) {
+        Document document = createDocument(data);
+        for (Map.Entry<String, ? extends List<Object>> field : data.readFields().entrySet()) {
+            for (Object value : field.getValue()) {
+                addValue(document, field.getKey(), value);
+            }
+        }
+        addPublicationField(document, data);
+        document.add(new StoredField(FIELD_DIGEST_FIELD, data.getFieldDigest()));
+        return document;
+    }
+
+    /**
+     * Maps a binary.
+     *
+     * @param data the binary index data
+     * @return the Lucene document
+     */
+    static Document toDocument(BinaryIndexData data) {
+        Document document = createDocument(data);
+        addValue(document, FILE_NAME_FIELD, data.getFileName());
+        addValue(document, URL_FIELD, data.getIndexUrl());
+        if (!Utils.StringIsNullOrEmpty(data.getFileType())) {
+            document.add(new StringField(FILE_TYPE_FIELD, data.getFileType().toLowerCase(), Field.Store.YES));
+        }
+        if (data.getContentDigest() != null) {
+            // Finds the copies of a binary in other publications.
+            document.add(new StringField(CONTENT_DIGEST_FIELD, data.getContentDigest(), Field.Store.YES));
+        }
+        if (!Utils.StringIsNullOrEmpty(data.getFileSize())) {
+            try {
+                long fileSize = Long.parseLong(data.getFileSize());
+                document.add(new LongPoint(FILE_SIZE_FIELD, fileSize));
+                document.add(new StoredField(FILE_SIZE_FIELD, fileSize));
+            } catch (NumberFormatException e) {
+                document.add(new StoredField(FILE_SIZE_FIELD, data.getFileSize()));
+            }
+        }
+        addExtractedText(document, data.getExtractedText());
+        addPublicationField(document, data);
+        return document;
+    }
+
+    private static void addExtractedText(Document document, ExtractedText extracted) {
+        if (extracted == null) {
+            return;
+        }
+        document.add(new TextField(CONTENT_FIELD, extracted.getText(), Field.Store.NO));
+        document.add(new TextField(TEXT_FIELD, extracted.getText(), Field.Store.NO));
+        for (Map.Entry<String, String> metadata : extracted.getMetadata().entrySet()) {
+            addValue(document, METADATA_PREFIX + metadata.getKey(), metadata.getValue());
+        }
+    }
+
+    private static Document createDocument(BaseIndexData data) {
+        Document document = new Document();
+        document.add(new StringField(ID_FIELD, data.getUniqueIndexId(), Field.Store.YES));
+        document.add(new StringField(INDEX_TYPE_FIELD, data.getIndexType().name(), Field.Store.YES));
+        return document;
+    }
+
+    private static void addPublicationField(Document document, BaseIndexData data) {
+        // The directive normally carries the publication id already.
+        if (document.getField(PUBLICATION_FIELD) == null && data.getPublicationItemId() != null) {
+            addValue(document, PUBLICATION_FIELD, data.getPublicationItemId());
+        }
+    }
+
+    private static void addValue(Document document, String name, Object value) {
+        if (value == null) {
+            return;
+        }
+        String text = value.toString();
+        document.add(new TextField(name, text, Field.Store.YES));
+        if (text.length() <= MAX_EXACT_LENGTH) {
+            document.add(new StringField(name + EXACT_SUFFIX, text, Field.Store.NO));
+        }
+        document.add(new TextField(TEXT_FIELD, text, Field.Store.NO));
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.si4t.lucene;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LuceneIndexStore.
+ * <p/>
+ * Holds the Lucene index of one storage: one index directory and one shared
+ * IndexWriter per publication. All LuceneSearchIndex instances configured with the
+ * same index location use the same store, as an IndexWriter holds an exclusive lock on
+ * its directory. The store is closed when the last of them is destroyed, or on shutdown.
+ * <p/>
+ * Changes are made visible to near-real-time readers on every SearchIndex commit, but
+ * the (expensive, fsync-ing) Lucene commit only happens once enough changes are pending
+ * or the commit interval has passed. A background thread commits whatever is left.
+ */
+final class LuceneIndexStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LuceneIndexStore.class);
+    private static final Map<Path, LuceneIndexStore> STORES = new HashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(LuceneIndexStore::closeAll, "si4t-lucene-shutdown"));
+    }
+
+    private final Path location;
+    private final Settings settings;
+    private final ConcurrentHashMap<String, PublicationIndex> publications = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService committer;
+    private int users;
+    private volatile boolean closed;
+
+    private LuceneIndexStore(Path location, Settings settings) {
+        this.location = location;
+        this.settings = settings;
+        this.committer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "si4t-lucene-commit-" + location.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.committer.scheduleWithFixedDelay(this::commitPending, settings.commitInterval,
+                settings.commitInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Acquires the store for an index location, creating it on first use. Every call
+     * must be matched by a call to {@link #release()}.
+     *
+     * @param location the index root directory
+     * @param settings the settings of the store
+     * @return the shared store
+     * @throws IllegalArgumentException if the store is already open with other settings
+     */
+    static LuceneIndexStore acquire(Path location, Settings settings) {
+        Path key = location.toAbsolutePath().normalize();
+        synchronized (STORES) {
+            LuceneIndexStore store = STORES.get(key);
+            if (store == null) {
+                LOG.info("Opening Lucene index store at: {}", key);
+                store = new LuceneIndexStore(key, settings);
+                STORES.put(key, store);
+            } else if (!store.settings.equals(settings)) {
+                throw new IllegalArgumentException("The Lucene index at " + key + " is already open with " +
+                        "other settings: " + store.settings);
+            }
+            store.users++;
+            return store;
+        }
+    }
+
+    /**
+     * Releases the store. The last release commits and closes all indexes.
+     */
+    void release() {
+        synchronized (STORES) {
+            if (--this.users > 0) {
+                return;
+            }
+            STORES.remove(this.location, this);
+        }
+        this.close();
+    }
+
+    private static void closeAll() {
+        List<LuceneIndexStore> stores;
+        synchronized (STORES) {
+            stores = new ArrayList<>(STORES.values());
+            STORES.clear();
+        }
+        for (LuceneIndexStore store : stores) {
+            store.close();
+        }
+    }
+
+    /**
+     * Gets the index of a publication, opening it on first use.
+     *
+     * @param publicationId the publication id
+     * @return the publication index
+     * @throws IOException if the publication id is not numeric or the index can not be opened
+     */
+    PublicationIndex getPublicationIndex(String publicationId) throws IOException {
+        PublicationIndex index = this.publications.get(publicationId);
+        if (index != null) {
+            return index;
+        }
+        if (!isPublicationId(publicationId)) {
+            throw new IOException("Not a valid publication id: " + publicationId);
+        }
+        synchronized (this.publications) {
+            if (this.closed) {
+                throw new IOException("The Lucene index store is closed: " + this.location);
+            }
+            index = this.publications.get(publicationId);
+            if (index == null) {
+                index = new PublicationIndex(this.location.resolve(publicationId), this.settings);
+                this.publications.put(publicationId, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Checks that a publication id is a plain number, so it can only resolve to a
+     * directory directly below the index location.
+     *
+     * @param publicationId the publication id
+     * @return true if the id only consists of digits
+     */
+    static boolean isPublicationId(String publicationId) {
+        if (publicationId == null || publicationId.isEmpty() || publicationId.length() > 10) {
+            return false;
+        }
+        for (int i = 0; i < publicationId.length(); i++) {
+            if (publicationId.charAt(i) < '0' || publicationId.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Handles a commit request for a publication. Refreshes the near-real-time readers and
+     * commits to disk when the size or time threshold is reached.
+     *
+     * @param publicationId the publication id
+     * @throws IOException on errors refreshing or committing
+     */
+    void commit(String publicationId) throws IOException {
+        PublicationIndex index = this.publications.get(publicationId);
+        if (index == null) {
+            return;
+        }
+        index.searchers.maybeRefresh();
+        if (index.pendingChanges.get() >= this.settings.commitMaxDocs ||
+                System.currentTimeMillis() - index.lastCommit >= this.settings.commitInterval) {
+            index.commit();
+        }
+    }
+
+    private void commitPending() {
+        for (Map.Entry<String, PublicationIndex> entry : this.publications.entrySet()) {
+            try {
+                if (entry.getValue().pendingChanges.get() > 0) {
+                    entry.getValue().searchers.maybeRefresh();
+                    entry.getValue().commit();
+                }
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Could not commit Lucene index for publication: " + entry.getKey(), e);
+            }
+        }
+    }
+
+    private void close() {
+        synchronized (this.publications) {
+            this.closed = true;
+        }
+        this.committer.shutdown();
+        for (Map.Entry<String, PublicationIndex> entry : this.publications.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Could not close Lucene index for publication: " + entry.getKey(), e);
+            }
+        }
+        this.publications.clear();
+    }
+
+    /**
+     * PublicationIndex.
+     * <p/>
+     * Index directory, writer and near-real-time searchers of one publication.
+     */
+    static final class PublicationIndex {
+        private final Directory directory;
+        final IndexWriter writer;
+        final SearcherManager searchers;
+        final AtomicLong pendingChanges = new AtomicLong();
+        private volatile long lastCommit = System.currentTimeMillis();
+
+        private PublicationIndex(Path path, Settings settings) throws IOException {
+            LOG.info("Opening Lucene index: {}", path);
+            this.directory = FSDirectory.open(path);
+            IndexWriterConfig config = new IndexWriterConfig(settings.createAnalyzer());
+            config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+            config.setRAMBufferSizeMB(settings.ramBufferSize);
+            this.writer = new IndexWriter(this.directory, config);
+            this.searchers = new SearcherManager(this.writer, null);
+        }
+
+        /**
+         * Acquires a near-real-time searcher. It must be released through
+         * {@link #release(IndexSearcher)}.
+         *
+         * @return the searcher
+         * @throws IOException on errors opening a reader
+         */
+        IndexSearcher acquire() throws IOException {
+            return this.searchers.acquire();
+        }
+
+        void release(IndexSearcher searcher) throws IOException {
+            this.searchers.release(searcher);
+        }
+
+        synchronized void commit() throws IOException {
+            long changes = this.pendingChanges.getAndSet(0);
+            try {
+                this.writer.commit();
+                this.lastCommit = System.currentTimeMillis();
+                LOG.debug("Committed {} changes to: {}", changes, this.directory);
+            } catch (IOException | RuntimeException e) {
+                this.pendingChanges.addAndGet(changes);
+                throw e;
+            }
+        }
+
+        private synchronized void close() throws IOException {
+            this.searchers.close();
+            this.writer.close();
+            this.directory.close();
+        }
+    }
+
+    /**
+     * Settings.
+     * <p/>
+     * Store wide settings, read from the Indexer configuration node.
+     */
+    static final class Settings {
+        final long commitInterval;
+        final long commitMaxDocs;
+        final double ramBufferSize;
+        final String analyzerClass;
+
+        Settings(long commitInterval, long commitMaxDocs, double ramBufferSize, String analyzerClass) {
+            this.commitInterval = commitInterval;
+            this.commitMaxDocs = commitMaxDocs;
+            this.ramBufferSize = ramBufferSize;
+            this.analyzerClass = analyzerClass;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Settings)) {
+                return false;
+            }
+            Settings other = (Settings) o;
+            return this.commitInterval == other.commitInterval && this.commitMaxDocs == other.commitMaxDocs
+                    && Double.compare(this.ramBufferSize, other.ramBufferSize) == 0
+                    && this.analyzerClass.equals(other.analyzerClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.commitInterval, this.commitMaxDocs, this.ramBufferSize, this.analyzerClass);
+        }
+
+        @Override
+        public String toString() {
+            return "CommitInterval=" + this.commitInterval + ", CommitMaxDocs=" + this.commitMaxDocs
+                    + ", RamBufferSize=" + this.ramBufferSize + ", Analyzer=" + this.analyzerClass;
+        }
+
+        Analyzer createAnalyzer() throws IOException {
+            try {
+                return Class.forName(this.analyzerClass).asSubclass(Analyzer.class).newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IOException("Could not instantiate analyzer: " + this.analyzerClass, e);
+            }
+        }
+    }
+}
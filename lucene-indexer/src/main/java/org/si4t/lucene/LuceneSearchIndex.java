@@ -0,0 +1,268 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.si4t.lucene;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationException;
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.BinaryIndexData;
+import com.tridion.storage.si4t.ConcurrentSearchIndex;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.IndexerAttributes;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.ListableSearchIndex;
+import com.tridion.storage.si4t.SearchIndexData;
+import com.tridion.storage.si4t.Utils;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiBits;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * LuceneSearchIndex.
+ * <p/>
+ * Embedded SearchIndex implementation which writes to local Lucene indexes, one
+ * index directory per publication. Meant for small sites and for testing without a
+ * search cluster. Configure it in cd_storage_conf.xml:
+ * <pre>
+ * &lt;Indexer Class="org.si4t.lucene.LuceneSearchIndex"
+ *          IndexLocation="/var/si4t/index"
+ *          CommitInterval="5000"
+ *          CommitMaxDocs="1000"
+ *          RamBufferSize="64"
+ *          DocExtensions="pdf,docx"/&gt;
+ * </pre>
+ * CommitInterval is in milliseconds and RamBufferSize in MB. CommitInterval, CommitMaxDocs
+ * and RamBufferSize must be positive. Analyzer optionally sets the class name of the Lucene
+ * Analyzer to use. Indexers which share an IndexLocation must use the same settings.
+ * <p/>
+ * The pages and component presentations of a publication can be listed for
+ * reconciliation, in the term order of their ids.
+ */
+public class LuceneSearchIndex implements ConcurrentSearchIndex, ListableSearchIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LuceneSearchIndex.class);
+    private static final String INDEXER_NODE = "Indexer";
+    private static final String INDEX_LOCATION_ATTRIBUTE = "IndexLocation";
+    private static final String COMMIT_INTERVAL_ATTRIBUTE = "CommitInterval";
+    private static final String COMMIT_MAX_DOCS_ATTRIBUTE = "CommitMaxDocs";
+    private static final String RAM_BUFFER_SIZE_ATTRIBUTE = "RamBufferSize";
+    private static final String ANALYZER_ATTRIBUTE = "Analyzer";
+    private static final Set<String> LISTED_FIELDS = new HashSet<>(Arrays.asList(
+            LuceneDocumentMapper.INDEX_TYPE_FIELD, LuceneDocumentMapper.FIELD_DIGEST_FIELD));
+
+    private LuceneIndexStore store;
+    private boolean destroyed;
+
+    public LuceneSearchIndex() {
+    }
+
+    LuceneSearchIndex(LuceneIndexStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public synchronized void configure(Configuration configuration) throws ConfigurationException {
+        Configuration indexerConfiguration = configuration.getChild(INDEXER_NODE);
+        String location = IndexerAttributes.getString(indexerConfiguration, INDEX_LOCATION_ATTRIBUTE, null);
+        if (Utils.StringIsNullOrEmpty(location)) {
+            throw new ConfigurationException("Please set the IndexLocation attribute for the Lucene indexer.");
+        }
+
+        long commitInterval = IndexerAttributes.getLong(indexerConfiguration, COMMIT_INTERVAL_ATTRIBUTE, 5000);
+        long commitMaxDocs = IndexerAttributes.getLong(indexerConfiguration, COMMIT_MAX_DOCS_ATTRIBUTE, 1000);
+        long ramBufferSize = IndexerAttributes.getLong(indexerConfiguration, RAM_BUFFER_SIZE_ATTRIBUTE, 64);
+        if (commitInterval < 1 || commitMaxDocs < 1 || ramBufferSize < 1) {
+            throw new ConfigurationException("CommitInterval, CommitMaxDocs and RamBufferSize of the Lucene " +
+                    "indexer must be positive.");
+        }
+
+        LuceneIndexStore.Settings settings = new LuceneIndexStore.Settings(commitInterval, commitMaxDocs,
+                ramBufferSize, IndexerAttributes.getString(indexerConfiguration, ANALYZER_ATTRIBUTE,
+                StandardAnalyzer.class.getName()));
+        LuceneIndexStore previous = this.destroyed ? null : this.store;
+        try {
+            this.store = LuceneIndexStore.acquire(Paths.get(location), settings);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException(e.getMessage());
+        }
+        this.destroyed = false;
+        if (previous != null) {
+            previous.release();
+        }
+        LOG.debug("Configured Lucene index at: {}", location);
+    }
+
+    @Override
+    public void addItemToIndex(SearchIndexData data) throws IndexingException {
+        this.update(data, LuceneDocumentMapper.toDocument(data));
+    }
+
+    @Override
+    public void removeItemFromIndex(BaseIndexData data) throws IndexingException {
+        this.delete(data);
+    }
+
+    @Override
+    public void updateItemInIndex(SearchIndexData data) throws IndexingException {
+        this.update(data, LuceneDocumentMapper.toDocument(data));
+    }
+
+    @Override
+    public void addBinaryToIndex(BinaryIndexData data) throws IndexingException {
+        this.update(data, LuceneDocumentMapper.toDocument(data));
+    }
+
+    @Override
+    public void removeBinaryFromIndex(BaseIndexData data) throws IndexingException {
+        this.delete(data);
+    }
+
+    /**
+     * Makes pending changes visible to searchers. Changes are committed to disk in
+     * batches, based on CommitMaxDocs and CommitInterval.
+     *
+     * @param publicationId the publication id
+     * @throws IndexingException the indexing exception
+     */
+    @Override
+    public void commit(String publicationId) throws IndexingException {
+        try {
+            this.store.commit(publicationId);
+        } catch (IOException e) {
+            throw new IndexingException("Could not commit Lucene index for publication: " + publicationId, e);
+        }
+    }
+
+    /**
+     * Lists the live documents of a publication from a near-real-time searcher, which is
+     * refreshed first. The id terms of all segments are merged, so only the current
+     * term is held in memory.
+     *
+     * @param publicationId the publication id
+     * @param handler       receives the items
+     * @throws IndexingException the indexing exception
+     */
+    @Override
+    public void listIndexedItems(String publicationId, IndexedItemHandler handler) throws IndexingException {
+        try {
+            LuceneIndexStore.PublicationIndex index = this.store.getPublicationIndex(publicationId);
+            index.searchers.maybeRefreshBlocking();
+            IndexSearcher searcher = index.acquire();
+            try {
+                IndexReader reader = searcher.getIndexReader();
+                Terms terms = MultiTerms.getTerms(reader, LuceneDocumentMapper.ID_FIELD);
+                if (terms == null) {
+                    return;
+                }
+                Bits liveDocs = MultiBits.getLiveDocs(reader);
+                TermsEnum ids = terms.iterator();
+                PostingsEnum postings = null;
+                BytesRef id;
+                while ((id = ids.next()) != null) {
+                    postings = ids.postings(postings, PostingsEnum.NONE);
+                    int doc = postings.nextDoc();
+                    while (doc != DocIdSetIterator.NO_MORE_DOCS && liveDocs != null && !liveDocs.get(doc)) {
+                        doc = postings.nextDoc();
+                    }
+                    if (doc == DocIdSetIterator.NO_MORE_DOCS) {
+                        continue;
+                    }
+                    Document stored = reader.document(doc, LISTED_FIELDS);
+                    IndexType type = IndexType.valueOf(stored.get(LuceneDocumentMapper.INDEX_TYPE_FIELD));
+                    if (type != IndexType.BINARY) {
+                        handler.accept(id.utf8ToString(), type, stored.get(LuceneDocumentMapper.FIELD_DIGEST_FIELD));
+                    }
+                }
+            } finally {
+                index.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new IndexingException("Could not list Lucene index of publication: " + publicationId, e);
+        }
+    }
+
+    /**
+     * Releases the index store. The writers are closed once no other instance uses them.
+     */
+    @Override
+    public synchronized void destroy() {
+        if (this.store != null && !this.destroyed) {
+            this.destroyed = true;
+            this.store.release();
+        }
+    }
+
+    /**
+     * Acquires a near-real-time searcher on the index of a publication.
+     * It has to be released with {@link #releaseSearcher(String, IndexSearcher)}.
+     *
+     * @param publicationId the publication id
+     * @return the searcher
+     * @throws IOException on errors opening the index
+     */
+    public IndexSearcher acquireSearcher(String publicationId) throws IOException {
+        return this.store.getPublicationIndex(publicationId).acquire();
+    }
+
+    /**
+     * Releases a searcher acquired through {@link #acquireSearcher(String)}.
+     *
+     * @param publicationId the publication id
+     * @param searcher      the searcher
+     * @throws IOException on errors closing the reader
+     */
+    public void releaseSearcher(String publicationId, IndexSearcher searcher) throws IOException {
+        this.store.getPublicationIndex(publicationId).release(searcher);
+    }
+
+    private void update(BaseIndexData data, Document document) throws IndexingException {
+        try {
+            LuceneIndexStore.PublicationIndex index = this.store.getPublicationIndex(data.getPublicationItemId());
+            index.writer.updateDocument(LuceneDocumentMapper.idTerm(data), document);
+            index.pendingChanges.incrementAndGet();
+        } catch (IOException e) {
+            throw new IndexingException("Could not index: " + data.getUniqueIndexId(), e);
+        }
+    }
+
+    private void delete(BaseIndexData data) throws IndexingException {
+        try {
+            LuceneIndexStore.PublicationIndex index = this.store.getPublicationIndex(data.getPublicationItemId());
+            index.writer.deleteDocuments(LuceneDocumentMapper.idTerm(data));
+            index.pendingChanges.incrementAndGet();
+        } catch (IOException e) {
+            throw new IndexingException("Could not remove: " + data.getUniqueIndexId(), e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.si4t.lucene;
+
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.SearchIndexData;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * LuceneSearchIndexTest.
+ */
+public class LuceneSearchIndexTest {
+
+    private Path location;
+    private LuceneIndexStore store;
+    private LuceneSearchIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        this.location = Files.createTempDirectory("si4t-lucene");
+        this.store = LuceneIndexStore.acquire(this.location, settings(1000));
+        this.index = new LuceneSearchIndex(this.store);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.index.destroy();
+        try (Stream<Path> paths = Files.walk(this.location)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testAddedItemIsSearchableAfterCommit() throws Exception {
+        this.index.addItemToIndex(item("tcm:5-1-64", "Hello world"));
+        assertEquals(0, count("5", "title", "hello"));
+
+        this.index.commit("5");
+
+        assertEquals(1, count("5", "title", "hello"));
+        assertEquals(1, count("5", "text", "world"));
+        assertEquals(1, count("5", "id", "tcm:5-1-64"));
+    }
+
+    @Test
+    public void testUpdateReplacesTheDocument() throws Exception {
+        this.index.addItemToIndex(item("tcm:5-1-64", "Hello"));
+        this.index.updateItemInIndex(item("tcm:5-1-64", "Goodbye"));
+        this.index.commit("5");
+
+        assertEquals(1, count("5", "id", "tcm:5-1-64"));
+        assertEquals(0, count("5", "title", "hello"));
+        assertEquals(1, count("5", "title", "goodbye"));
+    }
+
+    @Test
+    public void testRemovedItemIsGoneAfterCommit() throws Exception {
+        this.index.addItemToIndex(item("tcm:5-1-64", "Hello"));
+        this.index.addItemToIndex(item("tcm:5-2-64", "Hello"));
+        this.index.commit("5");
+
+        SearchIndexData removal = new SearchIndexData(FactoryAction.REMOVE, IndexType.PAGE, "5", "storage");
+        removal.setUniqueIndexId("tcm:5-1-64");
+        this.index.removeItemFromIndex(removal);
+        this.index.commit("5");
+
+        assertEquals(0, count("5", "id", "tcm:5-1-64"));
+        assertEquals(1, count("5", "title", "hello"));
+    }
+
+    @Test
+    public void testPublicationsHaveTheirOwnIndex() throws Exception {
+        this.index.addItemToIndex(item("tcm:5-1-64", "Hello"));
+        this.index.addItemToIndex(item("tcm:6-1-64", "Hello"));
+        this.index.commit("5");
+        this.index.commit("6");
+
+        assertEquals(1, count("5", "title", "hello"));
+        assertEquals(1, count("6", "title", "hello"));
+        assertTrue(Files.isDirectory(this.location.resolve("5")));
+        assertTrue(Files.isDirectory(this.location.resolve("6")));
+    }
+
+    @Test
+    public void testPublicationIdMustBeNumeric() throws Exception {
+        SearchIndexData data = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, "../5", "storage");
+        data.setUniqueIndexId("tcm:5-1-64");
+        try {
+            this.index.addItemToIndex(data);
+            fail("Expected an IndexingException");
+        } catch (IndexingException e) {
+            assertFalse(Files.exists(this.location.resolveSibling("5")));
+        }
+        assertFalse(LuceneIndexStore.isPublicationId(""));
+        assertFalse(LuceneIndexStore.isPublicationId("5a"));
+        assertTrue(LuceneIndexStore.isPublicationId("5"));
+    }
+
+    @Test
+    public void testStoreIsSharedAndClosedByTheLastUser() throws Exception {
+        LuceneIndexStore second = LuceneIndexStore.acquire(this.location, settings(1000));
+        assertSame(this.store, second);
+        second.release();
+
+        this.index.addItemToIndex(item("tcm:5-1-64", "Hello"));
+        this.index.destroy();
+        try {
+            this.index.addItemToIndex(item("tcm:5-2-64", "Hello"));
+            fail("Expected the store to be closed");
+        } catch (IndexingException expected) {
+        }
+
+        // The pending change was committed on close and the lock released.
+        this.store = LuceneIndexStore.acquire(this.location, settings(1000));
+        assertNotSame(second, this.store);
+        this.index = new LuceneSearchIndex(this.store);
+        assertEquals(1, count("5", "title", "hello"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOtherSettingsForAnOpenStoreAreRejected() {
+        LuceneIndexStore.acquire(this.location, settings(10));
+    }
+
+    private int count(String publicationId, String field, String value) throws IOException {
+        IndexSearcher searcher = this.index.acquireSearcher(publicationId);
+        try {
+            return searcher.count(new TermQuery(new Term(field, value)));
+        } finally {
+            this.index.releaseSearcher(publicationId, searcher);
+        }
+    }
+
+    private static SearchIndexData item(String id, String title) {
+        String publicationId = id.substring(id.indexOf(':') + 1, id.indexOf('-'));
+        SearchIndexData data = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, publicationId, "storage");
+        data.setUniqueIndexId(id);
+        data.addIndexField("title", title);
+        return data;
+    }
+
+    private static LuceneIndexStore.Settings settings(long commitMaxDocs) {
+        return new LuceneIndexStore.Settings(60000, commitMaxDocs, 16, StandardAnalyzer.class.getName());
+    }
+}
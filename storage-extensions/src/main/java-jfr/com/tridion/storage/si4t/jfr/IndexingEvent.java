@@ -0,0 +1,57 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * IndexingEvent.
+ * <p/>
+ * Base class of the SI4T flight recorder events. Stack traces are not recorded,
+ * as the event name already tells where it was emitted.
+ */
+@Category("SI4T")
+@StackTrace(false)
+abstract class IndexingEvent extends Event {
+
+    @Label("Transaction Id")
+    String transactionId;
+
+    @Label("Storage Id")
+    String storageId;
+
+    @Label("Publication Id")
+    String publicationId;
+
+    @Label("Item Id")
+    String itemId;
+
+    @Label("Action")
+    String action;
+
+    @Label("Payload Size")
+    @DataAmount
+    long payloadSize;
+
+    @Label("Outcome")
+    String outcome;
+}
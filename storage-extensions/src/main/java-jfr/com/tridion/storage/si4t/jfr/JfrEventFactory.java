@@ -0,0 +1,126 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JfrEventFactory.
+ * <p/>
+ * EventFactory backed by jdk.jfr. Loaded reflectively by IndexingEvents.
+ */
+final class JfrEventFactory implements EventFactory {
+
+    private final EventType[] types = new EventType[IndexingEventKind.values().length];
+
+    JfrEventFactory() {
+        this.types[IndexingEventKind.DIRECTIVE_EXTRACT.ordinal()] = EventType.getEventType(DirectiveExtract.class);
+        this.types[IndexingEventKind.FIELD_PARSE.ordinal()] = EventType.getEventType(FieldParse.class);
+        this.types[IndexingEventKind.REGISTER_ACTION.ordinal()] = EventType.getEventType(RegisterAction.class);
+        this.types[IndexingEventKind.INDEXER_CALL.ordinal()] = EventType.getEventType(IndexerCall.class);
+        this.types[IndexingEventKind.INDEXER_COMMIT.ordinal()] = EventType.getEventType(IndexerCommit.class);
+        this.types[IndexingEventKind.TRANSACTION_INDEXING.ordinal()] =
+                EventType.getEventType(TransactionIndexing.class);
+    }
+
+    @Override
+    public Object begin(IndexingEventKind kind) {
+        if (!this.types[kind.ordinal()].isEnabled()) {
+            return null;
+        }
+        IndexingEvent event;
+        switch (kind) {
+            case DIRECTIVE_EXTRACT:
+                event = new DirectiveExtract();
+                break;
+            case FIELD_PARSE:
+                event = new FieldParse();
+                break;
+            case REGISTER_ACTION:
+                event = new RegisterAction();
+                break;
+            case INDEXER_CALL:
+                event = new IndexerCall();
+                break;
+            case INDEXER_COMMIT:
+                event = new IndexerCommit();
+                break;
+            default:
+                event = new TransactionIndexing();
+                break;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void end(Object started, String transactionId, String storageId, String publicationId, String itemId,
+                    String action, long payloadSize, String outcome) {
+        IndexingEvent event = (IndexingEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.transactionId = transactionId;
+            event.storageId = storageId;
+            event.publicationId = publicationId;
+            event.itemId = itemId;
+            event.action = action;
+            event.payloadSize = payloadSize;
+            event.outcome = outcome;
+            event.commit();
+        }
+    }
+
+    @Name("si4t.DirectiveExtract")
+    @Label("Directive Extract")
+    @Description("Finding the INDEX-DATA directive in published content")
+    static final class DirectiveExtract extends IndexingEvent {
+    }
+
+    @Name("si4t.FieldParse")
+    @Label("Field Parse")
+    @Description("Parsing directive XML into index fields")
+    static final class FieldParse extends IndexingEvent {
+    }
+
+    @Name("si4t.RegisterAction")
+    @Label("Register Action")
+    @Description("Registering an index action for a transaction")
+    static final class RegisterAction extends IndexingEvent {
+    }
+
+    @Name("si4t.IndexerCall")
+    @Label("Indexer Call")
+    @Description("An add, update or remove call on the SearchIndex")
+    static final class IndexerCall extends IndexingEvent {
+    }
+
+    @Name("si4t.IndexerCommit")
+    @Label("Indexer Commit")
+    @Description("A commit of one publication on the SearchIndex")
+    static final class IndexerCommit extends IndexingEvent {
+    }
+
+    @Name("si4t.TransactionIndexing")
+    @Label("Transaction Indexing")
+    @Description("Sending all actions of a transaction for one storage")
+    static final class TransactionIndexing extends IndexingEvent {
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * AdaptiveDispatchController.
+ * <p/>
+ * Decides how many actions the SearchIndexProcessor sends to the search index
+ * between two commits (the batch size) and how many batches it sends in parallel
+ * (the concurrency) for one storage.
+ * <p/>
+ * Both are adjusted with additive increase / multiplicative decrease, based on the
+ * measured latency of the batches and the share of failed batches. After every window
+ * of batches, the values are halved when the 95th percentile latency exceeds the
+ * target or too many batches failed. When the latency stays below half of the target,
+ * the batch size grows by a fixed step and the concurrency by one.
+ */
+public final class AdaptiveDispatchController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveDispatchController.class);
+    private static final int WINDOW = 8;
+    private static final int HISTORY = 128;
+
+    private final String storageId;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int batchIncrease;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final long targetLatencyNanos;
+    private final int maxErrorPercent;
+
+    private volatile int batchSize;
+    private volatile int concurrency;
+
+    // Guarded by this
+    private final long[] history = new long[HISTORY];
+    private long batches;
+    private long failedBatches;
+    private long decreases;
+    private long increases;
+    private int windowFailures;
+
+    /**
+     * Instantiates a new controller.
+     *
+     * @param storageId        the storage Id
+     * @param initialBatchSize the batch size to start with
+     * @param minBatchSize     the lower bound of the batch size
+     * @param maxBatchSize     the upper bound of the batch size
+     * @param minConcurrency   the lower bound of the concurrency
+     * @param maxConcurrency   the upper bound of the concurrency
+     * @param targetLatency    the target 95th percentile batch latency in ms
+     * @param maxErrorPercent  the percentage of failed batches which is tolerated
+     */
+    public AdaptiveDispatchController(String storageId, int initialBatchSize, int minBatchSize, int maxBatchSize,
+                                      int minConcurrency, int maxConcurrency, long targetLatency,
+                                      int maxErrorPercent) {
+        this.storageId = storageId;
+        this.minBatchSize = Math.max(1, minBatchSize);
+        this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+        this.minConcurrency = Math.max(1, minConcurrency);
+        this.maxConcurrency = Math.max(this.minConcurrency, maxConcurrency);
+        this.targetLatencyNanos = Math.max(1, targetLatency) * 1000000L;
+        this.maxErrorPercent = Math.max(0, maxErrorPercent);
+        this.batchSize = clamp(initialBatchSize, this.minBatchSize, this.maxBatchSize);
+        this.batchIncrease = Math.max(1, this.batchSize / 4);
+        this.concurrency = this.minConcurrency;
+    }
+
+    /**
+     * Records the outcome of one batch and adjusts the batch size and concurrency at
+     * the end of a window.
+     *
+     * @param nanos  the time it took to send and commit the batch
+     * @param failed whether the batch failed
+     */
+    public synchronized void record(long nanos, boolean failed) {
+        this.history[(int) (this.batches % HISTORY)] = nanos;
+        this.batches++;
+        if (failed) {
+            this.failedBatches++;
+            this.windowFailures++;
+        }
+        if (this.batches % WINDOW == 0) {
+            this.adjust();
+        }
+    }
+
+    private void adjust() {
+        long p95 = this.percentile(WINDOW, 95);
+        boolean tooManyErrors = this.windowFailures * 100 > this.maxErrorPercent * WINDOW;
+        this.windowFailures = 0;
+
+        int oldBatchSize = this.batchSize;
+        int oldConcurrency = this.concurrency;
+        if (tooManyErrors || p95 > this.targetLatencyNanos) {
+            this.batchSize = Math.max(this.minBatchSize, oldBatchSize / 2);
+            this.concurrency = Math.max(this.minConcurrency, oldConcurrency / 2);
+            this.decreases++;
+        } else if (p95 < this.targetLatencyNanos / 2) {
+            this.batchSize = Math.min(this.maxBatchSize, oldBatchSize + this.batchIncrease);
+            this.concurrency = Math.min(this.maxConcurrency, oldConcurrency + 1);
+            this.increases++;
+        }
+
+        if (oldBatchSize != this.batchSize || oldConcurrency != this.concurrency) {
+            LOG.info("Dispatch for storageId: {} now uses batch size: {} and concurrency: {}",
+                    new Object[]{this.storageId, this.batchSize, this.concurrency});
+        }
+    }
+
+    // Must be called while holding the lock.
+    private long percentile(int samples, int percentile) {
+        int count = (int) Math.min(Math.min(samples, HISTORY), this.batches);
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = this.history[(int) ((this.batches - 1 - i) % HISTORY)];
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Gets the number of actions to send between two commits.
+     *
+     * @return the current batch size
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Gets the number of batches to send in parallel.
+     *
+     * @return the current concurrency
+     */
+    public int getConcurrency() {
+        return this.concurrency;
+    }
+
+    /**
+     * Gets a percentile of the latency of the most recent batches.
+     *
+     * @param percentile the percentile, between 1 and 100
+     * @return the latency in ms
+     */
+    public synchronized long getLatencyPercentile(int percentile) {
+        return this.percentile(HISTORY, percentile) / 1000000L;
+    }
+
+    /**
+     * Gets the number of batches sent.
+     *
+     * @return the batch count
+     */
+    public synchronized long getBatchCount() {
+        return this.batches;
+    }
+
+    /**
+     * Gets the number of batches which failed.
+     *
+     * @return the failed batch count
+     */
+    public synchronized long getFailedBatchCount() {
+        return this.failedBatches;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AdaptiveDispatchController{batchSize=" + this.batchSize +
+                ", concurrency=" + this.concurrency +
+                ", batches=" + this.batches +
+                ", failed=" + this.failedBatches +
+                ", p50=" + this.percentile(HISTORY, 50) / 1000000L +
+                "ms, p95=" + this.percentile(HISTORY, 95) / 1000000L +
+                "ms, increases=" + this.increases +
+                ", decreases=" + this.decreases + "}";
+    }
+}
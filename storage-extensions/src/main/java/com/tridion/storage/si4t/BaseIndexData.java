@@ -25,6 +25,8 @@ package com.tridion.storage.si4t;
  */
 public class BaseIndexData
 {
+	// Rough per object overhead used for size estimates.
+	protected static final int OBJECT_OVERHEAD = 40;
 
 	protected FactoryAction _action;
 	protected String _uniqueIndexId;
@@ -120,6 +122,32 @@ public class BaseIndexData
 		return this._publicationId;
 	}
 
+	/**
+	 * Gets the approximate size of what is sent to the search index.
+	 * 
+	 * @return the size, or 0 if nothing but the id is sent
+	 */
+	public long getPayloadSize()
+	{
+		return 0;
+	}
+
+	/**
+	 * Gets the estimated number of bytes retained by this object while it is in the
+	 * notification register.
+	 * 
+	 * @return the estimated size in bytes
+	 */
+	public long getEstimatedSize()
+	{
+		return 2 * OBJECT_OVERHEAD + sizeOf(this._uniqueIndexId) + sizeOf(this._publicationId);
+	}
+
+	protected static long sizeOf(String value)
+	{
+		return value == null ? 0 : OBJECT_OVERHEAD + 2L * value.length();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see java.lang.Object#toString()
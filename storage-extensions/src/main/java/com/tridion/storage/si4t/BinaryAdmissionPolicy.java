@@ -0,0 +1,266 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * BinaryAdmissionPolicy.
+ * <p/>
+ * Decides which binaries of a storage are indexed, before anything is registered for
+ * them. A binary is admitted when its extension is in DocExtensions (ignoring case),
+ * it is not larger than MaxBinarySize bytes (0 for no limit), its path matches one of
+ * the BinaryIncludePaths globs, if set, and none of the BinaryExcludePaths globs.
+ * <p/>
+ * Globs are comma separated and match the whole relative path, ignoring case, where *
+ * matches within a directory and ** across directories, for instance /downloads/** or
+ * **&#47;internal/**.
+ * <p/>
+ * BinaryAdmission child nodes of the Indexer node override these attributes for the
+ * publications in their Publication attribute, for instance:
+ * <pre>
+ * &lt;BinaryAdmission Publication="5,6" DocExtensions="pdf" MaxBinarySize="1048576"/&gt;
+ * </pre>
+ * Attributes which are not set on a BinaryAdmission node are taken from the Indexer node.
+ */
+public final class BinaryAdmissionPolicy {
+
+    /**
+     * The outcome of a check.
+     */
+    public enum Decision {
+        ADMITTED,
+        WRONG_TYPE,
+        TOO_LARGE,
+        EXCLUDED_PATH
+    }
+
+    static final String DOC_EXTENSIONS_ATTRIBUTE = "DocExtensions";
+    static final String MAX_BINARY_SIZE_ATTRIBUTE = "MaxBinarySize";
+    static final String INCLUDE_PATHS_ATTRIBUTE = "BinaryIncludePaths";
+    static final String EXCLUDE_PATHS_ATTRIBUTE = "BinaryExcludePaths";
+    static final String PUBLICATION_NODE = "BinaryAdmission";
+    static final String PUBLICATION_ATTRIBUTE = "Publication";
+
+    private static final Decision[] DECISIONS = Decision.values();
+
+    private final Rules defaults;
+    private final Map<Integer, Rules> publications;
+    private final LongAdder[] counts = new LongAdder[DECISIONS.length];
+
+    private BinaryAdmissionPolicy(Rules defaults, Map<Integer, Rules> publications) {
+        this.defaults = defaults;
+        this.publications = publications;
+        for (int i = 0; i < this.counts.length; i++) {
+            this.counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Builds the policy from the Indexer configuration node.
+     *
+     * @param indexerConfiguration the Indexer node
+     * @return the policy
+     * @throws ConfigurationException if an attribute is invalid
+     */
+    public static BinaryAdmissionPolicy fromConfiguration(Configuration indexerConfiguration)
+            throws ConfigurationException {
+        Rules defaults = Rules.read(indexerConfiguration, null);
+        Map<Integer, Rules> publications = new HashMap<>();
+        if (indexerConfiguration != null) {
+            for (Configuration node : indexerConfiguration.getChildrenByName(PUBLICATION_NODE)) {
+                String ids = IndexerAttributes.getString(node, PUBLICATION_ATTRIBUTE, null);
+                if (ids == null) {
+                    throw new ConfigurationException(PUBLICATION_NODE + " needs a " + PUBLICATION_ATTRIBUTE +
+                            " attribute");
+                }
+                Rules rules = Rules.read(node, defaults);
+                for (String id : ids.split(",")) {
+                    try {
+                        publications.put(Integer.valueOf(id.trim()), rules);
+                    } catch (NumberFormatException e) {
+                        throw new ConfigurationException("Invalid publication id in " + PUBLICATION_NODE + ": " + id, e);
+                    }
+                }
+            }
+        }
+        return new BinaryAdmissionPolicy(defaults, publications);
+    }
+
+    /**
+     * Checks whether a binary is indexed.
+     *
+     * @param publicationId the publication id
+     * @param relativePath  the relative path of the binary
+     * @param size          the size in bytes
+     * @return the decision
+     */
+    public Decision check(int publicationId, String relativePath, long size) {
+        Rules rules = this.publications.isEmpty() ? this.defaults : this.publications.get(publicationId);
+        if (rules == null) {
+            rules = this.defaults;
+        }
+        Decision decision = rules.check(relativePath, size);
+        this.counts[decision.ordinal()].increment();
+        return decision;
+    }
+
+    /**
+     * Gets the number of checks with a decision.
+     *
+     * @param decision the decision
+     * @return the count
+     */
+    public long getCount(Decision decision) {
+        return this.counts[decision.ordinal()].sum();
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryAdmissionPolicy[defaults=" + this.defaults + ", publications=" + this.publications + "]";
+    }
+
+    private static final class Rules {
+        private final Set<String> extensions;
+        private final long maxSize;
+        private final Pattern include;
+        private final Pattern exclude;
+
+        private Rules(Set<String> extensions, long maxSize, Pattern include, Pattern exclude) {
+            this.extensions = extensions;
+            this.maxSize = maxSize;
+            this.include = include;
+            this.exclude = exclude;
+        }
+
+        static Rules read(Configuration node, Rules inherited) throws ConfigurationException {
+            String extensions = IndexerAttributes.getString(node, DOC_EXTENSIONS_ATTRIBUTE, null);
+            String include = IndexerAttributes.getString(node, INCLUDE_PATHS_ATTRIBUTE, null);
+            String exclude = IndexerAttributes.getString(node, EXCLUDE_PATHS_ATTRIBUTE, null);
+            long maxSize = IndexerAttributes.getLong(node, MAX_BINARY_SIZE_ATTRIBUTE,
+                    inherited == null ? 0 : inherited.maxSize);
+            if (maxSize < 0) {
+                throw new ConfigurationException(MAX_BINARY_SIZE_ATTRIBUTE + " cannot be negative: " + maxSize);
+            }
+            return new Rules(
+                    extensions == null && inherited != null ? inherited.extensions : parseExtensions(extensions),
+                    maxSize,
+                    include == null && inherited != null ? inherited.include : compileGlobs(include),
+                    exclude == null && inherited != null ? inherited.exclude : compileGlobs(exclude));
+        }
+
+        Decision check(String relativePath, long size) {
+            if (relativePath == null || !this.extensions.contains(extensionOf(relativePath))) {
+                return Decision.WRONG_TYPE;
+            }
+            if (this.maxSize > 0 && size > this.maxSize) {
+                return Decision.TOO_LARGE;
+            }
+            if ((this.include != null && !this.include.matcher(relativePath).matches()) ||
+                    (this.exclude != null && this.exclude.matcher(relativePath).matches())) {
+                return Decision.EXCLUDED_PATH;
+            }
+            return Decision.ADMITTED;
+        }
+
+        @Override
+        public String toString() {
+            return "[extensions=" + this.extensions + ", maxSize=" + this.maxSize + ", include=" + this.include +
+                    ", exclude=" + this.exclude + "]";
+        }
+    }
+
+    private static String extensionOf(String relativePath) {
+        int dotPos = relativePath.lastIndexOf('.');
+        return dotPos < 0 ? "" : relativePath.substring(dotPos + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> parseExtensions(String extensions) {
+        if (extensions == null) {
+            return Collections.emptySet();
+        }
+        Set<String> parsed = new HashSet<>();
+        for (String extension : extensions.split(",")) {
+            String trimmed = extension.trim();
+            if (trimmed.startsWith(".")) {
+                trimmed = trimmed.substring(1);
+            }
+            if (!trimmed.isEmpty()) {
+                parsed.add(trimmed.toLowerCase(Locale.ROOT));
+            }
+        }
+        return Collections.unmodifiableSet(parsed);
+    }
+
+    private static Pattern compileGlobs(String globs) {
+        if (globs == null) {
+            return null;
+        }
+        StringBuilder regex = new StringBuilder();
+        for (String glob : globs.split(",")) {
+            String trimmed = glob.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            regex.append("(?:").append(globToRegex(trimmed)).append(')');
+        }
+        return regex.length() == 0 ? null : Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    i++;
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                        // **/ also matches no directory at all.
+                        i++;
+                        regex.append("(?:.*/)?");
+                    } else {
+                        regex.append(".*");
+                    }
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+                    regex.append('\\');
+                }
+                regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.tridion.storage.si4t;
 
+import java.io.File;
+
 import com.tridion.storage.BinaryContent;
 
 /**
@@ -34,6 +36,9 @@ public class BinaryIndexData extends BaseIndexData
 	private String _fileType;
 	private BinaryContent _content;
 	private String _url;
+	private String _contentDigest;
+	private File _contentFile;
+	private ExtractedText _extractedText;
 
 	public BinaryIndexData(FactoryAction action, IndexType itemType, String publicationId, String storageId)
 	{
@@ -140,6 +145,101 @@ public class BinaryIndexData extends BaseIndexData
 		this._fileName = _fileName;
 	}
 
+	/**
+	 * Gets the digest of the content.
+	 * 
+	 * @return the SHA-256 digest as computed by ContentDigest, or null if it is not known
+	 */
+	public String getContentDigest()
+	{
+		return _contentDigest;
+	}
+
+	/**
+	 * Sets the digest of the content.
+	 * 
+	 * @param _contentDigest the new content digest
+	 */
+	public void setContentDigest(String _contentDigest)
+	{
+		this._contentDigest = _contentDigest;
+	}
+
+	/**
+	 * Gets the file the content was stored to.
+	 * 
+	 * @return the stored file, or null if the content is not stored on the file system
+	 */
+	public File getContentFile()
+	{
+		return _contentFile;
+	}
+
+	/**
+	 * Sets the file the content was stored to.
+	 * 
+	 * @param _contentFile the new content file
+	 */
+	public void setContentFile(File _contentFile)
+	{
+		this._contentFile = _contentFile;
+	}
+
+	/**
+	 * Gets the text extracted from the content.
+	 * 
+	 * @return the extracted text, or null if text extraction is disabled or failed
+	 */
+	public ExtractedText getExtractedText()
+	{
+		return _extractedText;
+	}
+
+	/**
+	 * Sets the text extracted from the content.
+	 * 
+	 * @param _extractedText the new extracted text
+	 */
+	public void setExtractedText(ExtractedText _extractedText)
+	{
+		this._extractedText = _extractedText;
+	}
+
+	/**
+	 * Gets the file size in bytes.
+	 * 
+	 * @return the file size, or 0 if it is not known
+	 */
+	@Override
+	public long getPayloadSize()
+	{
+		try
+		{
+			return Long.parseLong(this._fileSize);
+		}
+		catch (NumberFormatException e)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Gets the estimated number of bytes retained by this object, counting the content
+	 * of the binary.
+	 * 
+	 * @return the estimated size in bytes
+	 */
+	@Override
+	public long getEstimatedSize()
+	{
+		long size = super.getEstimatedSize() + sizeOf(this._fileName) + sizeOf(this._url) + this.getPayloadSize();
+		if (this._extractedText != null)
+		{
+			size += OBJECT_OVERHEAD + this._extractedText.getEstimatedSize();
+		}
+		return size;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.tridion.storage.extensions.search.BaseIndexData#toString()
@@ -159,6 +259,10 @@ public class BinaryIndexData extends BaseIndexData
 				this._fileSize +
 				"," +
 				this._url +
+				"," +
+				this._contentDigest +
+				"," +
+				this._extractedText +
 				"]";
 	}
 
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t;
+
+/**
+ * ConcurrentSearchIndex.
+ * <p/>
+ * Marker for SearchIndex implementations which are safe to use from several deployer
+ * threads at the same time.
+ * <p/>
+ * The SearchIndexProcessor creates a new instance of a plain SearchIndex for every
+ * transaction. For a ConcurrentSearchIndex it creates a single instance per storage,
+ * which is shared by all transactions. Because a commit on that instance sends the
+ * pending changes of all transactions, concurrent commits for the same publication
+ * are merged into one commit.
+ */
+public interface ConcurrentSearchIndex extends SearchIndex {
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * ContentDigest.
+ * <p/>
+ * Computes the SHA-256 digest of binary content, as lower case hex. Identical bytes
+ * published into different publications get the same digest, so work done for one
+ * copy, such as text extraction, can be reused for the others.
+ */
+public final class ContentDigest {
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ContentDigest() {
+    }
+
+    /**
+     * Computes the digest of content which is in memory.
+     *
+     * @param content the content
+     * @return the digest, or null if there is no content
+     */
+    public static String of(byte[] content) {
+        if (content == null) {
+            return null;
+        }
+        MessageDigest digest = newDigest();
+        for (int offset = 0; offset < content.length; offset += CHUNK_SIZE) {
+            digest.update(content, offset, Math.min(CHUNK_SIZE, content.length - offset));
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
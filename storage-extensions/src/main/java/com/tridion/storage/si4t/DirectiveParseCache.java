@@ -0,0 +1,342 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DirectiveParseCache.
+ * <p/>
+ * Bounded cache of parsed INDEX-DATA directives, keyed by a 128 bit hash
+ * of the raw directive string. The same DCP is often embedded in many pages,
+ * so this saves parsing identical XML over and over again in one publish.
+ * <p/>
+ * Eviction follows a segmented LRU policy: new entries go into a probation
+ * segment and are promoted to the protected segment on their second hit,
+ * so a single large publish of unique pages does not flush the entries that
+ * are actually reused. The capacity is a weight in (estimated) bytes.
+ */
+public final class DirectiveParseCache {
+
+    private static final int PROTECTED_PERCENTAGE = 80;
+
+    private final long maximumWeight;
+    private final long protectedMaximumWeight;
+    private final LinkedHashMap<Key, IndexFieldSet> probation = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<Key, IndexFieldSet> protectedSegment = new LinkedHashMap<>(64, 0.75f, true);
+    private long probationWeight;
+    private long protectedWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Instantiates a new cache.
+     *
+     * @param maximumWeight the maximum size of the cache in bytes
+     */
+    public DirectiveParseCache(long maximumWeight) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum cache size must be positive: " + maximumWeight);
+        }
+        this.maximumWeight = maximumWeight;
+        this.protectedMaximumWeight = maximumWeight * PROTECTED_PERCENTAGE / 100;
+    }
+
+    /**
+     * Computes the cache key for a raw directive payload.
+     *
+     * @param directive the raw directive string
+     * @return the key
+     */
+    public static Key keyOf(String directive) {
+        return Key.hash(directive);
+    }
+
+    /**
+     * Gets a cached field set.
+     *
+     * @param key the key of the directive
+     * @return the field set, or null if it is not cached
+     */
+    public IndexFieldSet get(Key key) {
+        IndexFieldSet fields;
+        synchronized (this) {
+            fields = this.protectedSegment.get(key);
+            if (fields == null) {
+                fields = this.probation.remove(key);
+                if (fields != null) {
+                    this.probationWeight -= fields.getEstimatedSize();
+                    this.promote(key, fields);
+                }
+            }
+        }
+        if (fields == null) {
+            this.misses.increment();
+        } else {
+            this.hits.increment();
+        }
+        return fields;
+    }
+
+    /**
+     * Caches a parsed field set.
+     *
+     * @param key    the key of the directive
+     * @param fields the parsed field set
+     */
+    public void put(Key key, IndexFieldSet fields) {
+        long weight = fields.getEstimatedSize();
+        // An entry that would take up most of the cache is not worth keeping.
+        if (weight > this.maximumWeight - this.protectedMaximumWeight) {
+            return;
+        }
+        synchronized (this) {
+            if (this.protectedSegment.containsKey(key) || this.probation.containsKey(key)) {
+                return;
+            }
+            this.probation.put(key, fields);
+            this.probationWeight += weight;
+            this.evict();
+        }
+    }
+
+    /**
+     * Removes all entries. The counters are kept.
+     */
+    public synchronized void clear() {
+        this.probation.clear();
+        this.protectedSegment.clear();
+        this.probationWeight = 0;
+        this.protectedWeight = 0;
+    }
+
+    private void promote(Key key, IndexFieldSet fields) {
+        this.protectedSegment.put(key, fields);
+        this.protectedWeight += fields.getEstimatedSize();
+
+        // Demote the least recently used protected entries back to probation.
+        Iterator<Map.Entry<Key, IndexFieldSet>> iter = this.protectedSegment.entrySet().iterator();
+        while (this.protectedWeight > this.protectedMaximumWeight && iter.hasNext()) {
+            Map.Entry<Key, IndexFieldSet> eldest = iter.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            iter.remove();
+            long weight = eldest.getValue().getEstimatedSize();
+            this.protectedWeight -= weight;
+            this.probation.put(eldest.getKey(), eldest.getValue());
+            this.probationWeight += weight;
+        }
+        this.evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, IndexFieldSet>> iter = this.probation.entrySet().iterator();
+        while (this.probationWeight + this.protectedWeight > this.maximumWeight && iter.hasNext()) {
+            Map.Entry<Key, IndexFieldSet> eldest = iter.next();
+            iter.remove();
+            this.probationWeight -= eldest.getValue().getEstimatedSize();
+            this.evictions.increment();
+        }
+    }
+
+    /**
+     * Gets the number of cache hits.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Gets the number of cache misses.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Gets the number of evicted entries.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * Gets the number of cached entries.
+     *
+     * @return the entry count
+     */
+    public synchronized int getEntryCount() {
+        return this.probation.size() + this.protectedSegment.size();
+    }
+
+    /**
+     * Gets the estimated size of all cached entries in bytes.
+     *
+     * @return the weighted size
+     */
+    public synchronized long getWeightedSize() {
+        return this.probationWeight + this.protectedWeight;
+    }
+
+    /**
+     * Gets the maximum size of the cache in bytes.
+     *
+     * @return the maximum weight
+     */
+    public long getMaximumWeight() {
+        return this.maximumWeight;
+    }
+
+    @Override
+    public String toString() {
+        return "[hits=" + this.getHitCount() +
+                ",misses=" + this.getMissCount() +
+                ",evictions=" + this.getEvictionCount() +
+                ",entries=" + this.getEntryCount() +
+                ",bytes=" + this.getWeightedSize() +
+                "]";
+    }
+
+    /**
+     * Key.
+     * <p/>
+     * 128 bit MurmurHash3 (x64 variant) of the directive characters, plus
+     * the length of the directive to make collisions even less likely.
+     */
+    public static final class Key {
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        private final long high;
+        private final long low;
+        private final int length;
+
+        private Key(long high, long low, int length) {
+            this.high = high;
+            this.low = low;
+            this.length = length;
+        }
+
+        static Key hash(String input) {
+            final int length = input.length();
+            long h1 = 0;
+            long h2 = 0;
+            int i = 0;
+
+            // 8 chars per 128 bit block, 4 chars per long.
+            for (; i + 8 <= length; i += 8) {
+                long k1 = pack(input, i);
+                long k2 = pack(input, i + 4);
+
+                k1 *= C1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= C2;
+                h1 ^= k1;
+                h1 = Long.rotateLeft(h1, 27);
+                h1 += h2;
+                h1 = h1 * 5 + 0x52dce729;
+
+                k2 *= C2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= C1;
+                h2 ^= k2;
+                h2 = Long.rotateLeft(h2, 31);
+                h2 += h1;
+                h2 = h2 * 5 + 0x38495ab5;
+            }
+
+            long k1 = 0;
+            long k2 = 0;
+            for (int j = 0; i < length; i++, j++) {
+                long c = input.charAt(i);
+                if (j < 4) {
+                    k1 |= c << (16 * j);
+                } else {
+                    k2 |= c << (16 * (j - 4));
+                }
+            }
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+            return new Key(h1, h2, length);
+        }
+
+        private static long pack(String input, int offset) {
+            return ((long) input.charAt(offset)) |
+                    ((long) input.charAt(offset + 1) << 16) |
+                    ((long) input.charAt(offset + 2) << 32) |
+                    ((long) input.charAt(offset + 3) << 48);
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return this.high == other.high && this.low == other.low && this.length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (this.low ^ (this.low >>> 32));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%016x%016x", this.high, this.low);
+        }
+    }
+}
@@ -0,0 +1,808 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * DirectiveStore.
+ * <p/>
+ * Keeps the parsed field set of every indexed page and component presentation of one
+ * storage on local disk, keyed by unique index id. The INDEX-DATA directives are
+ * stripped from the published content, so this is what allows a full rebuild of the
+ * search index without a republish.
+ * <p/>
+ * Records are appended to segment files "directives-NNNNNN.seg" in the store directory.
+ * A record is a 4 byte length, a CRC32 and a body holding the kind (put or delete), the
+ * unique index id and, for a put, the publication id, the field digest and the action as
+ * written by IndexDataCodec and deflated.
+ * Once a segment reaches its maximum size it is sealed, and its offset index is written
+ * next to it as "directives-NNNNNN.idx". Opening a store reads those indexes and only
+ * scans the segment which was still being written; a torn record at its end is cut off.
+ * <p/>
+ * Only the latest location, publication and field digest of each id are kept in memory,
+ * which is enough to reconcile the store with a ListableSearchIndex. Replaying reads the segments
+ * sequentially and hands over the records which are still current. When more than half
+ * of the records are superseded, the live records are copied into new segments when the
+ * store is opened for writing.
+ * <p/>
+ * A lock file ensures a single process writes to the store. Stores opened read-only,
+ * for instance by a reindex tool, take no lock.
+ */
+public final class DirectiveStore implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DirectiveStore.class);
+    private static final String SEGMENT_PREFIX = "directives-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String LOCK_FILE = "directives.lock";
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int OFFSET_BITS = 40;
+    private static final long MAX_OFFSET = (1L << OFFSET_BITS) - 1;
+    // Records larger than this are considered corrupt.
+    private static final int MAX_RECORD_SIZE = 256 * 1024 * 1024;
+    private static final long MIN_RECORDS_TO_COMPACT = 1000;
+
+    private final Path directory;
+    private final long maxSegmentSize;
+    private final boolean readOnly;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final ConcurrentHashMap<String, Entry> index = new ConcurrentHashMap<>();
+    private final AtomicLong recordCount = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    // Guarded by this.
+    private final List<Integer> segments = new ArrayList<>();
+    private int activeSegment;
+    private FileChannel channel;
+    private OutputStream out;
+    private long activeSize;
+    private ByteArrayOutputStream activeIndex = new ByteArrayOutputStream();
+    private boolean closed;
+
+    private DirectiveStore(Path directory, long maxSegmentSize, boolean readOnly, FileChannel lockChannel,
+                           FileLock lock) {
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.readOnly = readOnly;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+    }
+
+    /**
+     * Opens a store for writing, creating the directory if needed.
+     *
+     * @param directory      the store directory
+     * @param maxSegmentSize the size in bytes after which a segment is sealed
+     * @return the store
+     * @throws IOException if the store can not be read, or another process writes to it
+     */
+    public static DirectiveStore open(Path directory, long maxSegmentSize) throws IOException {
+        if (maxSegmentSize <= 0 || maxSegmentSize > MAX_OFFSET) {
+            throw new IllegalArgumentException("Invalid segment size: " + maxSegmentSize);
+        }
+        Files.createDirectories(directory);
+        FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Directive store " + directory + " is in use by another writer.");
+        }
+        DirectiveStore store = new DirectiveStore(directory, maxSegmentSize, false, lockChannel, lock);
+        try {
+            store.load();
+            if (store.recordCount.get() >= MIN_RECORDS_TO_COMPACT && store.recordCount.get() > 2L * store.size()) {
+                store.compact();
+            }
+            store.openActiveSegment();
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * Opens a store for reading only. Records appended by a writer afterwards are not seen.
+     *
+     * @param directory the store directory
+     * @return the store
+     * @throws IOException if the store can not be read
+     */
+    public static DirectiveStore openReadOnly(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            throw new NoSuchFileException(directory.toString());
+        }
+        DirectiveStore store = new DirectiveStore(directory, MAX_OFFSET, true, null, null);
+        store.load();
+        return store;
+    }
+
+    private void load() throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOG.warn("Ignoring unexpected file in directive store: {}", file);
+                }
+            }
+        }
+        Collections.sort(numbers);
+        for (int i = 0; i < numbers.size(); i++) {
+            int segment = numbers.get(i);
+            boolean last = i == numbers.size() - 1;
+            if (!last || Files.exists(this.indexFile(segment))) {
+                this.loadSealed(segment);
+            } else {
+                this.activeSegment = segment;
+                this.activeSize = this.scan(segment, this.activeIndex);
+            }
+            this.segments.add(segment);
+        }
+        LOG.info("Opened directive store: {} with {} item(s) in {} segment(s)",
+                new Object[]{this.directory, this.size(), this.segments.size()});
+    }
+
+    private void loadSealed(int segment) throws IOException {
+        Path indexFile = this.indexFile(segment);
+        if (!Files.exists(indexFile)) {
+            // Sealed, but the index was not written. Rebuild it.
+            ByteArrayOutputStream entries = new ByteArrayOutputStream();
+            this.scan(segment, entries);
+            if (!this.readOnly) {
+                this.writeIndex(segment, entries);
+            }
+            return;
+        }
+        this.storedBytes.addAndGet(Files.size(this.segmentFile(segment)));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile),
+                BUFFER_SIZE))) {
+            while (true) {
+                byte kind;
+                try {
+                    kind = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                String id = IndexDataCodec.readString(in);
+                long offset = in.readLong();
+                if (kind == PUT) {
+                    this.apply(kind, id, location(segment, offset), IndexDataCodec.readString(in), in.readLong());
+                } else {
+                    this.apply(kind, id, location(segment, offset), null, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the records of a segment, adding them to the in-memory index and writing
+     * their index entries. Stops at the first incomplete or corrupt record, which is
+     * truncated when the store is writable.
+     *
+     * @return the size of the valid part of the segment
+     */
+    private long scan(int segment, ByteArrayOutputStream entries) throws IOException {
+        Path file = this.segmentFile(segment);
+        DataOutputStream entryOut = new DataOutputStream(entries);
+        long offset = 0;
+        try (RecordReader reader = new RecordReader(file)) {
+            Record record;
+            while ((record = reader.next()) != null) {
+                this.apply(record.kind, record.id, location(segment, record.offset), record.publicationId,
+                        record.digest);
+                writeEntry(entryOut, record.kind, record.id, record.offset, record.publicationId, record.digest);
+                offset = reader.position;
+            }
+        }
+        long size = Files.size(file);
+        if (offset < size) {
+            LOG.warn("Directive store segment: {} has {} invalid trailing byte(s)", file, size - offset);
+            if (!this.readOnly) {
+                try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    truncate.truncate(offset);
+                }
+            }
+        }
+        this.storedBytes.addAndGet(offset);
+        return offset;
+    }
+
+    private void apply(byte kind, String id, long location, String publicationId, long digest) {
+        this.recordCount.incrementAndGet();
+        if (kind == PUT) {
+            this.index.put(id, new Entry(location, publicationId, digest));
+        } else {
+            this.index.remove(id);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream entries, byte kind, String id, long offset, String publicationId,
+                                   long digest) throws IOException {
+        entries.writeByte(kind);
+        IndexDataCodec.writeString(entries, id);
+        entries.writeLong(offset);
+        if (kind == PUT) {
+            IndexDataCodec.writeString(entries, publicationId);
+            entries.writeLong(digest);
+        }
+    }
+
+    private void writeIndex(int segment, ByteArrayOutputStream entries) throws IOException {
+        Path indexFile = this.indexFile(segment);
+        Path temporary = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (OutputStream indexOut = Files.newOutputStream(temporary)) {
+            entries.writeTo(indexOut);
+        }
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Copies the live records into new segments and deletes the old ones. The old
+     * segments are only deleted once the copies are sealed, and replaying the old
+     * segments before the new ones gives the same result, so an interrupted compaction
+     * loses nothing.
+     */
+    private void compact() throws IOException {
+        long before = this.recordCount.get();
+        List<Integer> old = new ArrayList<>(this.segments);
+        this.activeSegment = old.get(old.size() - 1) + 1;
+        this.segments.add(this.activeSegment);
+        this.activeIndex = new ByteArrayOutputStream();
+        this.activeSize = 0;
+        this.openSegmentFile();
+        for (int segment : old) {
+            try (RecordReader reader = new RecordReader(this.segmentFile(segment))) {
+                Record record;
+                while ((record = reader.next()) != null) {
+                    if (this.isCurrent(record, segment)) {
+                        this.append(record.kind, record.id, record.publicationId, record.digest, record.payload());
+                    }
+                }
+            }
+        }
+        this.seal();
+        this.recordCount.set(this.index.size());
+        this.storedBytes.set(0);
+        for (int segment : this.segments) {
+            if (!old.contains(segment)) {
+                this.storedBytes.addAndGet(Files.size(this.segmentFile(segment)));
+            }
+        }
+        for (int segment : old) {
+            Files.deleteIfExists(this.indexFile(segment));
+            Files.deleteIfExists(this.segmentFile(segment));
+        }
+        this.segments.removeAll(old);
+        LOG.info("Compacted directive store: {} from {} to {} record(s)",
+                new Object[]{this.directory, before, this.recordCount.get()});
+    }
+
+    private void openActiveSegment() throws IOException {
+        int last = this.segments.isEmpty() ? 0 : this.segments.get(this.segments.size() - 1);
+        if (this.activeSegment == 0 || this.activeSegment != last || Files.exists(this.indexFile(last))) {
+            this.activeSegment = last + 1;
+            this.segments.add(this.activeSegment);
+            this.activeIndex = new ByteArrayOutputStream();
+            this.activeSize = 0;
+        }
+        this.openSegmentFile();
+    }
+
+    private void openSegmentFile() throws IOException {
+        this.channel = FileChannel.open(this.segmentFile(this.activeSegment), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        this.channel.position(this.activeSize);
+        this.out = new BufferedOutputStream(Channels.newOutputStream(this.channel), BUFFER_SIZE);
+    }
+
+    /**
+     * Records an action which was sent to the indexer. Additions and updates store the
+     * field set, removals delete it. Binaries and field sets which can not be encoded are
+     * skipped. Failures are logged and counted, they never fail the indexing.
+     *
+     * @param data the action
+     */
+    public void record(BaseIndexData data) {
+        if (this.readOnly) {
+            throw new IllegalStateException("Directive store " + this.directory + " is read-only.");
+        }
+        try {
+            if (data.getAction() == FactoryAction.REMOVE) {
+                if (this.index.containsKey(data.getUniqueIndexId())) {
+                    synchronized (this) {
+                        this.append(DELETE, data.getUniqueIndexId(), null, 0, null);
+                    }
+                }
+                return;
+            }
+            if (!IndexDataCodec.isEncodable(data)) {
+                this.skippedCount.incrementAndGet();
+                return;
+            }
+            SearchIndexData item = (SearchIndexData) data;
+            long digest = IndexDataCodec.fieldDigest(item);
+            byte[] body = encode(item);
+            synchronized (this) {
+                this.append(PUT, item.getUniqueIndexId(), item.getPublicationItemId(), digest, body);
+            }
+        } catch (IOException | RuntimeException e) {
+            this.failureCount.incrementAndGet();
+            LOG.warn("Could not record directives of: " + data.getUniqueIndexId() + " in: " + this.directory, e);
+        }
+    }
+
+    private static byte[] encode(SearchIndexData data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater, 512))) {
+            IndexDataCodec.write(out, data);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    // Called with the lock held.
+    private void append(byte kind, String id, String publicationId, long digest, byte[] payload) throws IOException {
+        if (this.closed) {
+            throw new IOException("Directive store " + this.directory + " is closed.");
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64 + (payload == null ? 0 : payload.length));
+        DataOutputStream bodyOut = new DataOutputStream(body);
+        bodyOut.writeByte(kind);
+        IndexDataCodec.writeString(bodyOut, id);
+        if (kind == PUT) {
+            IndexDataCodec.writeString(bodyOut, publicationId);
+            bodyOut.writeLong(digest);
+            bodyOut.write(payload);
+        }
+        byte[] bytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+
+        long offset = this.activeSize;
+        DataOutputStream out = new DataOutputStream(this.out);
+        out.writeInt(bytes.length);
+        out.writeInt((int) crc.getValue());
+        out.write(bytes);
+        this.activeSize += 8 + bytes.length;
+        this.storedBytes.addAndGet(8 + bytes.length);
+        writeEntry(new DataOutputStream(this.activeIndex), kind, id, offset, publicationId, digest);
+        this.apply(kind, id, location(this.activeSegment, offset), publicationId, digest);
+
+        if (this.activeSize >= this.maxSegmentSize) {
+            this.seal();
+            this.openActiveSegment();
+        }
+    }
+
+    // Called with the lock held.
+    private void seal() throws IOException {
+        this.out.flush();
+        this.channel.force(false);
+        this.channel.close();
+        this.writeIndex(this.activeSegment, this.activeIndex);
+        LOG.debug("Sealed directive store segment: {}", this.segmentFile(this.activeSegment));
+    }
+
+    /**
+     * Writes buffered records to the segment file.
+     */
+    public synchronized void flush() {
+        if (this.readOnly || this.closed) {
+            return;
+        }
+        try {
+            this.out.flush();
+        } catch (IOException e) {
+            this.failureCount.incrementAndGet();
+            LOG.warn("Could not flush directive store: " + this.directory, e);
+        }
+    }
+
+    /**
+     * Hands over the stored field set of every item, reading the segments sequentially.
+     *
+     * @param handler receives the actions
+     * @return the number of actions handed over
+     * @throws IOException       if a segment can not be read
+     * @throws IndexingException if the handler fails
+     */
+    public long replay(Handler handler) throws IOException, IndexingException {
+        List<Integer> snapshot;
+        synchronized (this) {
+            this.flush();
+            snapshot = new ArrayList<>(this.segments);
+        }
+        long count = 0;
+        for (int segment : snapshot) {
+            Path file = this.segmentFile(segment);
+            if (!Files.exists(file)) {
+                LOG.warn("Directive store segment: {} was removed while replaying", file);
+                continue;
+            }
+            try (RecordReader reader = new RecordReader(file)) {
+                Record record;
+                while ((record = reader.next()) != null) {
+                    if (this.isCurrent(record, segment)) {
+                        handler.accept(decode(record.body, record.payloadOffset));
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private boolean isCurrent(Record record, int segment) {
+        Entry current = this.index.get(record.id);
+        return record.kind == PUT && current != null && current.location == location(segment, record.offset);
+    }
+
+    private static SearchIndexData decode(byte[] body, int payloadOffset) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(body,
+                payloadOffset, body.length - payloadOffset)))) {
+            return IndexDataCodec.read(in);
+        }
+    }
+
+    /**
+     * Reads the stored field set of one item.
+     *
+     * @param uniqueIndexId the unique index id
+     * @return the action as it was indexed, or null if the item is not stored
+     * @throws IOException if the record can not be read
+     */
+    public SearchIndexData read(String uniqueIndexId) throws IOException {
+        this.flush();
+        Entry entry = this.index.get(uniqueIndexId);
+        if (entry == null) {
+            return null;
+        }
+        Path file = this.segmentFile((int) (entry.location >>> OFFSET_BITS));
+        try (FileChannel reader = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            readFully(reader, header, entry.location & MAX_OFFSET);
+            ByteBuffer body = ByteBuffer.allocate(header.getInt(0));
+            readFully(reader, body, (entry.location & MAX_OFFSET) + 8);
+            DataInputStream bodyIn = new DataInputStream(new ByteArrayInputStream(body.array()));
+            bodyIn.readByte();
+            IndexDataCodec.readString(bodyIn);
+            IndexDataCodec.readString(bodyIn);
+            bodyIn.readLong();
+            return decode(body.array(), body.capacity() - bodyIn.available());
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of directive store segment.");
+            }
+        }
+    }
+
+    /**
+     * Gets the ids of the publications which have stored items.
+     *
+     * @return the publication ids, in ascending order
+     */
+    public SortedSet<String> getPublicationIds() {
+        SortedSet<String> publicationIds = new TreeSet<>();
+        for (Entry entry : this.index.values()) {
+            publicationIds.add(entry.publicationId);
+        }
+        return publicationIds;
+    }
+
+    /**
+     * Gets the ids of the stored items of a publication.
+     *
+     * @param publicationId the publication id
+     * @return the unique index ids, in ascending order
+     */
+    public List<String> getSortedIds(String publicationId) {
+        List<String> ids = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : this.index.entrySet()) {
+            if (publicationId.equals(entry.getValue().publicationId)) {
+                ids.add(entry.getKey());
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Gets the field digest of a stored item, as computed by SearchIndexData.getFieldDigest().
+     *
+     * @param uniqueIndexId the unique index id
+     * @return the digest, or null if the item is not stored
+     */
+    public String getFieldDigest(String uniqueIndexId) {
+        Entry entry = this.index.get(uniqueIndexId);
+        return entry == null ? null : SearchIndexData.toDigestString(entry.digest);
+    }
+
+    private static long location(int segment, long offset) {
+        return ((long) segment << OFFSET_BITS) | offset;
+    }
+
+    private Path segmentFile(int segment) {
+        return this.directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private Path indexFile(int segment) {
+        return this.directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segment, INDEX_SUFFIX));
+    }
+
+    /**
+     * Whether the store holds a field set for an item.
+     *
+     * @param uniqueIndexId the unique index id
+     * @return true if it is stored
+     */
+    public boolean contains(String uniqueIndexId) {
+        return this.index.containsKey(uniqueIndexId);
+    }
+
+    /**
+     * Gets the number of stored items.
+     *
+     * @return the item count
+     */
+    public int size() {
+        return this.index.size();
+    }
+
+    /**
+     * Gets the number of records in the segments, including superseded ones.
+     *
+     * @return the record count
+     */
+    public long getRecordCount() {
+        return this.recordCount.get();
+    }
+
+    /**
+     * Gets the size of the segments.
+     *
+     * @return the size in bytes
+     */
+    public long getStoredBytes() {
+        return this.storedBytes.get();
+    }
+
+    /**
+     * Gets the number of actions which were not recorded, because their fields can not
+     * be encoded.
+     *
+     * @return the skipped count
+     */
+    public long getSkippedCount() {
+        return this.skippedCount.get();
+    }
+
+    /**
+     * Gets the number of actions which could not be recorded.
+     *
+     * @return the failure count
+     */
+    public long getFailureCount() {
+        return this.failureCount.get();
+    }
+
+    /**
+     * Gets the store directory.
+     *
+     * @return the directory
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Flushes and closes the active segment and releases the lock.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            if (this.out != null) {
+                this.out.flush();
+                this.channel.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not close directive store: " + this.directory, e);
+        }
+        try {
+            if (this.lock != null) {
+                this.lock.release();
+            }
+            if (this.lockChannel != null) {
+                this.lockChannel.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not release the lock of directive store: " + this.directory, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DirectiveStore{directory=" + this.directory + ", items=" + this.size() + ", records=" +
+                this.recordCount.get() + ", bytes=" + this.storedBytes.get() + "}";
+    }
+
+    /**
+     * Receives the actions of a replay.
+     */
+    public interface Handler {
+        void accept(SearchIndexData data) throws IndexingException;
+    }
+
+    private static final class Entry {
+        // Segment number in the high bits, offset in the low bits.
+        private final long location;
+        private final String publicationId;
+        private final long digest;
+
+        private Entry(long location, String publicationId, long digest) {
+            this.location = location;
+            this.publicationId = publicationId == null ? null : publicationId.intern();
+            this.digest = digest;
+        }
+    }
+
+    private static final class Record {
+        private final byte kind;
+        private final String id;
+        private final String publicationId;
+        private final long digest;
+        private final long offset;
+        private final byte[] body;
+        private final int payloadOffset;
+
+        private Record(byte kind, String id, String publicationId, long digest, long offset, byte[] body,
+                       int payloadOffset) {
+            this.kind = kind;
+            this.id = id;
+            this.publicationId = publicationId;
+            this.digest = digest;
+            this.offset = offset;
+            this.body = body;
+            this.payloadOffset = payloadOffset;
+        }
+
+        private byte[] payload() {
+            return Arrays.copyOfRange(this.body, this.payloadOffset, this.body.length);
+        }
+    }
+
+    /**
+     * Reads the records of a segment in order, until the end or the first invalid record.
+     */
+    private static final class RecordReader implements Closeable {
+        private final Path file;
+        private final DataInputStream in;
+        private long position;
+
+        private RecordReader(Path file) throws IOException {
+            this.file = file;
+            InputStream stream = Files.newInputStream(file);
+            this.in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+        }
+
+        private Record next() throws IOException {
+            int length;
+            int crc;
+            byte[] body;
+            try {
+                length = this.in.readInt();
+                crc = this.in.readInt();
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    LOG.warn("Invalid record length {} at offset {} of: {}", new Object[]{length, this.position,
+                            this.file});
+                    return null;
+                }
+                body = new byte[length];
+                this.in.readFully(body);
+            } catch (EOFException e) {
+                return null;
+            }
+            CRC32 check = new CRC32();
+            check.update(body, 0, body.length);
+            if ((int) check.getValue() != crc) {
+                LOG.warn("Checksum mismatch at offset {} of: {}", this.position, this.file);
+                return null;
+            }
+            DataInputStream bodyIn = new DataInputStream(new ByteArrayInputStream(body));
+            byte kind = bodyIn.readByte();
+            String id = IndexDataCodec.readString(bodyIn);
+            String publicationId = null;
+            long digest = 0;
+            if (kind == PUT) {
+                publicationId = IndexDataCodec.readString(bodyIn);
+                digest = bodyIn.readLong();
+            }
+            Record record = new Record(kind, id, publicationId, digest, this.position, body,
+                    body.length - bodyIn.available());
+            this.position += 8 + length;
+            return record;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+}
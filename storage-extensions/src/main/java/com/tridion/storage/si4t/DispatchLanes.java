@@ -0,0 +1,177 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t;
+
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DispatchLanes.
+ * <p/>
+ * Separates the actions of one storage into lanes, so that cheap and time-sensitive
+ * actions are not held up by large binaries. Every lane has its own concurrency budget:
+ * the maximum number of batches of that lane which all transactions of the storage send
+ * at the same time. As the heavy lane can only use its own budget, removals and small
+ * items always find capacity, also while large binary batches are running.
+ * <p/>
+ * Within a transaction the batches of the removal lane are sent first, then those of the
+ * small, standard and heavy lanes.
+ */
+final class DispatchLanes {
+
+    /**
+     * The lanes, in the order in which the batches of a transaction are sent.
+     */
+    enum Lane {
+        /**
+         * Removals of any item type.
+         */
+        REMOVAL,
+        /**
+         * Pages and component presentations with a payload up to the small item size.
+         */
+        SMALL,
+        /**
+         * All other pages and component presentations.
+         */
+        STANDARD,
+        /**
+         * Binaries, and items with a payload above the heavy item size.
+         */
+        HEAVY;
+
+        String getGaugeName() {
+            return this.name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final Lane[] LANES = Lane.values();
+
+    private final String storageId;
+    private final long smallItemSize;
+    private final long heavyItemSize;
+    private final int heavyBatchSize;
+    private final int[] concurrency;
+    private final Semaphore[] budgets = new Semaphore[LANES.length];
+    private final LongAdder[] batches = new LongAdder[LANES.length];
+    private final LongAdder[] actions = new LongAdder[LANES.length];
+
+    /**
+     * Instantiates the lanes of a storage.
+     *
+     * @param storageId      the storage Id
+     * @param smallItemSize  the largest payload of the small lane, in characters
+     * @param heavyItemSize  the payload above which a page or component presentation is heavy
+     * @param heavyBatchSize the maximum number of actions in a batch of the heavy lane
+     * @param concurrency    the concurrency budget of each lane, in lane order
+     */
+    DispatchLanes(String storageId, long smallItemSize, long heavyItemSize, int heavyBatchSize, int[] concurrency) {
+        this.storageId = storageId;
+        this.smallItemSize = smallItemSize;
+        this.heavyItemSize = heavyItemSize;
+        this.heavyBatchSize = heavyBatchSize;
+        this.concurrency = concurrency.clone();
+        for (int i = 0; i < LANES.length; i++) {
+            this.budgets[i] = new Semaphore(concurrency[i], true);
+            this.batches[i] = new LongAdder();
+            this.actions[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Gets the lane of an action.
+     *
+     * @param data the action
+     * @return the lane
+     */
+    Lane classify(BaseIndexData data) {
+        if (data.getAction() == FactoryAction.REMOVE) {
+            return Lane.REMOVAL;
+        }
+        if (data.getIndexType() == IndexType.BINARY) {
+            return Lane.HEAVY;
+        }
+        long payloadSize = data.getPayloadSize();
+        if (payloadSize <= this.smallItemSize) {
+            return Lane.SMALL;
+        }
+        return payloadSize > this.heavyItemSize ? Lane.HEAVY : Lane.STANDARD;
+    }
+
+    /**
+     * Gets the batch size of a lane.
+     *
+     * @param lane      the lane
+     * @param batchSize the batch size of the storage
+     * @return the batch size to use for the lane
+     */
+    int getBatchSize(Lane lane, int batchSize) {
+        return lane == Lane.HEAVY ? Math.min(batchSize, this.heavyBatchSize) : batchSize;
+    }
+
+    /**
+     * Waits until a batch of a lane fits in the budget of that lane. Every acquired
+     * budget must be released.
+     *
+     * @param lane    the lane
+     * @param actions the number of actions in the batch
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    void acquire(Lane lane, int actions) throws InterruptedException {
+        this.budgets[lane.ordinal()].acquire();
+        this.batches[lane.ordinal()].increment();
+        this.actions[lane.ordinal()].add(actions);
+    }
+
+    /**
+     * Releases the budget of a batch.
+     *
+     * @param lane the lane
+     */
+    void release(Lane lane) {
+        this.budgets[lane.ordinal()].release();
+    }
+
+    long getInFlightCount(Lane lane) {
+        return this.concurrency[lane.ordinal()] - this.budgets[lane.ordinal()].availablePermits();
+    }
+
+    long getWaitingCount(Lane lane) {
+        return this.budgets[lane.ordinal()].getQueueLength();
+    }
+
+    long getBatchCount(Lane lane) {
+        return this.batches[lane.ordinal()].sum();
+    }
+
+    long getActionCount(Lane lane) {
+        return this.actions[lane.ordinal()].sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("DispatchLanes{storageId=").append(this.storageId)
+                .append(", smallItemSize=").append(this.smallItemSize)
+                .append(", heavyItemSize=").append(this.heavyItemSize)
+                .append(", heavyBatchSize=").append(this.heavyBatchSize);
+        for (Lane lane : LANES) {
+            sb.append(", ").append(lane.getGaugeName()).append('=').append(this.concurrency[lane.ordinal()]);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ExtractedText.
+ * <p/>
+ * The plain text and metadata extracted from a binary, which indexers can send
+ * instead of the binary content itself.
+ */
+public final class ExtractedText {
+
+    private final String text;
+    private final Map<String, String> metadata;
+    private final boolean truncated;
+
+    /**
+     * Instantiates new extracted text.
+     *
+     * @param text      the text
+     * @param metadata  the metadata, such as title or author, or null if there is none
+     * @param truncated whether the text was cut off at the maximum length
+     */
+    public ExtractedText(String text, Map<String, String> metadata, boolean truncated) {
+        this.text = text == null ? "" : text;
+        this.metadata = metadata == null || metadata.isEmpty() ? Collections.<String, String>emptyMap() :
+                Collections.unmodifiableMap(new LinkedHashMap<>(metadata));
+        this.truncated = truncated;
+    }
+
+    /**
+     * Gets the text.
+     *
+     * @return the text, never null
+     */
+    public String getText() {
+        return this.text;
+    }
+
+    /**
+     * Gets the metadata.
+     *
+     * @return the metadata by name, never null
+     */
+    public Map<String, String> getMetadata() {
+        return this.metadata;
+    }
+
+    /**
+     * Whether the text was cut off at the maximum length.
+     *
+     * @return true if truncated
+     */
+    public boolean isTruncated() {
+        return this.truncated;
+    }
+
+    /**
+     * Gets the estimated number of bytes retained by this object.
+     *
+     * @return the estimated size in bytes
+     */
+    public long getEstimatedSize() {
+        long size = 2L * this.text.length();
+        for (Map.Entry<String, String> entry : this.metadata.entrySet()) {
+            size += 2L * (entry.getKey().length() + (entry.getValue() == null ? 0 : entry.getValue().length()));
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "ExtractedText[length=" + this.text.length() + ", metadata=" + this.metadata.keySet() +
+                ", truncated=" + this.truncated + "]";
+    }
+}
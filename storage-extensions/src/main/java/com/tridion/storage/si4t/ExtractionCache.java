@@ -0,0 +1,239 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ExtractionCache.
+ * <p/>
+ * Bounded cache of text and metadata extracted from binaries, keyed by the ContentDigest of their
+ * content. The same document is often published into many child publications; with
+ * this cache its text is extracted once and reused for every copy.
+ * <p/>
+ * When several threads ask for the text of the same digest at the same time, only
+ * one of them extracts it and the others wait for its result. Failed extractions are
+ * not cached. Eviction is least recently used, and the capacity is a weight in
+ * (estimated) bytes.
+ */
+public final class ExtractionCache {
+
+    // Rough per entry overhead used for the weight of an entry.
+    private static final int ENTRY_OVERHEAD = 200;
+
+    /**
+     * Extracts the text of a binary.
+     */
+    public interface Extraction {
+        /**
+         * Extracts the text.
+         *
+         * @return the text, or null if there is none
+         * @throws IndexingException if extraction fails
+         */
+        ExtractedText extract() throws IndexingException;
+    }
+
+    private final long maximumWeight;
+    private final LinkedHashMap<String, ExtractedText> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final ConcurrentHashMap<String, FutureTask<ExtractedText>> extracting = new ConcurrentHashMap<>();
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder sharedExtractions = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Instantiates a new cache.
+     *
+     * @param maximumWeight the maximum size of the cache in bytes
+     */
+    public ExtractionCache(long maximumWeight) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum cache size must be positive: " + maximumWeight);
+        }
+        this.maximumWeight = maximumWeight;
+    }
+
+    /**
+     * Gets the text of a binary, extracting it when it is not cached.
+     *
+     * @param digest     the digest of the content, or null to always extract
+     * @param extraction extracts the text
+     * @return the text, or null if there is none
+     * @throws IndexingException if extraction fails
+     */
+    public ExtractedText get(String digest, Extraction extraction) throws IndexingException {
+        if (digest == null) {
+            return extraction.extract();
+        }
+        synchronized (this) {
+            ExtractedText text = this.entries.get(digest);
+            if (text != null) {
+                this.hits.increment();
+                return text;
+            }
+        }
+
+        FutureTask<ExtractedText> task = new FutureTask<>(extraction::extract);
+        FutureTask<ExtractedText> running = this.extracting.putIfAbsent(digest, task);
+        if (running == null) {
+            this.misses.increment();
+            try {
+                task.run();
+                this.put(digest, task);
+            } finally {
+                this.extracting.remove(digest, task);
+            }
+            running = task;
+        } else {
+            this.sharedExtractions.increment();
+        }
+        return await(running, digest);
+    }
+
+    private void put(String digest, FutureTask<ExtractedText> task) {
+        ExtractedText text;
+        try {
+            text = task.get();
+        } catch (InterruptedException | ExecutionException e) {
+            return;
+        }
+        if (text == null) {
+            return;
+        }
+        long entryWeight = weightOf(digest, text);
+        // An entry that would take up most of the cache is not worth keeping.
+        if (entryWeight > this.maximumWeight / 2) {
+            return;
+        }
+        synchronized (this) {
+            ExtractedText previous = this.entries.put(digest, text);
+            if (previous != null) {
+                this.weight -= weightOf(digest, previous);
+            }
+            this.weight += entryWeight;
+            Iterator<Map.Entry<String, ExtractedText>> iter = this.entries.entrySet().iterator();
+            while (this.weight > this.maximumWeight && iter.hasNext()) {
+                Map.Entry<String, ExtractedText> eldest = iter.next();
+                iter.remove();
+                this.weight -= weightOf(eldest.getKey(), eldest.getValue());
+                this.evictions.increment();
+            }
+        }
+    }
+
+    private static ExtractedText await(FutureTask<ExtractedText> task, String digest) throws IndexingException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexingException("Interrupted while waiting for the text of: " + digest, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IndexingException) {
+                throw (IndexingException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IndexingException("Extraction failed for: " + digest, cause);
+        }
+    }
+
+    private static long weightOf(String digest, ExtractedText text) {
+        return ENTRY_OVERHEAD + 2L * digest.length() + text.getEstimatedSize();
+    }
+
+    /**
+     * Removes all entries. The counters are kept.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.weight = 0;
+    }
+
+    /**
+     * Gets the number of cache hits.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Gets the number of extractions done for the cache.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Gets the number of times a thread reused an extraction which was still running.
+     *
+     * @return the shared extraction count
+     */
+    public long getSharedExtractionCount() {
+        return this.sharedExtractions.sum();
+    }
+
+    /**
+     * Gets the number of evicted entries.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * Gets the number of cached entries.
+     *
+     * @return the entry count
+     */
+    public synchronized int getEntryCount() {
+        return this.entries.size();
+    }
+
+    /**
+     * Gets the estimated size of the cached entries.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getWeightedSize() {
+        return this.weight;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ExtractionCache[entries=" + this.entries.size() + ", bytes=" + this.weight + "/" +
+                this.maximumWeight + ", hits=" + this.hits.sum() + ", misses=" + this.misses.sum() +
+                ", shared=" + this.sharedExtractions.sum() + ", evictions=" + this.evictions.sum() + "]";
+    }
+}
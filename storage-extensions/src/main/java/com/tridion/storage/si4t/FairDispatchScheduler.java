@@ -0,0 +1,248 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationException;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * FairDispatchScheduler.
+ * <p/>
+ * Limits the number of batches which all transactions of one storage send to the search
+ * index at the same time, and shares these dispatch slots fairly between publications.
+ * <p/>
+ * A batch which finds no free slot waits in the queue of its publication. When a slot
+ * becomes free, the queues are served with deficit round-robin: on its turn a queue
+ * receives a quantum of actions times the weight of its publication, and may start
+ * batches for as long as their actions fit in its deficit. A large republish therefore
+ * only gets its share of the slots, and a small publish which arrives meanwhile is
+ * served within one round.
+ * <p/>
+ * DispatchWeight child nodes of the Indexer node set the weight of publications, the
+ * default weight is 1:
+ * <pre>
+ * &lt;DispatchWeight Publication="5,6" Weight="4"/&gt;
+ * </pre>
+ */
+final class FairDispatchScheduler {
+
+    static final String WEIGHT_NODE = "DispatchWeight";
+    static final String PUBLICATION_ATTRIBUTE = "Publication";
+    static final String WEIGHT_ATTRIBUTE = "Weight";
+
+    private final String storageId;
+    private final int slots;
+    private final int quantum;
+    private final Map<String, Integer> weights;
+
+    // Guarded by this.
+    private final Map<String, Flow> flows = new HashMap<>();
+    private final ArrayDeque<Flow> active = new ArrayDeque<>();
+    private int inFlight;
+    private int waiting;
+    private long grants;
+    private long delayedGrants;
+
+    /**
+     * Instantiates a new scheduler.
+     *
+     * @param storageId the storage Id
+     * @param slots     the maximum number of batches in flight
+     * @param quantum   the number of actions a queue of weight 1 receives per round
+     * @param weights   the weights by publication id
+     */
+    FairDispatchScheduler(String storageId, int slots, int quantum, Map<String, Integer> weights) {
+        this.storageId = storageId;
+        this.slots = slots;
+        this.quantum = quantum;
+        this.weights = weights;
+    }
+
+    /**
+     * Reads the publication weights from the DispatchWeight nodes of the Indexer node.
+     *
+     * @param indexerConfiguration the Indexer node
+     * @return the weights by publication id
+     * @throws ConfigurationException if a node is invalid
+     */
+    static Map<String, Integer> readWeights(Configuration indexerConfiguration) throws ConfigurationException {
+        Map<String, Integer> weights = new HashMap<>();
+        for (Configuration node : indexerConfiguration.getChildrenByName(WEIGHT_NODE)) {
+            String ids = IndexerAttributes.getString(node, PUBLICATION_ATTRIBUTE, null);
+            int weight = IndexerAttributes.getInt(node, WEIGHT_ATTRIBUTE, 1);
+            if (ids == null || weight < 1) {
+                throw new ConfigurationException(WEIGHT_NODE + " needs a " + PUBLICATION_ATTRIBUTE +
+                        " attribute and a positive " + WEIGHT_ATTRIBUTE);
+            }
+            for (String id : ids.split(",")) {
+                weights.put(id.trim(), weight);
+            }
+        }
+        return Collections.unmodifiableMap(weights);
+    }
+
+    /**
+     * Waits for a dispatch slot for a batch. Every acquired slot must be released.
+     *
+     * @param publicationId the publication of the batch
+     * @param actions       the number of actions in the batch
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    synchronized void acquire(String publicationId, int actions) throws InterruptedException {
+        this.grants++;
+        if (this.inFlight < this.slots && this.active.isEmpty()) {
+            this.inFlight++;
+            return;
+        }
+
+        Flow flow = this.flows.get(publicationId);
+        if (flow == null) {
+            Integer weight = this.weights.get(publicationId);
+            flow = new Flow(publicationId, weight == null ? 1 : weight);
+            this.flows.put(publicationId, flow);
+            this.active.addLast(flow);
+        }
+        Request request = new Request(Math.max(1, actions));
+        flow.queue.addLast(request);
+        this.waiting++;
+        this.delayedGrants++;
+        this.schedule();
+
+        try {
+            while (!request.granted) {
+                this.wait();
+            }
+        } catch (InterruptedException e) {
+            if (request.granted) {
+                // Keep the slot, the caller releases it.
+                Thread.currentThread().interrupt();
+                return;
+            }
+            this.grants--;
+            this.delayedGrants--;
+            this.waiting--;
+            flow.queue.remove(request);
+            if (flow.queue.isEmpty()) {
+                this.flows.remove(publicationId);
+                this.active.remove(flow);
+            }
+            this.schedule();
+            throw e;
+        }
+    }
+
+    /**
+     * Releases a slot which was acquired before.
+     */
+    synchronized void release() {
+        this.inFlight--;
+        this.schedule();
+    }
+
+    /**
+     * Starts waiting batches while there are free slots. A queue keeps its turn until
+     * its deficit is used up, also when it has to wait for a slot in between.
+     */
+    private void schedule() {
+        boolean granted = false;
+        while (this.inFlight < this.slots && !this.active.isEmpty()) {
+            Flow flow = this.active.peekFirst();
+            if (!flow.inTurn) {
+                flow.deficit += (long) this.quantum * flow.weight;
+                flow.inTurn = true;
+            }
+            Request request = flow.queue.peekFirst();
+            if (request.actions <= flow.deficit) {
+                flow.queue.pollFirst();
+                flow.deficit -= request.actions;
+                request.granted = true;
+                granted = true;
+                this.inFlight++;
+                this.waiting--;
+                if (flow.queue.isEmpty()) {
+                    this.active.pollFirst();
+                    this.flows.remove(flow.publicationId);
+                }
+            } else {
+                flow.inTurn = false;
+                this.active.addLast(this.active.pollFirst());
+            }
+        }
+        if (granted) {
+            this.notifyAll();
+        }
+    }
+
+    synchronized long getInFlightCount() {
+        return this.inFlight;
+    }
+
+    synchronized long getWaitingCount() {
+        return this.waiting;
+    }
+
+    synchronized long getGrantCount() {
+        return this.grants;
+    }
+
+    synchronized long getDelayedGrantCount() {
+        return this.delayedGrants;
+    }
+
+    int getQuantum() {
+        return this.quantum;
+    }
+
+    @Override
+    public String toString() {
+        return "FairDispatchScheduler{storageId=" + this.storageId + ", slots=" + this.slots + ", quantum=" +
+                this.quantum + ", weights=" + this.weights + '}';
+    }
+
+    /**
+     * The queue of one publication.
+     */
+    private static final class Flow {
+        private final String publicationId;
+        private final int weight;
+        private final ArrayDeque<Request> queue = new ArrayDeque<>();
+        private long deficit;
+        private boolean inTurn;
+
+        private Flow(String publicationId, int weight) {
+            this.publicationId = publicationId;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A batch waiting for a slot.
+     */
+    private static final class Request {
+        private final int actions;
+        private boolean granted;
+
+        private Request(int actions) {
+            this.actions = actions;
+        }
+    }
+}
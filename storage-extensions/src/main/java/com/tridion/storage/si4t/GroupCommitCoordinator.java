@@ -0,0 +1,172 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * GroupCommitCoordinator.
+ * <p/>
+ * Merges concurrent commit requests for the same publication of one storage into a
+ * single commit on a shared ConcurrentSearchIndex.
+ * <p/>
+ * The first request for a publication becomes the leader of a commit group. It waits
+ * for the group window, or for a commit which is still in flight, so that requests of
+ * other transactions can join. It then runs one commit and hands the outcome to all
+ * members of the group. A leader never waits longer than the maximum latency.
+ */
+final class GroupCommitCoordinator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GroupCommitCoordinator.class);
+
+    private final String storageId;
+    private final long window;
+    private final long maxLatency;
+    private final ConcurrentHashMap<String, PublicationGroup> publications = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+
+    /**
+     * Instantiates a new coordinator.
+     *
+     * @param storageId  the storage Id
+     * @param window     time in ms a leader waits for other requests to join
+     * @param maxLatency maximum time in ms a leader waits before it commits
+     */
+    GroupCommitCoordinator(String storageId, long window, long maxLatency) {
+        this.storageId = storageId;
+        this.window = window;
+        this.maxLatency = Math.max(window, maxLatency);
+    }
+
+    /**
+     * Commits a publication, possibly together with concurrent requests.
+     * Returns once a commit which started after this request has finished.
+     *
+     * @param searchIndex   the shared search index
+     * @param publicationId the publication to commit
+     * @throws IndexingException if the (merged) commit failed
+     */
+    void commit(SearchIndex searchIndex, String publicationId) throws IndexingException {
+        this.requests.increment();
+        PublicationGroup group = this.publications.computeIfAbsent(publicationId, k -> new PublicationGroup());
+
+        Batch batch;
+        boolean leader = false;
+        synchronized (group) {
+            batch = group.pending;
+            if (batch == null) {
+                batch = new Batch();
+                group.pending = batch;
+                leader = true;
+            } else {
+                batch.members++;
+            }
+        }
+
+        if (leader) {
+            this.lead(group, batch, searchIndex, publicationId);
+        } else {
+            this.await(batch);
+        }
+
+        if (batch.failure != null) {
+            throw new IndexingException("Commit failed for publication: " + publicationId, batch.failure);
+        }
+    }
+
+    private void lead(PublicationGroup group, Batch batch, SearchIndex searchIndex, String publicationId) {
+        synchronized (group) {
+            long windowEnd = batch.created + this.window;
+            long deadline = batch.created + this.maxLatency;
+            long now = System.currentTimeMillis();
+            while (now < deadline && (group.inFlight > 0 || now < windowEnd)) {
+                long waitUntil = group.inFlight > 0 ? deadline : windowEnd;
+                try {
+                    group.wait(Math.max(1, waitUntil - now));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                now = System.currentTimeMillis();
+            }
+            // From here on, new requests form the next group.
+            group.pending = null;
+            group.inFlight++;
+        }
+
+        try {
+            LOG.debug("Committing publication: {} for storageId: {} on behalf of {} request(s)",
+                    new Object[]{publicationId, this.storageId, batch.members});
+            this.commits.increment();
+            searchIndex.commit(publicationId);
+        } catch (IndexingException | RuntimeException e) {
+            batch.failure = e;
+        } finally {
+            synchronized (group) {
+                group.inFlight--;
+                group.notifyAll();
+            }
+            batch.done.countDown();
+        }
+    }
+
+    private void await(Batch batch) throws IndexingException {
+        try {
+            batch.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexingException("Interrupted while waiting for a group commit.", e);
+        }
+    }
+
+    /**
+     * Gets the number of commit requests.
+     *
+     * @return the request count
+     */
+    long getRequestCount() {
+        return this.requests.sum();
+    }
+
+    /**
+     * Gets the number of commits which were actually sent to the search index.
+     *
+     * @return the commit count
+     */
+    long getCommitCount() {
+        return this.commits.sum();
+    }
+
+    private static final class PublicationGroup {
+        private Batch pending;
+        private int inFlight;
+    }
+
+    private static final class Batch {
+        private final long created = System.currentTimeMillis();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private int members = 1;
+        private volatile Exception failure;
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * IndexDataCodec.
+ * <p/>
+ * The binary form of a SearchIndexData, shared by the register spill and the
+ * directive store. An action is written as the action and type ordinals, the ids
+ * and the fields, with strings written as a 4 byte length and UTF-8 bytes.
+ * <p/>
+ * The field digest identifies the indexed content of an item: the type, publication
+ * and fields, but not the action, so a republish of unchanged content gets the same
+ * digest.
+ */
+final class IndexDataCodec {
+
+    private static final FactoryAction[] ACTIONS = FactoryAction.values();
+    private static final IndexType[] TYPES = IndexType.values();
+    private static final int NULL_LENGTH = -1;
+
+    private IndexDataCodec() {
+    }
+
+    /**
+     * Whether an action can be encoded: only SearchIndexData with String field values.
+     *
+     * @param data the action
+     * @return true if it can be written
+     */
+    static boolean isEncodable(BaseIndexData data) {
+        if (data.getClass() != SearchIndexData.class) {
+            return false;
+        }
+        for (List<Object> values : ((SearchIndexData) data).readFields().values()) {
+            for (Object value : values) {
+                if (value != null && !(value instanceof String)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    static void write(DataOutputStream out, SearchIndexData data) throws IOException {
+        out.writeByte(data.getAction().ordinal());
+        out.writeByte(data.getIndexType().ordinal());
+        writeString(out, data.getPublicationItemId());
+        writeString(out, data.getStorageId());
+        writeString(out, data.getUniqueIndexId());
+        Map<String, ? extends List<Object>> fields = data.readFields();
+        out.writeInt(fields.size());
+        for (Map.Entry<String, ? extends List<Object>> field : fields.entrySet()) {
+            writeString(out, field.getKey());
+            out.writeInt(field.getValue().size());
+            for (Object value : field.getValue()) {
+                writeString(out, (String) value);
+            }
+        }
+    }
+
+    static SearchIndexData read(DataInputStream in) throws IOException {
+        FactoryAction action = ACTIONS[in.readByte()];
+        IndexType type = TYPES[in.readByte()];
+        String publicationId = readString(in);
+        String storageId = readString(in);
+        String uniqueIndexId = readString(in);
+        IndexFieldSet.Builder fields = IndexFieldSet.builder();
+        int fieldCount = in.readInt();
+        for (int i = 0; i < fieldCount; i++) {
+            String name = readString(in);
+            int valueCount = in.readInt();
+            for (int j = 0; j < valueCount; j++) {
+                fields.add(name, readString(in));
+            }
+        }
+        SearchIndexData data = new SearchIndexData(action, type, publicationId, storageId, fields.build());
+        data.setUniqueIndexId(uniqueIndexId);
+        return data;
+    }
+
+    /**
+     * Computes the first 64 bits of the SHA-256 digest of the type, publication id and
+     * fields of an action. Fields are taken in name order, values in their own order.
+     *
+     * @param data the action
+     * @return the digest
+     */
+    static long fieldDigest(SearchIndexData data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(data.getIndexType().ordinal());
+            writeString(out, data.getPublicationItemId());
+            for (Map.Entry<String, List<Object>> field : new TreeMap<String, List<Object>>(data.readFields())
+                    .entrySet()) {
+                writeString(out, field.getKey());
+                out.writeInt(field.getValue().size());
+                for (Object value : field.getValue()) {
+                    writeString(out, value == null ? null : value.toString());
+                }
+            }
+        } catch (IOException e) {
+            // Not thrown by a ByteArrayOutputStream.
+            throw new UncheckedIOException(e);
+        }
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray());
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (digest[i] & 0xff);
+        }
+        return value;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * IndexFieldSet.
+ * <p/>
+ * Immutable set of index fields as parsed from an INDEX-DATA directive.
+ * Instances are shared between SearchIndexData objects, which copy the
+ * fields only when they are about to be modified.
+ */
+public final class IndexFieldSet {
+
+    // Rough per object overhead used for the size estimate of a field set.
+    private static final int OBJECT_OVERHEAD = 40;
+
+    private final Map<String, List<Object>> fields;
+    private final long estimatedSize;
+
+    private IndexFieldSet(Map<String, List<Object>> fields, long estimatedSize) {
+        this.fields = fields;
+        this.estimatedSize = estimatedSize;
+    }
+
+    /**
+     * Creates a new builder.
+     *
+     * @return an empty builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the number of distinct field names.
+     *
+     * @return the field count
+     */
+    public int size() {
+        return this.fields.size();
+    }
+
+    /**
+     * Gets the values of a field.
+     *
+     * @param name the field name
+     * @return an unmodifiable list of values, or null if the field is not present
+     */
+    public List<Object> get(String name) {
+        return this.fields.get(name);
+    }
+
+    /**
+     * Gets all field names.
+     *
+     * @return the field names
+     */
+    public Set<String> names() {
+        return this.fields.keySet();
+    }
+
+    /**
+     * Gets a read only view on all fields.
+     *
+     * @return the fields
+     */
+    public Map<String, List<Object>> asMap() {
+        return this.fields;
+    }
+
+    /**
+     * Gets the estimated retained size in bytes.
+     *
+     * @return the estimated size in bytes
+     */
+    public long getEstimatedSize() {
+        return this.estimatedSize;
+    }
+
+    /**
+     * Copies the fields into the mutable structure used by SearchIndexData.
+     *
+     * @return a private copy of the fields
+     */
+    ConcurrentHashMap<String, ArrayList<Object>> toMutableFields() {
+        ConcurrentHashMap<String, ArrayList<Object>> copy = new ConcurrentHashMap<>();
+        for (Map.Entry<String, List<Object>> entry : this.fields.entrySet()) {
+            copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Builder for an IndexFieldSet.
+     */
+    public static final class Builder {
+        private final LinkedHashMap<String, List<Object>> fields = new LinkedHashMap<>();
+        private long estimatedSize = OBJECT_OVERHEAD;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a value to a field.
+         *
+         * @param name  the field name
+         * @param value the value
+         * @return this builder
+         */
+        public Builder add(String name, Object value) {
+            List<Object> values = this.fields.get(name);
+            if (values == null) {
+                values = new ArrayList<>(1);
+                this.fields.put(name, values);
+                this.estimatedSize += sizeOf(name) + OBJECT_OVERHEAD;
+            }
+            values.add(value);
+            this.estimatedSize += sizeOf(value);
+            return this;
+        }
+
+        /**
+         * Builds the immutable field set.
+         *
+         * @return the field set
+         */
+        public IndexFieldSet build() {
+            LinkedHashMap<String, List<Object>> frozen = new LinkedHashMap<>(this.fields.size() * 2);
+            for (Map.Entry<String, List<Object>> entry : this.fields.entrySet()) {
+                frozen.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+            }
+            return new IndexFieldSet(Collections.unmodifiableMap(frozen), this.estimatedSize);
+        }
+
+        private static long sizeOf(Object value) {
+            if (value instanceof String) {
+                return OBJECT_OVERHEAD + 2L * ((String) value).length();
+            }
+            return OBJECT_OVERHEAD;
+        }
+    }
+}
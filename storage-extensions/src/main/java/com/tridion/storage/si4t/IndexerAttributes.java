@@ -0,0 +1,105 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationException;
+
+/**
+ * IndexerAttributes.
+ * <p/>
+ * Helpers to read optional attributes of the Indexer configuration node.
+ */
+public final class IndexerAttributes {
+
+    private IndexerAttributes() {
+    }
+
+    /**
+     * Gets an optional string attribute.
+     *
+     * @param node         the configuration node
+     * @param name         the attribute name
+     * @param defaultValue the value to use when the attribute is not set
+     * @return the attribute value or the default
+     */
+    public static String getString(Configuration node, String name, String defaultValue) {
+        if (node == null) {
+            return defaultValue;
+        }
+        try {
+            String value = node.getAttribute(name);
+            return Utils.StringIsNullOrEmpty(value) ? defaultValue : value.trim();
+        } catch (ConfigurationException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Gets an optional numeric attribute.
+     *
+     * @param node         the configuration node
+     * @param name         the attribute name
+     * @param defaultValue the value to use when the attribute is not set
+     * @return the attribute value or the default
+     * @throws ConfigurationException if the attribute is not a number
+     */
+    public static long getLong(Configuration node, String name, long defaultValue) throws ConfigurationException {
+        String value = getString(node, name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ConfigurationException("Attribute " + name + " should be a number, but is: " + value, e);
+        }
+    }
+
+    /**
+     * Gets an optional numeric attribute.
+     *
+     * @param node         the configuration node
+     * @param name         the attribute name
+     * @param defaultValue the value to use when the attribute is not set
+     * @return the attribute value or the default
+     * @throws ConfigurationException if the attribute is not a number
+     */
+    public static int getInt(Configuration node, String name, int defaultValue) throws ConfigurationException {
+        long value = getLong(node, name, defaultValue);
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            throw new ConfigurationException("Attribute " + name + " is out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Gets an optional boolean attribute.
+     *
+     * @param node         the configuration node
+     * @param name         the attribute name
+     * @param defaultValue the value to use when the attribute is not set
+     * @return the attribute value or the default
+     */
+    public static boolean getBoolean(Configuration node, String name, boolean defaultValue) {
+        String value = getString(node, name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value);
+    }
+}
@@ -180,15 +180,15 @@ public class JPASearchDAOFactory extends JPADAOFactory implements ApplicationCon
     public void commitTransaction (String transactionId) throws StorageException {
         try {
             if (this.isExtendedDaoFactory) {
-                LOG.info("Start committing transaction: " + transactionId);
+                LOG.info("Start committing transaction: {}", transactionId);
                 long start = System.currentTimeMillis();
                 super.commitTransaction(transactionId);
                 long searchStart = System.currentTimeMillis();
                 LOG.debug("Commit Indexing Start");
                 searchIndexProcessor.triggerIndexing(transactionId, this.storageId);
-                LOG.info("End committing transaction: " + transactionId);
-                LOG.info("Committing Search took: " + (System.currentTimeMillis() - searchStart) + " ms.");
-                LOG.info("Total Commit Time was: " + (System.currentTimeMillis() - start) + " ms.");
+                long end = System.currentTimeMillis();
+                LOG.info("End committing transaction: {}. Committing Search took: {} ms. Total Commit Time was: {} ms.",
+                        new Object[]{transactionId, end - searchStart, end - start});
             } else {
                 LOG.info("Not triggering any special stuff, as this instance for storage Id '{}' needs to behave like the normal DAOFactory",this.storageId);
                 super.commitTransaction(transactionId);
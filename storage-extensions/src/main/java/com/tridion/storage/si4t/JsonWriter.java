@@ -0,0 +1,192 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t;
+
+/**
+ * JsonWriter.
+ * <p/>
+ * Minimal writer for compact, single line JSON, used for export files and reports.
+ * It does not validate the structure; callers are expected to balance begin and end calls.
+ */
+public final class JsonWriter {
+
+    private static final int MAX_DEPTH = 32;
+
+    private final StringBuilder out;
+    // Whether the current object or array already has a member, per nesting level.
+    private final boolean[] hasMembers = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter() {
+        this(new StringBuilder(256));
+    }
+
+    public JsonWriter(StringBuilder out) {
+        this.out = out;
+    }
+
+    public JsonWriter beginObject() {
+        this.separate();
+        this.out.append('{');
+        this.push();
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        this.depth--;
+        this.out.append('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        this.separate();
+        this.out.append('[');
+        this.push();
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        this.depth--;
+        this.out.append(']');
+        return this;
+    }
+
+    public JsonWriter name(String name) {
+        this.separate();
+        this.string(name);
+        this.out.append(':');
+        this.afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        this.separate();
+        if (value == null) {
+            this.out.append("null");
+        } else {
+            this.string(value);
+        }
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        this.separate();
+        this.out.append(value);
+        return this;
+    }
+
+    public JsonWriter value(double value) {
+        this.separate();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            this.out.append("null");
+        } else {
+            this.out.append(value);
+        }
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        this.separate();
+        this.out.append(value);
+        return this;
+    }
+
+    /**
+     * Shorthand for a name and a string value.
+     */
+    public JsonWriter field(String name, String value) {
+        return this.name(name).value(value);
+    }
+
+    /**
+     * Shorthand for a name and a numeric value.
+     */
+    public JsonWriter field(String name, long value) {
+        return this.name(name).value(value);
+    }
+
+    /**
+     * Clears the writer so it can be reused.
+     */
+    public JsonWriter reset() {
+        this.out.setLength(0);
+        this.depth = 0;
+        this.afterName = false;
+        return this;
+    }
+
+    public int length() {
+        return this.out.length();
+    }
+
+    @Override
+    public String toString() {
+        return this.out.toString();
+    }
+
+    private void push() {
+        if (this.depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON nesting too deep");
+        }
+        this.hasMembers[this.depth++] = false;
+    }
+
+    private void separate() {
+        if (this.afterName) {
+            this.afterName = false;
+            return;
+        }
+        if (this.depth > 0) {
+            if (this.hasMembers[this.depth - 1]) {
+                this.out.append(',');
+            }
+            this.hasMembers[this.depth - 1] = true;
+        }
+    }
+
+    private void string(String value) {
+        this.out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    this.out.append("\\\"");
+                    break;
+                case '\\':
+                    this.out.append("\\\\");
+                    break;
+                case '\n':
+                    this.out.append("\\n");
+                    break;
+                case '\r':
+                    this.out.append("\\r");
+                    break;
+                case '\t':
+                    this.out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        this.out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        this.out.append(c);
+                    }
+            }
+        }
+        this.out.append('"');
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t;
+
+/**
+ * ListableSearchIndex.
+ * <p/>
+ * SearchIndex implementations which can list what they hold, so the index can be
+ * reconciled with the deployed items. Implementations should store the field digest
+ * of every page and component presentation they index, as given by
+ * SearchIndexData.getFieldDigest().
+ */
+public interface ListableSearchIndex extends SearchIndex {
+
+    /**
+     * Lists the pages and component presentations in the index of a publication,
+     * without keeping them in memory. Binaries are not listed.
+     * <p/>
+     * Items must be handed over in strictly ascending order of unique index id, as
+     * defined by String.compareTo.
+     *
+     * @param publicationId the publication id
+     * @param handler       receives the items
+     * @throws IndexingException if the index can not be read, or the handler fails
+     */
+    void listIndexedItems(String publicationId, IndexedItemHandler handler) throws IndexingException;
+
+    /**
+     * Receives listed items.
+     */
+    interface IndexedItemHandler {
+
+        /**
+         * Handles one item.
+         *
+         * @param uniqueIndexId the unique index id
+         * @param type          the type, PAGE or COMPONENT_PRESENTATION
+         * @param fieldDigest   the stored field digest, or null if the item has none
+         * @throws IndexingException to stop the listing
+         */
+        void accept(String uniqueIndexId, IndexType type, String fieldDigest) throws IndexingException;
+    }
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RegisterSpill.
+ * <p/>
+ * Accounts the estimated memory retained by the actions of one transaction and one
+ * storage in the notification register. Once the actions exceed the memory budget,
+ * further SearchIndexData actions are appended to a segment file on disk, and only a
+ * SpilledIndexData with their offset stays in the register. Actions are read back
+ * when they are sent to the indexer, in the order in which they were written.
+ * <p/>
+ * Only SearchIndexData with String field values is spilled. Removals are small, and
+ * binaries hold content which can not be written here, so those always stay in memory.
+ * <p/>
+ * A record in the segment is a 4 byte length followed by the action as written by
+ * IndexDataCodec.
+ */
+final class RegisterSpill {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RegisterSpill.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Settings settings;
+    private final String transactionId;
+    private final AtomicLong inMemoryBytes = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+
+    // Guarded by this.
+    private Path file;
+    private FileChannel channel;
+    private OutputStream out;
+    private long size;
+    private boolean flushed = true;
+    private boolean closed;
+
+    RegisterSpill(Settings settings, String transactionId) {
+        this.settings = settings;
+        this.transactionId = transactionId;
+    }
+
+    /**
+     * Accounts an action which is about to be registered, spilling it when the
+     * memory budget is used up.
+     *
+     * @param data the action
+     * @return the action, or the SpilledIndexData which replaces it in the register
+     */
+    BaseIndexData admit(BaseIndexData data) {
+        long estimatedSize = data.getEstimatedSize();
+        if (this.inMemoryBytes.get() + estimatedSize <= this.settings.budget || !IndexDataCodec.isEncodable(data)) {
+            this.inMemoryBytes.addAndGet(estimatedSize);
+            return data;
+        }
+        try {
+            SpilledIndexData spilled = this.write((SearchIndexData) data);
+            this.inMemoryBytes.addAndGet(spilled.getEstimatedSize());
+            return spilled;
+        } catch (IOException e) {
+            LOG.warn("Could not spill action for: " + data.getUniqueIndexId() + " of transaction: " +
+                    this.transactionId + ", keeping it in memory.", e);
+            this.inMemoryBytes.addAndGet(estimatedSize);
+            return data;
+        }
+    }
+
+    /**
+     * Accounts an action which was replaced in the register.
+     *
+     * @param replaced the replaced action, or null
+     */
+    void release(BaseIndexData replaced) {
+        if (replaced != null) {
+            this.inMemoryBytes.addAndGet(-replaced.getEstimatedSize());
+        }
+    }
+
+    private SpilledIndexData write(SearchIndexData data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream record = new DataOutputStream(bytes);
+        IndexDataCodec.write(record, data);
+        record.flush();
+
+        long offset;
+        synchronized (this) {
+            if (this.closed) {
+                throw new IOException("Spill of transaction " + this.transactionId + " is closed.");
+            }
+            if (this.out == null) {
+                this.open();
+            }
+            offset = this.size;
+            DataOutputStream out = new DataOutputStream(this.out);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+            this.size += 4 + bytes.size();
+            this.flushed = false;
+        }
+        this.spilledCount.incrementAndGet();
+        this.settings.spilledCount.incrementAndGet();
+        this.settings.spilledBytes.addAndGet(4 + bytes.size());
+        return new SpilledIndexData(data, this, offset);
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(this.settings.directory);
+        this.file = Files.createTempFile(this.settings.directory, "register-", ".spill");
+        this.channel = FileChannel.open(this.file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        this.out = new BufferedOutputStream(Channels.newOutputStream(this.channel), BUFFER_SIZE);
+        LOG.info("Spilling actions of transaction: {} to: {}", this.transactionId, this.file);
+    }
+
+    /**
+     * Reads a spilled action back.
+     *
+     * @param offset the offset of its record
+     * @return the action
+     * @throws IndexingException if the segment can not be read
+     */
+    SearchIndexData read(long offset) throws IndexingException {
+        FileChannel readChannel;
+        try {
+            synchronized (this) {
+                if (this.closed || this.channel == null) {
+                    throw new IOException("Spill of transaction " + this.transactionId + " is closed.");
+                }
+                if (!this.flushed) {
+                    this.out.flush();
+                    this.flushed = true;
+                }
+                readChannel = this.channel;
+            }
+            ByteBuffer length = ByteBuffer.allocate(4);
+            readFully(readChannel, length, offset);
+            ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+            readFully(readChannel, record, offset + 4);
+            return IndexDataCodec.read(new DataInputStream(new ByteArrayInputStream(record.array())));
+        } catch (IOException e) {
+            throw new IndexingException("Could not read spilled action at offset " + offset + " of transaction: " +
+                    this.transactionId, e);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of spill segment.");
+            }
+        }
+    }
+
+    /**
+     * Gets the estimated memory retained by the registered actions.
+     *
+     * @return the size in bytes
+     */
+    long getInMemoryBytes() {
+        return this.inMemoryBytes.get();
+    }
+
+    /**
+     * Deletes the segment. Spilled actions which were not read yet can no longer be read.
+     */
+    synchronized void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        if (this.channel == null) {
+            return;
+        }
+        try {
+            this.channel.close();
+            Files.deleteIfExists(this.file);
+        } catch (IOException e) {
+            LOG.warn("Could not delete spill segment: " + this.file, e);
+        }
+        LOG.debug("Deleted spill segment of transaction: {} with {} action(s)", this.transactionId,
+                this.spilledCount.get());
+    }
+
+    /**
+     * The spill settings of one storage.
+     */
+    static final class Settings {
+        private final long budget;
+        private final Path directory;
+        private final AtomicLong spilledCount = new AtomicLong();
+        private final AtomicLong spilledBytes = new AtomicLong();
+
+        /**
+         * Instantiates new settings.
+         *
+         * @param budget    the memory budget of a transaction, in estimated bytes
+         * @param directory the directory of the spill segments
+         */
+        Settings(long budget, Path directory) {
+            this.budget = budget;
+            this.directory = directory;
+        }
+
+        long getSpilledCount() {
+            return this.spilledCount.get();
+        }
+
+        long getSpilledBytes() {
+            return this.spilledBytes.get();
+        }
+    }
+}
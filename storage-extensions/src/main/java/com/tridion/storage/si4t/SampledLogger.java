@@ -0,0 +1,190 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SampledLogger.
+ * <p/>
+ * Logger for messages about single items, which would otherwise flood the log
+ * during large publish transactions. Only 1 in every ItemLogSampleRate messages is
+ * logged, and at most ItemLogMaxPerSecond per second per logger. The number of
+ * suppressed messages is logged once a second, when messages were suppressed.
+ * <p/>
+ * Every storage has its own {@link Sampling}, with its own loggers, so the sampling
+ * of one storage does not affect the messages of another.
+ * <p/>
+ * Messages go to a logger named after the class followed by ".items", so the level of
+ * item messages can be set separately, for instance
+ * com.tridion.storage.si4t.SearchIndexProcessor.items. Levels are checked before
+ * sampling, so disabled messages cost a single check.
+ */
+public final class SampledLogger {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Logger logger;
+    private final Sampling sampling;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong window = new AtomicLong(System.nanoTime() / WINDOW_NANOS);
+    private final AtomicLong loggedInWindow = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    SampledLogger(Logger logger, Sampling sampling) {
+        this.logger = logger;
+        this.sampling = sampling;
+    }
+
+    /**
+     * Gets a logger for the item messages of a class which logs every message,
+     * for use outside of a configured storage.
+     *
+     * @param type the class
+     * @return the logger
+     */
+    public static SampledLogger getLogger(Class<?> type) {
+        return new SampledLogger(LoggerFactory.getLogger(type.getName() + ".items"), new Sampling());
+    }
+
+    public boolean isTraceEnabled() {
+        return this.logger.isTraceEnabled();
+    }
+
+    public boolean isDebugEnabled() {
+        return this.logger.isDebugEnabled();
+    }
+
+    public boolean isInfoEnabled() {
+        return this.logger.isInfoEnabled();
+    }
+
+    public void trace(String format, Object argument) {
+        if (this.logger.isTraceEnabled() && this.admit()) {
+            this.logger.trace(format, argument);
+        }
+    }
+
+    public void trace(String format, Object first, Object second) {
+        if (this.logger.isTraceEnabled() && this.admit()) {
+            this.logger.trace(format, first, second);
+        }
+    }
+
+    public void debug(String message) {
+        if (this.logger.isDebugEnabled() && this.admit()) {
+            this.logger.debug(message);
+        }
+    }
+
+    public void debug(String format, Object argument) {
+        if (this.logger.isDebugEnabled() && this.admit()) {
+            this.logger.debug(format, argument);
+        }
+    }
+
+    public void debug(String format, Object first, Object second) {
+        if (this.logger.isDebugEnabled() && this.admit()) {
+            this.logger.debug(format, first, second);
+        }
+    }
+
+    public void info(String message) {
+        if (this.logger.isInfoEnabled() && this.admit()) {
+            this.logger.info(message);
+        }
+    }
+
+    public void info(String format, Object argument) {
+        if (this.logger.isInfoEnabled() && this.admit()) {
+            this.logger.info(format, argument);
+        }
+    }
+
+    public void info(String format, Object first, Object second) {
+        if (this.logger.isInfoEnabled() && this.admit()) {
+            this.logger.info(format, first, second);
+        }
+    }
+
+    private boolean admit() {
+        int rate = this.sampling.sampleRate;
+        if (rate > 1 && this.sequence.incrementAndGet() % rate != 0) {
+            this.suppressed.incrementAndGet();
+            return false;
+        }
+
+        long current = System.nanoTime() / WINDOW_NANOS;
+        long previous = this.window.get();
+        if (current != previous && this.window.compareAndSet(previous, current)) {
+            this.loggedInWindow.set(0);
+            long count = this.suppressed.getAndSet(0);
+            if (count > 0) {
+                this.logger.info("Suppressed {} item message(s) by sampling and rate limiting.", count);
+            }
+        }
+        int limit = this.sampling.maxPerSecond;
+        if (limit > 0 && this.loggedInWindow.incrementAndGet() > limit) {
+            this.suppressed.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sampling.
+     * <p/>
+     * The sampling settings of one storage and its loggers, one per class.
+     */
+    public static final class Sampling {
+        private final ConcurrentHashMap<Class<?>, SampledLogger> loggers = new ConcurrentHashMap<>();
+        private volatile int sampleRate = 1;
+        private volatile int maxPerSecond;
+
+        /**
+         * Sets the sampling of the loggers of this storage.
+         *
+         * @param sampleRate   log 1 in this many messages, 1 logs all of them
+         * @param maxPerSecond the maximum number of messages per second per logger, 0 for no limit
+         */
+        public void configure(int sampleRate, int maxPerSecond) {
+            this.sampleRate = Math.max(1, sampleRate);
+            this.maxPerSecond = Math.max(0, maxPerSecond);
+        }
+
+        /**
+         * Gets the logger for the item messages of a class, creating it on first use.
+         *
+         * @param type the class
+         * @return the logger
+         */
+        public SampledLogger getLogger(Class<?> type) {
+            SampledLogger logger = this.loggers.get(type);
+            if (logger == null) {
+                logger = this.loggers.computeIfAbsent(type,
+                        t -> new SampledLogger(LoggerFactory.getLogger(t.getName() + ".items"), this));
+            }
+            return logger;
+        }
+    }
+}
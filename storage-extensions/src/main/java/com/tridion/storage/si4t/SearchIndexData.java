@@ -17,6 +17,9 @@
 package com.tridion.storage.si4t;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -29,37 +32,59 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class SearchIndexData extends BaseIndexData
 {
-	private ConcurrentHashMap<String, ArrayList<Object>> _indexFields = new ConcurrentHashMap<String, ArrayList<Object>>();
+	private ConcurrentHashMap<String, ArrayList<Object>> _indexFields;
+	// Parsed fields shared with other items; only copied once this item is modified.
+	private IndexFieldSet _sharedFields;
 
 	public SearchIndexData(FactoryAction action, IndexType itemType, String publicationId, String storageId)
 	{
 		super(action, itemType, publicationId, storageId);
+		this._indexFields = new ConcurrentHashMap<String, ArrayList<Object>>();
+	}
+
+	public SearchIndexData(FactoryAction action, IndexType itemType, String publicationId, String storageId, IndexFieldSet sharedFields)
+	{
+		super(action, itemType, publicationId, storageId);
+		this._sharedFields = sharedFields;
 	}
 
 	public void addIndexField(String name, Object value)
 	{
-		ArrayList<Object> field = this._indexFields.get(name);
+		ConcurrentHashMap<String, ArrayList<Object>> fields = this.getMutableFields();
+		ArrayList<Object> field = fields.get(name);
 		if (field == null)
 		{
 			field = new ArrayList<Object>();
 		}
 		field.add(value);
-		this._indexFields.put(name, field);
+		fields.put(name, field);
 	}
 
+	/**
+	 * Gets the index fields. Fields shared with other items are copied first, so
+	 * the returned map may be modified; use readFields to read them without copying.
+	 * 
+	 * @return the index fields of this item
+	 */
 	public ConcurrentHashMap<String, ArrayList<Object>> getIndexFields()
 	{
-		return this._indexFields;
+		return this.getMutableFields();
 	}
 
+	/**
+	 * Gets the values of an index field. Fields shared with other items are copied first.
+	 * 
+	 * @param name the field name
+	 * @return the values, or null if the field is not present
+	 */
 	public ArrayList<Object> getIndexField(String name)
 	{
-		return this._indexFields.get(name);
+		return this.getMutableFields().get(name);
 	}
 
 	public Object getIndexField(String name, int index)
 	{
-		ArrayList<Object> list = this._indexFields.get(name);
+		List<Object> list = this.readFields().get(name);
 		if (index < list.size() && index > 0)
 		{
 			return list.get(index);
@@ -69,7 +94,98 @@ public class SearchIndexData extends BaseIndexData
 
 	public int getFieldSize()
 	{
-		return this._indexFields.size();
+		return this.readFields().size();
+	}
+
+	/**
+	 * Gets the fields without copying shared fields.
+	 * 
+	 * @return a read only view on the index fields
+	 */
+	public Map<String, List<Object>> readFields()
+	{
+		synchronized (this)
+		{
+			if (this._indexFields == null)
+			{
+				return this._sharedFields.asMap();
+			}
+			return Collections.<String, List<Object>>unmodifiableMap(this._indexFields);
+		}
+	}
+
+	/**
+	 * Gets the digest of the indexed content: the type, publication id and fields.
+	 * Indexers which implement ListableSearchIndex store it with the item.
+	 * 
+	 * @return the digest as 16 lower case hex characters
+	 */
+	public String getFieldDigest()
+	{
+		return toDigestString(IndexDataCodec.fieldDigest(this));
+	}
+
+	static String toDigestString(long digest)
+	{
+		String hex = Long.toHexString(digest);
+		return "0000000000000000".substring(hex.length()) + hex;
+	}
+
+	/**
+	 * Gets the number of characters in all field values.
+	 * 
+	 * @return the payload size
+	 */
+	@Override
+	public long getPayloadSize()
+	{
+		long size = 0;
+		for (List<Object> values : this.readFields().values())
+		{
+			for (Object value : values)
+			{
+				size += value == null ? 0 : value.toString().length();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Gets the estimated number of bytes retained by this object, including its fields.
+	 * Fields shared with other items are counted as well.
+	 * 
+	 * @return the estimated size in bytes
+	 */
+	@Override
+	public long getEstimatedSize()
+	{
+		synchronized (this)
+		{
+			if (this._indexFields == null)
+			{
+				return super.getEstimatedSize() + this._sharedFields.getEstimatedSize();
+			}
+		}
+		long size = super.getEstimatedSize();
+		for (Entry<String, ArrayList<Object>> field : this._indexFields.entrySet())
+		{
+			size += sizeOf(field.getKey()) + OBJECT_OVERHEAD;
+			for (Object value : field.getValue())
+			{
+				size += value instanceof String ? sizeOf((String) value) : OBJECT_OVERHEAD;
+			}
+		}
+		return size;
+	}
+
+	private synchronized ConcurrentHashMap<String, ArrayList<Object>> getMutableFields()
+	{
+		if (this._indexFields == null)
+		{
+			this._indexFields = this._sharedFields.toMutableFields();
+			this._sharedFields = null;
+		}
+		return this._indexFields;
 	}
 
 	@Override
@@ -83,7 +199,7 @@ public class SearchIndexData extends BaseIndexData
 		r.append(",");
 		r.append(this._itemType);
 		r.append(",{");
-		for (Entry<String, ArrayList<Object>> entry : this._indexFields.entrySet())
+		for (Entry<String, ? extends List<Object>> entry : this.readFields().entrySet())
 		{
 			r.append(entry.getKey());
 			r.append("{");
@@ -18,13 +18,48 @@ package com.tridion.storage.si4t;
 
 import com.tridion.configuration.Configuration;
 import com.tridion.configuration.ConfigurationException;
+import com.tridion.storage.si4t.audit.AuditLog;
+import com.tridion.storage.si4t.extract.TextExtractionStage;
+import com.tridion.storage.si4t.extract.TextExtractor;
+import com.tridion.storage.si4t.fanout.FanOutSearchIndex;
+import com.tridion.storage.si4t.jfr.IndexingEventKind;
+import com.tridion.storage.si4t.jfr.IndexingEvents;
+import com.tridion.storage.si4t.metrics.IndexingMetrics;
+import com.tridion.storage.si4t.metrics.IndexingStage;
+import com.tridion.storage.si4t.metrics.PendingActions;
+import com.tridion.storage.si4t.metrics.StorageMetrics;
+import com.tridion.storage.si4t.report.TransactionReport;
+import com.tridion.storage.si4t.report.TransactionReportWriter;
+import com.tridion.storage.si4t.report.TransactionReports;
+import com.tridion.storage.si4t.slowlog.SlowItem;
+import com.tridion.storage.si4t.slowlog.SlowItemLog;
+import com.tridion.storage.si4t.slowlog.SlowItemLogs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Iterator;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
 
 /**
  * SearchIndexProcessor.
@@ -42,6 +77,74 @@ public final class SearchIndexProcessor {
 
     private static final String INDEXER_NODE = "Indexer";
     private static final String INDEXER_CLASS_ATTRIBUTE = "Class";
+    private static final String DIRECTIVE_CACHE_SIZE_ATTRIBUTE = "DirectiveCacheSize";
+    private static final long DEFAULT_DIRECTIVE_CACHE_SIZE = 8L * 1024 * 1024;
+    private static final String EXTRACTION_CACHE_SIZE_ATTRIBUTE = "ExtractionCacheSize";
+    private static final long DEFAULT_EXTRACTION_CACHE_SIZE = 32L * 1024 * 1024;
+    private static final String TEXT_EXTRACTION_ATTRIBUTE = "TextExtraction";
+    private static final String EXTRACTION_THREADS_ATTRIBUTE = "ExtractionThreads";
+    private static final String EXTRACTION_QUEUE_SIZE_ATTRIBUTE = "ExtractionQueueSize";
+    private static final int DEFAULT_EXTRACTION_QUEUE_SIZE = 64;
+    private static final String EXTRACTION_TIMEOUT_ATTRIBUTE = "ExtractionTimeout";
+    private static final long DEFAULT_EXTRACTION_TIMEOUT = 30000;
+    private static final String MAX_EXTRACTION_INPUT_SIZE_ATTRIBUTE = "MaxExtractionInputSize";
+    private static final long DEFAULT_MAX_EXTRACTION_INPUT_SIZE = 64L * 1024 * 1024;
+    private static final String MAX_EXTRACTED_LENGTH_ATTRIBUTE = "MaxExtractedLength";
+    private static final int DEFAULT_MAX_EXTRACTED_LENGTH = 1000000;
+    private static final String GROUP_COMMIT_WINDOW_ATTRIBUTE = "GroupCommitWindow";
+    private static final String GROUP_COMMIT_MAX_LATENCY_ATTRIBUTE = "GroupCommitMaxLatency";
+    private static final long DEFAULT_GROUP_COMMIT_WINDOW = 10;
+    private static final long DEFAULT_GROUP_COMMIT_MAX_LATENCY = 1000;
+    private static final String ADAPTIVE_DISPATCH_ATTRIBUTE = "AdaptiveDispatch";
+    private static final String INDEX_BATCH_SIZE_ATTRIBUTE = "indexBatchSize";
+    private static final String MIN_BATCH_SIZE_ATTRIBUTE = "MinBatchSize";
+    private static final String MAX_BATCH_SIZE_ATTRIBUTE = "MaxBatchSize";
+    private static final String MIN_CONCURRENCY_ATTRIBUTE = "MinConcurrency";
+    private static final String MAX_CONCURRENCY_ATTRIBUTE = "MaxConcurrency";
+    private static final String TARGET_BATCH_LATENCY_ATTRIBUTE = "TargetBatchLatency";
+    private static final String MAX_ERROR_PERCENT_ATTRIBUTE = "MaxErrorPercent";
+    private static final String FAIR_DISPATCH_ATTRIBUTE = "FairDispatch";
+    private static final String FAIR_DISPATCH_SLOTS_ATTRIBUTE = "FairDispatchSlots";
+    private static final String FAIR_DISPATCH_QUANTUM_ATTRIBUTE = "FairDispatchQuantum";
+    private static final int DEFAULT_FAIR_DISPATCH_SLOTS = 4;
+    private static final int DEFAULT_FAIR_DISPATCH_QUANTUM = 100;
+    private static final String DISPATCH_LANES_ATTRIBUTE = "DispatchLanes";
+    private static final String SMALL_ITEM_SIZE_ATTRIBUTE = "SmallItemSize";
+    private static final String HEAVY_ITEM_SIZE_ATTRIBUTE = "HeavyItemSize";
+    private static final String HEAVY_LANE_BATCH_SIZE_ATTRIBUTE = "HeavyLaneBatchSize";
+    private static final String LANE_CONCURRENCY_ATTRIBUTE_SUFFIX = "LaneConcurrency";
+    private static final long DEFAULT_SMALL_ITEM_SIZE = 16 * 1024;
+    private static final long DEFAULT_HEAVY_ITEM_SIZE = 1024 * 1024;
+    private static final int DEFAULT_HEAVY_LANE_BATCH_SIZE = 10;
+    private static final int[] DEFAULT_LANE_CONCURRENCY = {2, 2, 4, 1};
+    private static final String JMX_METRICS_ATTRIBUTE = "JmxMetrics";
+    private static final String MICROMETER_METRICS_ATTRIBUTE = "MicrometerMetrics";
+    private static final String TRANSACTION_REPORT_FILE_ATTRIBUTE = "TransactionReportFile";
+    private static final String TRANSACTION_REPORT_MAX_SIZE_ATTRIBUTE = "TransactionReportMaxSize";
+    private static final String TRANSACTION_REPORT_MAX_FILES_ATTRIBUTE = "TransactionReportMaxFiles";
+    private static final long DEFAULT_TRANSACTION_REPORT_MAX_SIZE = 10L * 1024 * 1024;
+    private static final int DEFAULT_TRANSACTION_REPORT_MAX_FILES = 5;
+    private static final int TRANSACTION_REPORT_QUEUE_SIZE = 1024;
+    private static final String ITEM_LOG_SAMPLE_RATE_ATTRIBUTE = "ItemLogSampleRate";
+    private static final String ITEM_LOG_MAX_PER_SECOND_ATTRIBUTE = "ItemLogMaxPerSecond";
+    private static final int DEFAULT_ITEM_LOG_MAX_PER_SECOND = 0;
+    private static final int MAX_DESCRIBED_ACTIONS = 1000;
+    private static final String SLOW_EXTRACT_THRESHOLD_ATTRIBUTE = "SlowExtractThreshold";
+    private static final String SLOW_PARSE_THRESHOLD_ATTRIBUTE = "SlowParseThreshold";
+    private static final String SLOW_TEXT_EXTRACT_THRESHOLD_ATTRIBUTE = "SlowTextExtractThreshold";
+    private static final String SLOW_INDEXER_CALL_THRESHOLD_ATTRIBUTE = "SlowIndexerCallThreshold";
+    private static final String SLOW_ITEM_LOG_SIZE_ATTRIBUTE = "SlowItemLogSize";
+    private static final String SLOW_ITEM_LOG_FILE_ATTRIBUTE = "SlowItemLogFile";
+    private static final String SLOW_ITEM_LOG_MAX_SIZE_ATTRIBUTE = "SlowItemLogMaxSize";
+    private static final String SLOW_ITEM_LOG_MAX_FILES_ATTRIBUTE = "SlowItemLogMaxFiles";
+    private static final int DEFAULT_SLOW_ITEM_LOG_SIZE = 128;
+    private static final String AUDIT_LOG_SIZE_ATTRIBUTE = "AuditLogSize";
+    private static final int DEFAULT_AUDIT_LOG_SIZE = 8192;
+    private static final String REGISTER_MEMORY_BUDGET_ATTRIBUTE = "RegisterMemoryBudget";
+    private static final String SPILL_DIRECTORY_ATTRIBUTE = "SpillDirectory";
+    private static final String DIRECTIVE_STORE_ATTRIBUTE = "DirectiveStore";
+    private static final String DIRECTIVE_STORE_SEGMENT_SIZE_ATTRIBUTE = "DirectiveStoreSegmentSize";
+    private static final long DEFAULT_DIRECTIVE_STORE_SEGMENT_SIZE = 64L * 1024 * 1024;
     private static final Logger LOG = LoggerFactory.getLogger(SearchIndexProcessor.class);
     // Stores 1 SearchIndex handler per storage ID.
     private static final ConcurrentHashMap<String, Class<? extends SearchIndex>> INDEXER_CLASSES =
@@ -50,6 +153,35 @@ public final class SearchIndexProcessor {
             new ConcurrentHashMap<>();
     private static final ConcurrentHashMap<String, ConcurrentHashMap<String, BaseIndexData>> NOTIFICATION_REGISTER =
             new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, SampledLogger.Sampling> ITEM_LOG_SAMPLING =
+            new ConcurrentHashMap<>();
+    // Stores 1 shared SearchIndex per storage ID, for ConcurrentSearchIndex implementations only.
+    private static final ConcurrentHashMap<String, SearchIndex> SHARED_INDEXERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, GroupCommitCoordinator> COMMIT_COORDINATORS =
+            new ConcurrentHashMap<>();
+    // Stores 1 dispatch controller per storage ID, if adaptive dispatch is enabled.
+    private static final ConcurrentHashMap<String, AdaptiveDispatchController> DISPATCH_CONTROLLERS =
+            new ConcurrentHashMap<>();
+    // Stores 1 fair dispatch scheduler per storage ID, if fair dispatch is enabled.
+    private static final ConcurrentHashMap<String, FairDispatchScheduler> FAIR_DISPATCH_SCHEDULERS =
+            new ConcurrentHashMap<>();
+    // Stores 1 set of dispatch lanes per storage ID, if enabled.
+    private static final ConcurrentHashMap<String, DispatchLanes> DISPATCH_LANES = new ConcurrentHashMap<>();
+    // Stores 1 parsed directive cache per storage ID, if enabled.
+    private static final ConcurrentHashMap<String, DirectiveParseCache> DIRECTIVE_CACHES =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, ExtractionCache> EXTRACTION_CACHES = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, BinaryAdmissionPolicy> BINARY_ADMISSION_POLICIES =
+            new ConcurrentHashMap<>();
+    // Stores 1 text extraction stage per storage ID, if enabled.
+    private static final ConcurrentHashMap<String, TextExtractionStage> TEXT_EXTRACTION_STAGES =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, RegisterSpill.Settings> SPILL_SETTINGS = new ConcurrentHashMap<>();
+    // Spills by storage Id and transaction id.
+    private static final ConcurrentHashMap<String, ConcurrentHashMap<String, RegisterSpill>> REGISTER_SPILLS =
+            new ConcurrentHashMap<>();
+    // Stores 1 directive store per storage ID, if enabled.
+    private static final ConcurrentHashMap<String, DirectiveStore> DIRECTIVE_STORES = new ConcurrentHashMap<>();
 
     // private constructor to prevent normal instantiation
     private SearchIndexProcessor() {
@@ -76,9 +208,685 @@ public final class SearchIndexProcessor {
      * @throws ConfigurationException a config exception.
      */
     public void configureStorageInstance(String storageId, Configuration configuration) throws ConfigurationException {
-        LOG.info("Configuration is: " + configuration.toString());
+        LOG.info("Configuration is: {}", configuration);
         INDEXER_CONFIGURATION.put(storageId, configuration);
+        setItemLogSampling(storageId);
+        setAuditLog(storageId);
         setSearchIndexClient(storageId);
+        setDirectiveCache(storageId);
+        setExtractionCache(storageId);
+        setBinaryAdmissionPolicy(storageId);
+        setTextExtraction(storageId);
+        setRegisterSpill(storageId);
+        setDirectiveStore(storageId);
+        setCommitCoordinator(storageId);
+        setDispatchController(storageId);
+        setFairDispatch(storageId);
+        setDispatchLanes(storageId);
+        setTransactionReports(storageId);
+        setSlowItemLog(storageId);
+        setMetrics(storageId);
+    }
+
+    /**
+     * Sets the sampling of the item log messages of a storage. Only 1 in ItemLogSampleRate
+     * messages is logged, and at most ItemLogMaxPerSecond per second (0, the default, for
+     * no limit).
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setItemLogSampling(String storageId) throws ConfigurationException {
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        getItemLogSampling(storageId).configure(
+                IndexerAttributes.getInt(indexerConfiguration, ITEM_LOG_SAMPLE_RATE_ATTRIBUTE, 1),
+                IndexerAttributes.getInt(indexerConfiguration, ITEM_LOG_MAX_PER_SECOND_ATTRIBUTE,
+                        DEFAULT_ITEM_LOG_MAX_PER_SECOND));
+    }
+
+    /**
+     * Sets the number of recent index actions kept in the audit log, rounded up to a power
+     * of two. An AuditLogSize of 0 disables the log. The audit log is shared by all
+     * storages, so the storage configured last determines its size.
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setAuditLog(String storageId) throws ConfigurationException {
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        AuditLog.configure(IndexerAttributes.getInt(indexerConfiguration, AUDIT_LOG_SIZE_ATTRIBUTE,
+                DEFAULT_AUDIT_LOG_SIZE));
+    }
+
+    /**
+     * Sets up the per transaction indexing reports, when the TransactionReportFile
+     * attribute is set. Reports are appended as JSON lines to that file, which rolls over
+     * when it exceeds TransactionReportMaxSize bytes. TransactionReportMaxFiles rolled
+     * over files are kept.
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setTransactionReports(String storageId) throws ConfigurationException {
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        String file = IndexerAttributes.getString(indexerConfiguration, TRANSACTION_REPORT_FILE_ATTRIBUTE, null);
+        if (file == null) {
+            TransactionReports.disable(storageId);
+            return;
+        }
+        try {
+            TransactionReportWriter writer = new TransactionReportWriter(Paths.get(file),
+                    IndexerAttributes.getLong(indexerConfiguration, TRANSACTION_REPORT_MAX_SIZE_ATTRIBUTE,
+                            DEFAULT_TRANSACTION_REPORT_MAX_SIZE),
+                    IndexerAttributes.getInt(indexerConfiguration, TRANSACTION_REPORT_MAX_FILES_ATTRIBUTE,
+                            DEFAULT_TRANSACTION_REPORT_MAX_FILES),
+                    TRANSACTION_REPORT_QUEUE_SIZE);
+            LOG.info("Writing transaction reports for storageId: {} to: {}", storageId, writer.getFile());
+            TransactionReports.enable(storageId, writer);
+        } catch (IOException e) {
+            throw new ConfigurationException("Could not create transaction report file: " + file, e);
+        }
+    }
+
+    /**
+     * Sets up the slow item log, when a threshold in milliseconds is set for at least one
+     * of the stages: SlowExtractThreshold, SlowParseThreshold, SlowTextExtractThreshold or
+     * SlowIndexerCallThreshold.
+     * The last SlowItemLogSize slow items are kept in memory. When SlowItemLogFile is set,
+     * slow items are also appended to that file, which rolls over like the transaction
+     * report file.
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setSlowItemLog(String storageId) throws ConfigurationException {
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        Map<IndexingStage, Long> thresholds = new EnumMap<>(IndexingStage.class);
+        putThreshold(thresholds, IndexingStage.EXTRACT, indexerConfiguration, SLOW_EXTRACT_THRESHOLD_ATTRIBUTE);
+        putThreshold(thresholds, IndexingStage.PARSE, indexerConfiguration, SLOW_PARSE_THRESHOLD_ATTRIBUTE);
+        putThreshold(thresholds, IndexingStage.TEXT_EXTRACT, indexerConfiguration,
+                SLOW_TEXT_EXTRACT_THRESHOLD_ATTRIBUTE);
+        putThreshold(thresholds, IndexingStage.INDEXER_CALL, indexerConfiguration,
+                SLOW_INDEXER_CALL_THRESHOLD_ATTRIBUTE);
+        if (thresholds.isEmpty()) {
+            SlowItemLogs.disable(storageId);
+            return;
+        }
+
+        TransactionReportWriter writer = null;
+        String file = IndexerAttributes.getString(indexerConfiguration, SLOW_ITEM_LOG_FILE_ATTRIBUTE, null);
+        if (file != null) {
+            try {
+                writer = new TransactionReportWriter(Paths.get(file),
+                        IndexerAttributes.getLong(indexerConfiguration, SLOW_ITEM_LOG_MAX_SIZE_ATTRIBUTE,
+                                DEFAULT_TRANSACTION_REPORT_MAX_SIZE),
+                        IndexerAttributes.getInt(indexerConfiguration, SLOW_ITEM_LOG_MAX_FILES_ATTRIBUTE,
+                                DEFAULT_TRANSACTION_REPORT_MAX_FILES),
+                        TRANSACTION_REPORT_QUEUE_SIZE);
+            } catch (IOException e) {
+                throw new ConfigurationException("Could not create slow item log file: " + file, e);
+            }
+        }
+        LOG.info("Logging slow items for storageId: {} with thresholds (ms): {}", storageId, thresholds);
+        SlowItemLogs.enable(storageId, new SlowItemLog(storageId, thresholds,
+                        IndexerAttributes.getInt(indexerConfiguration, SLOW_ITEM_LOG_SIZE_ATTRIBUTE,
+                                DEFAULT_SLOW_ITEM_LOG_SIZE), writer),
+                IndexerAttributes.getBoolean(indexerConfiguration, JMX_METRICS_ATTRIBUTE, true));
+    }
+
+    private static void putThreshold(Map<IndexingStage, Long> thresholds, IndexingStage stage,
+                                     Configuration indexerConfiguration, String attribute)
+            throws ConfigurationException {
+        long millis = IndexerAttributes.getLong(indexerConfiguration, attribute, -1);
+        if (millis >= 0) {
+            thresholds.put(stage, millis);
+        }
+    }
+
+    /**
+     * Publishes the indexing metrics of this storage, through JMX unless JmxMetrics is false,
+     * and through the global Micrometer registry when MicrometerMetrics is true.
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setMetrics(String storageId) throws ConfigurationException {
+        StorageMetrics metrics = IndexingMetrics.forStorage(storageId);
+        metrics.gauge("directiveCache.hits", gauge(DIRECTIVE_CACHES, storageId, DirectiveParseCache::getHitCount));
+        metrics.gauge("directiveCache.misses", gauge(DIRECTIVE_CACHES, storageId, DirectiveParseCache::getMissCount));
+        metrics.gauge("directiveCache.evictions",
+                gauge(DIRECTIVE_CACHES, storageId, DirectiveParseCache::getEvictionCount));
+        metrics.gauge("directiveCache.entries", gauge(DIRECTIVE_CACHES, storageId, DirectiveParseCache::getEntryCount));
+        metrics.gauge("directiveCache.bytes", gauge(DIRECTIVE_CACHES, storageId, DirectiveParseCache::getWeightedSize));
+        metrics.gauge("extractionCache.hits",
+                gauge(EXTRACTION_CACHES, storageId, ExtractionCache::getHitCount));
+        metrics.gauge("extractionCache.misses",
+                gauge(EXTRACTION_CACHES, storageId, ExtractionCache::getMissCount));
+        metrics.gauge("extractionCache.shared",
+                gauge(EXTRACTION_CACHES, storageId, ExtractionCache::getSharedExtractionCount));
+        metrics.gauge("extractionCache.evictions",
+                gauge(EXTRACTION_CACHES, storageId, ExtractionCache::getEvictionCount));
+        metrics.gauge("extractionCache.entries",
+                gauge(EXTRACTION_CACHES, storageId, ExtractionCache::getEntryCount));
+        metrics.gauge("extractionCache.bytes",
+                gauge(EXTRACTION_CACHES, storageId, ExtractionCache::getWeightedSize));
+        metrics.gauge("binaryAdmission.admitted", gauge(BINARY_ADMISSION_POLICIES, storageId,
+                p -> p.getCount(BinaryAdmissionPolicy.Decision.ADMITTED)));
+        metrics.gauge("binaryAdmission.wrongType", gauge(BINARY_ADMISSION_POLICIES, storageId,
+                p -> p.getCount(BinaryAdmissionPolicy.Decision.WRONG_TYPE)));
+        metrics.gauge("binaryAdmission.tooLarge", gauge(BINARY_ADMISSION_POLICIES, storageId,
+                p -> p.getCount(BinaryAdmissionPolicy.Decision.TOO_LARGE)));
+        metrics.gauge("binaryAdmission.excludedPath", gauge(BINARY_ADMISSION_POLICIES, storageId,
+                p -> p.getCount(BinaryAdmissionPolicy.Decision.EXCLUDED_PATH)));
+        metrics.gauge("textExtraction.extracted",
+                gauge(TEXT_EXTRACTION_STAGES, storageId, TextExtractionStage::getExtractedCount));
+        metrics.gauge("textExtraction.failures",
+                gauge(TEXT_EXTRACTION_STAGES, storageId, TextExtractionStage::getFailureCount));
+        metrics.gauge("textExtraction.timeouts",
+                gauge(TEXT_EXTRACTION_STAGES, storageId, TextExtractionStage::getTimeoutCount));
+        metrics.gauge("textExtraction.rejected",
+                gauge(TEXT_EXTRACTION_STAGES, storageId, TextExtractionStage::getRejectedCount));
+        metrics.gauge("textExtraction.skipped",
+                gauge(TEXT_EXTRACTION_STAGES, storageId, TextExtractionStage::getSkippedCount));
+        metrics.gauge("textExtraction.queued",
+                gauge(TEXT_EXTRACTION_STAGES, storageId, TextExtractionStage::getQueueLength));
+        metrics.gauge("groupCommit.requests",
+                gauge(COMMIT_COORDINATORS, storageId, GroupCommitCoordinator::getRequestCount));
+        metrics.gauge("groupCommit.commits",
+                gauge(COMMIT_COORDINATORS, storageId, GroupCommitCoordinator::getCommitCount));
+        metrics.gauge("dispatch.batchSize",
+                gauge(DISPATCH_CONTROLLERS, storageId, AdaptiveDispatchController::getBatchSize));
+        metrics.gauge("dispatch.concurrency",
+                gauge(DISPATCH_CONTROLLERS, storageId, AdaptiveDispatchController::getConcurrency));
+        metrics.gauge("dispatch.batches",
+                gauge(DISPATCH_CONTROLLERS, storageId, AdaptiveDispatchController::getBatchCount));
+        metrics.gauge("dispatch.failedBatches",
+                gauge(DISPATCH_CONTROLLERS, storageId, AdaptiveDispatchController::getFailedBatchCount));
+        for (FanOutSearchIndex.Counter counter : FanOutSearchIndex.Counter.values()) {
+            metrics.gauge("fanOut." + counter.getGaugeName(),
+                    () -> FanOutSearchIndex.getSecondaryCount(storageId, counter));
+        }
+        metrics.gauge("fairDispatch.inFlight",
+                gauge(FAIR_DISPATCH_SCHEDULERS, storageId, FairDispatchScheduler::getInFlightCount));
+        metrics.gauge("fairDispatch.waiting",
+                gauge(FAIR_DISPATCH_SCHEDULERS, storageId, FairDispatchScheduler::getWaitingCount));
+        metrics.gauge("fairDispatch.grants",
+                gauge(FAIR_DISPATCH_SCHEDULERS, storageId, FairDispatchScheduler::getGrantCount));
+        metrics.gauge("fairDispatch.delayedGrants",
+                gauge(FAIR_DISPATCH_SCHEDULERS, storageId, FairDispatchScheduler::getDelayedGrantCount));
+        for (DispatchLanes.Lane lane : DispatchLanes.Lane.values()) {
+            String prefix = "lanes." + lane.getGaugeName();
+            metrics.gauge(prefix + ".inFlight", gauge(DISPATCH_LANES, storageId, l -> l.getInFlightCount(lane)));
+            metrics.gauge(prefix + ".waiting", gauge(DISPATCH_LANES, storageId, l -> l.getWaitingCount(lane)));
+            metrics.gauge(prefix + ".batches", gauge(DISPATCH_LANES, storageId, l -> l.getBatchCount(lane)));
+            metrics.gauge(prefix + ".actions", gauge(DISPATCH_LANES, storageId, l -> l.getActionCount(lane)));
+        }
+        metrics.gauge("transactionReports.written", () -> {
+            TransactionReportWriter writer = TransactionReports.getWriter(storageId);
+            return writer == null ? 0 : writer.getWrittenCount();
+        });
+        metrics.gauge("transactionReports.dropped", () -> {
+            TransactionReportWriter writer = TransactionReports.getWriter(storageId);
+            return writer == null ? 0 : writer.getDroppedCount();
+        });
+
+        metrics.setPendingActions(new RegisterView(storageId));
+        metrics.gauge("register.retainedBytes", () -> {
+            ConcurrentHashMap<String, RegisterSpill> spills = REGISTER_SPILLS.get(storageId);
+            long bytes = 0;
+            if (spills != null) {
+                for (RegisterSpill spill : spills.values()) {
+                    bytes += spill.getInMemoryBytes();
+                }
+            }
+            return bytes;
+        });
+        metrics.gauge("register.spilledActions",
+                gauge(SPILL_SETTINGS, storageId, RegisterSpill.Settings::getSpilledCount));
+        metrics.gauge("register.spilledBytes",
+                gauge(SPILL_SETTINGS, storageId, RegisterSpill.Settings::getSpilledBytes));
+        metrics.gauge("directiveStore.items", gauge(DIRECTIVE_STORES, storageId, DirectiveStore::size));
+        metrics.gauge("directiveStore.records", gauge(DIRECTIVE_STORES, storageId, DirectiveStore::getRecordCount));
+        metrics.gauge("directiveStore.bytes", gauge(DIRECTIVE_STORES, storageId, DirectiveStore::getStoredBytes));
+        metrics.gauge("directiveStore.skipped", gauge(DIRECTIVE_STORES, storageId, DirectiveStore::getSkippedCount));
+        metrics.gauge("directiveStore.failures", gauge(DIRECTIVE_STORES, storageId, DirectiveStore::getFailureCount));
+        metrics.gauge("slowItems.count", () -> {
+            SlowItemLog slowItemLog = SlowItemLogs.get(storageId);
+            return slowItemLog == null ? 0 : slowItemLog.getSlowCount();
+        });
+
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        if (IndexerAttributes.getBoolean(indexerConfiguration, JMX_METRICS_ATTRIBUTE, true)) {
+            IndexingMetrics.registerMBean(storageId);
+        }
+        if (IndexerAttributes.getBoolean(indexerConfiguration, MICROMETER_METRICS_ATTRIBUTE, false)) {
+            IndexingMetrics.bindToMicrometer(storageId);
+        }
+    }
+
+    // Reads the component on every call, so gauges survive a reconfiguration.
+    private static <T> LongSupplier gauge(Map<String, T> components, String storageId, ToLongFunction<T> value) {
+        return () -> {
+            T component = components.get(storageId);
+            return component == null ? 0 : value.applyAsLong(component);
+        };
+    }
+
+    /**
+     * Sets up adaptive dispatch, when the AdaptiveDispatch attribute is true.
+     * <p/>
+     * The batch size starts at indexBatchSize and stays between MinBatchSize and MaxBatchSize.
+     * The number of parallel batches stays between MinConcurrency and MaxConcurrency.
+     * Both shrink when the 95th percentile batch latency exceeds TargetBatchLatency (ms),
+     * or more than MaxErrorPercent of the batches fail.
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setDispatchController(String storageId) throws ConfigurationException {
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        if (!IndexerAttributes.getBoolean(indexerConfiguration, ADAPTIVE_DISPATCH_ATTRIBUTE, false)) {
+            DISPATCH_CONTROLLERS.remove(storageId);
+            return;
+        }
+
+        AdaptiveDispatchController controller = new AdaptiveDispatchController(storageId,
+                IndexerAttributes.getInt(indexerConfiguration, INDEX_BATCH_SIZE_ATTRIBUTE, 20),
+                IndexerAttributes.getInt(indexerConfiguration, MIN_BATCH_SIZE_ATTRIBUTE, 1),
+                IndexerAttributes.getInt(indexerConfiguration, MAX_BATCH_SIZE_ATTRIBUTE, 500),
+                IndexerAttributes.getInt(indexerConfiguration, MIN_CONCURRENCY_ATTRIBUTE, 1),
+                IndexerAttributes.getInt(indexerConfiguration, MAX_CONCURRENCY_ATTRIBUTE, 1),
+                IndexerAttributes.getLong(indexerConfiguration, TARGET_BATCH_LATENCY_ATTRIBUTE, 1000),
+                IndexerAttributes.getInt(indexerConfiguration, MAX_ERROR_PERCENT_ATTRIBUTE, 5));
+        LOG.info("Using adaptive dispatch for storageId: {}: {}", storageId, controller);
+        DISPATCH_CONTROLLERS.put(storageId, controller);
+    }
+
+    /**
+     * Sets up fair dispatch, when the FairDispatch attribute is true.
+     * <p/>
+     * At most FairDispatchSlots batches of all transactions of the storage are sent at the
+     * same time. Batches which have to wait are queued per publication and started with
+     * deficit round-robin, where a publication receives FairDispatchQuantum actions per
+     * round times its weight from the DispatchWeight nodes. Without adaptive dispatch, the
+     * batch size is FairDispatchQuantum.
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setFairDispatch(String storageId) throws ConfigurationException {
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        if (!IndexerAttributes.getBoolean(indexerConfiguration, FAIR_DISPATCH_ATTRIBUTE, false)) {
+            FAIR_DISPATCH_SCHEDULERS.remove(storageId);
+            return;
+        }
+
+        int slots = IndexerAttributes.getInt(indexerConfiguration, FAIR_DISPATCH_SLOTS_ATTRIBUTE,
+                DEFAULT_FAIR_DISPATCH_SLOTS);
+        int quantum = IndexerAttributes.getInt(indexerConfiguration, FAIR_DISPATCH_QUANTUM_ATTRIBUTE,
+                DEFAULT_FAIR_DISPATCH_QUANTUM);
+        if (slots < 1 || quantum < 1) {
+            throw new ConfigurationException("FairDispatchSlots and FairDispatchQuantum must be positive.");
+        }
+        FairDispatchScheduler scheduler = new FairDispatchScheduler(storageId, slots, quantum,
+                FairDispatchScheduler.readWeights(indexerConfiguration));
+        LOG.info("Using fair dispatch for storageId: {}: {}", storageId, scheduler);
+        FAIR_DISPATCH_SCHEDULERS.put(storageId, scheduler);
+    }
+
+    /**
+     * Sets up dispatch lanes, when the DispatchLanes attribute is true.
+     * <p/>
+     * Removals go to the removal lane, binaries to the heavy lane. Pages and component
+     * presentations go to the small lane up to a payload of SmallItemSize characters,
+     * to the heavy lane above HeavyItemSize, and to the standard lane otherwise. The
+     * concurrency budget of a lane is set with RemovalLaneConcurrency, SmallLaneConcurrency,
+     * StandardLaneConcurrency and HeavyLaneConcurrency, and the heavy lane sends at most
+     * HeavyLaneBatchSize actions per batch. With fair dispatch, the removal and small lanes
+     * do not wait for a fair dispatch slot.
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setDispatchLanes(String storageId) throws ConfigurationException {
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        if (!IndexerAttributes.getBoolean(indexerConfiguration, DISPATCH_LANES_ATTRIBUTE, false)) {
+            DISPATCH_LANES.remove(storageId);
+            return;
+        }
+
+        DispatchLanes.Lane[] lanes = DispatchLanes.Lane.values();
+        int[] concurrency = new int[lanes.length];
+        for (DispatchLanes.Lane lane : lanes) {
+            String attribute = Character.toUpperCase(lane.getGaugeName().charAt(0)) + lane.getGaugeName().substring(1) +
+                    LANE_CONCURRENCY_ATTRIBUTE_SUFFIX;
+            concurrency[lane.ordinal()] = IndexerAttributes.getInt(indexerConfiguration, attribute,
+                    DEFAULT_LANE_CONCURRENCY[lane.ordinal()]);
+            if (concurrency[lane.ordinal()] < 1) {
+                throw new ConfigurationException(attribute + " must be positive.");
+            }
+        }
+        int heavyBatchSize = IndexerAttributes.getInt(indexerConfiguration, HEAVY_LANE_BATCH_SIZE_ATTRIBUTE,
+                DEFAULT_HEAVY_LANE_BATCH_SIZE);
+        if (heavyBatchSize < 1) {
+            throw new ConfigurationException(HEAVY_LANE_BATCH_SIZE_ATTRIBUTE + " must be positive.");
+        }
+        DispatchLanes dispatchLanes = new DispatchLanes(storageId,
+                IndexerAttributes.getLong(indexerConfiguration, SMALL_ITEM_SIZE_ATTRIBUTE, DEFAULT_SMALL_ITEM_SIZE),
+                IndexerAttributes.getLong(indexerConfiguration, HEAVY_ITEM_SIZE_ATTRIBUTE, DEFAULT_HEAVY_ITEM_SIZE),
+                heavyBatchSize, concurrency);
+        LOG.info("Using dispatch lanes for storageId: {}: {}", storageId, dispatchLanes);
+        DISPATCH_LANES.put(storageId, dispatchLanes);
+    }
+
+    /**
+     * Gets the adaptive dispatch controller, to monitor the current batch size and concurrency.
+     *
+     * @param storageId The configured storage Id
+     * @return the controller, or null if adaptive dispatch is disabled for this storage
+     */
+    public static AdaptiveDispatchController getDispatchController(String storageId) {
+        if (storageId == null) {
+            return null;
+        }
+        return DISPATCH_CONTROLLERS.get(storageId);
+    }
+
+    /**
+     * Sets up group commits, which are used when the indexer is a ConcurrentSearchIndex.
+     * <p/>
+     * GroupCommitWindow is the time in ms to wait for commits of other transactions to join,
+     * GroupCommitMaxLatency is the maximum time in ms a commit is delayed. A shared indexer
+     * of an earlier configuration is destroyed.
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setCommitCoordinator(String storageId) throws ConfigurationException {
+        SearchIndex previous = SHARED_INDEXERS.remove(storageId);
+        if (previous != null) {
+            previous.destroy();
+        }
+        Class<? extends SearchIndex> indexerClass = INDEXER_CLASSES.get(storageId);
+        if (indexerClass == null || !ConcurrentSearchIndex.class.isAssignableFrom(indexerClass)) {
+            COMMIT_COORDINATORS.remove(storageId);
+            return;
+        }
+
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        long window = IndexerAttributes.getLong(indexerConfiguration, GROUP_COMMIT_WINDOW_ATTRIBUTE,
+                DEFAULT_GROUP_COMMIT_WINDOW);
+        long maxLatency = IndexerAttributes.getLong(indexerConfiguration, GROUP_COMMIT_MAX_LATENCY_ATTRIBUTE,
+                DEFAULT_GROUP_COMMIT_MAX_LATENCY);
+        LOG.info("Using group commits (window: {} ms, max latency: {} ms) for storageId: {}",
+                new Object[]{window, maxLatency, storageId});
+        COMMIT_COORDINATORS.put(storageId, new GroupCommitCoordinator(storageId, window, maxLatency));
+    }
+
+    /**
+     * Sets up the cache of parsed search directives.
+     * <p/>
+     * The size in bytes is taken from the DirectiveCacheSize attribute of the Indexer node.
+     * A size of 0 disables the cache.
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setDirectiveCache(String storageId) throws ConfigurationException {
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        long cacheSize = IndexerAttributes.getLong(indexerConfiguration, DIRECTIVE_CACHE_SIZE_ATTRIBUTE,
+                DEFAULT_DIRECTIVE_CACHE_SIZE);
+        if (cacheSize > 0) {
+            LOG.info("Using a directive cache of {} bytes for storageId: {}", cacheSize, storageId);
+            DIRECTIVE_CACHES.put(storageId, new DirectiveParseCache(cacheSize));
+        } else {
+            LOG.info("Directive cache is disabled for storageId: {}", storageId);
+            DIRECTIVE_CACHES.remove(storageId);
+        }
+    }
+
+    /**
+     * Sets up the cache of text extracted from binaries, shared by all publications.
+     * <p/>
+     * The size in bytes is taken from the ExtractionCacheSize attribute of the Indexer node.
+     * A size of 0 disables the cache.
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setExtractionCache(String storageId) throws ConfigurationException {
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        long cacheSize = IndexerAttributes.getLong(indexerConfiguration, EXTRACTION_CACHE_SIZE_ATTRIBUTE,
+                DEFAULT_EXTRACTION_CACHE_SIZE);
+        if (cacheSize > 0) {
+            LOG.info("Using an extraction cache of {} bytes for storageId: {}", cacheSize, storageId);
+            EXTRACTION_CACHES.put(storageId, new ExtractionCache(cacheSize));
+        } else {
+            LOG.info("Extraction cache is disabled for storageId: {}", storageId);
+            EXTRACTION_CACHES.remove(storageId);
+        }
+    }
+
+    /**
+     * Gets the cache of text extracted from binaries. Indexers which extract text
+     * themselves can use it with the content digest of a BinaryIndexData, to extract
+     * a binary which is published into many publications only once.
+     *
+     * @param storageId The configured storage Id
+     * @return the extraction cache, or null if caching is disabled for this storage
+     */
+    public static ExtractionCache getExtractionCache(String storageId) {
+        return storageId == null ? null : EXTRACTION_CACHES.get(storageId);
+    }
+
+    /**
+     * Builds the policy which decides which binaries are indexed, from the DocExtensions,
+     * MaxBinarySize, BinaryIncludePaths and BinaryExcludePaths attributes and the
+     * BinaryAdmission nodes of the Indexer node. See BinaryAdmissionPolicy.
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setBinaryAdmissionPolicy(String storageId) throws ConfigurationException {
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        BinaryAdmissionPolicy policy = BinaryAdmissionPolicy.fromConfiguration(indexerConfiguration);
+        LOG.info("Binary admission for storageId: {} is: {}", storageId, policy);
+        BINARY_ADMISSION_POLICIES.put(storageId, policy);
+    }
+
+    /**
+     * Gets the policy which decides which binaries are indexed.
+     *
+     * @param storageId The configured storage Id
+     * @return the policy, or null if the storage is not configured
+     */
+    public static BinaryAdmissionPolicy getBinaryAdmissionPolicy(String storageId) {
+        return storageId == null ? null : BINARY_ADMISSION_POLICIES.get(storageId);
+    }
+
+    /**
+     * Sets up the extraction of text from binaries, when the TextExtraction attribute is true.
+     * <p/>
+     * Binaries are extracted by the TextExtractor implementations found through the
+     * ServiceLoader, and by the built in PlainTextExtractor, before they are sent to the
+     * indexer. ExtractionThreads (defaults to the number of processors) extract at the
+     * same time, and at most ExtractionQueueSize binaries wait for them. A binary is not
+     * extracted when it is larger than MaxExtractionInputSize bytes, its text is cut off
+     * after MaxExtractedLength characters, and extraction is cancelled after
+     * ExtractionTimeout milliseconds.
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setTextExtraction(String storageId) throws ConfigurationException {
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        TextExtractionStage stage = null;
+        if (IndexerAttributes.getBoolean(indexerConfiguration, TEXT_EXTRACTION_ATTRIBUTE, false)) {
+            List<TextExtractor> extractors =
+                    TextExtractionStage.loadExtractors(SearchIndexProcessor.class.getClassLoader());
+            try {
+                stage = new TextExtractionStage(storageId, extractors,
+                        IndexerAttributes.getInt(indexerConfiguration, EXTRACTION_THREADS_ATTRIBUTE,
+                                Runtime.getRuntime().availableProcessors()),
+                        IndexerAttributes.getInt(indexerConfiguration, EXTRACTION_QUEUE_SIZE_ATTRIBUTE,
+                                DEFAULT_EXTRACTION_QUEUE_SIZE),
+                        IndexerAttributes.getLong(indexerConfiguration, EXTRACTION_TIMEOUT_ATTRIBUTE,
+                                DEFAULT_EXTRACTION_TIMEOUT),
+                        IndexerAttributes.getLong(indexerConfiguration, MAX_EXTRACTION_INPUT_SIZE_ATTRIBUTE,
+                                DEFAULT_MAX_EXTRACTION_INPUT_SIZE),
+                        IndexerAttributes.getInt(indexerConfiguration, MAX_EXTRACTED_LENGTH_ATTRIBUTE,
+                                DEFAULT_MAX_EXTRACTED_LENGTH));
+            } catch (IllegalArgumentException e) {
+                throw new ConfigurationException("Invalid text extraction settings: " + e.getMessage(), e);
+            }
+            LOG.info("Extracting text of binaries for storageId: {} with: {}", storageId, extractors);
+        }
+        TextExtractionStage previous = stage == null ? TEXT_EXTRACTION_STAGES.remove(storageId) :
+                TEXT_EXTRACTION_STAGES.put(storageId, stage);
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * Sets up spilling of large transactions, when the RegisterMemoryBudget attribute is set.
+     * <p/>
+     * Once the actions of a transaction for this storage retain more than RegisterMemoryBudget
+     * (estimated) bytes in the notification register, further actions are written to a
+     * segment file in SpillDirectory, which defaults to si4t-spill in the temp directory.
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setRegisterSpill(String storageId) throws ConfigurationException {
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        long budget = IndexerAttributes.getLong(indexerConfiguration, REGISTER_MEMORY_BUDGET_ATTRIBUTE, 0);
+        if (budget <= 0) {
+            SPILL_SETTINGS.remove(storageId);
+            return;
+        }
+        Path directory = Paths.get(IndexerAttributes.getString(indexerConfiguration, SPILL_DIRECTORY_ATTRIBUTE,
+                Paths.get(System.getProperty("java.io.tmpdir"), "si4t-spill").toString()));
+        LOG.info("Spilling transactions over {} bytes for storageId: {} to: {}",
+                new Object[]{budget, storageId, directory});
+        SPILL_SETTINGS.put(storageId, new RegisterSpill.Settings(budget, directory));
+    }
+
+    private static RegisterSpill getRegisterSpill(String transactionId, String storageId) {
+        RegisterSpill.Settings settings = SPILL_SETTINGS.get(storageId);
+        if (settings == null) {
+            return null;
+        }
+        ConcurrentHashMap<String, RegisterSpill> spills =
+                REGISTER_SPILLS.computeIfAbsent(storageId, id -> new ConcurrentHashMap<>());
+        RegisterSpill spill = spills.get(transactionId);
+        if (spill == null) {
+            spill = spills.computeIfAbsent(transactionId, id -> new RegisterSpill(settings, id));
+        }
+        return spill;
+    }
+
+    private static void closeRegisterSpill(String transactionId, String storageId) {
+        ConcurrentHashMap<String, RegisterSpill> spills = REGISTER_SPILLS.get(storageId);
+        RegisterSpill spill = spills == null ? null : spills.remove(transactionId);
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    /**
+     * Sets up the directive store, when the DirectiveStore attribute names a directory.
+     * <p/>
+     * The field set of every page and component presentation which is sent to the indexer
+     * is kept there, so the index can be rebuilt without a republish. Segments are sealed
+     * at DirectiveStoreSegmentSize bytes (default 64 MB). Only one process can write to a
+     * store; when it is in use, directives are not stored.
+     *
+     * @param storageId The configured storage Id
+     * @throws ConfigurationException a config exception.
+     */
+    private void setDirectiveStore(String storageId) throws ConfigurationException {
+        Configuration indexerConfiguration = INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE);
+        String directory = IndexerAttributes.getString(indexerConfiguration, DIRECTIVE_STORE_ATTRIBUTE, null);
+        DirectiveStore previous = DIRECTIVE_STORES.remove(storageId);
+        if (previous != null) {
+            previous.close();
+        }
+        if (directory == null) {
+            return;
+        }
+        long segmentSize = IndexerAttributes.getLong(indexerConfiguration, DIRECTIVE_STORE_SEGMENT_SIZE_ATTRIBUTE,
+                DEFAULT_DIRECTIVE_STORE_SEGMENT_SIZE);
+        try {
+            DIRECTIVE_STORES.put(storageId, DirectiveStore.open(Paths.get(directory), segmentSize));
+            LOG.info("Storing directives for storageId: {} in: {}", storageId, directory);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException("Invalid directive store settings: " + e.getMessage(), e);
+        } catch (IOException e) {
+            LOG.error("Could not open directive store: " + directory + " for storageId: " + storageId +
+                    ", directives are not stored.", e);
+        }
+    }
+
+    /**
+     * Gets the directive store.
+     *
+     * @param storageId The configured storage Id
+     * @return the directive store, or null if it is disabled for this storage
+     */
+    public static DirectiveStore getDirectiveStore(String storageId) {
+        if (storageId == null) {
+            return null;
+        }
+        return DIRECTIVE_STORES.get(storageId);
+    }
+
+    /**
+     * Stops storing directives for a storage and closes its store, for instance before
+     * the store is replayed into the index.
+     *
+     * @param storageId The configured storage Id
+     */
+    public static void closeDirectiveStore(String storageId) {
+        DirectiveStore store = DIRECTIVE_STORES.remove(storageId);
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    /**
+     * Gets the logger for the item messages of a class, sampled as configured for a storage.
+     *
+     * @param type      the class which logs
+     * @param storageId The configured storage Id, or null to log every message
+     * @return the logger
+     */
+    public static SampledLogger getItemLog(Class<?> type, String storageId) {
+        if (storageId == null) {
+            return SampledLogger.getLogger(type);
+        }
+        return getItemLogSampling(storageId).getLogger(type);
+    }
+
+    private static SampledLogger.Sampling getItemLogSampling(String storageId) {
+        SampledLogger.Sampling sampling = ITEM_LOG_SAMPLING.get(storageId);
+        if (sampling == null) {
+            sampling = ITEM_LOG_SAMPLING.computeIfAbsent(storageId, id -> new SampledLogger.Sampling());
+        }
+        return sampling;
+    }
+
+    /**
+     * Gets the cache of parsed search directives.
+     *
+     * @param storageId The configured storage Id
+     * @return the directive cache, or null if caching is disabled for this storage
+     */
+    public static DirectiveParseCache getDirectiveCache(String storageId) {
+        if (storageId == null) {
+            return null;
+        }
+        return DIRECTIVE_CACHES.get(storageId);
     }
 
     /**
@@ -91,7 +899,7 @@ public final class SearchIndexProcessor {
         String searchIndexImplementation =
                 INDEXER_CONFIGURATION.get(storageId).getChild(INDEXER_NODE).getAttribute(INDEXER_CLASS_ATTRIBUTE);
         if (!Utils.StringIsNullOrEmpty(searchIndexImplementation)) {
-            LOG.info("Using: " + searchIndexImplementation + " as search index class for storageId: " + storageId);
+            LOG.info("Using: {} as search index class for storageId: {}", searchIndexImplementation, storageId);
 
 
             this.storeIndexerClassForStorageId(storageId, searchIndexImplementation);
@@ -110,7 +918,7 @@ public final class SearchIndexProcessor {
     private void storeIndexerClassForStorageId(String storageId, String searchIndexImplementation)
             throws ConfigurationException {
         if (INDEXER_CLASSES.get(storageId) == null) {
-            LOG.info("Loading " + searchIndexImplementation);
+            LOG.info("Loading {}", searchIndexImplementation);
 
             ClassLoader classLoader = this.getClass().getClassLoader();
             Class<? extends SearchIndex> indexerClass;
@@ -134,7 +942,7 @@ public final class SearchIndexProcessor {
 
                 LOG.info("Stored: {}, for storage Id: {} ", searchIndexImplementation, storageId);
 
-                LOG.info("Loaded: " + searchIndexImplementation);
+                LOG.info("Loaded: {}", searchIndexImplementation);
             } catch (ClassNotFoundException e) {
                 LOG.error(e.getLocalizedMessage(), e);
                 throw new ConfigurationException("Could not find class: " + searchIndexImplementation, e);
@@ -169,7 +977,7 @@ public final class SearchIndexProcessor {
             searchIndex = indexerClass.newInstance();
             searchIndex.configure(INDEXER_CONFIGURATION.get(storageId));
 
-            LOG.info("Configured: " + indexerClass.getName());
+            LOG.info("Configured: {}", indexerClass.getName());
             return searchIndex;
 
         } catch (InstantiationException e) {
@@ -185,6 +993,45 @@ public final class SearchIndexProcessor {
     }
 
 
+    /**
+     * Gets the Indexer to use for one transaction of a storage.
+     * <p/>
+     * A ConcurrentSearchIndex is instantiated once and shared, any other SearchIndex
+     * is instantiated for every transaction.
+     *
+     * @param storageId The configured storage Id
+     * @return the search index
+     * @throws IndexingException error thrown when the indexer can not be loaded.
+     */
+    private SearchIndex getIndexer(String storageId) throws IndexingException {
+        if (!COMMIT_COORDINATORS.containsKey(storageId)) {
+            return this.loadIndexer(storageId);
+        }
+        SearchIndex searchIndex = SHARED_INDEXERS.get(storageId);
+        if (searchIndex == null) {
+            synchronized (SHARED_INDEXERS) {
+                searchIndex = SHARED_INDEXERS.get(storageId);
+                if (searchIndex == null) {
+                    searchIndex = this.loadIndexer(storageId);
+                    SHARED_INDEXERS.put(storageId, searchIndex);
+                }
+            }
+        }
+        return searchIndex;
+    }
+
+    /**
+     * Gets a SearchIndex of a storage for maintenance work, such as reconciliation. This
+     * is the shared instance for a ConcurrentSearchIndex, and a new instance otherwise.
+     *
+     * @param storageId The configured storage Id
+     * @return the search index
+     * @throws IndexingException if the indexer can not be created
+     */
+    public SearchIndex getSearchIndex(String storageId) throws IndexingException {
+        return this.getIndexer(storageId);
+    }
+
     /**
      * Gets the indexer configuration.
      *
@@ -208,17 +1055,24 @@ public final class SearchIndexProcessor {
      * @param indexData     The data object to index.
      */
     public static void registerAction(String transactionId, BaseIndexData indexData) {
-        LOG.info("Registering " + indexData.getUniqueIndexId() + ", for: " + indexData.getAction());
+        long start = System.nanoTime();
+        Object event = IndexingEvents.begin(IndexingEventKind.REGISTER_ACTION);
+        String outcome = "ignored";
+        AuditLog.Event audited = AuditLog.Event.IGNORED;
+        SampledLogger itemLog = getItemLog(SearchIndexProcessor.class, indexData.getStorageId());
+        itemLog.info("Registering {}, for: {}", indexData.getUniqueIndexId(), indexData.getAction());
 
         if (!NOTIFICATION_REGISTER.containsKey(transactionId)) {
             NOTIFICATION_REGISTER.put(transactionId, new ConcurrentHashMap<>());
         }
         ConcurrentHashMap<String, BaseIndexData> transactionActions = NOTIFICATION_REGISTER.get(transactionId);
+        RegisterSpill spill = getRegisterSpill(transactionId, indexData.getStorageId());
 
 
         if (!transactionActions.containsKey(indexData.getUniqueIndexId())) {
-            transactionActions.put(indexData.getUniqueIndexId(), indexData);
-
+            transactionActions.put(indexData.getUniqueIndexId(), spill == null ? indexData : spill.admit(indexData));
+            outcome = "added";
+            audited = AuditLog.Event.REGISTERED;
         } else {
             // Special case where a publish transaction contains a renamed file
             // plus a file
@@ -238,81 +1092,490 @@ public final class SearchIndexProcessor {
                 // remove
                 // and a persist)
                 // TODO: this might be removed completely.
-                LOG.debug(">>> Special case.");
-                transactionActions.put(indexData.getUniqueIndexId(), indexData);
+                itemLog.debug("Replacing earlier action for: {}", indexData.getUniqueIndexId());
+                BaseIndexData replaced = transactionActions.put(indexData.getUniqueIndexId(),
+                        spill == null ? indexData : spill.admit(indexData));
+                if (spill != null) {
+                    spill.release(replaced);
+                }
+                outcome = "replaced";
+                audited = AuditLog.Event.REPLACED;
             }
         }
+        audit(audited, transactionId, indexData);
+        IndexingMetrics.record(IndexingStage.REGISTER, indexData.getStorageId(), indexData.getPublicationItemId(),
+                indexData.getIndexType(), start, false);
+        TransactionReport report = TransactionReports.open(transactionId, indexData.getStorageId());
+        if (report != null) {
+            report.registered(!"added".equals(outcome));
+            report.stage(IndexingStage.REGISTER, System.nanoTime() - start);
+        }
+        IndexingEvents.end(event, transactionId, indexData, outcome);
     }
 
     /**
      * Trigger indexing.
+     * <p/>
+     * Sends all registered actions of this storage to the search index, in batches.
+     * Each publication which had actions in a batch is committed once, after the batch
+     * was sent. Without adaptive or fair dispatch, all actions form a single batch.
      *
      * @param transactionId the Transaction Id
      * @throws IndexingException indexingException
      */
     public void triggerIndexing(String transactionId, String storageId) throws IndexingException {
         if (NOTIFICATION_REGISTER.containsKey(transactionId)) {
-            LOG.info("Triggering Indexing for transaction: " + transactionId);
-            LOG.info("Indexing was requested for Storage Id: " + storageId);
+            LOG.info("Triggering Indexing for transaction: {}, storage Id: {}", transactionId, storageId);
             ConcurrentHashMap<String, BaseIndexData> indexableItems = NOTIFICATION_REGISTER.get(transactionId);
+            List<String> itemIds = new ArrayList<>();
+            List<SpilledIndexData> spilled = null;
+            int skipped = 0;
 
-            for (Iterator<Entry<String, BaseIndexData>> iter = indexableItems.entrySet().iterator(); iter.hasNext(); ) {
-                Map.Entry<String, BaseIndexData> actionEntry = iter.next();
-                String itemId = actionEntry.getKey();
+            for (Entry<String, BaseIndexData> actionEntry : indexableItems.entrySet()) {
                 BaseIndexData data = actionEntry.getValue();
-
                 if (data.getStorageId().equalsIgnoreCase(storageId)) {
-                    LOG.trace("Data is: {} ", data);
-                    LOG.debug("Obtaining SearchIndex class for: " + data.getStorageId());
-                    SearchIndex searchIndexer = this.loadIndexer(storageId);
+                    if (data instanceof SpilledIndexData) {
+                        if (spilled == null) {
+                            spilled = new ArrayList<>();
+                        }
+                        spilled.add((SpilledIndexData) data);
+                    } else {
+                        itemIds.add(actionEntry.getKey());
+                    }
+                } else {
+                    skipped++;
+                    audit(AuditLog.Event.SKIPPED, transactionId, data);
+                    getItemLog(SearchIndexProcessor.class, storageId).debug(
+                            "Not processing, this entry is for another factory to process. This factory belongs to {}" +
+                                    " and the transaction belongs to: {}", storageId, data.getStorageId());
+                }
+            }
 
-                    LOG.debug(data.getStorageId() + "::" + searchIndexer.getClass().getName() + "::" +
-                            INDEXER_CONFIGURATION.get(data.getStorageId()).toString());
-                    try {
-                        processAction(searchIndexer, indexableItems, itemId);
+            if (spilled != null) {
+                // Spilled actions go last, in the order in which they were written.
+                spilled.sort(Comparator.comparingLong(SpilledIndexData::getOffset));
+                for (SpilledIndexData data : spilled) {
+                    itemIds.add(data.getUniqueIndexId());
+                }
+            }
 
-                        String pubId = data.getPublicationItemId();
-                        LOG.debug("Trigger action for item: " + itemId + ", action: " + data.getAction() +
-                                ", storageId: " + data.getStorageId());
-                        LOG.debug("Setting Publication Id to: " + pubId);
-                        searchIndexer.commit(pubId);
+            TransactionReport report = TransactionReports.find(transactionId, storageId);
+            if (report != null) {
+                report.skipped(skipped);
+            }
+            try {
+                if (!itemIds.isEmpty()) {
+                    long start = System.nanoTime();
+                    Object event = IndexingEvents.begin(IndexingEventKind.TRANSACTION_INDEXING);
+                    boolean failed = true;
+                    try {
+                        this.dispatch(transactionId, storageId, indexableItems, itemIds, report);
+                        failed = false;
                     } finally {
-                        // will trigger commits by default 10 times.
-                        // remove from notification register.
-                        LOG.debug(
-                                "Removing + " + itemId + " for storageId: " + data.getStorageId() + " from register.");
-                        // removing like this may mean that other threads running concurrently
-                        // will not see this change.
-                        // It is expected that one factory will run as Singleton, so this is no problem
-                        // as other factories using the same notification register will not read this entry,
-                        // because they have a different storageId.
-                        // The main reason to remove it here, is so that other configured DAOFactories will not run
-                        // it again.
-                        iter.remove();
+                        IndexingMetrics.record(IndexingStage.DISPATCH, storageId, null, null, start, failed);
+                        IndexingEvents.end(event, transactionId, storageId, null, null, null, itemIds.size(),
+                                failed ? "failed" : "ok");
+                        if (report != null) {
+                            report.stage(IndexingStage.DISPATCH, System.nanoTime() - start);
+                        }
+                    }
+                }
+            } finally {
+                TransactionReports.finish(transactionId, storageId);
+                closeRegisterSpill(transactionId, storageId);
+                DirectiveStore store = DIRECTIVE_STORES.get(storageId);
+                if (store != null) {
+                    store.flush();
+                }
+            }
+            DirectiveParseCache cache = DIRECTIVE_CACHES.get(storageId);
+            if (cache != null) {
+                LOG.debug("Directive cache for storageId: {} is: {}", storageId, cache);
+            }
+        }
+    }
+
+    /**
+     * Splits the actions into batches and sends them with as many workers as the
+     * dispatch controller allows. The calling thread is always one of the workers.
+     * After the first failure no new batches are started, and the failure is rethrown
+     * once all workers have finished.
+     * <p/>
+     * With fair dispatch every batch holds the actions of one publication only, so that
+     * it can wait in the queue of that publication. With dispatch lanes every batch holds
+     * the actions of one lane, and the lanes are sent in priority order.
+     */
+    private void dispatch(String transactionId, String storageId,
+                          ConcurrentHashMap<String, BaseIndexData> indexableItems, List<String> itemIds,
+                          TransactionReport report) throws IndexingException {
+        AdaptiveDispatchController controller = DISPATCH_CONTROLLERS.get(storageId);
+        FairDispatchScheduler scheduler = FAIR_DISPATCH_SCHEDULERS.get(storageId);
+        DispatchLanes lanes = DISPATCH_LANES.get(storageId);
+        int batchSize = controller != null ? controller.getBatchSize() :
+                scheduler != null ? scheduler.getQuantum() : itemIds.size();
+        ConcurrentLinkedQueue<Batch> batches = new ConcurrentLinkedQueue<>();
+        int laneCount = 0;
+        if (lanes == null) {
+            addBatches(batches, indexableItems, itemIds, null, batchSize, scheduler != null);
+        } else {
+            Map<DispatchLanes.Lane, List<String>> laneItemIds = new EnumMap<>(DispatchLanes.Lane.class);
+            for (String itemId : itemIds) {
+                laneItemIds.computeIfAbsent(lanes.classify(indexableItems.get(itemId)),
+                        k -> new ArrayList<>()).add(itemId);
+            }
+            for (Entry<DispatchLanes.Lane, List<String>> lane : laneItemIds.entrySet()) {
+                addBatches(batches, indexableItems, lane.getValue(), lane.getKey(),
+                        lanes.getBatchSize(lane.getKey(), batchSize), scheduler != null);
+            }
+            laneCount = laneItemIds.size();
+        }
+        int workers = Math.min(Math.max(controller == null ? 1 : controller.getConcurrency(), laneCount),
+                batches.size());
+        LOG.debug("Dispatching {} action(s) in {} batch(es) with {} worker(s)",
+                new Object[]{itemIds.size(), batches.size(), workers});
+
+        DispatchWorker worker = new DispatchWorker(transactionId, storageId, indexableItems, batches, controller,
+                scheduler, lanes, report);
+        List<Future<?>> helpers = new ArrayList<>(workers - 1);
+        for (int i = 1; i < workers; i++) {
+            helpers.add(DispatchExecutorHolder.EXECUTOR.submit(worker));
+        }
+        worker.run();
+
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                worker.fail(new IndexingException("Interrupted while waiting for dispatch workers.", e));
+            } catch (ExecutionException e) {
+                worker.fail(new IndexingException("Dispatch worker failed.", e.getCause()));
+            }
+        }
+
+        Exception failure = worker.failure.get();
+        if (failure instanceof IndexingException) {
+            throw (IndexingException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+    }
+
+    /**
+     * Splits actions into batches, per publication if the batches are scheduled fairly.
+     */
+    private static void addBatches(ConcurrentLinkedQueue<Batch> batches,
+                                   ConcurrentHashMap<String, BaseIndexData> indexableItems, List<String> itemIds,
+                                   DispatchLanes.Lane lane, int batchSize, boolean perPublication) {
+        if (!perPublication) {
+            for (int i = 0; i < itemIds.size(); i += batchSize) {
+                batches.add(new Batch(itemIds.subList(i, Math.min(itemIds.size(), i + batchSize)), null, lane));
+            }
+            return;
+        }
+        Map<String, List<String>> publications = new LinkedHashMap<>();
+        for (String itemId : itemIds) {
+            publications.computeIfAbsent(indexableItems.get(itemId).getPublicationItemId(),
+                    k -> new ArrayList<>()).add(itemId);
+        }
+        for (Entry<String, List<String>> publication : publications.entrySet()) {
+            List<String> publicationItemIds = publication.getValue();
+            for (int i = 0; i < publicationItemIds.size(); i += batchSize) {
+                batches.add(new Batch(publicationItemIds.subList(i, Math.min(publicationItemIds.size(),
+                        i + batchSize)), publication.getKey(), lane));
+            }
+        }
+    }
+
+    /**
+     * A batch of actions, with the publication of all actions when they are scheduled
+     * fairly, and the lane of all actions when dispatch lanes are enabled.
+     */
+    private static final class Batch {
+        private final List<String> itemIds;
+        private final String publicationId;
+        private final DispatchLanes.Lane lane;
+
+        private Batch(List<String> itemIds, String publicationId, DispatchLanes.Lane lane) {
+            this.itemIds = itemIds;
+            this.publicationId = publicationId;
+            this.lane = lane;
+        }
+
+        /**
+         * Removals and small items do not wait for a fair dispatch slot.
+         */
+        private boolean isScheduled() {
+            return this.publicationId != null &&
+                    (this.lane == null || this.lane == DispatchLanes.Lane.STANDARD ||
+                            this.lane == DispatchLanes.Lane.HEAVY);
+        }
+    }
+
+    /**
+     * Takes batches from the queue until it is empty or a batch failed. Every thread
+     * running the worker uses its own indexer, unless the indexer is shared.
+     */
+    private final class DispatchWorker implements Runnable {
+        private final String transactionId;
+        private final String storageId;
+        private final ConcurrentHashMap<String, BaseIndexData> indexableItems;
+        private final ConcurrentLinkedQueue<Batch> batches;
+        private final AdaptiveDispatchController controller;
+        private final FairDispatchScheduler scheduler;
+        private final DispatchLanes lanes;
+        private final TransactionReport report;
+        private final SampledLogger itemLog;
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+        private DispatchWorker(String transactionId, String storageId,
+                               ConcurrentHashMap<String, BaseIndexData> indexableItems,
+                               ConcurrentLinkedQueue<Batch> batches, AdaptiveDispatchController controller,
+                               FairDispatchScheduler scheduler, DispatchLanes lanes, TransactionReport report) {
+            this.transactionId = transactionId;
+            this.storageId = storageId;
+            this.indexableItems = indexableItems;
+            this.batches = batches;
+            this.controller = controller;
+            this.scheduler = scheduler;
+            this.lanes = lanes;
+            this.report = report;
+            this.itemLog = getItemLog(SearchIndexProcessor.class, storageId);
+        }
+
+        @Override
+        public void run() {
+            long allocatedBefore = this.report == null ? -1 : TransactionReport.currentThreadAllocatedBytes();
+            try {
+                this.runBatches();
+            } finally {
+                if (allocatedBefore >= 0) {
+                    this.report.allocated(TransactionReport.currentThreadAllocatedBytes() - allocatedBefore);
+                }
+            }
+        }
+
+        private void runBatches() {
+            SearchIndex searchIndexer = null;
+            Batch batch;
+            while (this.failure.get() == null && (batch = this.batches.poll()) != null) {
+                if (!this.admit(batch)) {
+                    break;
+                }
+                Set<String> publicationIds = new LinkedHashSet<>();
+                long start = System.nanoTime();
+                boolean failed = false;
+                try {
+                    if (searchIndexer == null) {
+                        LOG.debug("Obtaining SearchIndex class for: {}", this.storageId);
+                        searchIndexer = SearchIndexProcessor.this.getIndexer(this.storageId);
+                        LOG.debug("Using {} for storageId: {}", searchIndexer.getClass().getName(), this.storageId);
                     }
+                    this.sendBatch(searchIndexer, batch.itemIds, publicationIds);
+                    SearchIndexProcessor.this.commitPublications(searchIndexer, this.transactionId, this.storageId,
+                            publicationIds, this.report);
+                } catch (IndexingException | RuntimeException e) {
+                    failed = true;
+                    this.fail(e);
+                    // Still send what was processed before the failure, like before.
+                    SearchIndexProcessor.this.commitAfterFailure(searchIndexer, this.transactionId, this.storageId,
+                            publicationIds, this.report);
+                } finally {
+                    if (this.controller != null) {
+                        this.controller.record(System.nanoTime() - start, failed);
+                    }
+                    this.release(batch);
+                }
+            }
+        }
+
+        /**
+         * Waits for the budget of the lane of a batch, and then for a fair dispatch slot
+         * for its publication.
+         */
+        private boolean admit(Batch batch) {
+            boolean laneAcquired = false;
+            try {
+                if (batch.lane != null) {
+                    this.lanes.acquire(batch.lane, batch.itemIds.size());
+                    laneAcquired = true;
+                }
+                if (batch.isScheduled()) {
+                    this.scheduler.acquire(batch.publicationId, batch.itemIds.size());
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (laneAcquired) {
+                    this.lanes.release(batch.lane);
+                }
+                this.fail(new IndexingException("Interrupted while waiting for a dispatch slot.", e));
+                return false;
+            }
+        }
+
+        private void release(Batch batch) {
+            if (batch.isScheduled()) {
+                this.scheduler.release();
+            }
+            if (batch.lane != null) {
+                this.lanes.release(batch.lane);
+            }
+        }
+
+        private void sendBatch(SearchIndex searchIndexer, List<String> batch, Set<String> publicationIds)
+                throws IndexingException {
+            for (String itemId : batch) {
+                BaseIndexData data = this.indexableItems.get(itemId);
+                this.itemLog.trace("Data is: {} ", data);
+                try {
+                    this.itemLog.debug("Trigger action for item: {}, action: {}", itemId, data.getAction());
+                    audit(AuditLog.Event.DISPATCHED, this.transactionId, data);
+                    BaseIndexData action = data instanceof SpilledIndexData ? ((SpilledIndexData) data).load() : data;
+                    processAction(searchIndexer, this.transactionId, action, this.report);
+                    publicationIds.add(data.getPublicationItemId());
+                } finally {
+                    // remove from notification register.
+                    this.itemLog.trace("Removing {} for storageId: {} from register.", itemId, data.getStorageId());
+                    // removing like this may mean that other threads running concurrently
+                    // will not see this change.
+                    // It is expected that one factory will run as Singleton, so this is no problem
+                    // as other factories using the same notification register will not read this entry,
+                    // because they have a different storageId.
+                    // The main reason to remove it here, is so that other configured DAOFactories will not run
+                    // it again.
+                    this.indexableItems.remove(itemId);
+                }
+            }
+        }
+
+        private void fail(Exception e) {
+            if (this.report != null) {
+                this.report.failed(e);
+            }
+            if (!this.failure.compareAndSet(null, e)) {
+                LOG.error("Another batch failed as well: " + e.getLocalizedMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Lazily creates the daemon threads which help the deployer threads dispatch.
+     */
+    private static final class DispatchExecutorHolder {
+        private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "si4t-dispatch-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Commits every publication which had actions in this transaction.
+     * Commits on a shared ConcurrentSearchIndex go through the group commit coordinator.
+     */
+    private void commitPublications(SearchIndex searchIndexer, String transactionId, String storageId,
+                                    Set<String> publicationIds, TransactionReport report) throws IndexingException {
+        GroupCommitCoordinator coordinator = COMMIT_COORDINATORS.get(storageId);
+        for (String pubId : publicationIds) {
+            LOG.debug("Committing Publication Id: {}", pubId);
+            long start = System.nanoTime();
+            Object event = IndexingEvents.begin(IndexingEventKind.INDEXER_COMMIT);
+            boolean failed = true;
+            try {
+                if (coordinator != null && searchIndexer == SHARED_INDEXERS.get(storageId)) {
+                    coordinator.commit(searchIndexer, pubId);
                 } else {
-                    LOG.debug(
-                            "Not processing, this entry is for another factory to process. This factory belongs to {}" +
-                                    " and the transaction belongs to: {}", storageId, data.getStorageId());
+                    searchIndexer.commit(pubId);
+                }
+                failed = false;
+            } finally {
+                IndexingMetrics.record(IndexingStage.COMMIT, storageId, pubId, null, start, failed);
+                IndexingEvents.end(event, transactionId, storageId, pubId, null, null, 0, failed ? "failed" : "ok");
+                if (report != null) {
+                    report.committed(pubId, System.nanoTime() - start);
                 }
             }
         }
     }
 
+    private void commitAfterFailure(SearchIndex searchIndexer, String transactionId, String storageId,
+                                    Set<String> publicationIds, TransactionReport report) {
+        if (searchIndexer == null || publicationIds.isEmpty()) {
+            return;
+        }
+        try {
+            this.commitPublications(searchIndexer, transactionId, storageId, publicationIds, report);
+        } catch (IndexingException | RuntimeException e) {
+            LOG.error("Commit after failed indexing action failed as well: " + e.getLocalizedMessage(), e);
+        }
+    }
+
+    /**
+     * Logs the number of transactions in the register. The pending actions themselves
+     * are available on demand, through the PendingActions and describePendingActions
+     * attributes of the IndexingMetrics MBean.
+     */
     public static void debugLogRegister() {
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Register currently contains:");
-            for (Entry<String, ConcurrentHashMap<String, BaseIndexData>> x : NOTIFICATION_REGISTER.entrySet()) {
-                LOG.debug(x.getKey());
-                for (Entry<String, BaseIndexData> c : x.getValue().entrySet()) {
-                    LOG.trace(c.getKey() + ":: " + c.getValue().toString());
+            LOG.debug("Register currently contains {} transaction(s).", NOTIFICATION_REGISTER.size());
+        }
+    }
+
+    /**
+     * View on the register, for the actions of one storage.
+     */
+    private static final class RegisterView implements PendingActions {
+        private final String storageId;
+
+        private RegisterView(String storageId) {
+            this.storageId = storageId;
+        }
+
+        @Override
+        public Map<String, Long> countByTransaction() {
+            Map<String, Long> counts = new TreeMap<>();
+            for (Entry<String, ConcurrentHashMap<String, BaseIndexData>> transaction :
+                    NOTIFICATION_REGISTER.entrySet()) {
+                long count = 0;
+                for (BaseIndexData data : transaction.getValue().values()) {
+                    if (data.getStorageId().equalsIgnoreCase(this.storageId)) {
+                        count++;
+                    }
+                }
+                if (count > 0) {
+                    counts.put(transaction.getKey(), count);
+                }
+            }
+            return counts;
+        }
+
+        @Override
+        public String describe(int maxActions) {
+            StringBuilder description = new StringBuilder();
+            int described = 0;
+            for (Entry<String, ConcurrentHashMap<String, BaseIndexData>> transaction :
+                    NOTIFICATION_REGISTER.entrySet()) {
+                for (BaseIndexData data : transaction.getValue().values()) {
+                    if (!data.getStorageId().equalsIgnoreCase(this.storageId)) {
+                        continue;
+                    }
+                    if (described++ == Math.min(maxActions, MAX_DESCRIBED_ACTIONS)) {
+                        return description.append("...").toString();
+                    }
+                    description.append(transaction.getKey()).append(": ").append(data).append(Utils.NEWLINE);
                 }
             }
+            return description.toString();
         }
     }
 
     public static void cleanupRegister(String transactionId, String storageId) {
-        LOG.debug("Start clearing register for transaction:" + transactionId);
+        LOG.debug("Start clearing register for transaction: {}", transactionId);
+        // Only left open when the transaction was not indexed.
+        TransactionReports.discard(transactionId, storageId);
+        closeRegisterSpill(transactionId, storageId);
         if (NOTIFICATION_REGISTER.containsKey(transactionId)) {
 
             ConcurrentHashMap<String, BaseIndexData> indexableItems = NOTIFICATION_REGISTER.get(transactionId);
@@ -326,11 +1589,18 @@ public final class SearchIndexProcessor {
                         canClear = false;
                         LOG.info("Not clearing out transaction yet for storageId: {}. " +
                                 "There are items for another storage Id ({})", storageId, data.getStorageId());
+                        break;
                     }
                 }
             }
 
             if (canClear) {
+                if (indexableItems != null) {
+                    // Left over after a failed dispatch, or never dispatched at all.
+                    for (BaseIndexData data : indexableItems.values()) {
+                        audit(AuditLog.Event.DISCARDED, transactionId, data);
+                    }
+                }
                 NOTIFICATION_REGISTER.remove(transactionId);
                 LOG.info("Cleared out transaction with transactionId: {}.", transactionId);
             }
@@ -338,31 +1608,73 @@ public final class SearchIndexProcessor {
         }
     }
 
-    private void processAction(SearchIndex s, ConcurrentHashMap<String, BaseIndexData> actions, String itemId)
-            throws IndexingException {
+    private static void audit(AuditLog.Event event, String transactionId, BaseIndexData data) {
+        AuditLog.record(event, transactionId, data.getStorageId(), data.getUniqueIndexId(),
+                data.getPublicationItemId(), data.getAction(), data.getIndexType());
+    }
 
-        BaseIndexData data = actions.get(itemId);
-        switch (data.getIndexType()) {
-            case BINARY:
-                this.processBinaryAction(s, data);
-                break;
-            case PAGE:
-                this.processItemAction(s, data);
-                break;
-            case COMPONENT_PRESENTATION:
-                this.processItemAction(s, data);
-                break;
+    private void processAction(SearchIndex s, String transactionId, BaseIndexData data, TransactionReport report)
+            throws IndexingException {
+        if (data instanceof BinaryIndexData && data.getAction() != FactoryAction.REMOVE) {
+            TextExtractionStage extraction = TEXT_EXTRACTION_STAGES.get(data.getStorageId());
+            if (extraction != null) {
+                extraction.extract(transactionId, (BinaryIndexData) data, getExtractionCache(data.getStorageId()));
+            }
+        }
+        long start = System.nanoTime();
+        Object event = IndexingEvents.begin(IndexingEventKind.INDEXER_CALL);
+        boolean failed = true;
+        try {
+            switch (data.getIndexType()) {
+                case BINARY:
+                    this.processBinaryAction(s, data);
+                    break;
+                case PAGE:
+                    this.processItemAction(s, data);
+                    break;
+                case COMPONENT_PRESENTATION:
+                    this.processItemAction(s, data);
+                    break;
+            }
+            failed = false;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            IndexingMetrics.record(IndexingStage.INDEXER_CALL, data.getStorageId(), data.getPublicationItemId(),
+                    data.getIndexType(), start, failed);
+            SlowItemLog slowItemLog = SlowItemLogs.get(data.getStorageId());
+            if (slowItemLog != null && slowItemLog.isSlow(IndexingStage.INDEXER_CALL, nanos)) {
+                slowItemLog.add(SlowItem.builder(IndexingStage.INDEXER_CALL, nanos)
+                        .transaction(transactionId)
+                        .item(data.getUniqueIndexId(), data.getPublicationItemId(), data.getIndexType(),
+                                data.getAction())
+                        .payloadSize(data.getPayloadSize())
+                        .fieldCount(data instanceof SearchIndexData ? ((SearchIndexData) data).getFieldSize() : -1)
+                        .failed(failed));
+            }
+            IndexingEvents.end(event, transactionId, data, failed ? "failed" : "ok");
+            audit(failed ? AuditLog.Event.FAILED : AuditLog.Event.INDEXED, transactionId, data);
+            if (report != null) {
+                report.processed(data, failed);
+                report.stage(IndexingStage.INDEXER_CALL, nanos);
+            }
+        }
+        if (data.getIndexType() != IndexType.BINARY) {
+            DirectiveStore store = DIRECTIVE_STORES.get(data.getStorageId());
+            if (store != null) {
+                store.record(data);
+            }
         }
     }
 
     private void processBinaryAction(SearchIndex s, BaseIndexData data) throws IndexingException {
-        LOG.trace("Search Data type is: " + data.getClass().getName());
+        SampledLogger itemLog = getItemLog(SearchIndexProcessor.class, data.getStorageId());
+        itemLog.trace("Search Data type is: {}", data.getClass().getName());
         switch (data.getAction()) {
             case PERSIST:
                 s.addBinaryToIndex((BinaryIndexData) data);
                 break;
             case REMOVE:
-                LOG.debug("Removing!");
+                itemLog.debug("Removing binary: {}", data.getUniqueIndexId());
                 s.removeBinaryFromIndex(data);
                 break;
             case UPDATE:
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t;
+
+/**
+ * SpilledIndexData.
+ * <p/>
+ * Stands in for a SearchIndexData in the notification register after it was written to
+ * the spill segment of its transaction. It only keeps what is needed to register and
+ * route the action; the fields are read back with load().
+ */
+final class SpilledIndexData extends BaseIndexData {
+
+    private final RegisterSpill spill;
+    private final long offset;
+    private final long payloadSize;
+
+    SpilledIndexData(SearchIndexData data, RegisterSpill spill, long offset) {
+        super(data.getAction(), data.getIndexType(), data.getPublicationItemId(), data.getStorageId());
+        this.setUniqueIndexId(data.getUniqueIndexId());
+        this.spill = spill;
+        this.offset = offset;
+        this.payloadSize = data.getPayloadSize();
+    }
+
+    /**
+     * Reads the action back from the spill segment.
+     *
+     * @return the SearchIndexData which was spilled
+     * @throws IndexingException if the segment can not be read
+     */
+    SearchIndexData load() throws IndexingException {
+        return this.spill.read(this.offset);
+    }
+
+    long getOffset() {
+        return this.offset;
+    }
+
+    @Override
+    public long getPayloadSize() {
+        return this.payloadSize;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        return super.getEstimatedSize() + 3 * 8;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + this._action + "," + this._uniqueIndexId + "," + this._itemType + ",spilled@" + this.offset + "]";
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.tridion.storage.si4t;
 
+import java.io.File;
+
 import com.tridion.storage.BinaryContent;
 import com.tridion.storage.services.LocalThreadTransaction;
 
@@ -28,6 +30,30 @@ import com.tridion.storage.services.LocalThreadTransaction;
  */
 public class TridionBinaryProcessor extends TridionBaseItemProcessor
 {
+	/**
+	 * Checks the binary admission policy of the storage, before anything is registered for a binary.
+	 * 
+	 * @param binaryContent
+	 * @param relativePath
+	 * @param storageId
+	 * @return true if the binary should be indexed
+	 */
+	public static boolean isAdmitted(BinaryContent binaryContent, String relativePath, String storageId)
+	{
+		BinaryAdmissionPolicy policy = SearchIndexProcessor.getBinaryAdmissionPolicy(storageId);
+		if (policy == null)
+		{
+			return false;
+		}
+		byte[] content = binaryContent.getContent();
+		BinaryAdmissionPolicy.Decision decision = policy.check(binaryContent.getPublicationId(), relativePath, content == null ? 0 : content.length);
+		if (decision != BinaryAdmissionPolicy.Decision.ADMITTED)
+		{
+			SearchIndexProcessor.getItemLog(TridionBinaryProcessor.class, storageId).debug("Not indexing binary: {} ({})", relativePath, decision);
+			return false;
+		}
+		return true;
+	}
 
 	/**
 	 * Register addition of a Binary item.
@@ -38,9 +64,24 @@ public class TridionBinaryProcessor extends TridionBaseItemProcessor
 	 * @param storageId
 	 */
 	public static void registerAddition(BinaryContent binaryContent, String originalRelativePath, String newRelativePath, String storageId)
+	{
+		registerAddition(binaryContent, originalRelativePath, newRelativePath, storageId, null);
+	}
+
+	/**
+	 * Register addition of a Binary item which was stored to a file.
+	 * 
+	 * @param binaryContent
+	 * @param originalRelativePath
+	 * @param newRelativePath
+	 * @param storageId
+	 * @param contentFile the stored file, or null if the content is not stored on the file system
+	 */
+	public static void registerAddition(BinaryContent binaryContent, String originalRelativePath, String newRelativePath, String storageId, File contentFile)
 	{
 		String indexId = "binary:" + Integer.toString(binaryContent.getPublicationId()) + "-" + Integer.toString(binaryContent.getBinaryId());
-		String fileSize = Integer.toString(binaryContent.getContent().length);
+		byte[] content = binaryContent.getContent();
+		String fileSize = Integer.toString(content.length);
         String fileExtension = Utils.GetBinaryFileExtension(newRelativePath);
 		BinaryIndexData data = new BinaryIndexData(FactoryAction.PERSIST, IndexType.BINARY, Integer.toString(binaryContent.getPublicationId()), storageId);
 
@@ -51,6 +92,9 @@ public class TridionBinaryProcessor extends TridionBaseItemProcessor
 		data.setFileSize(fileSize);
 		data.setFileType(fileExtension);
 		data.setIndexUrl(newRelativePath);
+		// Identical content in other publications gets the same digest.
+		data.setContentDigest(ContentDigest.of(content));
+		data.setContentFile(contentFile);
 		SearchIndexProcessor.registerAction(LocalThreadTransaction.getTransactionId(), data);
 	}	
 }
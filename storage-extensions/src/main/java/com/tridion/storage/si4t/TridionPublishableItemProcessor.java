@@ -32,6 +32,15 @@ import org.xml.sax.SAXException;
 import com.tridion.broker.StorageException;
 import com.tridion.data.CharacterData;
 import com.tridion.data.CharacterDataString;
+import com.tridion.storage.services.LocalThreadTransaction;
+import com.tridion.storage.si4t.jfr.IndexingEventKind;
+import com.tridion.storage.si4t.jfr.IndexingEvents;
+import com.tridion.storage.si4t.metrics.IndexingMetrics;
+import com.tridion.storage.si4t.metrics.IndexingStage;
+import com.tridion.storage.si4t.report.TransactionReports;
+import com.tridion.storage.si4t.slowlog.SlowItem;
+import com.tridion.storage.si4t.slowlog.SlowItemLog;
+import com.tridion.storage.si4t.slowlog.SlowItemLogs;
 
 /**
  * TridionPublishableItemProcessor.
@@ -49,7 +58,8 @@ public class TridionPublishableItemProcessor extends TridionBaseItemProcessor
 	private IndexType indexType;
 	private String publicationId;
 	private String uniqueIndexId;
-	private Logger log = LoggerFactory.getLogger(TridionPublishableItemProcessor.class);
+	private final SampledLogger itemLog;
+	private static final Logger LOG = LoggerFactory.getLogger(TridionPublishableItemProcessor.class);
 
 	public TridionPublishableItemProcessor(String tridionItem, FactoryAction action, IndexType type, String publicationId, String uniqueIndexId, String storageId)
 	{
@@ -59,6 +69,7 @@ public class TridionPublishableItemProcessor extends TridionBaseItemProcessor
 		this.publicationId = publicationId;
 		this.uniqueIndexId = uniqueIndexId;
 		this.storageId = storageId;
+		this.itemLog = SearchIndexProcessor.getItemLog(TridionPublishableItemProcessor.class, storageId);
 	}
 
 	public CharacterDataString processPageSource(CharacterData page) throws StorageException
@@ -66,14 +77,23 @@ public class TridionPublishableItemProcessor extends TridionBaseItemProcessor
 		CharacterDataString c = null;
 		String source = this.tridionItem;
 		this.process();
-		c = new CharacterDataString(page.getPublicationId(), page.getId(), TridionPublishableItemProcessor.removeTags(source));
+		c = new CharacterDataString(page.getPublicationId(), page.getId(), this.strip(source));
 		return c;
 	}
 
 	public String processComponentPresentationSource() throws StorageException
 	{
 		this.process();
-		return removeTags(this.tridionItem);
+		return this.strip(this.tridionItem);
+	}
+
+	private String strip(String source)
+	{
+		long start = System.nanoTime();
+		String stripped = removeTags(source);
+		IndexingMetrics.record(IndexingStage.STRIP, this.storageId, this.publicationId, this.indexType, start, false);
+		TransactionReports.record(IndexingStage.STRIP, LocalThreadTransaction.getTransactionId(), this.storageId, start);
+		return stripped;
 	}
 
 	private void process() throws StorageException
@@ -83,17 +103,17 @@ public class TridionPublishableItemProcessor extends TridionBaseItemProcessor
 			SearchIndexData data = this.getSearchDataDirectives();
 			if (data == null)
 			{
-				log.info("No search data found.");
+				this.itemLog.info("No search data found for: {}", uniqueIndexId);
 				this.RegisterRemovalOnNoIndexData();
 				return;
 			}
 			if (data.getFieldSize() == 0)
 			{
-				log.info("No fields found to index.");
+				this.itemLog.info("No fields found to index for: {}", uniqueIndexId);
 				this.RegisterRemovalOnNoIndexData();
 				return;
 			}
-			registerItemAddition(data, log);
+			registerItemAddition(data, LOG);
 		}
 		catch (SAXException e)
 		{
@@ -111,14 +131,35 @@ public class TridionPublishableItemProcessor extends TridionBaseItemProcessor
 
 	private void RegisterRemovalOnNoIndexData()
 	{
-		log.info("Registering removal attempt for: " + uniqueIndexId);
-		registerItemRemoval(uniqueIndexId, indexType, log, publicationId, storageId);
+		this.itemLog.info("Registering removal attempt for: {}", uniqueIndexId);
+		registerItemRemoval(uniqueIndexId, indexType, LOG, publicationId, storageId);
 	}
 
 	private SearchIndexData getSearchDataDirectives() throws SAXException, IOException, ParserConfigurationException
+	{
+		long start = System.nanoTime();
+		Object event = IndexingEvents.begin(IndexingEventKind.DIRECTIVE_EXTRACT);
+		String searchDataXml = this.findSearchDataXml();
+		IndexingMetrics.record(IndexingStage.EXTRACT, this.storageId, this.publicationId, this.indexType, start, false);
+		this.logIfSlow(IndexingStage.EXTRACT, System.nanoTime() - start, searchDataXml == null ? -1 : searchDataXml.length(), -1, false);
+		TransactionReports.record(IndexingStage.EXTRACT, LocalThreadTransaction.getTransactionId(), this.storageId, start);
+		IndexingEvents.end(event, LocalThreadTransaction.getTransactionId(), this.storageId, this.publicationId, this.uniqueIndexId,
+				String.valueOf(this.action), this.tridionItem.length(), searchDataXml == null ? "none" : "found");
+		if (searchDataXml == null)
+		{
+			return null;
+		}
+		this.itemLog.debug("Search Directive string: {}", searchDataXml);
+		IndexFieldSet fields = this.getSearchDataFields(searchDataXml);
+		SearchIndexData data = new SearchIndexData(this.action, this.indexType, this.publicationId, this.storageId, fields);
+		data.setUniqueIndexId(this.uniqueIndexId);
+		return data;
+	}
+
+	private String findSearchDataXml()
 	{
 		Matcher m = SEARCH_DIRECTIVE_PATTERN.matcher(this.tridionItem);
-		log.info("Finding search directives.");
+		this.itemLog.debug("Finding search directives.");
 		while (m.find())
 		{
 			if (m.groupCount() == 1)
@@ -126,16 +167,76 @@ public class TridionPublishableItemProcessor extends TridionBaseItemProcessor
 				String searchDataXml = m.group(1).toString();
 				if (!Utils.StringIsNullOrEmpty(searchDataXml))
 				{
-					log.debug("Search Directive string: " + searchDataXml);
-					Document d = getXmlDocumentForSearchData(searchDataXml);
-					return registerSearchDataFields(d);
+					return searchDataXml;
 				}
-				log.info("No searchDataXml markers found.");
+				this.itemLog.debug("No searchDataXml markers found.");
 			}
 		}
 		return null;
 	}
 
+	/*
+	 * Identical directives are parsed only once as long as they stay in the
+	 * directive cache of this storage.
+	 */
+	private IndexFieldSet getSearchDataFields(String searchDataXml) throws SAXException, IOException, ParserConfigurationException
+	{
+		DirectiveParseCache cache = SearchIndexProcessor.getDirectiveCache(this.storageId);
+		if (cache == null)
+		{
+			return this.parseSearchData(searchDataXml);
+		}
+
+		DirectiveParseCache.Key key = DirectiveParseCache.keyOf(searchDataXml);
+		IndexFieldSet fields = cache.get(key);
+		if (fields == null)
+		{
+			fields = this.parseSearchData(searchDataXml);
+			cache.put(key, fields);
+		}
+		else
+		{
+			this.itemLog.debug("Using cached search data fields for: {}", key);
+		}
+		return fields;
+	}
+
+	private IndexFieldSet parseSearchData(String searchDataXml) throws SAXException, IOException, ParserConfigurationException
+	{
+		long start = System.nanoTime();
+		Object event = IndexingEvents.begin(IndexingEventKind.FIELD_PARSE);
+		IndexFieldSet fields = null;
+		try
+		{
+			fields = parseSearchDataFields(getXmlDocumentForSearchData(searchDataXml));
+			return fields;
+		}
+		finally
+		{
+			boolean failed = fields == null;
+			IndexingMetrics.record(IndexingStage.PARSE, this.storageId, this.publicationId, this.indexType, start, failed);
+			this.logIfSlow(IndexingStage.PARSE, System.nanoTime() - start, searchDataXml.length(), failed ? -1 : fields.size(), failed);
+			TransactionReports.record(IndexingStage.PARSE, LocalThreadTransaction.getTransactionId(), this.storageId, start);
+			IndexingEvents.end(event, LocalThreadTransaction.getTransactionId(), this.storageId, this.publicationId, this.uniqueIndexId,
+					String.valueOf(this.action), searchDataXml.length(), failed ? "failed" : "ok");
+		}
+	}
+
+	private void logIfSlow(IndexingStage stage, long nanos, long payloadSize, int fieldCount, boolean failed)
+	{
+		SlowItemLog slowItemLog = SlowItemLogs.get(this.storageId);
+		if (slowItemLog != null && slowItemLog.isSlow(stage, nanos))
+		{
+			slowItemLog.add(SlowItem.builder(stage, nanos)
+					.transaction(LocalThreadTransaction.getTransactionId())
+					.item(this.uniqueIndexId, this.publicationId, this.indexType, this.action)
+					.itemSize(this.tridionItem.length())
+					.payloadSize(payloadSize)
+					.fieldCount(fieldCount)
+					.failed(failed));
+		}
+	}
+
 	private Document getXmlDocumentForSearchData(String searchDataXml) throws SAXException, IOException, ParserConfigurationException
 	{
 		return XMLHelpers.getXMLDocumentFromString(searchDataXml);
@@ -147,10 +248,9 @@ public class TridionPublishableItemProcessor extends TridionBaseItemProcessor
 	 * the 'id' field should always be present.
 	 */
 
-	private SearchIndexData registerSearchDataFields(Document searchDataDocument)
+	private IndexFieldSet parseSearchDataFields(Document searchDataDocument)
 	{
-		SearchIndexData data = new SearchIndexData(this.action, this.indexType, this.publicationId, this.storageId);
-		data.setUniqueIndexId(this.uniqueIndexId);
+		IndexFieldSet.Builder fields = IndexFieldSet.builder();
 		NodeList nodeList = searchDataDocument.getFirstChild().getChildNodes();
 		for (int i = 0; i < nodeList.getLength(); i++)
 		{
@@ -158,7 +258,7 @@ public class TridionPublishableItemProcessor extends TridionBaseItemProcessor
 
 			if (n.getNodeName().equalsIgnoreCase("id"))
 			{
-				log.trace("NOT Adding: " + n.getNodeName() + "::" + n.getTextContent());
+				this.itemLog.trace("NOT Adding: {}::{}", n.getNodeName(), n.getTextContent());
 			}
 			else if (n.getNodeName().equalsIgnoreCase("custom"))
 			{
@@ -168,8 +268,8 @@ public class TridionPublishableItemProcessor extends TridionBaseItemProcessor
 					for (int j = 0; j < customNodes.getLength(); j++)
 					{
 						Node customNode = customNodes.item(j);
-						log.trace("Adding: " + customNode.getNodeName() + "::" + customNode.getTextContent());
-						data.addIndexField(customNode.getNodeName(), customNode.getTextContent());
+						this.itemLog.trace("Adding: {}::{}", customNode.getNodeName(), customNode.getTextContent());
+						fields.add(customNode.getNodeName(), customNode.getTextContent());
 					}
 				}
 			}
@@ -179,19 +279,32 @@ public class TridionPublishableItemProcessor extends TridionBaseItemProcessor
 				{
 					if (!n.getFirstChild().hasChildNodes())
 					{
-						log.trace("Adding: " + n.getNodeName() + "::" + n.getTextContent());
-						data.addIndexField(n.getNodeName(), n.getTextContent());
+						String value = n.getTextContent();
+						this.itemLog.trace("Adding: {}::{}", n.getNodeName(), value);
+						fields.add(n.getNodeName(), value);
 					}
 					else
 					{
-						log.trace("Adding: " + n.getNodeName() + "::" + XMLHelpers.nodeToString(n, false));
-						data.addIndexField(n.getNodeName(), XMLHelpers.nodeToString(n, false));
+						String value = XMLHelpers.nodeToString(n, false);
+						this.itemLog.trace("Adding: {}::{}", n.getNodeName(), value);
+						fields.add(n.getNodeName(), value);
 					}
 				}
 			}
 		}
 
-		return data;
+		return fields.build();
+	}
+
+	/**
+	 * Checks whether an item source still contains an INDEX-DATA directive.
+	 * 
+	 * @param tridionItem the item source
+	 * @return true if a directive is found
+	 */
+	public static boolean hasIndexData(String tridionItem)
+	{
+		return tridionItem != null && SEARCH_DIRECTIVE_PATTERN.matcher(tridionItem).find();
 	}
 
 	public static String removeTags(String tridionItem)
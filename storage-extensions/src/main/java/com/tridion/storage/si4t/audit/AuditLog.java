@@ -0,0 +1,332 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.audit;
+
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.JsonWriter;
+import com.tridion.storage.si4t.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * AuditLog.
+ * <p/>
+ * Fixed size, lock-free ring buffer of the most recent index actions: registrations,
+ * skips, dispatches and their results. It answers questions such as what happened to
+ * a page which never showed up in the index, without logging every item.
+ * <p/>
+ * All slots are allocated up front, and an event only stores references to objects
+ * which already exist, so recording an event does not allocate. Writers take a
+ * sequence number with an atomic increment, and claim its slot with a compare-and-set
+ * on the sequence number the slot carries, so two writers a full lap apart never fill
+ * the same slot at the same time; the older of the two events is dropped. Readers
+ * check the sequence number before and after copying a slot, to skip slots which are
+ * being overwritten.
+ * <p/>
+ * The log is shared by all storages, and is published as an MXBean named
+ * com.tridion.storage.si4t:type=AuditLog.
+ */
+public final class AuditLog implements AuditLogMXBean {
+
+    /**
+     * What happened to an action.
+     */
+    public enum Event {
+        /**
+         * The action was registered for the transaction.
+         */
+        REGISTERED,
+        /**
+         * The action replaced an earlier action for the same item in the transaction.
+         */
+        REPLACED,
+        /**
+         * The action was ignored, as the transaction already had an action for the item.
+         */
+        IGNORED,
+        /**
+         * The action was left for the storage it belongs to.
+         */
+        SKIPPED,
+        /**
+         * The action is being sent to the indexer.
+         */
+        DISPATCHED,
+        /**
+         * The indexer processed the action.
+         */
+        INDEXED,
+        /**
+         * The indexer failed to process the action.
+         */
+        FAILED,
+        /**
+         * The action was removed from the register without being sent to the indexer.
+         */
+        DISCARDED
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(AuditLog.class);
+    private static final String OBJECT_NAME = "com.tridion.storage.si4t:type=AuditLog";
+    private static final Event[] EVENTS = Event.values();
+    private static final int UNKNOWN = -1;
+    private static final int WRITING = -2;
+
+    private static volatile AuditLog current;
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private AuditLog(int size) {
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            this.slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Sets the capacity of the log, rounded up to a power of two. A new, empty log
+     * is created when the capacity changes. A capacity of 0 disables the log.
+     *
+     * @param capacity the number of events to keep
+     */
+    public static synchronized void configure(int capacity) {
+        AuditLog log = current;
+        if (capacity <= 0) {
+            current = null;
+            unregisterMBean();
+            return;
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        if (log == null || log.slots.length != size) {
+            log = new AuditLog(size);
+            current = log;
+            registerMBean(log);
+        }
+    }
+
+    /**
+     * Gets the log.
+     *
+     * @return the log, or null if it is disabled
+     */
+    public static AuditLog get() {
+        return current;
+    }
+
+    /**
+     * Records an event, when the log is enabled.
+     *
+     * @param event         the event
+     * @param transactionId the transaction id
+     * @param storageId     the storage Id
+     * @param uniqueIndexId the unique index id of the item
+     * @param publicationId the publication id
+     * @param action        the action
+     * @param type          the IndexType
+     */
+    public static void record(Event event, String transactionId, String storageId, String uniqueIndexId,
+                              String publicationId, FactoryAction action, IndexType type) {
+        AuditLog log = current;
+        if (log != null) {
+            log.add(event, transactionId, storageId, uniqueIndexId, publicationId, action, type);
+        }
+    }
+
+    void add(Event event, String transactionId, String storageId, String uniqueIndexId, String publicationId,
+             FactoryAction action, IndexType type) {
+        long index = this.sequence.getAndIncrement();
+        Slot slot = this.slots[(int) (index & this.mask)];
+        if (!slot.claim(index)) {
+            return;
+        }
+        slot.timestamp = System.currentTimeMillis();
+        slot.event = event.ordinal();
+        slot.transactionId = transactionId;
+        slot.storageId = storageId;
+        slot.uniqueIndexId = uniqueIndexId;
+        slot.publicationId = publicationId;
+        slot.action = action;
+        slot.type = type;
+        slot.sequence = index;
+    }
+
+    @Override
+    public int getCapacity() {
+        return this.slots.length;
+    }
+
+    @Override
+    public long getEventCount() {
+        return this.sequence.get();
+    }
+
+    @Override
+    public String findEvents(String uniqueIndexId) {
+        StringBuilder description = new StringBuilder();
+        Slot copy = new Slot();
+        long last = this.sequence.get();
+        for (long index = Math.max(0, last - this.slots.length); index < last; index++) {
+            if (this.copy(index, copy) && uniqueIndexId != null && uniqueIndexId.equals(copy.uniqueIndexId)) {
+                description.append(copy).append(Utils.NEWLINE);
+            }
+        }
+        return description.toString();
+    }
+
+    @Override
+    public int dumpToFile(String file) throws IOException {
+        Path path = Paths.get(file).toAbsolutePath();
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        int written = 0;
+        Slot copy = new Slot();
+        JsonWriter json = new JsonWriter();
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            long last = this.sequence.get();
+            for (long index = Math.max(0, last - this.slots.length); index < last; index++) {
+                if (this.copy(index, copy)) {
+                    out.write(copy.toJson(json.reset()));
+                    out.write('\n');
+                    written++;
+                }
+            }
+        }
+        LOG.info("Wrote {} audit event(s) to: {}", written, path);
+        return written;
+    }
+
+    // Copies the event with the given sequence number, if it was not overwritten.
+    private boolean copy(long index, Slot copy) {
+        Slot slot = this.slots[(int) (index & this.mask)];
+        if (slot.sequence != index) {
+            return false;
+        }
+        copy.timestamp = slot.timestamp;
+        copy.event = slot.event;
+        copy.transactionId = slot.transactionId;
+        copy.storageId = slot.storageId;
+        copy.uniqueIndexId = slot.uniqueIndexId;
+        copy.publicationId = slot.publicationId;
+        copy.action = slot.action;
+        copy.type = slot.type;
+        copy.sequence = index;
+        return slot.sequence == index;
+    }
+
+    private static void registerMBean(AuditLog log) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(log, name);
+            LOG.info("Registered audit log MBean: {}", name);
+        } catch (JMException | RuntimeException e) {
+            LOG.warn("Could not register audit log MBean.", e);
+        }
+    }
+
+    private static void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException | RuntimeException e) {
+            LOG.warn("Could not unregister audit log MBean.", e);
+        }
+    }
+
+    /*
+     * The fields are volatile, so that a reader which sees the same sequence number
+     * before and after copying them also saw the values written for that sequence
+     * number. The sequence is written last by the writer and read first by the reader.
+     */
+    private static final class Slot {
+        private static final AtomicLongFieldUpdater<Slot> SEQUENCE =
+                AtomicLongFieldUpdater.newUpdater(Slot.class, "sequence");
+
+        private volatile long sequence = UNKNOWN;
+        private volatile long timestamp;
+        private volatile int event;
+        private volatile String transactionId;
+        private volatile String storageId;
+        private volatile String uniqueIndexId;
+        private volatile String publicationId;
+        private volatile FactoryAction action;
+        private volatile IndexType type;
+
+        // Marks the slot as being written for the given sequence number. Waits while
+        // another writer fills the slot, and fails if a newer event already took it.
+        private boolean claim(long index) {
+            while (true) {
+                long current = this.sequence;
+                if (current == WRITING) {
+                    Thread.yield();
+                } else if (current >= index) {
+                    return false;
+                } else if (SEQUENCE.compareAndSet(this, current, WRITING)) {
+                    return true;
+                }
+            }
+        }
+
+        private String toJson(JsonWriter json) {
+            return json.beginObject()
+                    .field("sequence", this.sequence)
+                    .field("timestamp", this.timestamp)
+                    .field("event", EVENTS[this.event].name())
+                    .field("uniqueIndexId", this.uniqueIndexId)
+                    .field("transactionId", this.transactionId)
+                    .field("storageId", this.storageId)
+                    .field("publicationId", this.publicationId)
+                    .field("action", this.action == null ? null : this.action.name())
+                    .field("indexType", this.type == null ? null : this.type.name())
+                    .endObject()
+                    .toString();
+        }
+
+        @Override
+        public String toString() {
+            return Instant.ofEpochMilli(this.timestamp) + " " + EVENTS[this.event] + " " + this.action + " " +
+                    this.type + ", transaction: " + this.transactionId + ", storage: " + this.storageId +
+                    ", publication: " + this.publicationId;
+        }
+    }
+}
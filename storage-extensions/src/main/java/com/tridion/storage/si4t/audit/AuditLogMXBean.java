@@ -0,0 +1,60 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.audit;
+
+import java.io.IOException;
+
+/**
+ * AuditLogMXBean.
+ * <p/>
+ * JMX view on the audit log of recent index actions.
+ */
+public interface AuditLogMXBean {
+
+    /**
+     * Gets the number of events the log can hold.
+     *
+     * @return the capacity
+     */
+    int getCapacity();
+
+    /**
+     * Gets the number of events recorded since the log was created, including those
+     * which were overwritten.
+     *
+     * @return the count
+     */
+    long getEventCount();
+
+    /**
+     * Describes the events of an item which are still in the log, oldest first.
+     *
+     * @param uniqueIndexId the unique index id, for instance tcm:5-1000-64
+     * @return one line per event
+     */
+    String findEvents(String uniqueIndexId);
+
+    /**
+     * Writes all events in the log to a file, as JSON lines, oldest first.
+     *
+     * @param file the file, which is overwritten
+     * @return the number of events written
+     * @throws IOException if the file can not be written
+     */
+    int dumpToFile(String file) throws IOException;
+}
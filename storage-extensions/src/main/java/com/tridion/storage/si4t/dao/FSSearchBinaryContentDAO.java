@@ -16,15 +16,14 @@
 package com.tridion.storage.si4t.dao;
 
 import com.tridion.broker.StorageException;
-import com.tridion.configuration.Configuration;
 import com.tridion.configuration.ConfigurationException;
 import com.tridion.storage.BinaryContent;
 import com.tridion.storage.filesystem.FSBinaryContentDAO;
 import com.tridion.storage.filesystem.FSEntityManager;
 import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.SampledLogger;
 import com.tridion.storage.si4t.SearchIndexProcessor;
 import com.tridion.storage.si4t.TridionBinaryProcessor;
-import com.tridion.storage.si4t.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,11 +37,9 @@ import java.io.File;
 public class FSSearchBinaryContentDAO extends FSBinaryContentDAO
 {
 	private static final Logger LOG = LoggerFactory.getLogger(FSSearchBinaryContentDAO.class);
-	private static final String DOC_EXTENSIONS_ATTRIBUTE = "DocExtensions";
-	private static final String INDEXER_NODE = "Indexer";
-	private String[] docExtensionsToIndex = null;
-	private Configuration configuration;
+	private final SampledLogger itemLog;
 	private String storageId;
+	private File storageLocation;
 	
 	public FSSearchBinaryContentDAO(String storageId, String storageName, File storageLocation, FSEntityManager entityManager) throws ConfigurationException
 	{
@@ -50,9 +47,9 @@ public class FSSearchBinaryContentDAO extends FSBinaryContentDAO
 
 		LOG.trace("FSSearchBinaryContentDAO init. (EM)");
 
-		this.configuration = SearchIndexProcessor.getIndexerConfiguration(storageId);
 		this.storageId = storageId;
-		this.setIndexableFileExtensions();
+		this.itemLog = SearchIndexProcessor.getItemLog(FSSearchBinaryContentDAO.class, storageId);
+		this.storageLocation = storageLocation;
 
 	}
 
@@ -60,29 +57,11 @@ public class FSSearchBinaryContentDAO extends FSBinaryContentDAO
 	{
 		super(storageId, storageName, storageLocation);
 		this.storageId = storageId;
+		this.itemLog = SearchIndexProcessor.getItemLog(FSSearchBinaryContentDAO.class, storageId);
+		this.storageLocation = storageLocation;
 		LOG.trace("FSSearchBinaryContentDAO init.");
 	}
 	
-	private void setIndexableFileExtensions() throws ConfigurationException
-	{
-		if (configuration != null)
-		{
-			LOG.debug("Configuration: " + configuration.toString());
-			String extensions = configuration.getChild(INDEXER_NODE).getAttribute(DOC_EXTENSIONS_ATTRIBUTE);
-			if (!Utils.StringIsNullOrEmpty(extensions))
-			{
-				if (extensions.indexOf(",") > 0)
-				{
-					this.docExtensionsToIndex = extensions.split(",");
-				}
-				else
-				{
-					this.docExtensionsToIndex = new String[] { extensions };
-				}
-			}
-		}
-	}
-	
 	/* (non-Javadoc)
 	 * @see com.tridion.storage.filesystem.FSBinaryContentDAO#create(com.tridion.storage.BinaryContent, java.lang.String)
 	 */
@@ -91,10 +70,10 @@ public class FSSearchBinaryContentDAO extends FSBinaryContentDAO
 	{
 		super.create(binaryContent, relativePath);		
 
-		if (Utils.StringArrayContains(docExtensionsToIndex, Utils.GetBinaryFileExtension(relativePath)))
+		if (TridionBinaryProcessor.isAdmitted(binaryContent, relativePath, this.storageId))
 		{
-			LOG.info("Found a binary to index (Create): " + relativePath);
-			TridionBinaryProcessor.registerAddition(binaryContent, relativePath, relativePath, this.storageId);
+			this.itemLog.info("Found a binary to index (Create): {}", relativePath);
+			TridionBinaryProcessor.registerAddition(binaryContent, relativePath, relativePath, this.storageId, this.getStoredFile(relativePath));
 		}
 	}
 
@@ -105,17 +84,23 @@ public class FSSearchBinaryContentDAO extends FSBinaryContentDAO
 	public void update(BinaryContent binaryContent, String originalRelativePath, String newRelativePath) throws StorageException
 	{
 		super.update(binaryContent, originalRelativePath, newRelativePath);
-		LOG.info("Checking update for: " + originalRelativePath);
+		this.itemLog.debug("Checking update for: {}", originalRelativePath);
 		
-		String fileExtension = Utils.GetBinaryFileExtension(newRelativePath);
-		
-		if (Utils.StringArrayContains(docExtensionsToIndex,fileExtension.toLowerCase()))
+		if (TridionBinaryProcessor.isAdmitted(binaryContent, newRelativePath, this.storageId))
 		{
-			LOG.info("Found a binary to index (Update): " + newRelativePath);
-			TridionBinaryProcessor.registerAddition(binaryContent, originalRelativePath, newRelativePath, this.storageId);
+			this.itemLog.info("Found a binary to index (Update): {}", newRelativePath);
+			TridionBinaryProcessor.registerAddition(binaryContent, originalRelativePath, newRelativePath, this.storageId, this.getStoredFile(newRelativePath));
 		}
 	}
 	
+	/*
+	 * Text extraction streams from this file rather than from the content in memory.
+	 */
+	private File getStoredFile(String relativePath)
+	{
+		return this.storageLocation == null ? null : new File(this.storageLocation, relativePath);
+	}
+
 	/* (non-Javadoc)
 	 * @see com.tridion.storage.filesystem.FSBinaryContentDAO#remove(int, int, java.lang.String, java.lang.String)
 	 */
@@ -17,15 +17,14 @@ package com.tridion.storage.si4t.dao;
 
 
 import com.tridion.broker.StorageException;
-import com.tridion.configuration.Configuration;
 import com.tridion.configuration.ConfigurationException;
 import com.tridion.storage.BinaryContent;
 import com.tridion.storage.dao.BinaryContentDAO;
 import com.tridion.storage.persistence.JPABinaryContentDAO;
 import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.SampledLogger;
 import com.tridion.storage.si4t.SearchIndexProcessor;
 import com.tridion.storage.si4t.TridionBinaryProcessor;
-import com.tridion.storage.si4t.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Scope;
@@ -44,53 +43,25 @@ import javax.persistence.EntityManagerFactory;
 public class JPASearchBinaryContentDAO extends JPABinaryContentDAO implements BinaryContentDAO
 {
 	private static final Logger LOG = LoggerFactory.getLogger(JPASearchBinaryContentDAO.class);
-	private static final String DOC_EXTENSIONS_ATTRIBUTE = "DocExtensions";
-	private static final String INDEXER_NODE = "Indexer";
-	private String[] docExtensionsToIndex = null;
-	private Configuration configuration;
+	private final SampledLogger itemLog;
 	private String storageId;
 	
 	public JPASearchBinaryContentDAO(String storageId, EntityManagerFactory entityManagerFactory, EntityManager entityManager, String storageName) throws ConfigurationException
 	{
 		super(storageId, entityManagerFactory, entityManager, storageName);
 		this.storageId = storageId;
+		this.itemLog = SearchIndexProcessor.getItemLog(JPASearchBinaryContentDAO.class, storageId);
 		LOG.trace("JPASearchBinaryContentDAO init. (EM)");
-
-		this.configuration = SearchIndexProcessor.getIndexerConfiguration(storageId);
-		this.setIndexableFileExtensions();
-
 	}
 
 	public JPASearchBinaryContentDAO(String storageId, EntityManagerFactory entityManagerFactory, String storageName)
 	{
 		super(storageId, entityManagerFactory, storageName);
 		this.storageId = storageId;
+		this.itemLog = SearchIndexProcessor.getItemLog(JPASearchBinaryContentDAO.class, storageId);
 		LOG.trace("JPASearchBinaryContentDAO init.");
 	}
 
-	private void setIndexableFileExtensions() throws ConfigurationException
-	{
-		if (configuration != null)
-		{
-			LOG.debug("Configuration: " + configuration.toString());
-			String extensions = configuration.getChild(INDEXER_NODE).getAttribute(DOC_EXTENSIONS_ATTRIBUTE);
-			if (!Utils.StringIsNullOrEmpty(extensions))
-			{
-				if (extensions.indexOf(",") > 0)
-				{
-					this.docExtensionsToIndex = extensions.split(",");
-				}
-				else
-				{
-					this.docExtensionsToIndex = new String[] { extensions };
-				}
-			}
-		}
-	}
-
-
-
-
 	/* (non-Javadoc)
 	 * @see com.tridion.storage.persistence.JPABinaryContentDAO#create(com.tridion.storage.BinaryContent, java.lang.String)
 	 */
@@ -99,9 +70,9 @@ public class JPASearchBinaryContentDAO extends JPABinaryContentDAO implements Bi
 	{
 		super.create(binaryContent, relativePath);
 
-		if (Utils.StringArrayContains(docExtensionsToIndex, Utils.GetBinaryFileExtension(relativePath)))
+		if (TridionBinaryProcessor.isAdmitted(binaryContent, relativePath, this.storageId))
 		{
-			LOG.info("Found a binary to index (Create): " + relativePath);
+			this.itemLog.info("Found a binary to index (Create): {}", relativePath);
 			TridionBinaryProcessor.registerAddition(binaryContent, relativePath, relativePath, this.storageId);
 		}
 	}
@@ -123,15 +94,11 @@ public class JPASearchBinaryContentDAO extends JPABinaryContentDAO implements Bi
 	public void update(BinaryContent binaryContent, String originalRelativePath, String newRelativePath) throws StorageException
 	{
 		super.update(binaryContent, originalRelativePath, newRelativePath);
-		LOG.info("Checking update for: " + originalRelativePath);
+		this.itemLog.debug("Checking update for: {}", originalRelativePath);
 		
-		String fileExtension = Utils.GetBinaryFileExtension(newRelativePath);
-
-
-
-		if (Utils.StringArrayContains(docExtensionsToIndex,fileExtension.toLowerCase()))
+		if (TridionBinaryProcessor.isAdmitted(binaryContent, newRelativePath, this.storageId))
 		{
-			LOG.info("Found a binary to index (Update): " + newRelativePath);
+			this.itemLog.info("Found a binary to index (Update): {}", newRelativePath);
 			TridionBinaryProcessor.registerAddition(binaryContent, originalRelativePath, newRelativePath, this.storageId);
 		}
 	}
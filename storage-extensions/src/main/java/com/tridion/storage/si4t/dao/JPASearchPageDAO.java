@@ -101,7 +101,7 @@ public class JPASearchPageDAO extends JPAPageDAO implements PageDAO
 	@Override
 	public void update(CharacterData page, String originalRelativePath, String newRelativePath) throws StorageException
 	{
-		LOG.debug("Update. Orgpath=" + originalRelativePath);
+		LOG.debug("Update. Orgpath={}", originalRelativePath);
 		
 		TridionPublishableItemProcessor tp;
 		try
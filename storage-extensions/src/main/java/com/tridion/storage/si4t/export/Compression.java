@@ -0,0 +1,75 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression.
+ * <p/>
+ * Compression of export segments. ZSTD needs zstd-jni (com.github.luben:zstd-jni)
+ * on the deployer classpath; it is loaded reflectively so it stays an optional dependency.
+ */
+public enum Compression {
+    NONE(""),
+    GZIP(".gz"),
+    ZSTD(".zst");
+
+    private static final String ZSTD_STREAM_CLASS = "com.github.luben.zstd.ZstdOutputStream";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String extension;
+
+    Compression(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Gets the file extension to append to sealed segments.
+     *
+     * @return the extension, including the dot
+     */
+    public String getExtension() {
+        return this.extension;
+    }
+
+    /**
+     * Wraps a raw output stream.
+     *
+     * @param out the stream to write compressed data to
+     * @return the compressing stream
+     * @throws IOException if the compressor is not available
+     */
+    OutputStream wrap(OutputStream out) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPOutputStream(out, BUFFER_SIZE);
+            case ZSTD:
+                try {
+                    return (OutputStream) Class.forName(ZSTD_STREAM_CLASS)
+                            .getConstructor(OutputStream.class)
+                            .newInstance(out);
+                } catch (ReflectiveOperationException e) {
+                    throw new IOException("ZSTD compression requires zstd-jni on the classpath.", e);
+                }
+            default:
+                return out;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.export;
+
+/**
+ * ExportSettings.
+ * <p/>
+ * Settings of a file export location, read from the Indexer configuration node.
+ */
+final class ExportSettings {
+
+    /**
+     * Layout of the export records.
+     */
+    enum Format {
+        /**
+         * One self describing record per line: {"action":"add","id":..,"fields":{..}}.
+         */
+        NDJSON,
+        /**
+         * The OpenSearch / Elasticsearch bulk API format: an action line, followed by the
+         * document line for additions: {"id":..,"publicationid":..,"fields":{..}}.
+         */
+        OPENSEARCH
+    }
+
+    final Format format;
+    final Compression compression;
+    final long segmentMaxBytes;
+    final long segmentMaxAge;
+
+    ExportSettings(Format format, Compression compression, long segmentMaxBytes, long segmentMaxAge) {
+        this.format = format;
+        this.compression = compression;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.segmentMaxAge = segmentMaxAge;
+    }
+}
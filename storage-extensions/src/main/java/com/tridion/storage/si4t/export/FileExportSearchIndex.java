@@ -0,0 +1,285 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.export;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationException;
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.BinaryIndexData;
+import com.tridion.storage.si4t.ConcurrentSearchIndex;
+import com.tridion.storage.si4t.ExtractedText;
+import com.tridion.storage.si4t.IndexerAttributes;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.JsonWriter;
+import com.tridion.storage.si4t.SearchIndexData;
+import com.tridion.storage.si4t.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FileExportSearchIndex.
+ * <p/>
+ * SearchIndex implementation which does not talk to a search engine, but writes all
+ * index actions to NDJSON files for offline bulk loading, for instance during a full
+ * rebuild. Each publication gets its own directory with rolling segment files and a
+ * manifest. A commit seals the current segment of the publication.
+ * <p/>
+ * Configure it in cd_storage_conf.xml:
+ * <pre>
+ * &lt;Indexer Class="com.tridion.storage.si4t.export.FileExportSearchIndex"
+ *          ExportLocation="/var/si4t/export"
+ *          Format="ndjson"
+ *          Compression="gzip"
+ *          SegmentMaxBytes="67108864"
+ *          SegmentMaxAge="300000"
+ *          DocExtensions="pdf,docx"/&gt;
+ * </pre>
+ * Format is either ndjson or opensearch (bulk API). Compression is none, gzip or zstd.
+ * SegmentMaxBytes is measured before compression, SegmentMaxAge is in milliseconds; both
+ * must be positive. A segment is also sealed when it reaches its maximum age without
+ * further writes. The fields of pages and component presentations are nested in a
+ * "fields" object, so they can not clash with the id, publicationid and indextype
+ * properties. Binaries are exported with their metadata only.
+ */
+public class FileExportSearchIndex implements ConcurrentSearchIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileExportSearchIndex.class);
+    private static final String INDEXER_NODE = "Indexer";
+    private static final String EXPORT_LOCATION_ATTRIBUTE = "ExportLocation";
+    private static final String FORMAT_ATTRIBUTE = "Format";
+    private static final String COMPRESSION_ATTRIBUTE = "Compression";
+    private static final String SEGMENT_MAX_BYTES_ATTRIBUTE = "SegmentMaxBytes";
+    private static final String SEGMENT_MAX_AGE_ATTRIBUTE = "SegmentMaxAge";
+    private static final long ROLL_CHECK_INTERVAL = 1000;
+
+    // Writers are shared by all instances, as a segment file can only have one writer.
+    private static final ConcurrentHashMap<Path, SegmentWriter> WRITERS = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(FileExportSearchIndex::sealAll, "si4t-export-shutdown"));
+        ScheduledExecutorService roller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "si4t-export-roll");
+            thread.setDaemon(true);
+            return thread;
+        });
+        roller.scheduleWithFixedDelay(FileExportSearchIndex::rollAll, ROLL_CHECK_INTERVAL, ROLL_CHECK_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private Path location;
+    private ExportSettings settings;
+
+    public FileExportSearchIndex() {
+    }
+
+    FileExportSearchIndex(Path location, ExportSettings settings) {
+        this.location = location.toAbsolutePath().normalize();
+        this.settings = settings;
+    }
+
+    @Override
+    public void configure(Configuration configuration) throws ConfigurationException {
+        Configuration indexerConfiguration = configuration.getChild(INDEXER_NODE);
+        String exportLocation = IndexerAttributes.getString(indexerConfiguration, EXPORT_LOCATION_ATTRIBUTE, null);
+        if (Utils.StringIsNullOrEmpty(exportLocation)) {
+            throw new ConfigurationException("Please set the ExportLocation attribute for the file export indexer.");
+        }
+        this.location = Paths.get(exportLocation).toAbsolutePath().normalize();
+
+        try {
+            this.settings = new ExportSettings(
+                    ExportSettings.Format.valueOf(IndexerAttributes.getString(indexerConfiguration, FORMAT_ATTRIBUTE,
+                            "ndjson").toUpperCase(Locale.ROOT)),
+                    Compression.valueOf(IndexerAttributes.getString(indexerConfiguration, COMPRESSION_ATTRIBUTE,
+                            "gzip").toUpperCase(Locale.ROOT)),
+                    IndexerAttributes.getLong(indexerConfiguration, SEGMENT_MAX_BYTES_ATTRIBUTE, 64L * 1024 * 1024),
+                    IndexerAttributes.getLong(indexerConfiguration, SEGMENT_MAX_AGE_ATTRIBUTE, 300000));
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException("Invalid Format or Compression for the file export indexer.", e);
+        }
+        if (this.settings.segmentMaxBytes < 1 || this.settings.segmentMaxAge < 1) {
+            throw new ConfigurationException("SegmentMaxBytes and SegmentMaxAge of the file export indexer " +
+                    "must be positive.");
+        }
+        LOG.debug("Exporting index actions to: {}", this.location);
+    }
+
+    @Override
+    public void addItemToIndex(SearchIndexData data) throws IndexingException {
+        this.write(data, this.addRecord(data), false);
+    }
+
+    @Override
+    public void removeItemFromIndex(BaseIndexData data) throws IndexingException {
+        this.write(data, this.removeRecord(data), true);
+    }
+
+    @Override
+    public void updateItemInIndex(SearchIndexData data) throws IndexingException {
+        this.write(data, this.addRecord(data), false);
+    }
+
+    @Override
+    public void addBinaryToIndex(BinaryIndexData data) throws IndexingException {
+        this.write(data, this.addRecord(data), false);
+    }
+
+    @Override
+    public void removeBinaryFromIndex(BaseIndexData data) throws IndexingException {
+        this.write(data, this.removeRecord(data), true);
+    }
+
+    /**
+     * Seals the current segment of the publication.
+     *
+     * @param publicationId the publication id
+     * @throws IndexingException the indexing exception
+     */
+    @Override
+    public void commit(String publicationId) throws IndexingException {
+        SegmentWriter writer = WRITERS.get(this.location.resolve(publicationId));
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.seal();
+        } catch (IOException e) {
+            throw new IndexingException("Could not seal export segment for publication: " + publicationId, e);
+        }
+    }
+
+    /**
+     * Writers are shared and sealed on shutdown, so there is nothing to free here.
+     */
+    @Override
+    public void destroy() {
+    }
+
+    private void write(BaseIndexData data, String record, boolean removal) throws IndexingException {
+        try {
+            this.getWriter(data.getPublicationItemId()).write(record, removal);
+        } catch (IOException e) {
+            throw new IndexingException("Could not export: " + data.getUniqueIndexId(), e);
+        }
+    }
+
+    private SegmentWriter getWriter(String publicationId) throws IOException {
+        Path directory = this.location.resolve(publicationId);
+        SegmentWriter writer = WRITERS.get(directory);
+        if (writer != null) {
+            return writer;
+        }
+        synchronized (WRITERS) {
+            writer = WRITERS.get(directory);
+            if (writer == null) {
+                writer = new SegmentWriter(directory, publicationId, this.settings);
+                WRITERS.put(directory, writer);
+            }
+            return writer;
+        }
+    }
+
+    private String addRecord(SearchIndexData data) {
+        JsonWriter json = this.beginAdd(data).name("fields").beginObject();
+        for (Map.Entry<String, ? extends List<Object>> field : data.readFields().entrySet()) {
+            json.name(field.getKey()).beginArray();
+            for (Object value : field.getValue()) {
+                json.value(value == null ? null : value.toString());
+            }
+            json.endArray();
+        }
+        return json.endObject().endObject().toString();
+    }
+
+    private String addRecord(BinaryIndexData data) {
+        JsonWriter json = this.beginAdd(data)
+                .field("filename", data.getFileName())
+                .field("filetype", data.getFileType())
+                .field("filesize", data.getFileSize())
+                .field("url", data.getIndexUrl());
+        ExtractedText extracted = data.getExtractedText();
+        if (extracted != null) {
+            json.field("content", extracted.getText());
+            for (Map.Entry<String, String> metadata : extracted.getMetadata().entrySet()) {
+                json.field("meta." + metadata.getKey(), metadata.getValue());
+            }
+        }
+        return json.endObject().toString();
+    }
+
+    private JsonWriter beginAdd(BaseIndexData data) {
+        if (this.settings.format == ExportSettings.Format.OPENSEARCH) {
+            // The action line and the document line go into the same record.
+            String action = new JsonWriter().beginObject().name("index").beginObject()
+                    .field("_id", data.getUniqueIndexId()).endObject().endObject().toString();
+            return new JsonWriter(new StringBuilder(action).append('\n')).beginObject()
+                    .field("id", data.getUniqueIndexId())
+                    .field("publicationid", data.getPublicationItemId())
+                    .field("indextype", data.getIndexType().name());
+        }
+        return new JsonWriter().beginObject()
+                .field("action", "add")
+                .field("id", data.getUniqueIndexId())
+                .field("publicationId", data.getPublicationItemId())
+                .field("indexType", data.getIndexType().name());
+    }
+
+    private String removeRecord(BaseIndexData data) {
+        if (this.settings.format == ExportSettings.Format.OPENSEARCH) {
+            return new JsonWriter().beginObject().name("delete").beginObject()
+                    .field("_id", data.getUniqueIndexId()).endObject().endObject().toString();
+        }
+        return new JsonWriter().beginObject()
+                .field("action", "remove")
+                .field("id", data.getUniqueIndexId())
+                .field("publicationId", data.getPublicationItemId())
+                .field("indexType", data.getIndexType().name())
+                .endObject()
+                .toString();
+    }
+
+    private static void rollAll() {
+        for (Map.Entry<Path, SegmentWriter> entry : WRITERS.entrySet()) {
+            try {
+                entry.getValue().rollIfDue();
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Could not seal export segment in: " + entry.getKey(), e);
+            }
+        }
+    }
+
+    private static void sealAll() {
+        for (Map.Entry<Path, SegmentWriter> entry : WRITERS.entrySet()) {
+            try {
+                entry.getValue().seal();
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Could not seal export segment in: " + entry.getKey(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.export;
+
+import com.tridion.storage.si4t.JsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * SegmentWriter.
+ * <p/>
+ * Writes the export records of one publication into rolling NDJSON segment files.
+ * A segment is written as "segment-NNNNNN.ndjson.inprogress" and atomically renamed
+ * once it is sealed, so import tools only ever see complete files. Every sealed
+ * segment is appended to the manifest.ndjson file of the publication.
+ */
+final class SegmentWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentWriter.class);
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".ndjson";
+    private static final String IN_PROGRESS_SUFFIX = ".inprogress";
+    private static final String MANIFEST_FILE = "manifest.ndjson";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final String publicationId;
+    private final ExportSettings settings;
+
+    private long sequence;
+    private Path currentPath;
+    private FileChannel channel;
+    private OutputStream out;
+    private long opened;
+    private long documents;
+    private long removals;
+    private long bytes;
+
+    SegmentWriter(Path directory, String publicationId, ExportSettings settings) throws IOException {
+        this.directory = directory;
+        this.publicationId = publicationId;
+        this.settings = settings;
+        Files.createDirectories(directory);
+        this.sequence = this.findLastSequence();
+    }
+
+    /**
+     * Appends one record as a line to the current segment, rolling over to a new
+     * segment when the size or age limit is reached.
+     *
+     * @param record  the record, without line separator
+     * @param removal whether the record removes a document
+     * @throws IOException on write errors
+     */
+    synchronized void write(String record, boolean removal) throws IOException {
+        if (this.out != null && this.shouldRoll()) {
+            this.seal();
+        }
+        if (this.out == null) {
+            this.open();
+        }
+        byte[] line = record.getBytes(StandardCharsets.UTF_8);
+        this.out.write(line);
+        this.out.write('\n');
+        this.bytes += line.length + 1;
+        if (removal) {
+            this.removals++;
+        } else {
+            this.documents++;
+        }
+    }
+
+    /**
+     * Seals the current segment, if anything was written to it.
+     *
+     * @throws IOException on errors closing or renaming the segment
+     */
+    synchronized void seal() throws IOException {
+        if (this.out == null) {
+            return;
+        }
+        Path sealed = this.directory.resolve(
+                segmentName(this.sequence) + this.settings.compression.getExtension());
+        try {
+            this.out.close();
+            Files.move(this.currentPath, sealed, StandardCopyOption.ATOMIC_MOVE);
+            this.appendToManifest(sealed);
+            LOG.debug("Sealed export segment: {}", sealed);
+        } finally {
+            this.out = null;
+            this.channel = null;
+            this.currentPath = null;
+        }
+    }
+
+    /**
+     * Seals the current segment if it has reached its maximum age, so an idle
+     * publication does not keep an unfinished segment open.
+     *
+     * @throws IOException on errors closing or renaming the segment
+     */
+    synchronized void rollIfDue() throws IOException {
+        if (this.out != null && System.currentTimeMillis() - this.opened >= this.settings.segmentMaxAge) {
+            this.seal();
+        }
+    }
+
+    private boolean shouldRoll() {
+        return this.bytes >= this.settings.segmentMaxBytes ||
+                System.currentTimeMillis() - this.opened >= this.settings.segmentMaxAge;
+    }
+
+    private void open() throws IOException {
+        this.sequence++;
+        this.currentPath = this.directory.resolve(segmentName(this.sequence) + IN_PROGRESS_SUFFIX);
+        this.channel = FileChannel.open(this.currentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.out = new BufferedOutputStream(
+                this.settings.compression.wrap(new ChannelOutputStream(this.channel)), BUFFER_SIZE);
+        this.opened = System.currentTimeMillis();
+        this.documents = 0;
+        this.removals = 0;
+        this.bytes = 0;
+    }
+
+    private void appendToManifest(Path sealed) throws IOException {
+        String entry = new JsonWriter()
+                .beginObject()
+                .field("segment", sealed.getFileName().toString())
+                .field("publicationId", this.publicationId)
+                .field("format", this.settings.format.name().toLowerCase())
+                .field("compression", this.settings.compression.name().toLowerCase())
+                .field("documents", this.documents)
+                .field("removals", this.removals)
+                .field("bytes", this.bytes)
+                .field("fileBytes", Files.size(sealed))
+                .field("created", this.opened)
+                .field("sealed", System.currentTimeMillis())
+                .endObject()
+                .toString() + "\n";
+        try (FileChannel manifest = FileChannel.open(this.directory.resolve(MANIFEST_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(entry.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                manifest.write(buffer);
+            }
+            manifest.force(false);
+        }
+    }
+
+    private long findLastSequence() throws IOException {
+        long last = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, SEGMENT_PREFIX + "*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(IN_PROGRESS_SUFFIX)) {
+                    LOG.warn("Found an unfinished export segment, it will not be added to the manifest: {}", file);
+                }
+                int end = name.indexOf('.');
+                try {
+                    last = Math.max(last, Long.parseLong(name.substring(SEGMENT_PREFIX.length(), end)));
+                } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                    LOG.debug("Ignoring file: {}", file);
+                }
+            }
+        }
+        return last;
+    }
+
+    private static String segmentName(long sequence) {
+        return String.format("%s%06d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Writes to a file channel and forces the data to disk when closed.
+     */
+    private static final class ChannelOutputStream extends OutputStream {
+        private final FileChannel channel;
+
+        private ChannelOutputStream(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                this.channel.write(buffer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.channel.force(true);
+            } finally {
+                this.channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.extract;
+
+import com.tridion.storage.si4t.ExtractedText;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * PlainTextExtractor.
+ * <p/>
+ * Built in TextExtractor for binaries which already are text, read as UTF-8.
+ * Formats such as pdf or docx need an extractor on the classpath, for instance
+ * one that wraps Apache Tika.
+ */
+public final class PlainTextExtractor implements TextExtractor {
+
+    private static final Set<String> FILE_TYPES = new HashSet<>(Arrays.asList("txt", "text", "csv", "tsv", "md", "log"));
+    private static final int BUFFER_SIZE = 8192;
+
+    @Override
+    public boolean supports(String fileType) {
+        return FILE_TYPES.contains(fileType);
+    }
+
+    @Override
+    public ExtractedText extract(InputStream content, String fileType, int maxLength) throws IOException {
+        Reader reader = new InputStreamReader(content, StandardCharsets.UTF_8);
+        StringBuilder text = new StringBuilder(Math.min(maxLength, BUFFER_SIZE));
+        char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while ((read = reader.read(buffer, 0, Math.min(buffer.length, maxLength - text.length() + 1))) != -1) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Text extraction was cancelled");
+            }
+            if (text.length() + read > maxLength) {
+                text.append(buffer, 0, maxLength - text.length());
+                return new ExtractedText(text.toString(), null, true);
+            }
+            text.append(buffer, 0, read);
+        }
+        return new ExtractedText(text.toString(), null, false);
+    }
+}
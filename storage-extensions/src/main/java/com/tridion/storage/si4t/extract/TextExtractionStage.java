@@ -0,0 +1,320 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.extract;
+
+import com.tridion.storage.si4t.BinaryIndexData;
+import com.tridion.storage.si4t.ExtractedText;
+import com.tridion.storage.si4t.ExtractionCache;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.SampledLogger;
+import com.tridion.storage.si4t.SearchIndexProcessor;
+import com.tridion.storage.si4t.metrics.IndexingMetrics;
+import com.tridion.storage.si4t.metrics.IndexingStage;
+import com.tridion.storage.si4t.slowlog.SlowItem;
+import com.tridion.storage.si4t.slowlog.SlowItemLog;
+import com.tridion.storage.si4t.slowlog.SlowItemLogs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TextExtractionStage.
+ * <p/>
+ * Extracts the text of binaries before they are sent to the indexer, and attaches it
+ * to the BinaryIndexData. Extraction runs on a bounded pool, normally sized to the
+ * number of processors, so a transaction full of large documents cannot take all CPU
+ * of the deployer. Each document is limited in input size, extracted length and time;
+ * a binary whose extraction fails, times out or does not fit in the queue is indexed
+ * without text.
+ * <p/>
+ * Content is streamed from the stored file when there is one, otherwise it is read
+ * from memory. Text is shared through the ExtractionCache when it is enabled.
+ */
+public final class TextExtractionStage {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TextExtractionStage.class);
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final String storageId;
+    private final SampledLogger itemLog;
+    private final List<TextExtractor> extractors;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+    private final long maxInputSize;
+    private final int maxLength;
+
+    private final LongAdder extracted = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * Instantiates a new stage.
+     *
+     * @param storageId     the storage id
+     * @param extractors    the extractors, the first one supporting a file type is used
+     * @param threads       the number of extracting threads
+     * @param queueSize     the number of documents which may wait for a thread
+     * @param timeoutMillis the maximum extraction time per document
+     * @param maxInputSize  the maximum size in bytes of a document to extract
+     * @param maxLength     the maximum number of characters extracted per document
+     */
+    public TextExtractionStage(String storageId, List<TextExtractor> extractors, int threads, int queueSize,
+                               long timeoutMillis, long maxInputSize, int maxLength) {
+        if (threads <= 0 || queueSize <= 0 || timeoutMillis <= 0 || maxInputSize <= 0 || maxLength <= 0) {
+            throw new IllegalArgumentException("Text extraction limits must be positive");
+        }
+        this.storageId = storageId;
+        this.itemLog = SearchIndexProcessor.getItemLog(TextExtractionStage.class, storageId);
+        this.extractors = Collections.unmodifiableList(new ArrayList<>(extractors));
+        this.timeoutMillis = timeoutMillis;
+        this.maxInputSize = maxInputSize;
+        this.maxLength = maxLength;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "si4t-extract-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Loads the extractors listed in META-INF/services, followed by the PlainTextExtractor.
+     * Extractors which cannot be loaded are logged and left out.
+     *
+     * @param classLoader the class loader to search
+     * @return the extractors
+     */
+    public static List<TextExtractor> loadExtractors(ClassLoader classLoader) {
+        List<TextExtractor> extractors = new ArrayList<>();
+        Iterator<TextExtractor> iter = ServiceLoader.load(TextExtractor.class, classLoader).iterator();
+        while (true) {
+            try {
+                if (!iter.hasNext()) {
+                    break;
+                }
+                extractors.add(iter.next());
+            } catch (ServiceConfigurationError e) {
+                LOG.warn("Could not load text extractor: " + e.getLocalizedMessage(), e);
+            }
+        }
+        extractors.add(new PlainTextExtractor());
+        return extractors;
+    }
+
+    /**
+     * Extracts the text of a binary and attaches it to the data. Never fails: a binary
+     * which cannot be extracted keeps no text.
+     *
+     * @param transactionId the transaction id
+     * @param data          the binary
+     * @param cache         the extraction cache, or null
+     */
+    public void extract(String transactionId, BinaryIndexData data, ExtractionCache cache) {
+        String fileType = data.getFileType() == null ? "" : data.getFileType().toLowerCase(Locale.ROOT);
+        TextExtractor extractor = this.findExtractor(fileType);
+        long size = this.getInputSize(data);
+        if (extractor == null || size < 0 || size > this.maxInputSize) {
+            this.itemLog.debug("Not extracting text of: {} ({} bytes)", data.getUniqueIndexId(), size);
+            this.skipped.increment();
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ExtractedText text = cache == null ? this.run(data, extractor, fileType) :
+                    cache.get(data.getContentDigest(), () -> this.run(data, extractor, fileType));
+            data.setExtractedText(text);
+            this.extracted.increment();
+            failed = false;
+        } catch (IndexingException | RuntimeException e) {
+            this.failures.increment();
+            LOG.warn("Indexing binary without text: " + e.getLocalizedMessage(), e);
+        } finally {
+            IndexingMetrics.record(IndexingStage.TEXT_EXTRACT, this.storageId, data.getPublicationItemId(),
+                    IndexType.BINARY, start, failed);
+            this.logIfSlow(transactionId, data, System.nanoTime() - start, size, failed);
+        }
+    }
+
+    private void logIfSlow(String transactionId, BinaryIndexData data, long nanos, long size, boolean failed) {
+        SlowItemLog slowItemLog = SlowItemLogs.get(this.storageId);
+        if (slowItemLog != null && slowItemLog.isSlow(IndexingStage.TEXT_EXTRACT, nanos)) {
+            slowItemLog.add(SlowItem.builder(IndexingStage.TEXT_EXTRACT, nanos)
+                    .transaction(transactionId)
+                    .item(data.getUniqueIndexId(), data.getPublicationItemId(), data.getIndexType(), data.getAction())
+                    .itemSize(size)
+                    .payloadSize(data.getExtractedText() == null ? -1 : data.getExtractedText().getText().length())
+                    .failed(failed));
+        }
+    }
+
+    private TextExtractor findExtractor(String fileType) {
+        for (TextExtractor extractor : this.extractors) {
+            if (extractor.supports(fileType)) {
+                return extractor;
+            }
+        }
+        return null;
+    }
+
+    private long getInputSize(BinaryIndexData data) {
+        File file = data.getContentFile();
+        if (file != null && file.isFile()) {
+            return file.length();
+        }
+        if (data.getContent() != null && data.getContent().getContent() != null) {
+            return data.getContent().getContent().length;
+        }
+        return -1;
+    }
+
+    private ExtractedText run(BinaryIndexData data, TextExtractor extractor, String fileType)
+            throws IndexingException {
+        Future<ExtractedText> future;
+        try {
+            future = this.executor.submit(() -> {
+                try (InputStream content = open(data)) {
+                    return extractor.extract(content, fileType, this.maxLength);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.rejected.increment();
+            throw new IndexingException("Text extraction queue is full, not extracting: " + data.getUniqueIndexId());
+        }
+
+        try {
+            return future.get(this.timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            this.timeouts.increment();
+            throw new IndexingException("Text extraction took longer than " + this.timeoutMillis + " ms: " +
+                    data.getUniqueIndexId());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IndexingException("Interrupted while extracting text of: " + data.getUniqueIndexId(), e);
+        } catch (ExecutionException e) {
+            throw new IndexingException("Text extraction failed for: " + data.getUniqueIndexId(), e.getCause());
+        }
+    }
+
+    private static InputStream open(BinaryIndexData data) throws IOException {
+        File file = data.getContentFile();
+        if (file != null && file.isFile()) {
+            return new BufferedInputStream(new FileInputStream(file));
+        }
+        return new ByteArrayInputStream(data.getContent().getContent());
+    }
+
+    /**
+     * Stops the extracting threads. Extractions which are running are interrupted.
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Gets the number of binaries which got text, including cache hits.
+     *
+     * @return the extracted count
+     */
+    public long getExtractedCount() {
+        return this.extracted.sum();
+    }
+
+    /**
+     * Gets the number of binaries which are indexed without text because extraction
+     * failed, timed out or was rejected.
+     *
+     * @return the failure count
+     */
+    public long getFailureCount() {
+        return this.failures.sum();
+    }
+
+    /**
+     * Gets the number of extractions which took longer than the timeout.
+     *
+     * @return the timeout count
+     */
+    public long getTimeoutCount() {
+        return this.timeouts.sum();
+    }
+
+    /**
+     * Gets the number of extractions which did not fit in the queue.
+     *
+     * @return the rejected count
+     */
+    public long getRejectedCount() {
+        return this.rejected.sum();
+    }
+
+    /**
+     * Gets the number of binaries which are not extracted because no extractor supports
+     * their type or they are too large.
+     *
+     * @return the skipped count
+     */
+    public long getSkippedCount() {
+        return this.skipped.sum();
+    }
+
+    /**
+     * Gets the number of documents waiting for an extracting thread.
+     *
+     * @return the queue length
+     */
+    public long getQueueLength() {
+        return this.executor.getQueue().size();
+    }
+
+    @Override
+    public String toString() {
+        return "TextExtractionStage[storage=" + this.storageId + ", threads=" + this.executor.getMaximumPoolSize() +
+                ", timeout=" + this.timeoutMillis + "ms, maxInputSize=" + this.maxInputSize + ", maxLength=" +
+                this.maxLength + ", extractors=" + this.extractors.size() + "]";
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.extract;
+
+import com.tridion.storage.si4t.ExtractedText;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * TextExtractor.
+ * <p/>
+ * Extracts plain text and metadata from binaries, so indexers can send text instead
+ * of the binary content. Implementations are found through the ServiceLoader, by
+ * listing them in META-INF/services/com.tridion.storage.si4t.extract.TextExtractor,
+ * and must be thread safe.
+ * <p/>
+ * Extraction is cancelled by interrupting the extracting thread when it takes too
+ * long, so implementations should stop when they are interrupted.
+ */
+public interface TextExtractor {
+
+    /**
+     * Whether this extractor handles a file type.
+     *
+     * @param fileType the lower case file extension, for instance pdf
+     * @return true if supported
+     */
+    boolean supports(String fileType);
+
+    /**
+     * Extracts the text of a binary.
+     *
+     * @param content   the content, which is closed by the caller
+     * @param fileType  the lower case file extension
+     * @param maxLength the maximum number of characters to extract
+     * @return the extracted text
+     * @throws IOException if the content cannot be read or parsed
+     */
+    ExtractedText extract(InputStream content, String fileType, int maxLength) throws IOException;
+}
@@ -0,0 +1,379 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.fanout;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationException;
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.BinaryIndexData;
+import com.tridion.storage.si4t.ConcurrentSearchIndex;
+import com.tridion.storage.si4t.IndexerAttributes;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.SearchIndex;
+import com.tridion.storage.si4t.SearchIndexData;
+import com.tridion.storage.si4t.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * FanOutSearchIndex.
+ * <p/>
+ * SearchIndex which sends every action of a storage to several indexers, for instance to
+ * feed both the old and the new search cluster during a migration from one deployer.
+ * <p/>
+ * One target is the primary. It is called on the deployer thread, exactly like a single
+ * configured indexer, so its failures fail the transaction as before. Every other target
+ * is a secondary with its own queue, dispatch thread, retries and commit tracking. Every
+ * action and commit is sent to the primary first, and queued for the secondaries once the
+ * primary accepted it, so a secondary never holds an item the primary refused. Queueing
+ * waits at most QueueTimeout ms for room in the queue, by default not at all, so a slow or
+ * unavailable secondary does not delay the primary. The queue of a secondary is bounded by
+ * QueueSize actions and QueueMaxBytes estimated bytes. A secondary which can not keep up
+ * drops actions. Dropped actions, and actions on which
+ * a secondary gave up after its retries, are appended to the ReplayLog file of the
+ * target; replay it with the ids option of the DirectiveStoreReindexTool to repair the
+ * secondary index. The fanOut gauges of the storage show the dropped and logged actions.
+ * <p/>
+ * Configure it in cd_storage_conf.xml, with one Target node per indexer. The Indexer node
+ * inside a Target node is passed to that indexer as if it were the Indexer of the storage:
+ * <pre>
+ * &lt;Indexer Class="com.tridion.storage.si4t.fanout.FanOutSearchIndex"&gt;
+ *     &lt;Target Id="solr-old" Primary="true"&gt;
+ *         &lt;Indexer Class="org.si4t.solr.SolrIndexer"
+ *                  DefaultCoreUrl="http://solr-old:8080/solr/staging"/&gt;
+ *     &lt;/Target&gt;
+ *     &lt;Target Id="solr-new" QueueSize="10000" QueueMaxBytes="268435456" QueueTimeout="0"
+ *             MaxRetries="5" RetryBackoff="500" ReplayLog="/var/log/si4t/solr-new.replay"&gt;
+ *         &lt;Indexer Class="org.si4t.solr.SolrIndexer"
+ *                  DefaultCoreUrl="http://solr-new:8080/solr/staging"/&gt;
+ *     &lt;/Target&gt;
+ * &lt;/Indexer&gt;
+ * </pre>
+ * Without a Primary attribute the first Target is the primary. The ReplayLog of a target
+ * defaults to si4t-fanout-{storage id}-{target id}.replay in the working directory. Other attributes of the
+ * outer Indexer node, such as those of adaptive dispatch, apply as usual. A new fan-out
+ * is created for every transaction, like any plain SearchIndex; a primary which is a
+ * ConcurrentSearchIndex and all secondaries are shared by the transactions of a storage.
+ */
+public class FanOutSearchIndex implements SearchIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FanOutSearchIndex.class);
+    private static final String STORAGE_ID_ATTRIBUTE = "Id";
+    private static final String INDEXER_NODE = "Indexer";
+    private static final String TARGET_NODE = "Target";
+    private static final String TARGET_ID_ATTRIBUTE = "Id";
+    private static final String CLASS_ATTRIBUTE = "Class";
+    private static final String PRIMARY_ATTRIBUTE = "Primary";
+    private static final String QUEUE_SIZE_ATTRIBUTE = "QueueSize";
+    private static final String MAX_RETRIES_ATTRIBUTE = "MaxRetries";
+    private static final String RETRY_BACKOFF_ATTRIBUTE = "RetryBackoff";
+    private static final String QUEUE_TIMEOUT_ATTRIBUTE = "QueueTimeout";
+    private static final String QUEUE_MAX_BYTES_ATTRIBUTE = "QueueMaxBytes";
+    private static final String REPLAY_LOG_ATTRIBUTE = "ReplayLog";
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+    private static final long DEFAULT_QUEUE_TIMEOUT = 0;
+    private static final long DEFAULT_QUEUE_MAX_BYTES = 256L * 1024 * 1024;
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final long DEFAULT_RETRY_BACKOFF = 1000;
+
+    // Shared by all instances of a storage, rebuilt when the storage is configured again.
+    private static final ConcurrentHashMap<String, Shared<List<SecondaryTarget>>> SECONDARIES =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Shared<SearchIndex>> PRIMARIES = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(FanOutSearchIndex::destroyAll, "si4t-fanout-shutdown"));
+    }
+
+    /**
+     * The counters of the secondary targets, available as fanOut gauges of a storage.
+     */
+    public enum Counter {
+        QUEUED("queued", SecondaryTarget::getQueuedCount),
+        QUEUED_BYTES("queuedBytes", SecondaryTarget::getQueuedBytes),
+        SENT("sent", SecondaryTarget::getSentCount),
+        RETRIED("retried", SecondaryTarget::getRetriedCount),
+        FAILED("failed", SecondaryTarget::getFailedCount),
+        DROPPED("dropped", SecondaryTarget::getDroppedCount),
+        COMMITS("commits", SecondaryTarget::getCommitCount),
+        REPLAY_LOG("replayLog", SecondaryTarget::getReplayLogCount);
+
+        private final String gaugeName;
+        private final ToLongFunction<SecondaryTarget> value;
+
+        Counter(String gaugeName, ToLongFunction<SecondaryTarget> value) {
+            this.gaugeName = gaugeName;
+            this.value = value;
+        }
+
+        public String getGaugeName() {
+            return this.gaugeName;
+        }
+    }
+
+    private SearchIndex primary;
+    private boolean sharedPrimary;
+    private List<SecondaryTarget> secondaries = Collections.emptyList();
+
+    @Override
+    public void configure(Configuration configuration) throws ConfigurationException {
+        String storageId = IndexerAttributes.getString(configuration, STORAGE_ID_ATTRIBUTE, "");
+        List<Configuration> targets = configuration.getChild(INDEXER_NODE).getChildrenByName(TARGET_NODE);
+        if (targets.isEmpty()) {
+            throw new ConfigurationException("Please configure at least one Target node for the fan-out indexer.");
+        }
+
+        Configuration primaryNode = null;
+        List<String> ids = new ArrayList<>();
+        for (Configuration target : targets) {
+            String id = IndexerAttributes.getString(target, TARGET_ID_ATTRIBUTE, null);
+            if (Utils.StringIsNullOrEmpty(id) || ids.contains(id)) {
+                throw new ConfigurationException("Every Target node needs a unique Id attribute, found: " + id);
+            }
+            ids.add(id);
+            if (IndexerAttributes.getBoolean(target, PRIMARY_ATTRIBUTE, false)) {
+                if (primaryNode != null) {
+                    throw new ConfigurationException("Only one Target of the fan-out indexer can be the primary.");
+                }
+                primaryNode = target;
+            }
+        }
+        if (primaryNode == null) {
+            primaryNode = targets.get(0);
+        }
+
+        this.configurePrimary(storageId, configuration, primaryNode);
+        this.secondaries = getSecondaries(storageId, configuration, targets, primaryNode);
+    }
+
+    private void configurePrimary(String storageId, Configuration configuration, Configuration node)
+            throws ConfigurationException {
+        Class<? extends SearchIndex> indexerClass = indexerClass(node);
+        if (!ConcurrentSearchIndex.class.isAssignableFrom(indexerClass)) {
+            this.primary = newIndexer(indexerClass, node);
+            return;
+        }
+        this.sharedPrimary = true;
+        SearchIndex replaced = null;
+        synchronized (PRIMARIES) {
+            Shared<SearchIndex> shared = PRIMARIES.get(storageId);
+            if (shared == null || shared.configuration != configuration) {
+                Shared<SearchIndex> previous = shared;
+                shared = new Shared<>(configuration, newIndexer(indexerClass, node));
+                PRIMARIES.put(storageId, shared);
+                if (previous != null) {
+                    replaced = previous.value;
+                }
+            }
+            this.primary = shared.value;
+        }
+        if (replaced != null) {
+            replaced.destroy();
+        }
+    }
+
+    private static List<SecondaryTarget> getSecondaries(String storageId, Configuration configuration,
+                                                        List<Configuration> targets, Configuration primaryNode)
+            throws ConfigurationException {
+        List<SecondaryTarget> replaced = null;
+        List<SecondaryTarget> secondaries;
+        synchronized (SECONDARIES) {
+            Shared<List<SecondaryTarget>> shared = SECONDARIES.get(storageId);
+            if (shared != null && shared.configuration == configuration) {
+                return shared.value;
+            }
+            secondaries = new ArrayList<>();
+            try {
+                for (Configuration target : targets) {
+                    if (target != primaryNode) {
+                        secondaries.add(newSecondary(storageId, target));
+                    }
+                }
+            } catch (ConfigurationException | RuntimeException e) {
+                secondaries.forEach(SecondaryTarget::destroy);
+                throw e;
+            }
+            secondaries = Collections.unmodifiableList(secondaries);
+            SECONDARIES.put(storageId, new Shared<>(configuration, secondaries));
+            if (shared != null) {
+                replaced = shared.value;
+            }
+        }
+        if (replaced != null) {
+            replaced.forEach(SecondaryTarget::destroy);
+        }
+        return secondaries;
+    }
+
+    private static SecondaryTarget newSecondary(String storageId, Configuration target)
+            throws ConfigurationException {
+        String targetId = IndexerAttributes.getString(target, TARGET_ID_ATTRIBUTE, null);
+        String name = storageId + "/" + targetId;
+        int queueSize = IndexerAttributes.getInt(target, QUEUE_SIZE_ATTRIBUTE, DEFAULT_QUEUE_SIZE);
+        long queueTimeout = IndexerAttributes.getLong(target, QUEUE_TIMEOUT_ATTRIBUTE, DEFAULT_QUEUE_TIMEOUT);
+        long queueMaxBytes = IndexerAttributes.getLong(target, QUEUE_MAX_BYTES_ATTRIBUTE, DEFAULT_QUEUE_MAX_BYTES);
+        int maxRetries = IndexerAttributes.getInt(target, MAX_RETRIES_ATTRIBUTE, DEFAULT_MAX_RETRIES);
+        long retryBackoff = IndexerAttributes.getLong(target, RETRY_BACKOFF_ATTRIBUTE, DEFAULT_RETRY_BACKOFF);
+        if (queueSize < 1 || queueMaxBytes < 1 || queueTimeout < 0 || maxRetries < 0 || retryBackoff < 0) {
+            throw new ConfigurationException("Invalid QueueSize, QueueMaxBytes, QueueTimeout, MaxRetries or " +
+                    "RetryBackoff for target: " + name);
+        }
+        Path replayLog = Paths.get(IndexerAttributes.getString(target, REPLAY_LOG_ATTRIBUTE,
+                "si4t-fanout-" + storageId + "-" + targetId + ".replay"));
+        SearchIndex delegate = newIndexer(indexerClass(target), target);
+        LOG.info("Fanning out to secondary indexer: {} (queue size: {}, queue bytes: {}, retries: {}, " +
+                "replay log: {})", new Object[]{name, queueSize, queueMaxBytes, maxRetries, replayLog.toAbsolutePath()});
+        return new SecondaryTarget(name, delegate, queueSize, queueTimeout, queueMaxBytes, maxRetries, retryBackoff,
+                new ReplayLog(replayLog));
+    }
+
+    private static Class<? extends SearchIndex> indexerClass(Configuration target) throws ConfigurationException {
+        String className = IndexerAttributes.getString(target.getChild(INDEXER_NODE), CLASS_ATTRIBUTE, null);
+        if (Utils.StringIsNullOrEmpty(className)) {
+            throw new ConfigurationException("Please set the Class attribute of the Indexer of every Target.");
+        }
+        try {
+            return Class.forName(className).asSubclass(SearchIndex.class);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new ConfigurationException("Could not load indexer: " + className, e);
+        }
+    }
+
+    private static SearchIndex newIndexer(Class<? extends SearchIndex> indexerClass, Configuration target)
+            throws ConfigurationException {
+        try {
+            SearchIndex searchIndex = indexerClass.newInstance();
+            searchIndex.configure(target);
+            return searchIndex;
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new ConfigurationException("Could not instantiate indexer: " + indexerClass.getName(), e);
+        }
+    }
+
+    @Override
+    public void addItemToIndex(SearchIndexData data) throws IndexingException {
+        this.primary.addItemToIndex(data);
+        for (SecondaryTarget secondary : this.secondaries) {
+            secondary.submit(data, delegate -> delegate.addItemToIndex(data));
+        }
+    }
+
+    @Override
+    public void removeItemFromIndex(BaseIndexData data) throws IndexingException {
+        this.primary.removeItemFromIndex(data);
+        for (SecondaryTarget secondary : this.secondaries) {
+            secondary.submit(data, delegate -> delegate.removeItemFromIndex(data));
+        }
+    }
+
+    @Override
+    public void updateItemInIndex(SearchIndexData data) throws IndexingException {
+        this.primary.updateItemInIndex(data);
+        for (SecondaryTarget secondary : this.secondaries) {
+            secondary.submit(data, delegate -> delegate.updateItemInIndex(data));
+        }
+    }
+
+    @Override
+    public void addBinaryToIndex(BinaryIndexData data) throws IndexingException {
+        this.primary.addBinaryToIndex(data);
+        for (SecondaryTarget secondary : this.secondaries) {
+            secondary.submit(data, delegate -> delegate.addBinaryToIndex(data));
+        }
+    }
+
+    @Override
+    public void removeBinaryFromIndex(BaseIndexData data) throws IndexingException {
+        this.primary.removeBinaryFromIndex(data);
+        for (SecondaryTarget secondary : this.secondaries) {
+            secondary.submit(data, delegate -> delegate.removeBinaryFromIndex(data));
+        }
+    }
+
+    /**
+     * Commits the primary and queues the commit for the secondaries.
+     *
+     * @param publicationId the publication id
+     * @throws IndexingException if the commit of the primary fails; the secondaries are not committed
+     */
+    @Override
+    public void commit(String publicationId) throws IndexingException {
+        this.primary.commit(publicationId);
+        for (SecondaryTarget secondary : this.secondaries) {
+            secondary.commit(publicationId);
+        }
+    }
+
+    /**
+     * Destroys the primary of this transaction. Shared indexers are destroyed on shutdown.
+     */
+    @Override
+    public void destroy() {
+        if (this.primary != null && !this.sharedPrimary) {
+            this.primary.destroy();
+        }
+    }
+
+    /**
+     * Sums a counter over the secondary targets of a storage.
+     *
+     * @param storageId the storage id
+     * @param counter   the counter
+     * @return the sum, 0 if the storage has no secondaries
+     */
+    public static long getSecondaryCount(String storageId, Counter counter) {
+        Shared<List<SecondaryTarget>> shared = SECONDARIES.get(storageId);
+        long sum = 0;
+        if (shared != null) {
+            for (SecondaryTarget secondary : shared.value) {
+                sum += counter.value.applyAsLong(secondary);
+            }
+        }
+        return sum;
+    }
+
+    private static void destroyAll() {
+        for (Shared<List<SecondaryTarget>> shared : SECONDARIES.values()) {
+            shared.value.forEach(SecondaryTarget::destroy);
+        }
+        for (Shared<SearchIndex> shared : PRIMARIES.values()) {
+            shared.value.destroy();
+        }
+    }
+
+    /**
+     * Indexers shared by the transactions of a storage, with the storage configuration
+     * they were created from.
+     */
+    private static final class Shared<T> {
+        private final Configuration configuration;
+        private final T value;
+
+        private Shared(Configuration configuration, T value) {
+            this.configuration = configuration;
+            this.value = value;
+        }
+    }
+}
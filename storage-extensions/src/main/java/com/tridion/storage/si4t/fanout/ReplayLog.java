@@ -0,0 +1,154 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.fanout;
+
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ReplayLog.
+ * <p/>
+ * Appends the actions which a secondary target of a FanOutSearchIndex dropped or gave
+ * up on to a text file, so they can be replayed into the secondary index later, for
+ * instance with the ids option of the DirectiveStoreReindexTool. Every line holds the
+ * action, index type, publication id and unique index id of one item, separated by
+ * tabs. The file is created on the first append and is never truncated; remove it once
+ * it has been replayed.
+ */
+public final class ReplayLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplayLog.class);
+    private static final String SEPARATOR = "\t";
+
+    private final Path file;
+
+    // Guarded by this.
+    private Writer writer;
+    private long count;
+
+    /**
+     * Instantiates a new log. The file is not opened until the first append.
+     *
+     * @param file the log file
+     */
+    ReplayLog(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Gets the line which describes an action.
+     *
+     * @param data the action
+     * @return the line, without line separator
+     */
+    static String line(BaseIndexData data) {
+        return data.getAction() + SEPARATOR + data.getIndexType() + SEPARATOR + data.getPublicationItemId() +
+                SEPARATOR + data.getUniqueIndexId();
+    }
+
+    /**
+     * Appends a line and flushes it to the file. Failures are logged, as the target has
+     * nowhere else to keep the action.
+     *
+     * @param line the line of an action
+     */
+    synchronized void append(String line) {
+        try {
+            if (this.writer == null) {
+                Path directory = this.file.toAbsolutePath().getParent();
+                if (directory != null) {
+                    Files.createDirectories(directory);
+                }
+                this.writer = Files.newBufferedWriter(this.file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            }
+            this.writer.write(line);
+            this.writer.write('\n');
+            this.writer.flush();
+            this.count++;
+        } catch (IOException e) {
+            LOG.error("Could not log action: " + line + " for replay in: " + this.file, e);
+        }
+    }
+
+    synchronized void close() {
+        if (this.writer != null) {
+            try {
+                this.writer.close();
+            } catch (IOException e) {
+                LOG.warn("Could not close replay log: " + this.file, e);
+            }
+            this.writer = null;
+        }
+    }
+
+    Path getFile() {
+        return this.file;
+    }
+
+    synchronized long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Reads the actions of a replay log. Only the last action of every item is returned,
+     * in the order of these last actions.
+     *
+     * @param file      the log file
+     * @param storageId the storage id of the returned actions
+     * @return the actions, without fields
+     * @throws IOException if the file can not be read or holds an invalid line
+     */
+    public static List<BaseIndexData> read(Path file, String storageId) throws IOException {
+        Map<String, BaseIndexData> actions = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] columns = line.split(SEPARATOR, -1);
+                BaseIndexData data;
+                try {
+                    data = new BaseIndexData(FactoryAction.valueOf(columns[0]), IndexType.valueOf(columns[1]),
+                            columns[2], storageId);
+                    data.setUniqueIndexId(columns[3]);
+                } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("Invalid line in replay log: " + file + ": " + line, e);
+                }
+                actions.remove(data.getUniqueIndexId());
+                actions.put(data.getUniqueIndexId(), data);
+            }
+        }
+        return new ArrayList<>(actions.values());
+    }
+}
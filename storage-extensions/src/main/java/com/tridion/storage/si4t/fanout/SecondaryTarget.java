@@ -0,0 +1,368 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.fanout;
+
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.SearchIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SecondaryTarget.
+ * <p/>
+ * A secondary indexer of a FanOutSearchIndex. The target owns its delegate SearchIndex
+ * and one dispatch thread, which sends the actions and commits of this target in the
+ * order in which they were queued, and retries them with an exponential backoff.
+ * <p/>
+ * The queue is bounded both in actions and in the estimated bytes of their items, so
+ * large items cannot fill the heap; an item is always accepted by an empty queue.
+ * Queueing waits at most the queue timeout for a free place in the queue, by default
+ * not at all, so a slow or unavailable secondary does not delay the deployer. When the
+ * queue is still full the action is dropped. Dropped actions, actions on which the target gave
+ * up after its retries, and the actions of a commit on which it gave up are appended to
+ * the ReplayLog of the target, from which the secondary index can be repaired.
+ * <p/>
+ * Every queued action gets a sequence number. A commit of a publication covers the
+ * actions queued before it; nothing is queued if the last commit of the publication
+ * already covers all of its queued actions.
+ * <p/>
+ * A target is shared by all transactions of its storage and lives until the storage is
+ * configured again.
+ */
+final class SecondaryTarget {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SecondaryTarget.class);
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    /**
+     * An index action on the delegate of a target.
+     */
+    interface Action {
+        void apply(SearchIndex delegate) throws IndexingException;
+    }
+
+    private final String name;
+    private final SearchIndex delegate;
+    private final int queueSize;
+    private final long queueTimeout;
+    private final long queueMaxBytes;
+    private final int maxRetries;
+    private final long retryBackoff;
+    private final ReplayLog replayLog;
+    private final ExecutorService dispatcher;
+    private final Semaphore queue;
+    private final AtomicLong queuedBytes = new AtomicLong();
+
+    // Guarded by this; actions and commits are queued in the order of their sequence numbers.
+    private final Map<String, PublicationState> publications = new HashMap<>();
+    private long lastSequence;
+
+    // Only used on the dispatch thread: the replay lines of the sent, uncommitted actions by publication.
+    private final Map<String, Map<String, String>> uncommitted = new HashMap<>();
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+
+    /**
+     * Instantiates a new target.
+     *
+     * @param name         the storage id and target id, used in logging
+     * @param delegate     the configured search index of this target
+     * @param queueSize    the maximum number of actions waiting to be sent
+     * @param queueTimeout the maximum wait in ms for room in the queue
+     * @param queueMaxBytes the maximum estimated size in bytes of the items waiting to be sent
+     * @param maxRetries   the number of retries of a failed action or commit
+     * @param retryBackoff the wait in ms before the first retry, doubled for every next retry
+     * @param replayLog    the log of the actions which did not reach the delegate
+     */
+    SecondaryTarget(String name, SearchIndex delegate, int queueSize, long queueTimeout, long queueMaxBytes,
+                    int maxRetries, long retryBackoff, ReplayLog replayLog) {
+        this.name = name;
+        this.delegate = delegate;
+        this.queueSize = queueSize;
+        this.queueTimeout = queueTimeout;
+        this.queueMaxBytes = queueMaxBytes;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        this.replayLog = replayLog;
+        this.queue = new Semaphore(queueSize);
+        this.dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "si4t-fanout-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues an action, or drops it if the queue stays full for the queue timeout, or
+     * its item does not fit in the byte limit of the queue.
+     *
+     * @param data   the item of the action
+     * @param action the action
+     */
+    void submit(BaseIndexData data, Action action) {
+        String line = ReplayLog.line(data);
+        long size = data.getEstimatedSize();
+        boolean acquired;
+        try {
+            acquired = this.queue.tryAcquire(this.queueTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            this.drop("its queue is full", data.getUniqueIndexId(), line);
+            return;
+        }
+        if (!this.reserveBytes(size)) {
+            this.queue.release();
+            this.drop("its queue holds more than " + this.queueMaxBytes + " bytes", data.getUniqueIndexId(), line);
+            return;
+        }
+        synchronized (this) {
+            try {
+                this.dispatcher.execute(new QueuedAction(data, line, size, action));
+                this.publications.computeIfAbsent(data.getPublicationItemId(), k -> new PublicationState())
+                        .lastAction = ++this.lastSequence;
+                return;
+            } catch (RejectedExecutionException e) {
+                this.releaseQueued(size);
+            }
+        }
+        this.drop("it is destroyed", data.getUniqueIndexId(), line);
+    }
+
+    private boolean reserveBytes(long size) {
+        while (true) {
+            long queued = this.queuedBytes.get();
+            if (queued > 0 && queued + size > this.queueMaxBytes) {
+                return false;
+            }
+            if (this.queuedBytes.compareAndSet(queued, queued + size)) {
+                return true;
+            }
+        }
+    }
+
+    private void releaseQueued(long size) {
+        this.queuedBytes.addAndGet(-size);
+        this.queue.release();
+    }
+
+    /**
+     * Queues a commit of a publication behind the queued actions. Nothing is queued if
+     * the last commit of the publication covers all of its queued actions.
+     *
+     * @param publicationId the publication id
+     */
+    synchronized void commit(String publicationId) {
+        PublicationState state = this.publications.get(publicationId);
+        if (state == null || state.commitCovers >= state.lastAction) {
+            return;
+        }
+        try {
+            this.dispatcher.execute(() -> this.sendCommit(publicationId));
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Secondary indexer: {} is destroyed, publication: {} is not committed.", this.name,
+                    publicationId);
+            return;
+        }
+        state.commitCovers = this.lastSequence;
+    }
+
+    private void sendAction(QueuedAction queued) {
+        try {
+            if (this.send(queued.action, queued.uniqueIndexId)) {
+                this.sent.increment();
+                this.uncommitted.computeIfAbsent(queued.publicationId, k -> new LinkedHashMap<>())
+                        .put(queued.uniqueIndexId, queued.line);
+            } else {
+                this.replayLog.append(queued.line);
+            }
+        } finally {
+            this.releaseQueued(queued.size);
+        }
+    }
+
+    private void sendCommit(String publicationId) {
+        Map<String, String> lines = this.uncommitted.remove(publicationId);
+        if (this.send(delegate -> delegate.commit(publicationId), "commit of publication " + publicationId)) {
+            this.commits.increment();
+        } else if (lines != null) {
+            lines.values().forEach(this.replayLog::append);
+        }
+    }
+
+    private boolean send(Action action, String description) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                action.apply(this.delegate);
+                return true;
+            } catch (IndexingException | RuntimeException e) {
+                if (attempt >= this.maxRetries) {
+                    this.failed.increment();
+                    LOG.error("Secondary indexer: " + this.name + " gave up on: " + description + " after " +
+                            (attempt + 1) + " attempt(s). Logged for replay in: " + this.replayLog.getFile(), e);
+                    return false;
+                }
+                long backoff = Math.min(MAX_BACKOFF_MILLIS, this.retryBackoff << Math.min(attempt, 20));
+                LOG.warn("Secondary indexer: {} failed on: {}, retrying in {} ms: {}",
+                        new Object[]{this.name, description, backoff, e.getLocalizedMessage()});
+                this.retried.increment();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    this.failed.increment();
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void drop(String reason, String uniqueIndexId, String line) {
+        this.replayLog.append(line);
+        this.dropped.increment();
+        long dropped = this.dropped.sum();
+        if (dropped == 1 || dropped % 1000 == 0) {
+            LOG.warn("Secondary indexer: {} dropped: {} because {}; {} action(s) dropped so far. Dropped actions " +
+                    "are logged for replay in: {}", new Object[]{this.name, uniqueIndexId, reason, dropped,
+                    this.replayLog.getFile()});
+        }
+    }
+
+    /**
+     * Lets the queued actions and commits finish and destroys the delegate. Actions which
+     * were not sent or not committed in time are logged for replay.
+     */
+    void destroy() {
+        this.dispatcher.shutdown();
+        try {
+            if (!this.dispatcher.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("Secondary indexer: {} did not send its {} queued action(s) in time.", this.name,
+                        this.getQueuedCount());
+                this.abort();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.abort();
+        }
+        if (this.dispatcher.isTerminated()) {
+            this.uncommitted.values().forEach(lines -> lines.values().forEach(this.replayLog::append));
+            this.uncommitted.clear();
+        }
+        this.delegate.destroy();
+        this.replayLog.close();
+        LOG.info("Destroyed secondary indexer: {} (sent: {}, retried: {}, failed: {}, dropped: {}, commits: {}, " +
+                        "logged for replay: {})", new Object[]{this.name, this.sent.sum(), this.retried.sum(),
+                this.failed.sum(), this.dropped.sum(), this.commits.sum(), this.replayLog.getCount()});
+    }
+
+    private void abort() {
+        for (Runnable unsent : this.dispatcher.shutdownNow()) {
+            if (unsent instanceof QueuedAction) {
+                this.replayLog.append(((QueuedAction) unsent).line);
+                this.releaseQueued(((QueuedAction) unsent).size);
+            }
+        }
+        try {
+            this.dispatcher.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    int getQueuedCount() {
+        return this.queueSize - this.queue.availablePermits();
+    }
+
+    long getQueuedBytes() {
+        return this.queuedBytes.get();
+    }
+
+    long getSentCount() {
+        return this.sent.sum();
+    }
+
+    long getRetriedCount() {
+        return this.retried.sum();
+    }
+
+    long getFailedCount() {
+        return this.failed.sum();
+    }
+
+    long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    long getCommitCount() {
+        return this.commits.sum();
+    }
+
+    long getReplayLogCount() {
+        return this.replayLog.getCount();
+    }
+
+    /**
+     * The sequence numbers of the last queued action and commit of one publication.
+     */
+    private static final class PublicationState {
+        private long lastAction;
+        private long commitCovers;
+    }
+
+    /**
+     * A queued action, which keeps its replay line for when it is not sent.
+     */
+    private final class QueuedAction implements Runnable {
+        private final String publicationId;
+        private final String uniqueIndexId;
+        private final String line;
+        private final long size;
+        private final Action action;
+
+        private QueuedAction(BaseIndexData data, String line, long size, Action action) {
+            this.publicationId = data.getPublicationItemId();
+            this.uniqueIndexId = data.getUniqueIndexId();
+            this.line = line;
+            this.size = size;
+            this.action = action;
+        }
+
+        @Override
+        public void run() {
+            sendAction(this);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.jfr;
+
+/**
+ * EventFactory.
+ * <p/>
+ * Creates and commits flight recorder events. The implementation depends on jdk.jfr,
+ * so it is only compiled for Java 11 and later, and only loaded when it is present.
+ */
+interface EventFactory {
+
+    /**
+     * Starts an event when its type is enabled in a running recording.
+     *
+     * @param kind the event kind
+     * @return the started event, or null when the event type is disabled
+     */
+    Object begin(IndexingEventKind kind);
+
+    /**
+     * Ends an event and commits it when it passes the recording thresholds.
+     */
+    void end(Object event, String transactionId, String storageId, String publicationId, String itemId,
+             String action, long payloadSize, String outcome);
+}
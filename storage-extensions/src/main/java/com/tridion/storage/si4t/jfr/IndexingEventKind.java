@@ -0,0 +1,32 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.jfr;
+
+/**
+ * IndexingEventKind.
+ * <p/>
+ * The Java Flight Recorder events emitted by the indexing pipeline. The event names
+ * in a recording are si4t.DirectiveExtract, si4t.FieldParse and so on.
+ */
+public enum IndexingEventKind {
+    DIRECTIVE_EXTRACT,
+    FIELD_PARSE,
+    REGISTER_ACTION,
+    INDEXER_CALL,
+    INDEXER_COMMIT,
+    TRANSACTION_INDEXING
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.jfr;
+
+import com.tridion.storage.si4t.BaseIndexData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * IndexingEvents.
+ * <p/>
+ * Emits custom Java Flight Recorder events, grouped under the SI4T category, so that
+ * the indexing work shows up in a recording of a slow deploy. Use it as follows:
+ * <pre>
+ * Object event = IndexingEvents.begin(IndexingEventKind.INDEXER_CALL);
+ * ...
+ * IndexingEvents.end(event, transactionId, data, "ok");
+ * </pre>
+ * When flight recorder is not available or the event type is not enabled, begin
+ * returns null and end does nothing, so disabled events cost a single check.
+ */
+public final class IndexingEvents {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexingEvents.class);
+    private static final String EVENT_CLASS = "jdk.jfr.Event";
+    private static final String FACTORY_CLASS = "com.tridion.storage.si4t.jfr.JfrEventFactory";
+    private static final EventFactory FACTORY = loadFactory();
+
+    private IndexingEvents() {
+    }
+
+    private static EventFactory loadFactory() {
+        ClassLoader classLoader = IndexingEvents.class.getClassLoader();
+        try {
+            Class.forName(EVENT_CLASS, false, classLoader);
+            return (EventFactory) Class.forName(FACTORY_CLASS, true, classLoader).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOG.debug("Flight recorder events are not available: {}", e.toString());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("Could not load flight recorder events.", e);
+        }
+        return null;
+    }
+
+    /**
+     * Whether flight recorder events can be emitted at all.
+     *
+     * @return true when jdk.jfr and the event classes are present
+     */
+    public static boolean isAvailable() {
+        return FACTORY != null;
+    }
+
+    /**
+     * Starts an event.
+     *
+     * @param kind the event kind
+     * @return the event, or null when the event is disabled
+     */
+    public static Object begin(IndexingEventKind kind) {
+        return FACTORY == null ? null : FACTORY.begin(kind);
+    }
+
+    /**
+     * Ends and commits an event started by {@link #begin(IndexingEventKind)}.
+     *
+     * @param event         the event, may be null
+     * @param transactionId the transaction id, or null
+     * @param storageId     the storage Id
+     * @param publicationId the publication id, or null
+     * @param itemId        the unique index id of the item, or null
+     * @param action        the action, or null
+     * @param payloadSize   the size in bytes of the processed data, or 0 if not known
+     * @param outcome       the outcome, for instance ok or failed
+     */
+    public static void end(Object event, String transactionId, String storageId, String publicationId,
+                           String itemId, String action, long payloadSize, String outcome) {
+        if (event != null) {
+            FACTORY.end(event, transactionId, storageId, publicationId, itemId, action, payloadSize, outcome);
+        }
+    }
+
+    /**
+     * Ends and commits an event about a single item.
+     *
+     * @param event         the event, may be null
+     * @param transactionId the transaction id, or null
+     * @param data          the item
+     * @param outcome       the outcome, for instance ok or failed
+     */
+    public static void end(Object event, String transactionId, BaseIndexData data, String outcome) {
+        if (event != null) {
+            FACTORY.end(event, transactionId, data.getStorageId(), data.getPublicationItemId(),
+                    data.getUniqueIndexId(), String.valueOf(data.getAction()), data.getPayloadSize(), outcome);
+        }
+    }
+}
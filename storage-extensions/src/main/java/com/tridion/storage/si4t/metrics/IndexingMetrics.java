@@ -0,0 +1,125 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.metrics;
+
+import com.tridion.storage.si4t.IndexType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * IndexingMetrics.
+ * <p/>
+ * Entry point for recording and publishing indexing metrics. Metrics are kept per
+ * storage, and can be published as an MXBean named
+ * com.tridion.storage.si4t:type=IndexingMetrics,storage=[storageId] and through
+ * Micrometer, when it is on the classpath.
+ */
+public final class IndexingMetrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexingMetrics.class);
+    private static final String MICROMETER_REGISTRY_CLASS = "io.micrometer.core.instrument.MeterRegistry";
+    private static final ConcurrentHashMap<String, StorageMetrics> STORAGES = new ConcurrentHashMap<>();
+
+    private IndexingMetrics() {
+    }
+
+    /**
+     * Records the duration of a stage which started at startNanos.
+     *
+     * @param stage         the stage
+     * @param storageId     the storage Id
+     * @param publicationId the publication id, or null
+     * @param type          the IndexType, or null
+     * @param startNanos    the System.nanoTime() at the start of the stage
+     * @param failed        whether the stage failed
+     */
+    public static void record(IndexingStage stage, String storageId, String publicationId, IndexType type,
+                              long startNanos, boolean failed) {
+        if (storageId == null) {
+            return;
+        }
+        forStorage(storageId).record(stage, publicationId, type, System.nanoTime() - startNanos, failed);
+    }
+
+    /**
+     * Gets the metrics of a storage, creating them when needed.
+     *
+     * @param storageId the storage Id
+     * @return the storage metrics
+     */
+    public static StorageMetrics forStorage(String storageId) {
+        StorageMetrics metrics = STORAGES.get(storageId);
+        if (metrics == null) {
+            metrics = STORAGES.computeIfAbsent(storageId, StorageMetrics::new);
+        }
+        return metrics;
+    }
+
+    /**
+     * Gets the metrics of all storages.
+     *
+     * @return the storage metrics
+     */
+    public static Collection<StorageMetrics> getStorages() {
+        return Collections.unmodifiableCollection(STORAGES.values());
+    }
+
+    /**
+     * Registers the MXBean of a storage on the platform MBean server, replacing an
+     * earlier registration. Failures are logged, as metrics are not essential.
+     *
+     * @param storageId the storage Id
+     */
+    public static void registerMBean(String storageId) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.tridion.storage.si4t:type=IndexingMetrics,storage=" +
+                    ObjectName.quote(storageId));
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(forStorage(storageId), name);
+            LOG.info("Registered indexing metrics MBean: {}", name);
+        } catch (JMException | RuntimeException e) {
+            LOG.warn("Could not register indexing metrics MBean for storageId: " + storageId, e);
+        }
+    }
+
+    /**
+     * Publishes the metrics of a storage to the global Micrometer registry.
+     * Does nothing but log a warning when Micrometer is not on the classpath.
+     *
+     * @param storageId the storage Id
+     */
+    public static void bindToMicrometer(String storageId) {
+        try {
+            Class.forName(MICROMETER_REGISTRY_CLASS, false, IndexingMetrics.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            LOG.warn("Micrometer metrics are enabled, but Micrometer is not on the classpath.");
+            return;
+        }
+        MicrometerMetricsBinder.bindToGlobalRegistry(forStorage(storageId));
+    }
+}
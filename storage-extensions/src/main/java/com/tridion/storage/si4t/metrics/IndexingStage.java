@@ -0,0 +1,57 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.metrics;
+
+/**
+ * IndexingStage.
+ * <p/>
+ * The measured stages of the indexing pipeline.
+ */
+public enum IndexingStage {
+    /**
+     * Finding the INDEX-DATA directive in a page or component presentation.
+     */
+    EXTRACT,
+    /**
+     * Parsing the directive XML into index fields. Cache hits are not measured.
+     */
+    PARSE,
+    /**
+     * Removing the directives from the published content.
+     */
+    STRIP,
+    /**
+     * Registering an action for the transaction.
+     */
+    REGISTER,
+    /**
+     * Sending all actions of a transaction for one storage, including commits.
+     */
+    DISPATCH,
+    /**
+     * Extracting the text of a binary before it is sent to the SearchIndex.
+     */
+    TEXT_EXTRACT,
+    /**
+     * A single add, update or remove call on the SearchIndex.
+     */
+    INDEXER_CALL,
+    /**
+     * A commit of one publication on the SearchIndex.
+     */
+    COMMIT
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.metrics;
+
+import com.tridion.storage.si4t.IndexType;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * MicrometerMetricsBinder.
+ * <p/>
+ * Publishes indexing metrics to a Micrometer registry. Micrometer is an optional
+ * dependency, so this class is only loaded when it is on the classpath.
+ * <p/>
+ * Stage meters are si4t.stage.count, si4t.stage.errors, si4t.stage.latency and
+ * si4t.stage.latency.percentile, tagged with storage, stage and type (all, or an
+ * IndexType). Publication meters are si4t.publication.count and
+ * si4t.publication.errors, tagged with storage, publication and stage. Gauges are
+ * published as si4t.[gauge name].
+ */
+public final class MicrometerMetricsBinder {
+
+    private static final String ALL_TYPES = "all";
+    private static final double[] PERCENTILES = {50, 95, 99};
+
+    private MicrometerMetricsBinder() {
+    }
+
+    /**
+     * Publishes the metrics of all storages which are known so far.
+     *
+     * @param registry the registry
+     */
+    public static void bindTo(MeterRegistry registry) {
+        for (StorageMetrics storage : IndexingMetrics.getStorages()) {
+            bind(storage, registry);
+        }
+    }
+
+    static void bindToGlobalRegistry(StorageMetrics storage) {
+        bind(storage, Metrics.globalRegistry);
+    }
+
+    private static void bind(StorageMetrics storage, MeterRegistry registry) {
+        Tags storageTags = Tags.of("storage", storage.getStorageId());
+        for (IndexingStage stage : IndexingStage.values()) {
+            bindStage(registry, storageTags.and("stage", stage.name(), "type", ALL_TYPES), storage.getStage(stage, null));
+            for (IndexType type : IndexType.values()) {
+                bindStage(registry, storageTags.and("stage", stage.name(), "type", type.name()),
+                        storage.getStage(stage, type));
+            }
+        }
+
+        // Listen first, binding a publication twice is harmless.
+        storage.onNewPublication(publicationId -> bindPublication(registry, storage, storageTags, publicationId));
+        for (String publicationId : storage.getPublicationIds()) {
+            bindPublication(registry, storage, storageTags, publicationId);
+        }
+
+        for (Map.Entry<String, LongSupplier> gauge : storage.getGaugeSuppliers().entrySet()) {
+            LongSupplier value = gauge.getValue();
+            Gauge.builder("si4t." + gauge.getKey(), value, LongSupplier::getAsLong)
+                    .tags(storageTags)
+                    .register(registry);
+        }
+    }
+
+    private static void bindStage(MeterRegistry registry, Tags tags, StageStatistics statistics) {
+        FunctionCounter.builder("si4t.stage.count", statistics, StageStatistics::getCount)
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder("si4t.stage.errors", statistics, StageStatistics::getErrorCount)
+                .tags(tags)
+                .register(registry);
+        FunctionTimer.builder("si4t.stage.latency", statistics, StageStatistics::getCount,
+                StageStatistics::getTotalMicros, TimeUnit.MICROSECONDS)
+                .tags(tags)
+                .register(registry);
+        for (double percentile : PERCENTILES) {
+            TimeGauge.builder("si4t.stage.latency.percentile", statistics, TimeUnit.MICROSECONDS,
+                    s -> s.getPercentileMicros(percentile))
+                    .tags(tags.and("percentile", String.valueOf(percentile / 100)))
+                    .register(registry);
+        }
+    }
+
+    private static void bindPublication(MeterRegistry registry, StorageMetrics storage, Tags storageTags,
+                                        String publicationId) {
+        for (IndexingStage stage : IndexingStage.values()) {
+            StageStatistics statistics = storage.getPublicationStage(publicationId, stage);
+            Tags tags = storageTags.and("publication", publicationId, "stage", stage.name());
+            FunctionCounter.builder("si4t.publication.count", statistics, StageStatistics::getCount)
+                    .tags(tags)
+                    .register(registry);
+            FunctionCounter.builder("si4t.publication.errors", statistics, StageStatistics::getErrorCount)
+                    .tags(tags)
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.metrics;
+
+import java.util.Map;
+
+/**
+ * PendingActions.
+ * <p/>
+ * On demand view on the actions of a storage which are registered, but not yet
+ * indexed. Only called from JMX, never on the indexing path.
+ */
+public interface PendingActions {
+
+    /**
+     * Counts the pending actions.
+     *
+     * @return the number of pending actions by transaction id
+     */
+    Map<String, Long> countByTransaction();
+
+    /**
+     * Describes the pending actions, one per line.
+     *
+     * @param maxActions the maximum number of actions to describe
+     * @return the description
+     */
+    String describe(int maxActions);
+}
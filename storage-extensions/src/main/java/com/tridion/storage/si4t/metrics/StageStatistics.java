@@ -0,0 +1,139 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StageStatistics.
+ * <p/>
+ * Counters and, optionally, a latency distribution of one indexing stage.
+ * Recording does not allocate once the histogram covers the measured range,
+ * so it is safe to use on the hot path. Latencies are kept in microseconds.
+ */
+public final class StageStatistics {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final Recorder recorder;
+
+    // Guarded by this
+    private Histogram interval;
+    private final Histogram accumulated;
+
+    StageStatistics(boolean withHistogram) {
+        this.recorder = withHistogram ? new Recorder(2) : null;
+        this.accumulated = withHistogram ? new Histogram(2) : null;
+    }
+
+    void record(long nanos, boolean failed) {
+        long micros = Math.max(0, nanos / 1000);
+        this.count.increment();
+        this.totalMicros.add(micros);
+        if (failed) {
+            this.errors.increment();
+        }
+        if (this.recorder != null) {
+            this.recorder.recordValue(micros);
+        }
+    }
+
+    /**
+     * Gets the number of measurements.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Gets the number of measurements which failed.
+     *
+     * @return the error count
+     */
+    public long getErrorCount() {
+        return this.errors.sum();
+    }
+
+    /**
+     * Gets the sum of all measured latencies.
+     *
+     * @return the total in microseconds
+     */
+    public long getTotalMicros() {
+        return this.totalMicros.sum();
+    }
+
+    /**
+     * Whether a latency distribution is kept.
+     *
+     * @return true if percentiles are available
+     */
+    public boolean hasHistogram() {
+        return this.recorder != null;
+    }
+
+    /**
+     * Gets a latency percentile since the start.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in microseconds, or 0 without a histogram
+     */
+    public synchronized long getPercentileMicros(double percentile) {
+        if (this.recorder == null) {
+            return 0;
+        }
+        this.fold();
+        return this.accumulated.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Gets the highest latency since the start.
+     *
+     * @return the latency in microseconds, or 0 without a histogram
+     */
+    public synchronized long getMaxMicros() {
+        if (this.recorder == null) {
+            return 0;
+        }
+        this.fold();
+        return this.accumulated.getMaxValue();
+    }
+
+    /**
+     * Gets a copy of the latency distribution since the start.
+     *
+     * @return the histogram, or null without a histogram
+     */
+    public synchronized Histogram getHistogram() {
+        if (this.recorder == null) {
+            return null;
+        }
+        this.fold();
+        return this.accumulated.copy();
+    }
+
+    private void fold() {
+        this.interval = this.recorder.getIntervalHistogram(this.interval);
+        this.accumulated.add(this.interval);
+    }
+}
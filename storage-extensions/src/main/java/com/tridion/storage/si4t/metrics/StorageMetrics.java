@@ -0,0 +1,245 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.metrics;
+
+import com.tridion.storage.si4t.IndexType;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * StorageMetrics.
+ * <p/>
+ * The indexing metrics of one storage. Every stage has statistics over all index
+ * types, statistics per IndexType and counters per publication. Only the first two
+ * keep a latency distribution, to bound the memory used per publication.
+ */
+public final class StorageMetrics implements StorageMetricsMXBean {
+
+    private static final IndexingStage[] STAGES = IndexingStage.values();
+    private static final IndexType[] TYPES = IndexType.values();
+
+    private final String storageId;
+    // [stage][0] covers all index types, [stage][1 + type] a single one.
+    private final StageStatistics[][] stages = new StageStatistics[STAGES.length][TYPES.length + 1];
+    private final ConcurrentHashMap<String, StageStatistics[]> publications = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final CopyOnWriteArrayList<Consumer<String>> publicationListeners = new CopyOnWriteArrayList<>();
+    private volatile PendingActions pendingActions;
+
+    StorageMetrics(String storageId) {
+        this.storageId = storageId;
+        for (StageStatistics[] stage : this.stages) {
+            for (int i = 0; i < stage.length; i++) {
+                stage[i] = new StageStatistics(true);
+            }
+        }
+    }
+
+    void record(IndexingStage stage, String publicationId, IndexType type, long nanos, boolean failed) {
+        StageStatistics[] statistics = this.stages[stage.ordinal()];
+        statistics[0].record(nanos, failed);
+        if (type != null) {
+            statistics[1 + type.ordinal()].record(nanos, failed);
+        }
+        if (publicationId != null) {
+            this.getPublication(publicationId)[stage.ordinal()].record(nanos, failed);
+        }
+    }
+
+    private StageStatistics[] getPublication(String publicationId) {
+        StageStatistics[] statistics = this.publications.get(publicationId);
+        if (statistics != null) {
+            return statistics;
+        }
+        StageStatistics[] created = new StageStatistics[STAGES.length];
+        for (int i = 0; i < created.length; i++) {
+            created[i] = new StageStatistics(false);
+        }
+        statistics = this.publications.putIfAbsent(publicationId, created);
+        if (statistics == null) {
+            for (Consumer<String> listener : this.publicationListeners) {
+                listener.accept(publicationId);
+            }
+            return created;
+        }
+        return statistics;
+    }
+
+    /**
+     * Adds a gauge, replacing any gauge with the same name.
+     *
+     * @param name  the name, for instance directiveCache.hits
+     * @param value supplies the current value
+     */
+    public void gauge(String name, LongSupplier value) {
+        this.gauges.put(name, value);
+    }
+
+    /**
+     * Sets the view on the pending actions of this storage.
+     *
+     * @param pendingActions the view
+     */
+    public void setPendingActions(PendingActions pendingActions) {
+        this.pendingActions = pendingActions;
+    }
+
+    void onNewPublication(Consumer<String> listener) {
+        this.publicationListeners.add(listener);
+    }
+
+    /**
+     * Gets the statistics of a stage.
+     *
+     * @param stage the stage
+     * @param type  the IndexType, or null for all types
+     * @return the statistics
+     */
+    public StageStatistics getStage(IndexingStage stage, IndexType type) {
+        return this.stages[stage.ordinal()][type == null ? 0 : 1 + type.ordinal()];
+    }
+
+    /**
+     * Gets the counters of a stage for one publication.
+     *
+     * @param publicationId the publication id
+     * @param stage         the stage
+     * @return the statistics, or null if nothing was recorded for the publication
+     */
+    public StageStatistics getPublicationStage(String publicationId, IndexingStage stage) {
+        StageStatistics[] statistics = this.publications.get(publicationId);
+        return statistics == null ? null : statistics[stage.ordinal()];
+    }
+
+    Iterable<String> getPublicationIds() {
+        return this.publications.keySet();
+    }
+
+    Map<String, LongSupplier> getGaugeSuppliers() {
+        return this.gauges;
+    }
+
+    @Override
+    public String getStorageId() {
+        return this.storageId;
+    }
+
+    @Override
+    public Map<String, Long> getCounts() {
+        return this.collect(StageStatistics::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        return this.collect(StageStatistics::getErrorCount);
+    }
+
+    @Override
+    public Map<String, Long> getMeanMicros() {
+        return this.collect(s -> s.getCount() == 0 ? 0 : s.getTotalMicros() / s.getCount());
+    }
+
+    @Override
+    public Map<String, Long> getP50Micros() {
+        return this.collect(s -> s.getPercentileMicros(50));
+    }
+
+    @Override
+    public Map<String, Long> getP95Micros() {
+        return this.collect(s -> s.getPercentileMicros(95));
+    }
+
+    @Override
+    public Map<String, Long> getP99Micros() {
+        return this.collect(s -> s.getPercentileMicros(99));
+    }
+
+    @Override
+    public Map<String, Long> getMaxMicros() {
+        return this.collect(StageStatistics::getMaxMicros);
+    }
+
+    @Override
+    public Map<String, Long> getPublicationCounts() {
+        return this.collectPublications(StageStatistics::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getPublicationErrorCounts() {
+        return this.collectPublications(StageStatistics::getErrorCount);
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongSupplier> gauge : this.gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getPendingActions() {
+        PendingActions view = this.pendingActions;
+        return view == null ? new TreeMap<>() : new TreeMap<>(view.countByTransaction());
+    }
+
+    @Override
+    public String describePendingActions(int maxActions) {
+        PendingActions view = this.pendingActions;
+        return view == null ? "" : view.describe(maxActions);
+    }
+
+    // Leaves out what was never measured, to keep the JMX view readable.
+    private Map<String, Long> collect(ToLongFunction<StageStatistics> value) {
+        Map<String, Long> values = new TreeMap<>();
+        for (IndexingStage stage : STAGES) {
+            StageStatistics[] statistics = this.stages[stage.ordinal()];
+            if (statistics[0].getCount() == 0) {
+                continue;
+            }
+            values.put(stage.name(), value.applyAsLong(statistics[0]));
+            for (IndexType type : TYPES) {
+                StageStatistics typed = statistics[1 + type.ordinal()];
+                if (typed.getCount() > 0) {
+                    values.put(stage.name() + "." + type.name(), value.applyAsLong(typed));
+                }
+            }
+        }
+        return values;
+    }
+
+    private Map<String, Long> collectPublications(ToLongFunction<StageStatistics> value) {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, StageStatistics[]> publication : this.publications.entrySet()) {
+            for (IndexingStage stage : STAGES) {
+                StageStatistics statistics = publication.getValue()[stage.ordinal()];
+                if (statistics.getCount() > 0) {
+                    values.put(publication.getKey() + "." + stage.name(), value.applyAsLong(statistics));
+                }
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.metrics;
+
+import java.util.Map;
+
+/**
+ * StorageMetricsMXBean.
+ * <p/>
+ * JMX view on the indexing metrics of one storage. Stage keys are the stage name,
+ * optionally followed by the IndexType, for instance INDEXER_CALL or INDEXER_CALL.PAGE.
+ * Publication keys are the publication id followed by the stage name. Latencies are
+ * in microseconds.
+ */
+public interface StorageMetricsMXBean {
+
+    String getStorageId();
+
+    Map<String, Long> getCounts();
+
+    Map<String, Long> getErrorCounts();
+
+    Map<String, Long> getMeanMicros();
+
+    Map<String, Long> getP50Micros();
+
+    Map<String, Long> getP95Micros();
+
+    Map<String, Long> getP99Micros();
+
+    Map<String, Long> getMaxMicros();
+
+    Map<String, Long> getPublicationCounts();
+
+    Map<String, Long> getPublicationErrorCounts();
+
+    /**
+     * Gets the values of components such as the directive cache, group commits
+     * and adaptive dispatch.
+     *
+     * @return the gauges by name
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * Gets the number of actions per transaction which are registered, but not yet indexed.
+     *
+     * @return the number of pending actions by transaction id
+     */
+    Map<String, Long> getPendingActions();
+
+    /**
+     * Describes the actions which are registered, but not yet indexed.
+     *
+     * @param maxActions the maximum number of actions to describe
+     * @return one line per action
+     */
+    String describePendingActions(int maxActions);
+}
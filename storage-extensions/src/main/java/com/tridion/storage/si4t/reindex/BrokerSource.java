@@ -0,0 +1,205 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.reindex;
+
+import com.tridion.storage.si4t.IndexType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+
+/**
+ * BrokerSource.
+ * <p/>
+ * A broker table with page or component presentation content, read by the JPAReindexJob
+ * in key order. Rows are identified by the publication id column followed by the item
+ * key columns: the page id, or the component and template ids.
+ */
+public final class BrokerSource {
+
+    private final IndexType type;
+    private final String table;
+    private final String[] keyColumns;
+    private final String contentColumn;
+
+    private BrokerSource(IndexType type, String table, String contentColumn, String... keyColumns) {
+        for (String identifier : keyColumns) {
+            checkIdentifier(identifier);
+        }
+        this.type = type;
+        this.table = checkIdentifier(table);
+        this.contentColumn = checkIdentifier(contentColumn);
+        this.keyColumns = keyColumns;
+    }
+
+    /**
+     * Describes a table with page content.
+     *
+     * @param table             the table
+     * @param publicationColumn the publication id column
+     * @param pageColumn        the page id column
+     * @param contentColumn     the content column
+     * @return the source
+     */
+    public static BrokerSource pages(String table, String publicationColumn, String pageColumn,
+                                     String contentColumn) {
+        return new BrokerSource(IndexType.PAGE, table, contentColumn, publicationColumn, pageColumn);
+    }
+
+    /**
+     * Describes a table with dynamic component presentations.
+     *
+     * @param table             the table
+     * @param publicationColumn the publication id column
+     * @param componentColumn   the component id column
+     * @param templateColumn    the component template id column
+     * @param contentColumn     the content column
+     * @return the source
+     */
+    public static BrokerSource componentPresentations(String table, String publicationColumn,
+                                                      String componentColumn, String templateColumn,
+                                                      String contentColumn) {
+        return new BrokerSource(IndexType.COMPONENT_PRESENTATION, table, contentColumn, publicationColumn,
+                componentColumn, templateColumn);
+    }
+
+    // Names end up in SQL, so only plain identifiers are accepted.
+    private static String checkIdentifier(String identifier) {
+        if (identifier == null || !identifier.matches("[A-Za-z_][A-Za-z0-9_.]*")) {
+            throw new IllegalArgumentException("Not a valid table or column name: " + identifier);
+        }
+        return identifier;
+    }
+
+    IndexType getType() {
+        return this.type;
+    }
+
+    int getKeyLength() {
+        return this.keyColumns.length;
+    }
+
+    /**
+     * Builds the keyset query for the rows after a key. Parameters are numbered in the
+     * order of the key columns.
+     *
+     * @param first true for the first page, which has no key to start after
+     * @return the native SQL
+     */
+    String query(boolean first) {
+        String columns = String.join(", ", this.keyColumns);
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns).append(", ").append(this.contentColumn)
+                .append(" FROM ").append(this.table);
+        if (!first) {
+            // (a > ?1) OR (a = ?1 AND b > ?2) OR ...
+            sql.append(" WHERE ");
+            for (int i = 0; i < this.keyColumns.length; i++) {
+                if (i > 0) {
+                    sql.append(" OR ");
+                }
+                sql.append('(');
+                for (int j = 0; j < i; j++) {
+                    sql.append(this.keyColumns[j]).append(" = ?").append(j + 1).append(" AND ");
+                }
+                sql.append(this.keyColumns[i]).append(" > ?").append(i + 1).append(')');
+            }
+        }
+        return sql.append(" ORDER BY ").append(columns).toString();
+    }
+
+    /**
+     * Reads the key of a row.
+     *
+     * @param row the row
+     * @return the key values
+     */
+    long[] keyOf(Object[] row) {
+        long[] key = new long[this.keyColumns.length];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = ((Number) row[i]).longValue();
+        }
+        return key;
+    }
+
+    /**
+     * Builds the index id of a row, as the Search DAOs do.
+     *
+     * @param key the key of the row
+     * @return the index id
+     */
+    String indexIdOf(long[] key) {
+        if (this.type == IndexType.PAGE) {
+            return "tcm:" + key[0] + "-" + key[1] + "-64";
+        }
+        return "dcp:" + key[0] + "-" + key[1] + "-" + key[2];
+    }
+
+    /**
+     * Reads the content of a row, which may be mapped as text, bytes or a LOB.
+     *
+     * @param row      the row
+     * @param encoding the encoding of binary content
+     * @return the content, or null if there is none
+     * @throws IOException if a LOB cannot be read
+     */
+    String contentOf(Object[] row, Charset encoding) throws IOException {
+        Object content = row[this.keyColumns.length];
+        try {
+            if (content == null || content instanceof String) {
+                return (String) content;
+            } else if (content instanceof byte[]) {
+                return new String((byte[]) content, encoding);
+            } else if (content instanceof char[]) {
+                return new String((char[]) content);
+            } else if (content instanceof Clob) {
+                try (Reader reader = ((Clob) content).getCharacterStream()) {
+                    StringBuilder text = new StringBuilder();
+                    char[] buffer = new char[8192];
+                    int read;
+                    while ((read = reader.read(buffer)) != -1) {
+                        text.append(buffer, 0, read);
+                    }
+                    return text.toString();
+                }
+            } else if (content instanceof Blob) {
+                try (InputStream in = ((Blob) content).getBinaryStream()) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        bytes.write(buffer, 0, read);
+                    }
+                    return new String(bytes.toByteArray(), encoding);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not read content column: " + this.contentColumn, e);
+        }
+        return content.toString();
+    }
+
+    @Override
+    public String toString() {
+        return this.table + "(" + String.join(", ", this.keyColumns) + ")";
+    }
+}
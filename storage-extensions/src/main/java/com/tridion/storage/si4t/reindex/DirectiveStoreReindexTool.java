@@ -0,0 +1,226 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.reindex;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationHelper;
+import com.tridion.configuration.XMLConfigurationReader;
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.DirectiveStore;
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.SearchIndexProcessor;
+import com.tridion.storage.si4t.fanout.ReplayLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DirectiveStoreReindexTool.
+ * <p/>
+ * Rebuilds a search index from the DirectiveStore of a storage. The stored field sets
+ * are read sequentially from local disk and sent through the configured SearchIndex,
+ * without parsing any content. The store is opened read-only, so it can be replayed
+ * while a deployer keeps writing to it; items stored after the replay started are not
+ * included.
+ * <p/>
+ * With the ids option only the items of a ReplayLog are replayed, for instance the
+ * actions which a secondary target of a FanOutSearchIndex dropped. Removals are sent as
+ * removals; other items are sent with their stored fields, and skipped if the store has
+ * none, such as binaries. Use a configuration in which the storage only has the indexer
+ * to repair, or all indexers if resending the items is harmless.
+ * <p/>
+ * Options are given as name=value arguments:
+ * <ul>
+ * <li>config: the storage configuration (default cd_storage_conf.xml)</li>
+ * <li>storage: the storage Id (required)</li>
+ * <li>store: the store directory (default the DirectiveStore of the storage)</li>
+ * <li>batchSize: the number of items per indexing transaction (default 2000)</li>
+ * <li>ids: a ReplayLog file with the items to replay (default all stored items)</li>
+ * </ul>
+ */
+public final class DirectiveStoreReindexTool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DirectiveStoreReindexTool.class);
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    private final String storageId;
+    private final int batchSize;
+    private final SearchIndexProcessor processor = SearchIndexProcessor.getInstance();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private long batches;
+    private long pending;
+    private long indexed;
+    private long skipped;
+
+    private DirectiveStoreReindexTool(String storageId, int batchSize) {
+        this.storageId = storageId;
+        this.batchSize = batchSize;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 1) {
+                System.err.println("Options should be given as name=value, not: " + arg);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        String storageId = options.get("storage");
+        int batchSize = Integer.parseInt(option(options, "batchSize", "2000"));
+        if (storageId == null || batchSize <= 0) {
+            System.err.println("The storage option is required and batchSize must be positive");
+            System.exit(1);
+        }
+
+        Configuration configuration = ConfigurationHelper.getConfiguration(
+                new XMLConfigurationReader().readConfiguration(option(options, "config", "cd_storage_conf.xml")),
+                "//Storage[@Id='" + storageId + "']");
+        if (configuration == null) {
+            System.err.println("No storage configured with Id: " + storageId);
+            System.exit(1);
+        }
+        SearchIndexProcessor.getInstance().configureStorageInstance(storageId, configuration);
+
+        // Replayed items must not be stored again.
+        DirectiveStore configured = SearchIndexProcessor.getDirectiveStore(storageId);
+        Path directory = options.containsKey("store") ? Paths.get(options.get("store")) :
+                configured == null ? null : configured.getDirectory();
+        SearchIndexProcessor.closeDirectiveStore(storageId);
+        if (directory == null) {
+            System.err.println("The store option is required when the storage has no DirectiveStore it can open");
+            System.exit(1);
+        }
+
+        boolean completed = false;
+        try (DirectiveStore store = DirectiveStore.openReadOnly(directory)) {
+            DirectiveStoreReindexTool tool = new DirectiveStoreReindexTool(storageId, batchSize);
+            completed = options.containsKey("ids") ? tool.run(store, Paths.get(options.get("ids"))) :
+                    tool.run(store);
+        } catch (IOException e) {
+            LOG.error("Could not read directive store: " + directory, e);
+        }
+        System.exit(completed ? 0 : 1);
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private boolean run(DirectiveStore store) throws IOException {
+        LOG.info("Reindexing {} items from: {} into storageId: {}",
+                new Object[]{store.size(), store.getDirectory(), this.storageId});
+        long start = System.nanoTime();
+        long[] lastProgress = {start};
+        try {
+            store.replay(data -> {
+                this.add(data);
+                long now = System.nanoTime();
+                if (now - lastProgress[0] >= PROGRESS_INTERVAL) {
+                    lastProgress[0] = now;
+                    this.logProgress(store.size(), start, now);
+                }
+            });
+            this.send();
+        } catch (IndexingException e) {
+            LOG.error("Indexing failed for transaction: " + this.transactionId() + ", reindex stopped", e);
+            return false;
+        } finally {
+            SearchIndexProcessor.cleanupRegister(this.transactionId(), this.storageId);
+        }
+        this.logProgress(store.size(), start, System.nanoTime());
+        LOG.info("Reindex done: {} items indexed", this.indexed);
+        return true;
+    }
+
+    private boolean run(DirectiveStore store, Path ids) throws IOException {
+        List<BaseIndexData> actions = ReplayLog.read(ids, this.storageId);
+        LOG.info("Replaying {} items of: {} from: {} into storageId: {}",
+                new Object[]{actions.size(), ids, store.getDirectory(), this.storageId});
+        long start = System.nanoTime();
+        long lastProgress = start;
+        try {
+            for (BaseIndexData action : actions) {
+                BaseIndexData data = action.getAction() == FactoryAction.REMOVE ? action :
+                        store.read(action.getUniqueIndexId());
+                if (data == null) {
+                    LOG.warn("Skipping: {}, the store has no fields for it.", action.getUniqueIndexId());
+                    this.skipped++;
+                    continue;
+                }
+                this.add(data);
+                long now = System.nanoTime();
+                if (now - lastProgress >= PROGRESS_INTERVAL) {
+                    lastProgress = now;
+                    this.logProgress(actions.size(), start, now);
+                }
+            }
+            this.send();
+        } catch (IndexingException e) {
+            LOG.error("Indexing failed for transaction: " + this.transactionId() + ", replay stopped", e);
+            return false;
+        } finally {
+            SearchIndexProcessor.cleanupRegister(this.transactionId(), this.storageId);
+        }
+        this.logProgress(actions.size(), start, System.nanoTime());
+        LOG.info("Replay done: {} items indexed, {} skipped", this.indexed, this.skipped);
+        return true;
+    }
+
+    private void add(BaseIndexData data) throws IndexingException {
+        SearchIndexProcessor.registerAction(this.transactionId(), data);
+        if (++this.pending >= this.batchSize) {
+            this.send();
+        }
+    }
+
+    private void send() throws IndexingException {
+        if (this.pending == 0) {
+            return;
+        }
+        String transactionId = this.transactionId();
+        try {
+            this.processor.triggerIndexing(transactionId, this.storageId);
+        } finally {
+            SearchIndexProcessor.cleanupRegister(transactionId, this.storageId);
+        }
+        this.indexed += this.pending;
+        this.pending = 0;
+        this.batches++;
+    }
+
+    private String transactionId() {
+        return "reindex:" + this.runId + "-" + (this.batches + 1);
+    }
+
+    private void logProgress(long total, long start, long now) {
+        long done = this.indexed + this.pending;
+        double seconds = (now - start) / 1e9;
+        LOG.info("Reindexed {}/{} items, {} items/s",
+                new Object[]{done, total, String.format("%.1f", seconds > 0 ? done / seconds : 0)});
+    }
+}
@@ -0,0 +1,382 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.reindex;
+
+import com.tridion.broker.StorageException;
+import com.tridion.storage.services.LocalThreadTransaction;
+import com.tridion.storage.si4t.DirectiveStore;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.SearchIndexData;
+import com.tridion.storage.si4t.SearchIndexProcessor;
+import com.tridion.storage.si4t.TridionPublishableItemProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.FlushModeType;
+import javax.persistence.Query;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * JPAReindexJob.
+ * <p/>
+ * Rebuilds a search index from page and component presentation content in the broker
+ * database. Each BrokerSource is read in pages of pageSize rows with keyset pagination,
+ * through a read-only EntityManager, so memory does not grow with the size of the
+ * table and no offset has to be skipped. While one page of rows is processed on a
+ * fork-join pool, the next page is fetched.
+ * <p/>
+ * Rows are processed like the Search DAOs do during a deployment and sent through the
+ * configured SearchIndex in transactions of about batchSize items. The Search DAOs store
+ * content with the INDEX-DATA directives removed, so the fields of a row without a
+ * directive are read from a DirectiveStore, which is opened read-only for the run and
+ * closed when it ends. Rows which have neither are counted and skipped rather than
+ * removed from the index, and the job fails if no row at all could be indexed. Reads
+ * are limited to maxRowsPerSecond rows, if set, so the broker database is not overloaded.
+ */
+public final class JPAReindexJob {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JPAReindexJob.class);
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final String storageId;
+    private final int pageSize;
+    private final int batchSize;
+    private final double maxRowsPerSecond;
+    private final Charset encoding;
+    private final Path directiveStoreDirectory;
+    private final ForkJoinPool pool;
+    private final SearchIndexProcessor processor = SearchIndexProcessor.getInstance();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder indexed = new LongAdder();
+    private final LongAdder fromDirectiveStore = new LongAdder();
+    private final LongAdder withoutDirectives = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private DirectiveStore directiveStore;
+    private long nextReadNanos;
+    private int transactions;
+
+    /**
+     * Instantiates a new job. The storage must have been configured on the
+     * SearchIndexProcessor.
+     *
+     * @param entityManagerFactory the factory of the broker database
+     * @param storageId            the storage Id
+     * @param pageSize             the number of rows per query
+     * @param batchSize            the number of items per indexing transaction
+     * @param parallelism          the number of processing threads
+     * @param maxRowsPerSecond     the maximum read rate, 0 for no limit
+     * @param encoding             the encoding of content stored as bytes
+     * @param directiveStore       the DirectiveStore directory to read the fields of rows without
+     *                             directives from, or null
+     */
+    public JPAReindexJob(EntityManagerFactory entityManagerFactory, String storageId, int pageSize, int batchSize,
+                         int parallelism, double maxRowsPerSecond, Charset encoding, Path directiveStore) {
+        if (pageSize <= 0 || batchSize <= 0 || parallelism <= 0 || maxRowsPerSecond < 0) {
+            throw new IllegalArgumentException("pageSize, batchSize and parallelism must be positive");
+        }
+        this.entityManagerFactory = entityManagerFactory;
+        this.storageId = storageId;
+        this.pageSize = pageSize;
+        this.batchSize = batchSize;
+        this.maxRowsPerSecond = maxRowsPerSecond;
+        this.encoding = encoding;
+        this.directiveStoreDirectory = directiveStore;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Reindexes all rows of the sources.
+     *
+     * @param sources the tables to read
+     * @throws IndexingException if the DirectiveStore cannot be opened, if a transaction cannot be indexed,
+     *                           or if no row has fields to index; the job stops
+     */
+    public void run(List<BrokerSource> sources) throws IndexingException {
+        if (this.directiveStoreDirectory == null) {
+            LOG.warn("No DirectiveStore for storageId: {}, only rows with INDEX-DATA directives are indexed.",
+                    this.storageId);
+        } else {
+            try {
+                this.directiveStore = DirectiveStore.openReadOnly(this.directiveStoreDirectory);
+            } catch (IOException e) {
+                throw new IndexingException("Could not open directive store: " + this.directiveStoreDirectory, e);
+            }
+        }
+        EntityManager entityManager = this.entityManagerFactory.createEntityManager();
+        // The entity manager is not thread safe, so all queries run on this thread.
+        ExecutorService fetcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "si4t-reindex-fetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            entityManager.setFlushMode(FlushModeType.COMMIT);
+            long start = System.nanoTime();
+            for (BrokerSource source : sources) {
+                LOG.info("Reindexing: {} into storageId: {}", source, this.storageId);
+                this.reindex(source, entityManager, fetcher, start);
+            }
+            this.logProgress(start);
+            if (this.rows.sum() > 0 && this.withoutDirectives.sum() == this.rows.sum()) {
+                throw new IndexingException("None of the " + this.rows.sum() + " rows has an INDEX-DATA " +
+                        "directive or fields in the DirectiveStore of storageId: " + this.storageId + ". The Search " +
+                        "DAOs store content without its directives; read them from a DirectiveStore, " +
+                        "or reindex from the deployed sources with the ReindexTool.");
+            }
+        } finally {
+            fetcher.shutdownNow();
+            this.pool.shutdown();
+            entityManager.close();
+            if (this.directiveStore != null) {
+                this.directiveStore.close();
+                this.directiveStore = null;
+            }
+        }
+    }
+
+    private void reindex(BrokerSource source, EntityManager entityManager, ExecutorService fetcher, long start)
+            throws IndexingException {
+        Future<List<Row>> next = fetcher.submit(() -> this.fetch(source, entityManager, null));
+        String transactionId = this.nextTransactionId();
+        int registered = 0;
+        long lastProgress = System.nanoTime();
+        try {
+            while (true) {
+                List<Row> page = await(next);
+                if (page.isEmpty()) {
+                    break;
+                }
+                long[] after = page.get(page.size() - 1).key;
+                if (page.size() == this.pageSize) {
+                    next = fetcher.submit(() -> this.fetch(source, entityManager, after));
+                } else {
+                    next = null;
+                }
+
+                this.process(source, transactionId, page);
+                // Counts rows rather than registered actions, which keeps transactions close to batchSize.
+                registered += page.size();
+                if (registered >= this.batchSize) {
+                    this.index(transactionId);
+                    transactionId = this.nextTransactionId();
+                    registered = 0;
+                }
+                if (System.nanoTime() - lastProgress >= PROGRESS_INTERVAL) {
+                    lastProgress = System.nanoTime();
+                    this.logProgress(start);
+                }
+                if (next == null) {
+                    break;
+                }
+            }
+            if (registered > 0) {
+                this.index(transactionId);
+            }
+        } finally {
+            if (next != null) {
+                next.cancel(true);
+            }
+        }
+    }
+
+    private List<Row> fetch(BrokerSource source, EntityManager entityManager, long[] after) throws IOException {
+        this.pace();
+        Query query = entityManager.createNativeQuery(source.query(after == null));
+        query.setHint("org.hibernate.readOnly", Boolean.TRUE);
+        query.setHint("org.hibernate.fetchSize", this.pageSize);
+        if (after != null) {
+            for (int i = 0; i < after.length; i++) {
+                query.setParameter(i + 1, after[i]);
+            }
+        }
+        query.setMaxResults(this.pageSize);
+        List<?> results = query.getResultList();
+        List<Row> page = new ArrayList<>(results.size());
+        for (Object result : results) {
+            Object[] columns = (Object[]) result;
+            // LOBs may not be readable once the next query ran, so the content is read here.
+            page.add(new Row(source.keyOf(columns), source.contentOf(columns, this.encoding)));
+        }
+        entityManager.clear();
+        this.rows.add(page.size());
+        return page;
+    }
+
+    // Spaces reads so they average at most maxRowsPerSecond.
+    private void pace() {
+        if (this.maxRowsPerSecond <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long wait = this.nextReadNanos - now;
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        this.nextReadNanos = Math.max(now, this.nextReadNanos) +
+                (long) (this.pageSize * TimeUnit.SECONDS.toNanos(1) / this.maxRowsPerSecond);
+    }
+
+    private void process(BrokerSource source, String transactionId, List<Row> page) throws IndexingException {
+        try {
+            this.pool.submit(() -> page.parallelStream().forEach(row -> {
+                // The Search DAOs register actions for the transaction of the current thread. Pool
+                // threads are reused, so the transaction is reset when the row is done.
+                String previousTransactionId = LocalThreadTransaction.getTransactionId();
+                LocalThreadTransaction.setTransactionId(transactionId);
+                try {
+                    this.process(source, transactionId, row);
+                } finally {
+                    LocalThreadTransaction.setTransactionId(previousTransactionId);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexingException("Interrupted while processing: " + source, e);
+        } catch (ExecutionException e) {
+            throw new IndexingException("Processing failed for: " + source, e.getCause());
+        }
+    }
+
+    private void process(BrokerSource source, String transactionId, Row row) {
+        String indexId = source.indexIdOf(row.key);
+        try {
+            if (TridionPublishableItemProcessor.hasIndexData(row.content)) {
+                SourceProcessor.process(this.storageId, source.getType(), (int) row.key[0], (int) row.key[1],
+                        indexId, row.content);
+                this.indexed.increment();
+                return;
+            }
+            SearchIndexData stored = this.directiveStore == null ? null : this.directiveStore.read(indexId);
+            if (stored == null) {
+                this.withoutDirectives.increment();
+                return;
+            }
+            SearchIndexProcessor.registerAction(transactionId, stored);
+            this.indexed.increment();
+            this.fromDirectiveStore.increment();
+        } catch (IOException | StorageException | RuntimeException e) {
+            LOG.warn("Could not process: " + indexId, e);
+            this.failed.increment();
+        }
+    }
+
+    private void index(String transactionId) throws IndexingException {
+        try {
+            this.processor.triggerIndexing(transactionId, this.storageId);
+        } finally {
+            SearchIndexProcessor.cleanupRegister(transactionId, this.storageId);
+        }
+    }
+
+    private String nextTransactionId() {
+        return "reindex:" + this.runId + "-" + (++this.transactions);
+    }
+
+    private static List<Row> await(Future<List<Row>> page) throws IndexingException {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexingException("Interrupted while reading the broker database", e);
+        } catch (ExecutionException e) {
+            throw new IndexingException("Could not read the broker database", e.getCause());
+        }
+    }
+
+    private void logProgress(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        LOG.info("Read {} rows ({} rows/s): {} indexed, {} of these from the directive store, {} without " +
+                        "directives, {} failed",
+                new Object[]{this.rows.sum(), String.format("%.1f", seconds > 0 ? this.rows.sum() / seconds : 0),
+                        this.indexed.sum(), this.fromDirectiveStore.sum(), this.withoutDirectives.sum(),
+                        this.failed.sum()});
+    }
+
+    /**
+     * Gets the number of rows read.
+     *
+     * @return the row count
+     */
+    public long getRowCount() {
+        return this.rows.sum();
+    }
+
+    /**
+     * Gets the number of rows which were sent to the indexer.
+     *
+     * @return the indexed count
+     */
+    public long getIndexedCount() {
+        return this.indexed.sum();
+    }
+
+    /**
+     * Gets the number of indexed rows whose fields were read from the DirectiveStore.
+     *
+     * @return the count of rows indexed from the directive store
+     */
+    public long getFromDirectiveStoreCount() {
+        return this.fromDirectiveStore.sum();
+    }
+
+    /**
+     * Gets the number of rows which were skipped because their content has no INDEX-DATA directive
+     * and the DirectiveStore has no fields for them.
+     *
+     * @return the skipped count
+     */
+    public long getWithoutDirectivesCount() {
+        return this.withoutDirectives.sum();
+    }
+
+    /**
+     * Gets the number of rows which could not be processed.
+     *
+     * @return the failed count
+     */
+    public long getFailedCount() {
+        return this.failed.sum();
+    }
+
+    private static final class Row {
+        private final long[] key;
+        private final String content;
+
+        Row(long[] key, String content) {
+            this.key = key;
+            this.content = content;
+        }
+    }
+}
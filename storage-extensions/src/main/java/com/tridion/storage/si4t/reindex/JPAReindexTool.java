@@ -0,0 +1,151 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.reindex;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationHelper;
+import com.tridion.configuration.XMLConfigurationReader;
+import com.tridion.storage.si4t.DirectiveStore;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.SearchIndexProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JPAReindexTool.
+ * <p/>
+ * Runs the JPAReindexJob from the command line. The broker database is reached through
+ * a JPA persistence unit, which needs no entities: persistenceUnit names it, and any
+ * option with a dot in its name, such as javax.persistence.jdbc.url, is passed to it as
+ * a property.
+ * <p/>
+ * Options are given as name=value arguments:
+ * <ul>
+ * <li>persistenceUnit: the persistence unit of the broker database (required)</li>
+ * <li>config: the storage configuration (default cd_storage_conf.xml)</li>
+ * <li>storage: the storage Id (required)</li>
+ * <li>store: the DirectiveStore directory with the fields of rows without INDEX-DATA
+ * directives (default the DirectiveStore of the storage)</li>
+ * <li>types: pages, dcps or both, comma separated (default pages,dcps)</li>
+ * <li>pageSize: the number of rows per query (default 500)</li>
+ * <li>batchSize: the number of items per indexing transaction (default 2000)</li>
+ * <li>parallelism: the number of processing threads (default the number of processors)</li>
+ * <li>maxRowsPerSecond: the maximum read rate, 0 for no limit (default 0)</li>
+ * <li>encoding: the encoding of content stored as bytes (default UTF-8)</li>
+ * <li>pageTable, pagePublicationColumn, pageIdColumn, pageContentColumn: the page content
+ * table (default PAGE_CONTENT with PUBLICATION_ID, PAGE_ID and CONTENT)</li>
+ * <li>dcpTable, dcpPublicationColumn, dcpComponentColumn, dcpTemplateColumn,
+ * dcpContentColumn: the component presentation table (default COMPONENT_PRESENTATIONS
+ * with PUBLICATION_ID, COMPONENT_REF_ID, TEMPLATE_ID and CONTENT)</li>
+ * </ul>
+ */
+public final class JPAReindexTool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JPAReindexTool.class);
+
+    private JPAReindexTool() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        Map<String, String> properties = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 1) {
+                System.err.println("Options should be given as name=value, not: " + arg);
+                System.exit(1);
+            }
+            String name = arg.substring(0, separator);
+            (name.indexOf('.') > 0 ? properties : options).put(name, arg.substring(separator + 1));
+        }
+        String persistenceUnit = options.get("persistenceUnit");
+        String storageId = options.get("storage");
+        if (persistenceUnit == null || storageId == null) {
+            System.err.println("The persistenceUnit and storage options are required");
+            System.exit(1);
+        }
+
+        Configuration configuration = ConfigurationHelper.getConfiguration(
+                new XMLConfigurationReader().readConfiguration(option(options, "config", "cd_storage_conf.xml")),
+                "//Storage[@Id='" + storageId + "']");
+        if (configuration == null) {
+            System.err.println("No storage configured with Id: " + storageId);
+            System.exit(1);
+        }
+        SearchIndexProcessor.getInstance().configureStorageInstance(storageId, configuration);
+
+        // Reindexed items must not be stored again, so the store is only read.
+        DirectiveStore configured = SearchIndexProcessor.getDirectiveStore(storageId);
+        Path directiveStore = options.containsKey("store") ? Paths.get(options.get("store")) :
+                configured == null ? null : configured.getDirectory();
+        SearchIndexProcessor.closeDirectiveStore(storageId);
+
+        List<BrokerSource> sources = new ArrayList<>();
+        List<String> types = Arrays.asList(option(options, "types", "pages,dcps").split(","));
+        if (types.contains("pages")) {
+            sources.add(BrokerSource.pages(option(options, "pageTable", "PAGE_CONTENT"),
+                    option(options, "pagePublicationColumn", "PUBLICATION_ID"),
+                    option(options, "pageIdColumn", "PAGE_ID"),
+                    option(options, "pageContentColumn", "CONTENT")));
+        }
+        if (types.contains("dcps")) {
+            sources.add(BrokerSource.componentPresentations(
+                    option(options, "dcpTable", "COMPONENT_PRESENTATIONS"),
+                    option(options, "dcpPublicationColumn", "PUBLICATION_ID"),
+                    option(options, "dcpComponentColumn", "COMPONENT_REF_ID"),
+                    option(options, "dcpTemplateColumn", "TEMPLATE_ID"),
+                    option(options, "dcpContentColumn", "CONTENT")));
+        }
+
+        EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(persistenceUnit, properties);
+        boolean completed = false;
+        try {
+            JPAReindexJob job = new JPAReindexJob(entityManagerFactory, storageId,
+                    Integer.parseInt(option(options, "pageSize", "500")),
+                    Integer.parseInt(option(options, "batchSize", "2000")),
+                    Integer.parseInt(option(options, "parallelism",
+                            Integer.toString(Runtime.getRuntime().availableProcessors()))),
+                    Double.parseDouble(option(options, "maxRowsPerSecond", "0")),
+                    Charset.forName(option(options, "encoding", StandardCharsets.UTF_8.name())), directiveStore);
+            job.run(sources);
+            completed = true;
+        } catch (IndexingException e) {
+            LOG.error("Reindex stopped: " + e.getLocalizedMessage(), e);
+        } finally {
+            entityManagerFactory.close();
+        }
+        System.exit(completed ? 0 : 1);
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+}
@@ -0,0 +1,317 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.reindex;
+
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.DirectiveStore;
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.ListableSearchIndex;
+import com.tridion.storage.si4t.SearchIndexData;
+import com.tridion.storage.si4t.SearchIndexProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * ReconciliationJob.
+ * <p/>
+ * Finds and repairs drift between the items in a DirectiveStore and a search index,
+ * as caused by lost actions, failed commits or manual deletes. For every publication
+ * the stored ids and the ids listed by the ListableSearchIndex are merged in sorted
+ * order. The listed ids are streamed, but the stored ids of the publication are
+ * collected and sorted in memory, once per publication; memory therefore grows with
+ * the number of stored items of the largest publication, not with the whole store:
+ * <ul>
+ * <li>stored, but not indexed: the item is added;</li>
+ * <li>indexed with another (or no) field digest: the item is updated;</li>
+ * <li>indexed, but not stored: the item is removed.</li>
+ * </ul>
+ * The necessary actions are sent through the configured SearchIndex in transactions of
+ * batchSize actions. Unchanged items cost nothing but the listing.
+ * <p/>
+ * A publication is first diffed without sending anything. When that finds more removals
+ * than maxRemovals, for instance because the store was enabled after the publication was
+ * published, only the additions and updates are sent. A dry run stops after that first
+ * diff, and counts what it would have sent.
+ */
+public final class ReconciliationJob {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReconciliationJob.class);
+
+    private final String storageId;
+    private final DirectiveStore store;
+    private final ListableSearchIndex index;
+    private final int batchSize;
+    private final long maxRemovals;
+    private final boolean dryRun;
+    private final SearchIndexProcessor processor = SearchIndexProcessor.getInstance();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private long batches;
+    private long pending;
+    private long added;
+    private long updated;
+    private long removed;
+    private long unchanged;
+
+    /**
+     * Instantiates a new reconciliation job.
+     *
+     * @param storageId   the storage Id
+     * @param store       the store with the deployed items
+     * @param index       the search index of the storage
+     * @param batchSize   the number of actions per indexing transaction
+     * @param maxRemovals the maximum number of removals per publication, or -1 for no limit
+     * @param dryRun      true to only log the differences
+     */
+    public ReconciliationJob(String storageId, DirectiveStore store, ListableSearchIndex index, int batchSize,
+                             long maxRemovals, boolean dryRun) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.storageId = storageId;
+        this.store = store;
+        this.index = index;
+        this.batchSize = batchSize;
+        this.maxRemovals = maxRemovals;
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Reconciles publications one after the other.
+     *
+     * @param publicationIds the publication ids
+     * @throws IndexingException if the index or the store can not be read, or indexing fails
+     */
+    public void run(Collection<String> publicationIds) throws IndexingException {
+        try {
+            for (String publicationId : publicationIds) {
+                this.reconcile(publicationId);
+            }
+            this.send();
+        } finally {
+            SearchIndexProcessor.cleanupRegister(this.transactionId(), this.storageId);
+        }
+        LOG.info(this.dryRun ? "Dry run done: {} to add, {} to update, {} to remove, {} unchanged" :
+                        "Reconciliation done: {} added, {} updated, {} removed, {} unchanged",
+                new Object[]{this.added, this.updated, this.removed, this.unchanged});
+    }
+
+    private void reconcile(String publicationId) throws IndexingException {
+        // Both diffs of the publication merge the same sorted ids.
+        List<String> storedIds = this.store.getSortedIds(publicationId);
+        Diff plan = this.diff(publicationId, storedIds, false, false);
+        LOG.info("Publication {}: {}", publicationId, plan);
+        if (this.dryRun) {
+            this.added += plan.added;
+            this.updated += plan.updated;
+            this.removed += plan.removed;
+            this.unchanged += plan.unchanged;
+            return;
+        }
+        if (plan.isEmpty()) {
+            this.unchanged += plan.unchanged;
+            return;
+        }
+        boolean removals = this.maxRemovals < 0 || plan.removed <= this.maxRemovals;
+        if (!removals) {
+            LOG.warn("Not removing {} items from publication {}, more than maxRemovals ({})",
+                    new Object[]{plan.removed, publicationId, this.maxRemovals});
+        }
+        Diff applied = this.diff(publicationId, storedIds, true, removals);
+        this.added += applied.added;
+        this.updated += applied.updated;
+        this.removed += removals ? applied.removed : 0;
+        this.unchanged += applied.unchanged;
+    }
+
+    private Diff diff(String publicationId, List<String> storedIds, boolean apply, boolean applyRemovals)
+            throws IndexingException {
+        Diff diff = new Diff(publicationId, storedIds, apply, applyRemovals);
+        this.index.listIndexedItems(publicationId, diff);
+        diff.finish();
+        return diff;
+    }
+
+    private void register(BaseIndexData data) throws IndexingException {
+        SearchIndexProcessor.registerAction(this.transactionId(), data);
+        if (++this.pending >= this.batchSize) {
+            this.send();
+        }
+    }
+
+    private void send() throws IndexingException {
+        if (this.pending == 0) {
+            return;
+        }
+        String transactionId = this.transactionId();
+        try {
+            this.processor.triggerIndexing(transactionId, this.storageId);
+        } finally {
+            SearchIndexProcessor.cleanupRegister(transactionId, this.storageId);
+        }
+        this.pending = 0;
+        this.batches++;
+    }
+
+    private String transactionId() {
+        return "reconcile:" + this.runId + "-" + (this.batches + 1);
+    }
+
+    /**
+     * Gets the number of items which were added, or in a dry run would be added.
+     *
+     * @return the added count
+     */
+    public long getAddedCount() {
+        return this.added;
+    }
+
+    /**
+     * Gets the number of items which were updated, or in a dry run would be updated.
+     *
+     * @return the updated count
+     */
+    public long getUpdatedCount() {
+        return this.updated;
+    }
+
+    /**
+     * Gets the number of items which were removed, or in a dry run would be removed.
+     *
+     * @return the removed count
+     */
+    public long getRemovedCount() {
+        return this.removed;
+    }
+
+    /**
+     * Gets the number of items which are indexed with the stored field digest.
+     *
+     * @return the unchanged count
+     */
+    public long getUnchangedCount() {
+        return this.unchanged;
+    }
+
+    /**
+     * Merges the listed items of a publication with its sorted stored ids.
+     */
+    private final class Diff implements ListableSearchIndex.IndexedItemHandler {
+        private final String publicationId;
+        private final boolean apply;
+        private final boolean applyRemovals;
+        private final Iterator<String> stored;
+        private String nextStored;
+        private String previous;
+        private long added;
+        private long updated;
+        private long removed;
+        private long unchanged;
+
+        private Diff(String publicationId, List<String> storedIds, boolean apply, boolean applyRemovals) {
+            this.publicationId = publicationId;
+            this.apply = apply;
+            this.applyRemovals = applyRemovals;
+            this.stored = storedIds.iterator();
+            this.advance();
+        }
+
+        @Override
+        public void accept(String uniqueIndexId, IndexType type, String fieldDigest) throws IndexingException {
+            if (this.previous != null && uniqueIndexId.compareTo(this.previous) <= 0) {
+                // Merging out of order would remove items which are still deployed.
+                throw new IndexingException("The index of publication " + this.publicationId +
+                        " is not listed in ascending order at: " + uniqueIndexId);
+            }
+            this.previous = uniqueIndexId;
+            while (this.nextStored != null && this.nextStored.compareTo(uniqueIndexId) < 0) {
+                this.add(this.nextStored, FactoryAction.PERSIST);
+                this.advance();
+            }
+            if (uniqueIndexId.equals(this.nextStored)) {
+                String storedDigest = ReconciliationJob.this.store.getFieldDigest(uniqueIndexId);
+                if (fieldDigest != null && fieldDigest.equals(storedDigest)) {
+                    this.unchanged++;
+                } else {
+                    this.add(uniqueIndexId, FactoryAction.UPDATE);
+                }
+                this.advance();
+            } else {
+                this.remove(uniqueIndexId, type);
+            }
+        }
+
+        private void finish() throws IndexingException {
+            while (this.nextStored != null) {
+                this.add(this.nextStored, FactoryAction.PERSIST);
+                this.advance();
+            }
+        }
+
+        private void advance() {
+            this.nextStored = this.stored.hasNext() ? this.stored.next() : null;
+        }
+
+        private void add(String uniqueIndexId, FactoryAction action) throws IndexingException {
+            if (action == FactoryAction.PERSIST) {
+                this.added++;
+            } else {
+                this.updated++;
+            }
+            if (!this.apply) {
+                return;
+            }
+            SearchIndexData data;
+            try {
+                data = ReconciliationJob.this.store.read(uniqueIndexId);
+            } catch (IOException e) {
+                throw new IndexingException("Could not read: " + uniqueIndexId + " from the directive store", e);
+            }
+            if (data != null) {
+                data.setAction(action);
+                ReconciliationJob.this.register(data);
+            }
+        }
+
+        private void remove(String uniqueIndexId, IndexType type) throws IndexingException {
+            this.removed++;
+            if (!this.applyRemovals) {
+                return;
+            }
+            BaseIndexData data = new BaseIndexData(FactoryAction.REMOVE, type, this.publicationId,
+                    ReconciliationJob.this.storageId);
+            data.setUniqueIndexId(uniqueIndexId);
+            ReconciliationJob.this.register(data);
+        }
+
+        private boolean isEmpty() {
+            return this.added == 0 && this.updated == 0 && this.removed == 0;
+        }
+
+        @Override
+        public String toString() {
+            return this.added + " to add, " + this.updated + " to update, " + this.removed + " to remove, " +
+                    this.unchanged + " unchanged";
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.reindex;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationHelper;
+import com.tridion.configuration.XMLConfigurationReader;
+import com.tridion.storage.si4t.DirectiveStore;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.ListableSearchIndex;
+import com.tridion.storage.si4t.SearchIndex;
+import com.tridion.storage.si4t.SearchIndexProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ReconciliationTool.
+ * <p/>
+ * Runs the ReconciliationJob from the command line, comparing the DirectiveStore of a
+ * storage with its search index. The configured indexer has to implement
+ * ListableSearchIndex. The store is opened read-only, so a deployer can keep running.
+ * <p/>
+ * Options are given as name=value arguments:
+ * <ul>
+ * <li>config: the storage configuration (default cd_storage_conf.xml)</li>
+ * <li>storage: the storage Id (required)</li>
+ * <li>store: the store directory (default the DirectiveStore of the storage)</li>
+ * <li>publications: the publication ids, comma separated (default all publications in
+ * the store)</li>
+ * <li>batchSize: the number of actions per indexing transaction (default 2000)</li>
+ * <li>maxRemovals: the maximum number of removals per publication, -1 for no limit
+ * (default 1000)</li>
+ * <li>dryRun: true to only log the differences (default false)</li>
+ * </ul>
+ */
+public final class ReconciliationTool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReconciliationTool.class);
+
+    private ReconciliationTool() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 1) {
+                System.err.println("Options should be given as name=value, not: " + arg);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        String storageId = options.get("storage");
+        if (storageId == null) {
+            System.err.println("The storage option is required");
+            System.exit(1);
+        }
+
+        Configuration configuration = ConfigurationHelper.getConfiguration(
+                new XMLConfigurationReader().readConfiguration(option(options, "config", "cd_storage_conf.xml")),
+                "//Storage[@Id='" + storageId + "']");
+        if (configuration == null) {
+            System.err.println("No storage configured with Id: " + storageId);
+            System.exit(1);
+        }
+        SearchIndexProcessor processor = SearchIndexProcessor.getInstance();
+        processor.configureStorageInstance(storageId, configuration);
+
+        // Items sent by the reconciliation are stored already.
+        DirectiveStore configured = SearchIndexProcessor.getDirectiveStore(storageId);
+        Path directory = options.containsKey("store") ? Paths.get(options.get("store")) :
+                configured == null ? null : configured.getDirectory();
+        SearchIndexProcessor.closeDirectiveStore(storageId);
+        if (directory == null) {
+            System.err.println("The store option is required when the storage has no DirectiveStore it can open");
+            System.exit(1);
+        }
+        SearchIndex searchIndex = processor.getSearchIndex(storageId);
+        if (!(searchIndex instanceof ListableSearchIndex)) {
+            System.err.println(searchIndex.getClass().getName() + " can not list its items, it has to implement " +
+                    ListableSearchIndex.class.getName());
+            System.exit(1);
+        }
+
+        boolean completed = false;
+        try (DirectiveStore store = DirectiveStore.openReadOnly(directory)) {
+            Collection<String> publicationIds = options.containsKey("publications") ?
+                    Arrays.asList(options.get("publications").split(",")) : store.getPublicationIds();
+            new ReconciliationJob(storageId, store, (ListableSearchIndex) searchIndex,
+                    Integer.parseInt(option(options, "batchSize", "2000")),
+                    Long.parseLong(option(options, "maxRemovals", "1000")),
+                    Boolean.parseBoolean(option(options, "dryRun", "false")))
+                    .run(publicationIds);
+            completed = true;
+        } catch (IOException e) {
+            LOG.error("Could not read directive store: " + directory, e);
+        } catch (IndexingException e) {
+            LOG.error("Reconciliation stopped: " + e.getLocalizedMessage(), e);
+        }
+        System.exit(completed ? 0 : 1);
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.reindex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * ReindexCheckpoint.
+ * <p/>
+ * Records how far a reindex got. Sources are processed in path order, so everything
+ * up to and including the last indexed path is done. The checkpoint is replaced
+ * atomically after each batch, so a crash loses at most the batch in progress.
+ */
+final class ReindexCheckpoint {
+
+    private static final String LAST_PATH = "lastPath";
+    private static final String FILES = "files";
+    private static final String INDEXED = "indexed";
+    private static final String FAILED = "failed";
+
+    private final Path file;
+    private String lastPath;
+    private long files;
+    private long indexed;
+    private long failed;
+
+    private ReindexCheckpoint(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads a checkpoint, or starts a new one when the file does not exist.
+     *
+     * @param file the checkpoint file
+     * @return the checkpoint
+     * @throws IOException if the file cannot be read
+     */
+    static ReindexCheckpoint read(Path file) throws IOException {
+        ReindexCheckpoint checkpoint = new ReindexCheckpoint(file);
+        if (Files.exists(file)) {
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            }
+            checkpoint.lastPath = properties.getProperty(LAST_PATH);
+            checkpoint.files = Long.parseLong(properties.getProperty(FILES, "0"));
+            checkpoint.indexed = Long.parseLong(properties.getProperty(INDEXED, "0"));
+            checkpoint.failed = Long.parseLong(properties.getProperty(FAILED, "0"));
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Whether a source was indexed before the checkpoint.
+     *
+     * @param relativePath the path of the source, relative to the source directory
+     * @return true if it is done
+     */
+    boolean isDone(String relativePath) {
+        return this.lastPath != null && relativePath.compareTo(this.lastPath) <= 0;
+    }
+
+    /**
+     * Records a completed batch and writes the checkpoint.
+     *
+     * @param relativePath the last path of the batch
+     * @param batchFiles   the number of files in the batch
+     * @param batchIndexed the number of items sent to the indexer
+     * @param batchFailed  the number of files which could not be processed
+     * @throws IOException if the checkpoint cannot be written
+     */
+    void completed(String relativePath, long batchFiles, long batchIndexed, long batchFailed) throws IOException {
+        this.lastPath = relativePath;
+        this.files += batchFiles;
+        this.indexed += batchIndexed;
+        this.failed += batchFailed;
+
+        Properties properties = new Properties();
+        properties.setProperty(LAST_PATH, this.lastPath);
+        properties.setProperty(FILES, Long.toString(this.files));
+        properties.setProperty(INDEXED, Long.toString(this.indexed));
+        properties.setProperty(FAILED, Long.toString(this.failed));
+        Path temp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "SI4T reindex checkpoint");
+        }
+        Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    String getLastPath() {
+        return this.lastPath;
+    }
+
+    long getFiles() {
+        return this.files;
+    }
+
+    long getIndexed() {
+        return this.indexed;
+    }
+
+    long getFailed() {
+        return this.failed;
+    }
+}
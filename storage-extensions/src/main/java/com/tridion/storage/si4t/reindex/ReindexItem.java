@@ -0,0 +1,103 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.reindex;
+
+import com.tridion.storage.si4t.IndexType;
+
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ReindexItem.
+ * <p/>
+ * A page or dynamic component presentation source found by the ReindexTool. The item
+ * is identified by its file name, which is its SI4T index id with the colon replaced
+ * by an underscore, followed by any extension: tcm_5-1234-64.html for page
+ * tcm:5-1234-64 and dcp_5-100-200.xml for the presentation of component 100 with
+ * template 200 in publication 5.
+ */
+final class ReindexItem {
+
+    private static final Pattern PAGE_NAME = Pattern.compile("tcm_(\\d+)-(\\d+)-64(?:\\..*)?");
+    private static final Pattern DCP_NAME = Pattern.compile("dcp_(\\d+)-(\\d+)-(\\d+)(?:\\..*)?");
+
+    private final Path path;
+    private final IndexType type;
+    private final int publicationId;
+    private final int itemId;
+    private final String uniqueIndexId;
+
+    private ReindexItem(Path path, IndexType type, int publicationId, int itemId, String uniqueIndexId) {
+        this.path = path;
+        this.type = type;
+        this.publicationId = publicationId;
+        this.itemId = itemId;
+        this.uniqueIndexId = uniqueIndexId;
+    }
+
+    /**
+     * Identifies the item of a file.
+     *
+     * @param path the file
+     * @return the item, or null if the file name is not an index id
+     */
+    static ReindexItem of(Path path) {
+        String name = path.getFileName().toString();
+        Matcher page = PAGE_NAME.matcher(name);
+        if (page.matches()) {
+            int publicationId = Integer.parseInt(page.group(1));
+            int pageId = Integer.parseInt(page.group(2));
+            return new ReindexItem(path, IndexType.PAGE, publicationId, pageId,
+                    "tcm:" + publicationId + "-" + pageId + "-64");
+        }
+        Matcher dcp = DCP_NAME.matcher(name);
+        if (dcp.matches()) {
+            int publicationId = Integer.parseInt(dcp.group(1));
+            return new ReindexItem(path, IndexType.COMPONENT_PRESENTATION, publicationId,
+                    Integer.parseInt(dcp.group(2)),
+                    "dcp:" + publicationId + "-" + dcp.group(2) + "-" + dcp.group(3));
+        }
+        return null;
+    }
+
+    Path getPath() {
+        return this.path;
+    }
+
+    IndexType getType() {
+        return this.type;
+    }
+
+    int getPublicationId() {
+        return this.publicationId;
+    }
+
+    int getItemId() {
+        return this.itemId;
+    }
+
+    String getUniqueIndexId() {
+        return this.uniqueIndexId;
+    }
+
+    @Override
+    public String toString() {
+        return this.uniqueIndexId + " (" + this.path + ")";
+    }
+}
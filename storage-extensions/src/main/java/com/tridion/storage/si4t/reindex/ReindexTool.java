@@ -0,0 +1,324 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.reindex;
+
+import com.tridion.broker.StorageException;
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationException;
+import com.tridion.configuration.ConfigurationHelper;
+import com.tridion.configuration.XMLConfigurationReader;
+import com.tridion.storage.services.LocalThreadTransaction;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.SearchIndexProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ReindexTool.
+ * <p/>
+ * Rebuilds a search index without republishing, from a directory of page and dynamic
+ * component presentation sources which still contain their INDEX-DATA directives, for
+ * instance an archive of deployed transport packages. Files are identified by name as
+ * described in ReindexItem; other files are skipped. If several files hold the same item,
+ * the last one in path order is indexed.
+ * <p/>
+ * Sources are walked in path order and processed in batches. The items of a batch are
+ * parsed in parallel on a fork-join pool, exactly like the Search DAOs do during a
+ * deployment, and then sent through the configured SearchIndex as one transaction.
+ * After each batch a checkpoint is written, so an interrupted reindex continues where
+ * it stopped when it is started again.
+ * <p/>
+ * Options are given as name=value arguments:
+ * <ul>
+ * <li>source: the directory with the sources (required)</li>
+ * <li>config: the storage configuration (default cd_storage_conf.xml)</li>
+ * <li>storage: the storage Id (required)</li>
+ * <li>batchSize: the number of files per transaction (default 500)</li>
+ * <li>parallelism: the number of parsing threads (default the number of processors)</li>
+ * <li>encoding: the encoding of the sources (default UTF-8)</li>
+ * <li>checkpoint: the checkpoint file (default .si4t-reindex in the source directory)</li>
+ * <li>restart: true to ignore an existing checkpoint (default false)</li>
+ * </ul>
+ */
+public final class ReindexTool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReindexTool.class);
+    private static final String CHECKPOINT_FILE = ".si4t-reindex";
+    // Leaves of the parse task handle this many items on one thread.
+    private static final int PARSE_THRESHOLD = 16;
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    private final Path source;
+    private final String storageId;
+    private final int batchSize;
+    private final Charset encoding;
+    private final Path checkpointFile;
+    private final boolean restart;
+    private final ForkJoinPool pool;
+    private final SearchIndexProcessor processor = SearchIndexProcessor.getInstance();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    private ReindexTool(Map<String, String> options) throws ConfigurationException {
+        String sourceOption = options.get("source");
+        this.storageId = options.get("storage");
+        if (sourceOption == null || this.storageId == null) {
+            throw new IllegalArgumentException("The source and storage options are required");
+        }
+        this.source = Paths.get(sourceOption);
+        this.batchSize = Integer.parseInt(option(options, "batchSize", "500"));
+        int parallelism = Integer.parseInt(option(options, "parallelism",
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+        if (this.batchSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("batchSize and parallelism must be positive");
+        }
+        this.encoding = Charset.forName(option(options, "encoding", StandardCharsets.UTF_8.name()));
+        this.checkpointFile = Paths.get(option(options, "checkpoint", this.source.resolve(CHECKPOINT_FILE).toString()));
+        this.restart = Boolean.parseBoolean(option(options, "restart", "false"));
+        this.pool = new ForkJoinPool(parallelism);
+
+        Configuration configuration = ConfigurationHelper.getConfiguration(
+                new XMLConfigurationReader().readConfiguration(option(options, "config", "cd_storage_conf.xml")),
+                "//Storage[@Id='" + this.storageId + "']");
+        if (configuration == null) {
+            throw new ConfigurationException("No storage configured with Id: " + this.storageId);
+        }
+        this.processor.configureStorageInstance(this.storageId, configuration);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 1) {
+                System.err.println("Options should be given as name=value, not: " + arg);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        boolean completed;
+        try {
+            completed = new ReindexTool(options).run();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            completed = false;
+        }
+        System.exit(completed ? 0 : 1);
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Reindexes the sources which are not done yet.
+     *
+     * @return true if all batches were indexed
+     * @throws IOException if the sources cannot be listed or the checkpoint cannot be written
+     */
+    private boolean run() throws IOException {
+        if (this.restart) {
+            Files.deleteIfExists(this.checkpointFile);
+        }
+        ReindexCheckpoint checkpoint = ReindexCheckpoint.read(this.checkpointFile);
+        if (checkpoint.getLastPath() != null) {
+            LOG.info("Resuming after: {} ({} files done)", checkpoint.getLastPath(), checkpoint.getFiles());
+        }
+
+        List<String> paths = this.listSources(checkpoint);
+        LOG.info("Reindexing {} files from: {} into storageId: {}",
+                new Object[]{paths.size(), this.source, this.storageId});
+
+        long start = System.nanoTime();
+        long lastProgress = start;
+        long files = 0;
+        try {
+            for (int from = 0; from < paths.size(); from += this.batchSize) {
+                List<String> batch = paths.subList(from, Math.min(from + this.batchSize, paths.size()));
+                String transactionId = "reindex:" + this.runId + "-" + (from / this.batchSize + 1);
+                BatchResult result;
+                try {
+                    result = this.indexBatch(transactionId, batch);
+                } catch (IndexingException e) {
+                    LOG.error("Indexing failed for the batch starting at: " + batch.get(0) +
+                            ", run again to resume from there", e);
+                    return false;
+                }
+                checkpoint.completed(batch.get(batch.size() - 1), batch.size(), result.indexed.sum(),
+                        result.failed.sum());
+                files += batch.size();
+
+                long now = System.nanoTime();
+                if (now - lastProgress >= PROGRESS_INTERVAL || files == paths.size()) {
+                    lastProgress = now;
+                    this.logProgress(files, paths.size(), start, now, checkpoint);
+                }
+            }
+        } finally {
+            this.pool.shutdown();
+        }
+        LOG.info("Reindex done: {} files, {} items indexed, {} failed",
+                new Object[]{checkpoint.getFiles(), checkpoint.getIndexed(), checkpoint.getFailed()});
+        return true;
+    }
+
+    private List<String> listSources(ReindexCheckpoint checkpoint) throws IOException {
+        List<String> paths = new ArrayList<>();
+        Files.walkFileTree(this.source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && ReindexItem.of(file) != null) {
+                    String relativePath = relativePath(file);
+                    if (!checkpoint.isDone(relativePath)) {
+                        paths.add(relativePath);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                LOG.warn("Skipping unreadable path: " + file, e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(paths);
+        return paths;
+    }
+
+    // Separators are normalized so checkpoints compare the same on every platform.
+    private String relativePath(Path file) {
+        return this.source.relativize(file).toString().replace('\\', '/');
+    }
+
+    private BatchResult indexBatch(String transactionId, List<String> batch) throws IndexingException {
+        BatchResult result = new BatchResult();
+        List<String> latest = latestByUniqueIndexId(batch);
+        try {
+            this.pool.invoke(new ParseTask(transactionId, latest, 0, latest.size(), result));
+            this.processor.triggerIndexing(transactionId, this.storageId);
+        } finally {
+            SearchIndexProcessor.cleanupRegister(transactionId, this.storageId);
+        }
+        return result;
+    }
+
+    /**
+     * Keeps only the last path of every item in a batch. The items are parsed in parallel,
+     * so otherwise an arbitrary version of an item with several sources would be indexed.
+     */
+    private static List<String> latestByUniqueIndexId(List<String> batch) {
+        Map<String, String> latest = new LinkedHashMap<>();
+        for (String relativePath : batch) {
+            String previous = latest.put(ReindexItem.of(Paths.get(relativePath)).getUniqueIndexId(), relativePath);
+            if (previous != null) {
+                LOG.debug("Skipping: {}, it is superseded by: {}", previous, relativePath);
+            }
+        }
+        return latest.size() == batch.size() ? batch : new ArrayList<>(latest.values());
+    }
+
+    private void parse(String transactionId, String relativePath, BatchResult result) {
+        ReindexItem item = ReindexItem.of(this.source.resolve(relativePath));
+        try {
+            String content = new String(Files.readAllBytes(item.getPath()), this.encoding);
+            SourceProcessor.process(this.storageId, item.getType(), item.getPublicationId(), item.getItemId(),
+                    item.getUniqueIndexId(), content);
+            result.indexed.increment();
+        } catch (IOException | StorageException | RuntimeException e) {
+            LOG.warn("Could not process: " + item + " in transaction: " + transactionId, e);
+            result.failed.increment();
+        }
+    }
+
+    private void logProgress(long files, long total, long start, long now, ReindexCheckpoint checkpoint) {
+        double seconds = (now - start) / 1e9;
+        double rate = seconds > 0 ? files / seconds : 0;
+        long remaining = rate > 0 ? (long) ((total - files) / rate) : -1;
+        LOG.info("Reindexed {}/{} files, {} items indexed, {} failed, {} files/s, {} s remaining",
+                new Object[]{files, total, checkpoint.getIndexed(), checkpoint.getFailed(),
+                        String.format("%.1f", rate), remaining});
+    }
+
+    private static final class BatchResult {
+        private final LongAdder indexed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+    }
+
+    /**
+     * Parses a range of a batch, splitting it until the range is small.
+     */
+    private final class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String transactionId;
+        private final List<String> batch;
+        private final int from;
+        private final int to;
+        private final BatchResult result;
+
+        ParseTask(String transactionId, List<String> batch, int from, int to, BatchResult result) {
+            this.transactionId = transactionId;
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > PARSE_THRESHOLD) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new ParseTask(this.transactionId, this.batch, this.from, middle, this.result),
+                        new ParseTask(this.transactionId, this.batch, middle, this.to, this.result));
+                return;
+            }
+            // The Search DAOs register actions for the transaction of the current thread. Pool
+            // threads are reused, so the transaction is reset when the range is done.
+            String previousTransactionId = LocalThreadTransaction.getTransactionId();
+            LocalThreadTransaction.setTransactionId(this.transactionId);
+            try {
+                for (int i = this.from; i < this.to; i++) {
+                    parse(this.transactionId, this.batch.get(i), this.result);
+                }
+            } finally {
+                LocalThreadTransaction.setTransactionId(previousTransactionId);
+            }
+        }
+    }
+}
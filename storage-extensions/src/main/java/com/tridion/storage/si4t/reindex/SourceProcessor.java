@@ -0,0 +1,62 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.reindex;
+
+import com.tridion.broker.StorageException;
+import com.tridion.data.CharacterDataString;
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.TridionPublishableItemProcessor;
+
+/**
+ * SourceProcessor.
+ * <p/>
+ * Processes the source of a page or dynamic component presentation the way the Search
+ * DAOs do during a deployment, registering its index action for the transaction of the
+ * current thread.
+ */
+final class SourceProcessor {
+
+    private SourceProcessor() {
+    }
+
+    /**
+     * Processes an item source.
+     *
+     * @param storageId     the storage id
+     * @param type          PAGE or COMPONENT_PRESENTATION
+     * @param publicationId the publication id
+     * @param itemId        the page or component id
+     * @param uniqueIndexId the index id
+     * @param content       the source, with its INDEX-DATA directive
+     * @throws StorageException if the directive cannot be processed
+     */
+    static void process(String storageId, IndexType type, int publicationId, int itemId, String uniqueIndexId,
+                        String content) throws StorageException {
+        String publication = Integer.toString(publicationId);
+        if (type == IndexType.PAGE) {
+            new TridionPublishableItemProcessor(content, FactoryAction.UPDATE, IndexType.PAGE, publication,
+                    uniqueIndexId, storageId)
+                    .processPageSource(new CharacterDataString(publicationId, itemId, content));
+        } else {
+            new TridionPublishableItemProcessor(content, FactoryAction.PERSIST, IndexType.COMPONENT_PRESENTATION,
+                    publication, uniqueIndexId, storageId)
+                    .processComponentPresentationSource();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.report;
+
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.JsonWriter;
+import com.tridion.storage.si4t.metrics.IndexingStage;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TransactionReport.
+ * <p/>
+ * Collects the indexing outcome of one transaction for one storage, from the first
+ * registered action until the transaction is indexed. Deployer threads and dispatch
+ * workers may update a report at the same time.
+ */
+public final class TransactionReport {
+
+    private static final FactoryAction[] ACTIONS = FactoryAction.values();
+    private static final IndexType[] TYPES = IndexType.values();
+    private static final IndexingStage[] STAGES = IndexingStage.values();
+    private static final int MAX_FAILURE_MESSAGES = 10;
+
+    private final String transactionId;
+    private final String storageId;
+    private final long started = System.currentTimeMillis();
+    // [action * types + type]
+    private final AtomicLongArray processed = new AtomicLongArray(ACTIONS.length * TYPES.length);
+    private final AtomicLongArray stageNanos = new AtomicLongArray(STAGES.length);
+    private final ConcurrentHashMap<String, LongAdder> commitNanos = new ConcurrentHashMap<>();
+    private final LongAdder registered = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder failedItems = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong(-1);
+    private final AtomicInteger failureCount = new AtomicInteger();
+    private final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+
+    TransactionReport(String transactionId, String storageId) {
+        this.transactionId = transactionId;
+        this.storageId = storageId;
+    }
+
+    /**
+     * Records a registered action.
+     *
+     * @param replacesEarlier whether the action replaced or was ignored in favour of
+     *                        an earlier action on the same item
+     */
+    public void registered(boolean replacesEarlier) {
+        this.registered.increment();
+        if (replacesEarlier) {
+            this.coalesced.increment();
+        }
+    }
+
+    /**
+     * Records the number of actions in the transaction which belong to other storages.
+     *
+     * @param count the number of actions
+     */
+    public void skipped(int count) {
+        this.skipped.set(count);
+    }
+
+    /**
+     * Records an action sent to the search index.
+     *
+     * @param data   the action
+     * @param failed whether the indexer failed
+     */
+    public void processed(BaseIndexData data, boolean failed) {
+        this.processed.incrementAndGet(data.getAction().ordinal() * TYPES.length + data.getIndexType().ordinal());
+        if (failed) {
+            this.failedItems.increment();
+        } else {
+            this.bytes.add(data.getPayloadSize());
+        }
+    }
+
+    /**
+     * Adds to the time spent in a stage.
+     *
+     * @param stage the stage
+     * @param nanos the duration
+     */
+    public void stage(IndexingStage stage, long nanos) {
+        this.stageNanos.addAndGet(stage.ordinal(), nanos);
+    }
+
+    /**
+     * Adds to the time spent committing a publication.
+     *
+     * @param publicationId the publication id
+     * @param nanos         the duration
+     */
+    public void committed(String publicationId, long nanos) {
+        LongAdder time = this.commitNanos.get(publicationId);
+        if (time == null) {
+            time = this.commitNanos.computeIfAbsent(publicationId, id -> new LongAdder());
+        }
+        time.add(nanos);
+        this.stage(IndexingStage.COMMIT, nanos);
+    }
+
+    /**
+     * Adds the bytes a thread allocated while working on this transaction.
+     *
+     * @param bytes the allocated bytes, negative if not measured
+     */
+    public void allocated(long bytes) {
+        if (bytes < 0) {
+            return;
+        }
+        this.allocatedBytes.compareAndSet(-1, 0);
+        this.allocatedBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Records a failure. Only the first few messages are kept.
+     *
+     * @param failure the failure
+     */
+    public void failed(Throwable failure) {
+        if (this.failureCount.incrementAndGet() <= MAX_FAILURE_MESSAGES) {
+            this.failures.add(failure.getClass().getName() + ": " + failure.getMessage());
+        }
+    }
+
+    /**
+     * Writes the report as a single JSON line, without line separator.
+     *
+     * @return the JSON
+     */
+    public String toJson() {
+        long ended = System.currentTimeMillis();
+        JsonWriter json = new JsonWriter(new StringBuilder(512))
+                .beginObject()
+                .field("transactionId", this.transactionId)
+                .field("storageId", this.storageId)
+                .field("started", this.started)
+                .field("ended", ended)
+                .field("durationMs", ended - this.started)
+                .field("outcome", this.failureCount.get() == 0 ? "ok" : "failed")
+                .field("registered", this.registered.sum())
+                .field("coalesced", this.coalesced.sum())
+                .field("skipped", this.skipped.get())
+                .field("failedItems", this.failedItems.sum())
+                .field("bytes", this.bytes.sum());
+
+        json.name("processed").beginObject();
+        for (FactoryAction action : ACTIONS) {
+            boolean any = false;
+            for (IndexType type : TYPES) {
+                long count = this.processed.get(action.ordinal() * TYPES.length + type.ordinal());
+                if (count > 0) {
+                    if (!any) {
+                        json.name(action.name()).beginObject();
+                        any = true;
+                    }
+                    json.field(type.name(), count);
+                }
+            }
+            if (any) {
+                json.endObject();
+            }
+        }
+        json.endObject();
+
+        json.name("stageMicros").beginObject();
+        for (IndexingStage stage : STAGES) {
+            long nanos = this.stageNanos.get(stage.ordinal());
+            if (nanos > 0) {
+                json.field(stage.name(), nanos / 1000);
+            }
+        }
+        json.endObject();
+
+        json.name("commitMicros").beginObject();
+        for (Map.Entry<String, LongAdder> commit : new TreeMap<>(this.commitNanos).entrySet()) {
+            json.field(commit.getKey(), commit.getValue().sum() / 1000);
+        }
+        json.endObject();
+
+        long allocated = this.allocatedBytes.get();
+        if (allocated >= 0) {
+            json.field("allocatedBytes", allocated);
+        }
+        if (this.failureCount.get() > 0) {
+            json.field("failureCount", this.failureCount.get());
+            json.name("failures").beginArray();
+            for (String failure : this.failures) {
+                json.value(failure);
+            }
+            json.endArray();
+        }
+        return json.endObject().toString();
+    }
+
+    /**
+     * Gets the bytes allocated by the current thread so far, as reported by the
+     * ThreadMXBean of HotSpot and OpenJ9.
+     *
+     * @return the allocated bytes, or -1 if the JVM does not measure them
+     */
+    public static long currentThreadAllocatedBytes() {
+        return AllocationMeterHolder.METER == null ? -1
+                : AllocationMeterHolder.METER.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Loads the com.sun.management extension of the ThreadMXBean, if the JVM has it.
+     */
+    private static final class AllocationMeterHolder {
+        private static final com.sun.management.ThreadMXBean METER = load();
+
+        private static com.sun.management.ThreadMXBean load() {
+            try {
+                ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                if (threads instanceof com.sun.management.ThreadMXBean) {
+                    com.sun.management.ThreadMXBean meter = (com.sun.management.ThreadMXBean) threads;
+                    if (meter.isThreadAllocatedMemorySupported() && meter.isThreadAllocatedMemoryEnabled()) {
+                        return meter;
+                    }
+                }
+            } catch (LinkageError | RuntimeException e) {
+                // Not available on this JVM.
+            }
+            return null;
+        }
+    }
+}
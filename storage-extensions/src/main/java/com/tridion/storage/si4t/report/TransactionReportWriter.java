@@ -0,0 +1,207 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.report;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TransactionReportWriter.
+ * <p/>
+ * Appends report lines to a local JSONL file on a background thread, so deployer
+ * threads never wait for disk I/O. Lines are queued in a bounded queue; when the
+ * queue is full, lines are dropped and counted. The file rolls over to file.1,
+ * file.2 and so on when it exceeds its maximum size, keeping at most maxFiles
+ * old files.
+ */
+public final class TransactionReportWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionReportWriter.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_DRAIN = 256;
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final Path file;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final BlockingQueue<String> queue;
+    private final Thread thread;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+
+    private OutputStream out;
+    private long size;
+
+    /**
+     * Instantiates a new writer and starts its thread.
+     *
+     * @param file          the report file
+     * @param maxBytes      the size at which the file rolls over
+     * @param maxFiles      the number of rolled over files to keep
+     * @param queueCapacity the number of lines which may wait to be written
+     * @throws IOException if the directory of the file can not be created
+     */
+    public TransactionReportWriter(Path file, long maxBytes, int maxFiles, int queueCapacity) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        Files.createDirectories(this.file.getParent());
+        this.thread = new Thread(this::writeLoop, "si4t-report-" + this.file.getFileName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a line, without waiting.
+     *
+     * @param line the line, without line separator
+     * @return false if the line was dropped because the queue is full or the writer is closed
+     */
+    public boolean offer(String line) {
+        if (!this.closed && this.queue.offer(line)) {
+            return true;
+        }
+        this.dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Writes the queued lines, stops the thread and closes the file.
+     */
+    public void close() {
+        this.closed = true;
+        this.thread.interrupt();
+        try {
+            this.thread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getWrittenCount() {
+        return this.written.get();
+    }
+
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    public Path getFile() {
+        return this.file;
+    }
+
+    private void writeLoop() {
+        List<String> lines = new ArrayList<>(MAX_DRAIN);
+        while (!this.closed || !this.queue.isEmpty()) {
+            try {
+                String line = this.queue.poll(1, TimeUnit.SECONDS);
+                if (line == null) {
+                    continue;
+                }
+                lines.add(line);
+            } catch (InterruptedException e) {
+                // Interrupted by close, write what is left.
+            }
+            this.queue.drainTo(lines, MAX_DRAIN - lines.size());
+            this.write(lines);
+            lines.clear();
+        }
+        this.closeFile();
+    }
+
+    private void write(List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        try {
+            for (String line : lines) {
+                byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+                if (this.out != null && this.size + bytes.length > this.maxBytes) {
+                    this.roll();
+                }
+                if (this.out == null) {
+                    this.open();
+                }
+                this.out.write(bytes);
+                this.size += bytes.length;
+                this.written.incrementAndGet();
+            }
+            this.out.flush();
+        } catch (IOException e) {
+            this.dropped.addAndGet(lines.size());
+            LOG.error("Could not write report lines to: " + this.file, e);
+            this.closeFile();
+        }
+    }
+
+    private void open() throws IOException {
+        this.out = new BufferedOutputStream(Files.newOutputStream(this.file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), BUFFER_SIZE);
+        this.size = Files.size(this.file);
+    }
+
+    private void roll() throws IOException {
+        this.closeFile();
+        Files.deleteIfExists(this.rolled(this.maxFiles));
+        for (int i = this.maxFiles - 1; i >= 1; i--) {
+            Path from = this.rolled(i);
+            if (Files.exists(from)) {
+                Files.move(from, this.rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (this.maxFiles > 0) {
+            Files.move(this.file, this.rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(this.file);
+        }
+    }
+
+    private Path rolled(int index) {
+        return this.file.resolveSibling(this.file.getFileName() + "." + index);
+    }
+
+    private void closeFile() {
+        if (this.out == null) {
+            return;
+        }
+        try {
+            this.out.close();
+        } catch (IOException e) {
+            LOG.warn("Could not close report file: " + this.file, e);
+        } finally {
+            this.out = null;
+        }
+    }
+}
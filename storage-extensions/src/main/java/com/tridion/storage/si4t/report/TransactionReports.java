@@ -0,0 +1,163 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.report;
+
+import com.tridion.storage.si4t.metrics.IndexingStage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TransactionReports.
+ * <p/>
+ * Keeps the open TransactionReport of every transaction, per storage for which
+ * reports are enabled. A report is opened by the first action of a transaction,
+ * and written when the transaction is indexed. Reports of transactions which are
+ * cleaned up without being indexed are discarded.
+ */
+public final class TransactionReports {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionReports.class);
+    private static final ConcurrentHashMap<String, Storage> STORAGES = new ConcurrentHashMap<>();
+
+    private TransactionReports() {
+    }
+
+    /**
+     * Enables reports for a storage, replacing and closing an earlier writer.
+     *
+     * @param storageId the storage Id
+     * @param writer    the writer of the reports
+     */
+    public static void enable(String storageId, TransactionReportWriter writer) {
+        Storage previous = STORAGES.put(storageId, new Storage(writer));
+        if (previous != null) {
+            previous.writer.close();
+        }
+    }
+
+    /**
+     * Disables reports for a storage.
+     *
+     * @param storageId the storage Id
+     */
+    public static void disable(String storageId) {
+        Storage previous = STORAGES.remove(storageId);
+        if (previous != null) {
+            previous.writer.close();
+        }
+    }
+
+    /**
+     * Gets the writer of a storage.
+     *
+     * @param storageId the storage Id
+     * @return the writer, or null if reports are disabled
+     */
+    public static TransactionReportWriter getWriter(String storageId) {
+        Storage storage = storageId == null ? null : STORAGES.get(storageId);
+        return storage == null ? null : storage.writer;
+    }
+
+    /**
+     * Gets the report of a transaction, opening it if needed.
+     *
+     * @param transactionId the transaction id
+     * @param storageId     the storage Id
+     * @return the report, or null if reports are disabled for the storage
+     */
+    public static TransactionReport open(String transactionId, String storageId) {
+        Storage storage = storageId == null || transactionId == null ? null : STORAGES.get(storageId);
+        if (storage == null) {
+            return null;
+        }
+        TransactionReport report = storage.reports.get(transactionId);
+        if (report == null) {
+            report = storage.reports.computeIfAbsent(transactionId, id -> new TransactionReport(id, storageId));
+        }
+        return report;
+    }
+
+    /**
+     * Gets the report of a transaction, if one is open.
+     *
+     * @param transactionId the transaction id
+     * @param storageId     the storage Id
+     * @return the report, or null
+     */
+    public static TransactionReport find(String transactionId, String storageId) {
+        Storage storage = storageId == null || transactionId == null ? null : STORAGES.get(storageId);
+        return storage == null ? null : storage.reports.get(transactionId);
+    }
+
+    /**
+     * Adds the duration of a stage which started at startNanos to the report of a
+     * transaction, opening the report if needed.
+     *
+     * @param stage         the stage
+     * @param transactionId the transaction id
+     * @param storageId     the storage Id
+     * @param startNanos    the System.nanoTime() at the start of the stage
+     */
+    public static void record(IndexingStage stage, String transactionId, String storageId, long startNanos) {
+        TransactionReport report = open(transactionId, storageId);
+        if (report != null) {
+            report.stage(stage, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Closes the report of a transaction and queues it for writing.
+     *
+     * @param transactionId the transaction id
+     * @param storageId     the storage Id
+     */
+    public static void finish(String transactionId, String storageId) {
+        Storage storage = storageId == null ? null : STORAGES.get(storageId);
+        if (storage == null) {
+            return;
+        }
+        TransactionReport report = transactionId == null ? null : storage.reports.remove(transactionId);
+        if (report != null && !storage.writer.offer(report.toJson())) {
+            LOG.debug("Dropped the report of transaction: {}", transactionId);
+        }
+    }
+
+    /**
+     * Discards the report of a transaction, if it is still open.
+     *
+     * @param transactionId the transaction id
+     * @param storageId     the storage Id
+     */
+    public static void discard(String transactionId, String storageId) {
+        Storage storage = storageId == null ? null : STORAGES.get(storageId);
+        if (storage != null && transactionId != null) {
+            storage.reports.remove(transactionId);
+        }
+    }
+
+    private static final class Storage {
+        private final TransactionReportWriter writer;
+        private final ConcurrentHashMap<String, TransactionReport> reports = new ConcurrentHashMap<>();
+
+        private Storage(TransactionReportWriter writer) {
+            this.writer = writer;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.shard;
+
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.SearchIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shard.
+ * <p/>
+ * One endpoint of a ShardedSearchIndex. The shard owns its delegate SearchIndex and a
+ * single dispatch thread, which runs the actions and commits of this shard in the
+ * order in which they were submitted. The delegate is therefore only used by one
+ * thread at a time and does not need to be a ConcurrentSearchIndex.
+ * <p/>
+ * Submitting an action blocks while the queue of the shard is full, and then until the
+ * action has been sent, so a failure is reported to the transaction which submitted the
+ * action. Every queued action gets a sequence number. A commit of a publication covers
+ * the actions queued before it; it is reused by later commit requests as long as no
+ * action for the publication was queued after it.
+ */
+final class Shard {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Shard.class);
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    /**
+     * An index action on the delegate of a shard.
+     */
+    interface Action {
+        void apply(SearchIndex delegate) throws IndexingException;
+    }
+
+    private final String id;
+    private final SearchIndex delegate;
+    private final ExecutorService dispatcher;
+    private final Semaphore queue;
+    private final int queueSize;
+
+    // Guarded by this; actions and commits are queued in the order of their sequence numbers.
+    private final Map<String, PublicationState> publications = new HashMap<>();
+    private long lastSequence;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+
+    /**
+     * Instantiates a new shard.
+     *
+     * @param id        the shard id
+     * @param delegate  the configured search index of this shard
+     * @param queueSize the maximum number of actions waiting to be dispatched
+     */
+    Shard(String id, SearchIndex delegate, int queueSize) {
+        this.id = id;
+        this.delegate = delegate;
+        this.queueSize = queueSize;
+        this.queue = new Semaphore(queueSize);
+        this.dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "si4t-shard-" + id);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues an action for this shard and waits until it has been sent.
+     *
+     * @param data   the item of the action
+     * @param action the action
+     * @throws IndexingException if the action failed, the shard is destroyed, or the caller is interrupted
+     *                           while waiting for a place in the queue
+     */
+    void submit(BaseIndexData data, Action action) throws IndexingException {
+        try {
+            this.queue.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexingException("Interrupted while queueing: " + data.getUniqueIndexId() + " for shard: " +
+                    this.id, e);
+        }
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            try {
+                action.apply(this.delegate);
+                this.sent.increment();
+                return null;
+            } catch (IndexingException | RuntimeException e) {
+                this.failed.increment();
+                throw e;
+            } finally {
+                this.queue.release();
+            }
+        });
+        synchronized (this) {
+            try {
+                this.dispatcher.execute(task);
+            } catch (RejectedExecutionException e) {
+                this.queue.release();
+                throw new IndexingException("Shard: " + this.id + " is destroyed, could not queue: " +
+                        data.getUniqueIndexId(), e);
+            }
+            this.publications.computeIfAbsent(data.getPublicationItemId(), k -> new PublicationState())
+                    .lastAction = ++this.lastSequence;
+        }
+        try {
+            getUninterruptibly(task);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IndexingException ? (IndexingException) e.getCause() :
+                    new IndexingException("Shard: " + this.id + " could not index: " + data.getUniqueIndexId(),
+                            e.getCause());
+        }
+    }
+
+    /**
+     * Queues a commit of a publication behind the actions which are already queued.
+     * A pending commit which covers all queued actions of the publication is returned
+     * instead, and nothing is queued if the last commit covers them and succeeded.
+     *
+     * @param publicationId the publication id
+     * @return the pending commit, or null
+     * @throws IndexingException if the shard is destroyed
+     */
+    synchronized Future<Void> commit(String publicationId) throws IndexingException {
+        PublicationState state = this.publications.get(publicationId);
+        if (state == null) {
+            return null;
+        }
+        if (state.commit != null && state.commitCovers >= state.lastAction) {
+            if (!state.commit.isDone()) {
+                return state.commit;
+            }
+            if (!isFailed(state.commit)) {
+                return null;
+            }
+        }
+        FutureTask<Void> commit = new FutureTask<>(() -> {
+            this.delegate.commit(publicationId);
+            this.commits.increment();
+            return null;
+        });
+        try {
+            this.dispatcher.execute(commit);
+        } catch (RejectedExecutionException e) {
+            throw new IndexingException("Shard: " + this.id + " is destroyed, could not commit publication: " +
+                    publicationId, e);
+        }
+        state.commit = commit;
+        state.commitCovers = this.lastSequence;
+        return commit;
+    }
+
+    private static boolean isFailed(Future<Void> done) {
+        try {
+            done.get();
+            return false;
+        } catch (ExecutionException | CancellationException | InterruptedException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Waits for a future, also when the thread is interrupted. The interrupt is restored
+     * afterwards.
+     *
+     * @param future the future
+     * @throws ExecutionException if the future failed
+     */
+    static void getUninterruptibly(Future<Void> future) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Lets the queued actions and commits finish and destroys the delegate.
+     */
+    void destroy() {
+        this.dispatcher.shutdown();
+        try {
+            if (!this.dispatcher.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("Shard: {} did not finish its queued actions in time.", this.id);
+                this.dispatcher.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.dispatcher.shutdownNow();
+        }
+        this.delegate.destroy();
+    }
+
+    String getId() {
+        return this.id;
+    }
+
+    int getQueuedCount() {
+        return this.queueSize - this.queue.availablePermits();
+    }
+
+    long getSentCount() {
+        return this.sent.sum();
+    }
+
+    long getFailedCount() {
+        return this.failed.sum();
+    }
+
+    long getCommitCount() {
+        return this.commits.sum();
+    }
+
+    /**
+     * The actions and last commit of one publication on this shard.
+     */
+    private static final class PublicationState {
+        private long lastAction;
+        private Future<Void> commit;
+        private long commitCovers;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.shard;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ShardRing.
+ * <p/>
+ * Consistent hash ring which maps a key to one of a fixed list of shards. Every shard
+ * owns a number of virtual nodes on the ring, placed by the hash of its id, so the
+ * mapping only depends on the shard ids and not on their order. Adding or removing a
+ * shard only moves the keys of that shard.
+ * <p/>
+ * The ring is immutable, lookups are a binary search over the sorted node hashes.
+ */
+final class ShardRing<T> {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] hashes;
+    private final Object[] owners;
+
+    /**
+     * Builds a ring.
+     *
+     * @param ids          the unique shard ids
+     * @param shards       the shards, in the order of their ids
+     * @param virtualNodes the number of virtual nodes per shard
+     */
+    ShardRing(List<String> ids, List<T> shards, int virtualNodes) {
+        if (ids.isEmpty() || ids.size() != shards.size() || virtualNodes < 1) {
+            throw new IllegalArgumentException("A ring needs at least one shard and one virtual node per shard.");
+        }
+        int size = ids.size() * virtualNodes;
+        long[] nodes = new long[size];
+        int[] shardIndexes = new int[size];
+        int n = 0;
+        for (int shard = 0; shard < ids.size(); shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                nodes[n] = hash(ids.get(shard) + '#' + node);
+                shardIndexes[n] = shard;
+                n++;
+            }
+        }
+
+        // Sort the nodes by hash, ties are broken by shard id to stay independent of the order.
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = Long.compare(nodes[a], nodes[b]);
+            return c != 0 ? c : ids.get(shardIndexes[a]).compareTo(ids.get(shardIndexes[b]));
+        });
+        this.hashes = new long[size];
+        this.owners = new Object[size];
+        for (int i = 0; i < size; i++) {
+            this.hashes[i] = nodes[order[i]];
+            this.owners[i] = shards.get(shardIndexes[order[i]]);
+        }
+    }
+
+    /**
+     * Gets the shard which owns a key: the owner of the first node at or after the
+     * hash of the key, wrapping around at the end of the ring.
+     *
+     * @param key the key
+     * @return the shard
+     */
+    @SuppressWarnings("unchecked")
+    T get(String key) {
+        int i = Arrays.binarySearch(this.hashes, hash(key));
+        if (i < 0) {
+            i = -i - 1;
+            if (i == this.hashes.length) {
+                i = 0;
+            }
+        }
+        return (T) this.owners[i];
+    }
+
+    /**
+     * 64 bit FNV-1a over the characters, followed by the MurmurHash3 finalizer, so
+     * keys which only differ in their last characters still spread over the ring.
+     */
+    static long hash(String key) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            h = (h ^ (c & 0xff)) * FNV_PRIME;
+            h = (h ^ (c >>> 8)) * FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tridion.storage.si4t.shard;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationException;
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.BinaryIndexData;
+import com.tridion.storage.si4t.ConcurrentSearchIndex;
+import com.tridion.storage.si4t.IndexerAttributes;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.SearchIndex;
+import com.tridion.storage.si4t.SearchIndexData;
+import com.tridion.storage.si4t.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * ShardedSearchIndex.
+ * <p/>
+ * SearchIndex which spreads the documents of every publication over several shards, so
+ * that one large publication is no longer bound to a single core. Each shard has its own
+ * delegate SearchIndex, for instance a SolrIndexer pointing to a different core, and its
+ * own dispatch queue and thread. A document is routed by a consistent hash of its
+ * unique index id, so an item and its later updates and removals always go to the same
+ * shard. A commit of a publication commits all shards which received actions for it in
+ * parallel, once their queued actions have been sent.
+ * <p/>
+ * Configure it in cd_storage_conf.xml, with one Shard node per endpoint. The Indexer node
+ * inside a Shard node is passed to the delegate as if it were the Indexer of the storage:
+ * <pre>
+ * &lt;Indexer Class="com.tridion.storage.si4t.shard.ShardedSearchIndex"
+ *          VirtualNodes="128"
+ *          ShardQueueSize="1000"&gt;
+ *     &lt;Shard Id="staging-a"&gt;
+ *         &lt;Indexer Class="org.si4t.solr.SolrIndexer"
+ *                  DefaultCoreUrl="http://solr-a:8080/solr/staging"/&gt;
+ *     &lt;/Shard&gt;
+ *     &lt;Shard Id="staging-b"&gt;
+ *         &lt;Indexer Class="org.si4t.solr.SolrIndexer"
+ *                  DefaultCoreUrl="http://solr-b:8080/solr/staging"/&gt;
+ *     &lt;/Shard&gt;
+ * &lt;/Indexer&gt;
+ * </pre>
+ * Routing only depends on the shard ids, so keep them stable: renaming a shard moves its
+ * documents. Adding a shard moves about 1/N of the documents to it; these have to be
+ * removed from their old shard, for instance by reindexing into fresh cores. An action
+ * returns once its shard has sent it, so a failed action is reported to the transaction
+ * which sent it; the shards work in parallel for the concurrent dispatch threads.
+ */
+public class ShardedSearchIndex implements ConcurrentSearchIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShardedSearchIndex.class);
+    private static final String INDEXER_NODE = "Indexer";
+    private static final String SHARD_NODE = "Shard";
+    private static final String SHARD_ID_ATTRIBUTE = "Id";
+    private static final String CLASS_ATTRIBUTE = "Class";
+    private static final String VIRTUAL_NODES_ATTRIBUTE = "VirtualNodes";
+    private static final String SHARD_QUEUE_SIZE_ATTRIBUTE = "ShardQueueSize";
+    private static final int DEFAULT_VIRTUAL_NODES = 128;
+    private static final int DEFAULT_SHARD_QUEUE_SIZE = 1000;
+
+    private List<Shard> shards;
+    private ShardRing<Shard> ring;
+
+    @Override
+    public void configure(Configuration configuration) throws ConfigurationException {
+        Configuration indexerConfiguration = configuration.getChild(INDEXER_NODE);
+        int virtualNodes = IndexerAttributes.getInt(indexerConfiguration, VIRTUAL_NODES_ATTRIBUTE,
+                DEFAULT_VIRTUAL_NODES);
+        int queueSize = IndexerAttributes.getInt(indexerConfiguration, SHARD_QUEUE_SIZE_ATTRIBUTE,
+                DEFAULT_SHARD_QUEUE_SIZE);
+        if (virtualNodes < 1 || queueSize < 1) {
+            throw new ConfigurationException("VirtualNodes and ShardQueueSize of the sharded indexer must be " +
+                    "positive.");
+        }
+
+        List<Configuration> shardNodes = indexerConfiguration.getChildrenByName(SHARD_NODE);
+        if (shardNodes.isEmpty()) {
+            throw new ConfigurationException("Please configure at least one Shard node for the sharded indexer.");
+        }
+        List<String> ids = new ArrayList<>();
+        List<Shard> configured = new ArrayList<>();
+        try {
+            for (Configuration shardNode : shardNodes) {
+                String id = IndexerAttributes.getString(shardNode, SHARD_ID_ATTRIBUTE, null);
+                if (Utils.StringIsNullOrEmpty(id) || ids.contains(id)) {
+                    throw new ConfigurationException("Every Shard node needs a unique Id attribute, found: " + id);
+                }
+                configured.add(new Shard(id, loadDelegate(id, shardNode), queueSize));
+                ids.add(id);
+            }
+        } catch (ConfigurationException | RuntimeException e) {
+            configured.forEach(Shard::destroy);
+            throw e;
+        }
+        this.shards = configured;
+        this.ring = new ShardRing<>(ids, configured, virtualNodes);
+        LOG.info("Sharding documents over: {} with {} virtual nodes per shard.", ids, virtualNodes);
+    }
+
+    private static SearchIndex loadDelegate(String id, Configuration shardNode) throws ConfigurationException {
+        String className = IndexerAttributes.getString(shardNode.getChild(INDEXER_NODE), CLASS_ATTRIBUTE, null);
+        if (Utils.StringIsNullOrEmpty(className)) {
+            throw new ConfigurationException("Please set the Class attribute of the Indexer of shard: " + id);
+        }
+        SearchIndex delegate;
+        try {
+            delegate = Class.forName(className).asSubclass(SearchIndex.class).newInstance();
+        } catch (ClassNotFoundException | ClassCastException | InstantiationException | IllegalAccessException e) {
+            throw new ConfigurationException("Could not load indexer: " + className + " of shard: " + id, e);
+        }
+        delegate.configure(shardNode);
+        LOG.info("Configured shard: {} with: {}", id, className);
+        return delegate;
+    }
+
+    @Override
+    public void addItemToIndex(SearchIndexData data) throws IndexingException {
+        this.route(data).submit(data, delegate -> delegate.addItemToIndex(data));
+    }
+
+    @Override
+    public void removeItemFromIndex(BaseIndexData data) throws IndexingException {
+        this.route(data).submit(data, delegate -> delegate.removeItemFromIndex(data));
+    }
+
+    @Override
+    public void updateItemInIndex(SearchIndexData data) throws IndexingException {
+        this.route(data).submit(data, delegate -> delegate.updateItemInIndex(data));
+    }
+
+    @Override
+    public void addBinaryToIndex(BinaryIndexData data) throws IndexingException {
+        this.route(data).submit(data, delegate -> delegate.addBinaryToIndex(data));
+    }
+
+    @Override
+    public void removeBinaryFromIndex(BaseIndexData data) throws IndexingException {
+        this.route(data).submit(data, delegate -> delegate.removeBinaryFromIndex(data));
+    }
+
+    private Shard route(BaseIndexData data) {
+        return this.ring.get(data.getUniqueIndexId());
+    }
+
+    /**
+     * Commits the publication on every shard which received actions for it since its last
+     * commit, in parallel. Waits for all of these commits, so a failing shard does not keep
+     * the others from committing.
+     *
+     * @param publicationId the publication id
+     * @throws IndexingException the first failure of a commit on any shard
+     */
+    @Override
+    public void commit(String publicationId) throws IndexingException {
+        List<Shard> committed = new ArrayList<>();
+        List<Future<Void>> commits = new ArrayList<>();
+        for (Shard shard : this.shards) {
+            Future<Void> commit = shard.commit(publicationId);
+            if (commit != null) {
+                committed.add(shard);
+                commits.add(commit);
+            }
+        }
+
+        IndexingException failure = null;
+        Set<String> failedShards = new HashSet<>();
+        for (int i = 0; i < commits.size(); i++) {
+            Shard shard = committed.get(i);
+            try {
+                Shard.getUninterruptibly(commits.get(i));
+            } catch (ExecutionException e) {
+                failedShards.add(shard.getId());
+                if (failure == null) {
+                    failure = e.getCause() instanceof IndexingException ? (IndexingException) e.getCause() :
+                            new IndexingException("Commit of publication: " + publicationId + " failed on shard: " +
+                                    shard.getId(), e.getCause());
+                } else {
+                    LOG.error("Commit of publication: " + publicationId + " failed on shard: " + shard.getId() +
+                            " as well.", e.getCause());
+                }
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Shard: {} committed publication: {} (sent: {}, failed: {}, commits: {}, queued: {})",
+                        new Object[]{shard.getId(), publicationId, shard.getSentCount(), shard.getFailedCount(),
+                                shard.getCommitCount(), shard.getQueuedCount()});
+            }
+        }
+        if (failure != null) {
+            LOG.error("Commit of publication: {} failed on shards: {}", publicationId, failedShards);
+            throw failure;
+        }
+    }
+
+    /**
+     * Lets every shard finish its queued actions and destroys the delegates.
+     */
+    @Override
+    public void destroy() {
+        if (this.shards != null) {
+            this.shards.forEach(Shard::destroy);
+        }
+    }
+}
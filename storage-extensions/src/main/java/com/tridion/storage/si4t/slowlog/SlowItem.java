@@ -0,0 +1,239 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.slowlog;
+
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.JsonWriter;
+import com.tridion.storage.si4t.metrics.IndexingStage;
+
+/**
+ * SlowItem.
+ * <p/>
+ * An item of which one stage took longer than the threshold of that stage. Sizes and
+ * the field count are -1 when they are not known in the stage.
+ */
+public final class SlowItem {
+
+    private final long timestamp;
+    private final IndexingStage stage;
+    private final long durationMicros;
+    private final long thresholdMicros;
+    private final String storageId;
+    private final String transactionId;
+    private final String uniqueIndexId;
+    private final String publicationId;
+    private final IndexType indexType;
+    private final String action;
+    private final long itemSize;
+    private final long payloadSize;
+    private final int fieldCount;
+    private final boolean failed;
+    private final String thread;
+
+    private SlowItem(Builder builder) {
+        this.timestamp = System.currentTimeMillis();
+        this.stage = builder.stage;
+        this.durationMicros = builder.durationMicros;
+        this.thresholdMicros = builder.thresholdMicros;
+        this.storageId = builder.storageId;
+        this.transactionId = builder.transactionId;
+        this.uniqueIndexId = builder.uniqueIndexId;
+        this.publicationId = builder.publicationId;
+        this.indexType = builder.indexType;
+        this.action = builder.action;
+        this.itemSize = builder.itemSize;
+        this.payloadSize = builder.payloadSize;
+        this.fieldCount = builder.fieldCount;
+        this.failed = builder.failed;
+        this.thread = Thread.currentThread().getName();
+    }
+
+    /**
+     * Creates a new builder.
+     *
+     * @param stage the slow stage
+     * @param nanos the duration of the stage
+     * @return the builder
+     */
+    public static Builder builder(IndexingStage stage, long nanos) {
+        return new Builder(stage, nanos);
+    }
+
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    public IndexingStage getStage() {
+        return this.stage;
+    }
+
+    public long getDurationMicros() {
+        return this.durationMicros;
+    }
+
+    public String getUniqueIndexId() {
+        return this.uniqueIndexId;
+    }
+
+    public String getPublicationId() {
+        return this.publicationId;
+    }
+
+    /**
+     * Gets the phase of the pipeline in which the stage ran: deploy for the stages which
+     * run while the deployer processes the item, index for those run while the
+     * transaction is sent to the indexer.
+     *
+     * @return deploy or index
+     */
+    public String getPhase() {
+        switch (this.stage) {
+            case DISPATCH:
+            case TEXT_EXTRACT:
+            case INDEXER_CALL:
+            case COMMIT:
+                return "index";
+            default:
+                return "deploy";
+        }
+    }
+
+    /**
+     * Writes this item as a single line of JSON.
+     *
+     * @return the JSON
+     */
+    public String toJson() {
+        JsonWriter json = new JsonWriter(new StringBuilder(256))
+                .beginObject()
+                .field("timestamp", this.timestamp)
+                .field("stage", this.stage.name())
+                .field("phase", this.getPhase())
+                .field("durationMicros", this.durationMicros)
+                .field("thresholdMicros", this.thresholdMicros)
+                .field("storageId", this.storageId)
+                .field("transactionId", this.transactionId)
+                .field("uniqueIndexId", this.uniqueIndexId)
+                .field("publicationId", this.publicationId)
+                .field("indexType", this.indexType == null ? null : this.indexType.name())
+                .field("action", this.action)
+                .field("itemSize", this.itemSize)
+                .field("payloadSize", this.payloadSize)
+                .field("fieldCount", this.fieldCount)
+                .field("outcome", this.failed ? "failed" : "ok")
+                .field("thread", this.thread);
+        return json.endObject().toString();
+    }
+
+    @Override
+    public String toString() {
+        return this.stage + " (" + this.getPhase() + ") took " + this.durationMicros + " us for: " +
+                this.uniqueIndexId + ", publication: " + this.publicationId + ", type: " + this.indexType +
+                ", action: " + this.action + ", transaction: " + this.transactionId + ", item size: " +
+                this.itemSize + ", payload size: " + this.payloadSize + ", fields: " + this.fieldCount +
+                (this.failed ? ", failed" : "") + ", thread: " + this.thread;
+    }
+
+    /**
+     * Builder of a SlowItem.
+     */
+    public static final class Builder {
+        private final IndexingStage stage;
+        private final long durationMicros;
+        private long thresholdMicros;
+        private String storageId;
+        private String transactionId;
+        private String uniqueIndexId;
+        private String publicationId;
+        private IndexType indexType;
+        private String action;
+        private long itemSize = -1;
+        private long payloadSize = -1;
+        private int fieldCount = -1;
+        private boolean failed;
+
+        private Builder(IndexingStage stage, long nanos) {
+            this.stage = stage;
+            this.durationMicros = nanos / 1000;
+        }
+
+        IndexingStage stage() {
+            return this.stage;
+        }
+
+        Builder threshold(long micros) {
+            this.thresholdMicros = micros;
+            return this;
+        }
+
+        Builder storage(String storageId) {
+            this.storageId = storageId;
+            return this;
+        }
+
+        public Builder transaction(String transactionId) {
+            this.transactionId = transactionId;
+            return this;
+        }
+
+        public Builder item(String uniqueIndexId, String publicationId, IndexType indexType, Object action) {
+            this.uniqueIndexId = uniqueIndexId;
+            this.publicationId = publicationId;
+            this.indexType = indexType;
+            this.action = action == null ? null : action.toString();
+            return this;
+        }
+
+        /**
+         * Sets the size of the published item, in characters or bytes.
+         *
+         * @param size the size
+         * @return this builder
+         */
+        public Builder itemSize(long size) {
+            this.itemSize = size;
+            return this;
+        }
+
+        /**
+         * Sets the size of what the stage processed: the directive for PARSE, the
+         * index payload for INDEXER_CALL.
+         *
+         * @param size the size
+         * @return this builder
+         */
+        public Builder payloadSize(long size) {
+            this.payloadSize = size;
+            return this;
+        }
+
+        public Builder fieldCount(int count) {
+            this.fieldCount = count;
+            return this;
+        }
+
+        public Builder failed(boolean failed) {
+            this.failed = failed;
+            return this;
+        }
+
+        SlowItem build() {
+            return new SlowItem(this);
+        }
+    }
+}
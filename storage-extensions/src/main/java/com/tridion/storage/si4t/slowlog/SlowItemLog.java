@@ -0,0 +1,178 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.slowlog;
+
+import com.tridion.storage.si4t.Utils;
+import com.tridion.storage.si4t.metrics.IndexingStage;
+import com.tridion.storage.si4t.report.TransactionReportWriter;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * SlowItemLog.
+ * <p/>
+ * Keeps the most recent items of one storage of which a stage took longer than its
+ * threshold, like the slow query log of a database. Items are kept in a fixed size
+ * ring buffer, overwriting the oldest, and are optionally appended as JSON lines to
+ * a file. Checking an item which is not slow costs a single comparison.
+ */
+public final class SlowItemLog implements SlowItemLogMXBean {
+
+    private static final IndexingStage[] STAGES = IndexingStage.values();
+
+    private final String storageId;
+    // Long.MAX_VALUE for the stages which are not logged.
+    private final long[] thresholdNanos = new long[STAGES.length];
+    private final AtomicReferenceArray<SlowItem> items;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLongArray counts = new AtomicLongArray(STAGES.length);
+    private final TransactionReportWriter writer;
+
+    /**
+     * Instantiates a new slow item log.
+     *
+     * @param storageId        the storage Id
+     * @param thresholdsMillis the threshold of each logged stage
+     * @param capacity         the number of items to keep
+     * @param writer           the writer of the log file, or null
+     */
+    public SlowItemLog(String storageId, Map<IndexingStage, Long> thresholdsMillis, int capacity,
+                       TransactionReportWriter writer) {
+        this.storageId = storageId;
+        for (IndexingStage stage : STAGES) {
+            Long millis = thresholdsMillis.get(stage);
+            this.thresholdNanos[stage.ordinal()] = millis == null ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+        this.items = new AtomicReferenceArray<>(Math.max(1, capacity));
+        this.writer = writer;
+    }
+
+    /**
+     * Checks whether a stage took longer than its threshold.
+     *
+     * @param stage the stage
+     * @param nanos the duration of the stage
+     * @return true if the item should be added
+     */
+    public boolean isSlow(IndexingStage stage, long nanos) {
+        return nanos > this.thresholdNanos[stage.ordinal()];
+    }
+
+    /**
+     * Adds a slow item.
+     *
+     * @param builder the item
+     */
+    public void add(SlowItem.Builder builder) {
+        SlowItem item = builder
+                .storage(this.storageId)
+                .threshold(TimeUnit.NANOSECONDS.toMicros(this.thresholdNanos[builder.stage().ordinal()]))
+                .build();
+        this.counts.incrementAndGet(item.getStage().ordinal());
+        long index = this.sequence.getAndIncrement();
+        this.items.set((int) (index % this.items.length()), item);
+        if (this.writer != null) {
+            this.writer.offer(item.toJson());
+        }
+    }
+
+    /**
+     * Gets the most recent slow items, newest first.
+     *
+     * @param maxItems the maximum number of items
+     * @return the items
+     */
+    public List<SlowItem> getRecent(int maxItems) {
+        int capacity = this.items.length();
+        long last = this.sequence.get();
+        long first = Math.max(0, last - Math.min(capacity, Math.max(0, maxItems)));
+        List<SlowItem> recent = new ArrayList<>((int) (last - first));
+        for (long index = last - 1; index >= first; index--) {
+            SlowItem item = this.items.get((int) (index % capacity));
+            if (item != null) {
+                recent.add(item);
+            }
+        }
+        return recent;
+    }
+
+    TransactionReportWriter getWriter() {
+        return this.writer;
+    }
+
+    @Override
+    public String getStorageId() {
+        return this.storageId;
+    }
+
+    @Override
+    public Map<String, Long> getThresholdMillis() {
+        Map<String, Long> thresholds = new TreeMap<>();
+        for (IndexingStage stage : STAGES) {
+            long nanos = this.thresholdNanos[stage.ordinal()];
+            if (nanos != Long.MAX_VALUE) {
+                thresholds.put(stage.name(), TimeUnit.NANOSECONDS.toMillis(nanos));
+            }
+        }
+        return thresholds;
+    }
+
+    @Override
+    public Map<String, Long> getSlowCounts() {
+        Map<String, Long> values = new TreeMap<>();
+        for (IndexingStage stage : STAGES) {
+            if (this.thresholdNanos[stage.ordinal()] != Long.MAX_VALUE) {
+                values.put(stage.name(), this.counts.get(stage.ordinal()));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Gets the number of slow items over all stages.
+     *
+     * @return the count
+     */
+    public long getSlowCount() {
+        return this.sequence.get();
+    }
+
+    @Override
+    public String describeSlowItems(int maxItems) {
+        StringBuilder description = new StringBuilder();
+        for (SlowItem item : this.getRecent(maxItems)) {
+            description.append(item).append(Utils.NEWLINE);
+        }
+        return description.toString();
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < this.items.length(); i++) {
+            this.items.set(i, null);
+        }
+    }
+}
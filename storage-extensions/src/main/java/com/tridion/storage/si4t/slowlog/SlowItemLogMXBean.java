@@ -0,0 +1,57 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.slowlog;
+
+import java.util.Map;
+
+/**
+ * SlowItemLogMXBean.
+ * <p/>
+ * JMX view on the slow item log of one storage. Keys are stage names.
+ */
+public interface SlowItemLogMXBean {
+
+    String getStorageId();
+
+    /**
+     * Gets the thresholds of the stages which are logged.
+     *
+     * @return the threshold in milliseconds by stage
+     */
+    Map<String, Long> getThresholdMillis();
+
+    /**
+     * Gets the number of slow items per stage, including those no longer in the log.
+     *
+     * @return the number of slow items by stage
+     */
+    Map<String, Long> getSlowCounts();
+
+    /**
+     * Describes the most recent slow items, newest first.
+     *
+     * @param maxItems the maximum number of items to describe
+     * @return one line per item
+     */
+    String describeSlowItems(int maxItems);
+
+    /**
+     * Removes all items from the log. The counts are kept.
+     */
+    void clear();
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2011-2013 Radagio & SDL
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tridion.storage.si4t.slowlog;
+
+import com.tridion.storage.si4t.report.TransactionReportWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SlowItemLogs.
+ * <p/>
+ * Keeps the SlowItemLog of every storage for which it is enabled. Logs can be published
+ * as an MXBean named com.tridion.storage.si4t:type=SlowItemLog,storage=[storageId].
+ */
+public final class SlowItemLogs {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SlowItemLogs.class);
+    private static final ConcurrentHashMap<String, SlowItemLog> LOGS = new ConcurrentHashMap<>();
+
+    private SlowItemLogs() {
+    }
+
+    /**
+     * Enables the slow item log of a storage, replacing an earlier log and closing its writer.
+     *
+     * @param storageId     the storage Id
+     * @param log           the log
+     * @param registerMBean whether to publish the log through JMX
+     */
+    public static void enable(String storageId, SlowItemLog log, boolean registerMBean) {
+        close(LOGS.put(storageId, log));
+        if (registerMBean) {
+            registerMBean(storageId, log);
+        }
+    }
+
+    /**
+     * Disables the slow item log of a storage.
+     *
+     * @param storageId the storage Id
+     */
+    public static void disable(String storageId) {
+        close(LOGS.remove(storageId));
+    }
+
+    /**
+     * Gets the slow item log of a storage.
+     *
+     * @param storageId the storage Id
+     * @return the log, or null if it is disabled
+     */
+    public static SlowItemLog get(String storageId) {
+        return storageId == null ? null : LOGS.get(storageId);
+    }
+
+    private static void close(SlowItemLog log) {
+        TransactionReportWriter writer = log == null ? null : log.getWriter();
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    private static void registerMBean(String storageId, SlowItemLog log) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.tridion.storage.si4t:type=SlowItemLog,storage=" +
+                    ObjectName.quote(storageId));
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(log, name);
+            LOG.info("Registered slow item log MBean: {}", name);
+        } catch (JMException | RuntimeException e) {
+            LOG.warn("Could not register slow item log MBean for storageId: " + storageId, e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.tridion.storage.si4t;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * AdaptiveDispatchControllerTest.
+ */
+public class AdaptiveDispatchControllerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MEDIUM = TimeUnit.MILLISECONDS.toNanos(700);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(2000);
+
+    private static AdaptiveDispatchController newController() {
+        return new AdaptiveDispatchController("storage", 100, 10, 400, 1, 8, 1000, 10);
+    }
+
+    private static void recordWindow(AdaptiveDispatchController controller, long nanos, int failures) {
+        for (int i = 0; i < 8; i++) {
+            controller.record(nanos, i < failures);
+        }
+    }
+
+    @Test
+    public void testGrowsWhileLatencyIsLow() {
+        AdaptiveDispatchController controller = newController();
+
+        recordWindow(controller, FAST, 0);
+
+        assertEquals(125, controller.getBatchSize());
+        assertEquals(2, controller.getConcurrency());
+    }
+
+    @Test
+    public void testOnlyAdjustsAtEndOfWindow() {
+        AdaptiveDispatchController controller = newController();
+
+        for (int i = 0; i < 7; i++) {
+            controller.record(FAST, false);
+        }
+
+        assertEquals(100, controller.getBatchSize());
+        assertEquals(1, controller.getConcurrency());
+    }
+
+    @Test
+    public void testHalvesWhenLatencyExceedsTarget() {
+        AdaptiveDispatchController controller = newController();
+        recordWindow(controller, FAST, 0);
+        recordWindow(controller, FAST, 0);
+
+        recordWindow(controller, SLOW, 0);
+
+        assertEquals(75, controller.getBatchSize());
+        assertEquals(1, controller.getConcurrency());
+    }
+
+    @Test
+    public void testHalvesWhenTooManyBatchesFail() {
+        AdaptiveDispatchController controller = newController();
+
+        recordWindow(controller, FAST, 2);
+
+        assertEquals(50, controller.getBatchSize());
+        assertEquals(1, controller.getConcurrency());
+        assertEquals(2, controller.getFailedBatchCount());
+    }
+
+    @Test
+    public void testHoldsBetweenHalfAndFullTarget() {
+        AdaptiveDispatchController controller = newController();
+
+        recordWindow(controller, MEDIUM, 0);
+
+        assertEquals(100, controller.getBatchSize());
+        assertEquals(1, controller.getConcurrency());
+        assertEquals(700, controller.getLatencyPercentile(50));
+    }
+
+    @Test
+    public void testStaysWithinBounds() {
+        AdaptiveDispatchController controller = newController();
+        for (int i = 0; i < 50; i++) {
+            recordWindow(controller, FAST, 0);
+        }
+        assertEquals(400, controller.getBatchSize());
+        assertEquals(8, controller.getConcurrency());
+
+        for (int i = 0; i < 50; i++) {
+            recordWindow(controller, SLOW, 0);
+        }
+        assertEquals(10, controller.getBatchSize());
+        assertEquals(1, controller.getConcurrency());
+    }
+
+    @Test
+    public void testConcurrentRecordsAreAllCounted() throws Exception {
+        AdaptiveDispatchController controller = newController();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> recorders = new ArrayList<>();
+        try {
+            for (int t = 0; t < 8; t++) {
+                recorders.add(threads.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 1000; i++) {
+                        controller.record(i % 2 == 0 ? FAST : MEDIUM, i % 100 == 0);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> recorder : recorders) {
+                recorder.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+
+        assertEquals(8000, controller.getBatchCount());
+        assertEquals(80, controller.getFailedBatchCount());
+        assertTrue(controller.getBatchSize() >= 10 && controller.getBatchSize() <= 400);
+        assertTrue(controller.getConcurrency() >= 1 && controller.getConcurrency() <= 8);
+    }
+}
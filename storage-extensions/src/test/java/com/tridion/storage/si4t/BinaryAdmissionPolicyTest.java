@@ -0,0 +1,147 @@
+package com.tridion.storage.si4t;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationException;
+import com.tridion.configuration.XMLConfigurationReader;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static com.tridion.storage.si4t.BinaryAdmissionPolicy.Decision.ADMITTED;
+import static com.tridion.storage.si4t.BinaryAdmissionPolicy.Decision.EXCLUDED_PATH;
+import static com.tridion.storage.si4t.BinaryAdmissionPolicy.Decision.TOO_LARGE;
+import static com.tridion.storage.si4t.BinaryAdmissionPolicy.Decision.WRONG_TYPE;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * BinaryAdmissionPolicyTest.
+ */
+public class BinaryAdmissionPolicyTest {
+
+    @Test
+    public void testExtensionsIgnoreCaseAndLeadingDot() throws Exception {
+        BinaryAdmissionPolicy policy = policy("<Indexer DocExtensions=\" .PDF, docx \"/>");
+
+        assertEquals(ADMITTED, policy.check(5, "/files/a.pdf", 10));
+        assertEquals(ADMITTED, policy.check(5, "/files/a.Pdf", 10));
+        assertEquals(ADMITTED, policy.check(5, "/files/a.DOCX", 10));
+        assertEquals(WRONG_TYPE, policy.check(5, "/files/a.pdf.txt", 10));
+        assertEquals(WRONG_TYPE, policy.check(5, "/files/pdf", 10));
+        assertEquals(WRONG_TYPE, policy.check(5, null, 10));
+    }
+
+    @Test
+    public void testWithoutExtensionsNothingIsAdmitted() throws Exception {
+        assertEquals(WRONG_TYPE, BinaryAdmissionPolicy.fromConfiguration(null).check(5, "/a.pdf", 10));
+    }
+
+    @Test
+    public void testMaxBinarySize() throws Exception {
+        BinaryAdmissionPolicy policy = policy("<Indexer DocExtensions=\"pdf\" MaxBinarySize=\"100\"/>");
+
+        assertEquals(ADMITTED, policy.check(5, "/a.pdf", 100));
+        assertEquals(TOO_LARGE, policy.check(5, "/a.pdf", 101));
+        assertEquals(ADMITTED, policy("<Indexer DocExtensions=\"pdf\"/>").check(5, "/a.pdf", Long.MAX_VALUE));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testNegativeMaxBinarySizeIsRejected() throws Exception {
+        policy("<Indexer DocExtensions=\"pdf\" MaxBinarySize=\"-1\"/>");
+    }
+
+    @Test
+    public void testSingleStarMatchesWithinADirectory() throws Exception {
+        BinaryAdmissionPolicy policy = policy("<Indexer DocExtensions=\"pdf\" BinaryIncludePaths=\"/docs/*.pdf\"/>");
+
+        assertEquals(ADMITTED, policy.check(5, "/docs/a.pdf", 10));
+        assertEquals(ADMITTED, policy.check(5, "/docs/.pdf", 10));
+        assertEquals(EXCLUDED_PATH, policy.check(5, "/docs/sub/a.pdf", 10));
+        assertEquals(EXCLUDED_PATH, policy.check(5, "/other/docs/a.pdf", 10));
+    }
+
+    @Test
+    public void testDoubleStarMatchesAcrossDirectories() throws Exception {
+        BinaryAdmissionPolicy policy = policy("<Indexer DocExtensions=\"pdf\" BinaryIncludePaths=\"/docs/**\"/>");
+
+        assertEquals(ADMITTED, policy.check(5, "/docs/a.pdf", 10));
+        assertEquals(ADMITTED, policy.check(5, "/docs/sub/deeper/a.pdf", 10));
+        assertEquals(EXCLUDED_PATH, policy.check(5, "/docsx/a.pdf", 10));
+
+        BinaryAdmissionPolicy anywhere = policy("<Indexer DocExtensions=\"pdf\" BinaryExcludePaths=\"**/internal/**\"/>");
+
+        assertEquals(EXCLUDED_PATH, anywhere.check(5, "internal/a.pdf", 10));
+        assertEquals(EXCLUDED_PATH, anywhere.check(5, "/a/b/internal/a.pdf", 10));
+        assertEquals(ADMITTED, anywhere.check(5, "/a/internals/a.pdf", 10));
+    }
+
+    @Test
+    public void testQuestionMarkMatchesOneCharacter() throws Exception {
+        BinaryAdmissionPolicy policy = policy("<Indexer DocExtensions=\"pdf\" BinaryIncludePaths=\"/v?/*.pdf\"/>");
+
+        assertEquals(ADMITTED, policy.check(5, "/v1/a.pdf", 10));
+        assertEquals(EXCLUDED_PATH, policy.check(5, "/v10/a.pdf", 10));
+        assertEquals(EXCLUDED_PATH, policy.check(5, "/v/a.pdf", 10));
+        assertEquals(EXCLUDED_PATH, policy.check(5, "/v//a.pdf", 10));
+    }
+
+    @Test
+    public void testGlobsIgnoreCaseAndEscapeRegexCharacters() throws Exception {
+        BinaryAdmissionPolicy policy = policy(
+                "<Indexer DocExtensions=\"pdf\" BinaryIncludePaths=\"/Docs (EN)/a+b.pdf\"/>");
+
+        assertEquals(ADMITTED, policy.check(5, "/docs (en)/A+B.PDF", 10));
+        assertEquals(EXCLUDED_PATH, policy.check(5, "/docs (en)/aab.pdf", 10));
+        assertEquals(EXCLUDED_PATH, policy.check(5, "/docs en/a+b.pdf", 10));
+    }
+
+    @Test
+    public void testExcludeWinsOverInclude() throws Exception {
+        BinaryAdmissionPolicy policy = policy("<Indexer DocExtensions=\"pdf\" " +
+                "BinaryIncludePaths=\"/docs/**, /downloads/*.pdf\" BinaryExcludePaths=\"**/draft/**,/docs/secret.pdf\"/>");
+
+        assertEquals(ADMITTED, policy.check(5, "/docs/a.pdf", 10));
+        assertEquals(ADMITTED, policy.check(5, "/downloads/a.pdf", 10));
+        assertEquals(EXCLUDED_PATH, policy.check(5, "/docs/draft/a.pdf", 10));
+        assertEquals(EXCLUDED_PATH, policy.check(5, "/docs/secret.pdf", 10));
+        assertEquals(EXCLUDED_PATH, policy.check(5, "/images/a.pdf", 10));
+    }
+
+    @Test
+    public void testPublicationRulesInheritUnsetAttributes() throws Exception {
+        BinaryAdmissionPolicy policy = policy("<Indexer DocExtensions=\"pdf\" MaxBinarySize=\"100\" " +
+                "BinaryExcludePaths=\"/private/**\">" +
+                "<BinaryAdmission Publication=\"6, 7\" DocExtensions=\"docx\"/>" +
+                "</Indexer>");
+
+        assertEquals(ADMITTED, policy.check(5, "/a.pdf", 10));
+        assertEquals(WRONG_TYPE, policy.check(5, "/a.docx", 10));
+        assertEquals(ADMITTED, policy.check(6, "/a.docx", 10));
+        assertEquals(WRONG_TYPE, policy.check(7, "/a.pdf", 10));
+        assertEquals(TOO_LARGE, policy.check(7, "/a.docx", 101));
+        assertEquals(EXCLUDED_PATH, policy.check(7, "/private/a.docx", 10));
+
+        assertEquals(2, policy.getCount(ADMITTED));
+        assertEquals(2, policy.getCount(WRONG_TYPE));
+        assertEquals(1, policy.getCount(TOO_LARGE));
+        assertEquals(1, policy.getCount(EXCLUDED_PATH));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testInvalidPublicationIdIsRejected() throws Exception {
+        policy("<Indexer DocExtensions=\"pdf\"><BinaryAdmission Publication=\"tcm:0-5-1\"/></Indexer>");
+    }
+
+    private static BinaryAdmissionPolicy policy(String xml) throws IOException, ConfigurationException {
+        File file = File.createTempFile("si4t-admission", ".xml");
+        try {
+            Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+            Configuration configuration = new XMLConfigurationReader().readConfiguration(file.getPath());
+            return BinaryAdmissionPolicy.fromConfiguration(configuration);
+        } finally {
+            file.delete();
+        }
+    }
+}
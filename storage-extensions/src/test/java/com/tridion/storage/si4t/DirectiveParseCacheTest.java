@@ -0,0 +1,93 @@
+package com.tridion.storage.si4t;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * DirectiveParseCacheTest.
+ */
+public class DirectiveParseCacheTest {
+
+    private static final String DIRECTIVE = "<data><title>Hello</title><custom><tag>a</tag></custom></data>";
+
+    @Test
+    public void testKeyIsStableAndSensitiveToContent() {
+        assertEquals(DirectiveParseCache.keyOf(DIRECTIVE), DirectiveParseCache.keyOf(DIRECTIVE));
+        assertNotEquals(DirectiveParseCache.keyOf(DIRECTIVE), DirectiveParseCache.keyOf(DIRECTIVE + " "));
+        assertNotEquals(DirectiveParseCache.keyOf("abcdefgh"), DirectiveParseCache.keyOf("abcdefgi"));
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        DirectiveParseCache cache = new DirectiveParseCache(10000);
+        DirectiveParseCache.Key key = DirectiveParseCache.keyOf(DIRECTIVE);
+        IndexFieldSet fields = IndexFieldSet.builder().add("title", "Hello").build();
+
+        assertNull(cache.get(key));
+        cache.put(key, fields);
+        assertSame(fields, cache.get(key));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testReusedEntriesSurviveScan() {
+        DirectiveParseCache cache = new DirectiveParseCache(10000);
+        DirectiveParseCache.Key key = DirectiveParseCache.keyOf(DIRECTIVE);
+        IndexFieldSet fields = IndexFieldSet.builder().add("title", "Hello").build();
+        cache.put(key, fields);
+        cache.get(key);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(DirectiveParseCache.keyOf(DIRECTIVE + i), fields);
+        }
+
+        assertNotNull(cache.get(key));
+        assertTrue(cache.getEvictionCount() > 0);
+        assertTrue(cache.getWeightedSize() <= cache.getMaximumWeight());
+    }
+
+    @Test
+    public void testSharedFieldsAreCopiedOnWrite() {
+        IndexFieldSet fields = IndexFieldSet.builder().add("title", "Hello").build();
+        SearchIndexData first = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, "1", "storage", fields);
+        SearchIndexData second = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, "1", "storage", fields);
+
+        first.addIndexField("title", "World");
+
+        assertEquals(2, first.getIndexField("title").size());
+        assertEquals(1, second.getIndexField("title").size());
+        assertEquals(1, fields.get("title").size());
+    }
+
+    @Test
+    public void testReadingSharedFieldsDoesNotCopy() {
+        IndexFieldSet fields = IndexFieldSet.builder().add("title", "Hello").build();
+        SearchIndexData data = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, "1", "storage", fields);
+
+        assertSame(fields.asMap(), data.readFields());
+        assertEquals(1, data.getFieldSize());
+        assertSame(fields.asMap(), data.readFields());
+    }
+
+    @Test
+    public void testIndexFieldsAreCopiedOnAccess() {
+        IndexFieldSet fields = IndexFieldSet.builder().add("title", "Hello").build();
+        SearchIndexData data = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, "1", "storage", fields);
+
+        data.getIndexField("title").add("World");
+        data.getIndexFields().remove("missing");
+
+        assertEquals(2, data.getIndexField("title").size());
+        assertEquals(1, fields.get("title").size());
+        assertNotSame(fields.asMap(), data.readFields());
+    }
+}
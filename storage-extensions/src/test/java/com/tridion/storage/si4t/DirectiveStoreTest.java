@@ -0,0 +1,193 @@
+package com.tridion.storage.si4t;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * DirectiveStoreTest.
+ */
+public class DirectiveStoreTest {
+
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("si4t-directive-store-test");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = this.directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.directory.toFile().delete();
+    }
+
+    private static SearchIndexData item(String id, String title) {
+        SearchIndexData data = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, "5", "storage");
+        data.setUniqueIndexId(id);
+        data.addIndexField("title", title);
+        data.addIndexField("tag", "a");
+        return data;
+    }
+
+    private static BaseIndexData removal(String id) {
+        BaseIndexData data = new BaseIndexData(FactoryAction.REMOVE, IndexType.PAGE, "5", "storage");
+        data.setUniqueIndexId(id);
+        return data;
+    }
+
+    private Path lastSegment() {
+        File[] segments = this.directory.toFile().listFiles((dir, name) -> name.endsWith(".seg"));
+        assertTrue(segments != null && segments.length > 0);
+        Arrays.sort(segments);
+        return segments[segments.length - 1].toPath();
+    }
+
+    @Test
+    public void testReadsLatestAction() throws Exception {
+        try (DirectiveStore store = DirectiveStore.open(this.directory, SEGMENT_SIZE)) {
+            store.record(item("tcm:5-1-64", "First"));
+            store.record(item("tcm:5-1-64", "Second"));
+            store.record(item("tcm:5-2-64", "Other"));
+            store.record(removal("tcm:5-2-64"));
+
+            assertEquals(1, store.size());
+            assertEquals("[Second]", String.valueOf(store.read("tcm:5-1-64").getIndexField("title")));
+            assertNull(store.read("tcm:5-2-64"));
+            assertFalse(store.contains("tcm:5-2-64"));
+        }
+    }
+
+    @Test
+    public void testReopensAfterTruncatedRecord() throws Exception {
+        try (DirectiveStore store = DirectiveStore.open(this.directory, SEGMENT_SIZE)) {
+            store.record(item("tcm:5-1-64", "First"));
+            store.record(item("tcm:5-2-64", "Second"));
+            store.record(item("tcm:5-3-64", "Torn"));
+        }
+        Path segment = this.lastSegment();
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        try (DirectiveStore store = DirectiveStore.open(this.directory, SEGMENT_SIZE)) {
+            assertEquals(2, store.size());
+            assertEquals("[Second]", String.valueOf(store.read("tcm:5-2-64").getIndexField("title")));
+            assertNull(store.read("tcm:5-3-64"));
+            // The torn record is cut off, so new records are not appended after it.
+            store.record(item("tcm:5-4-64", "After"));
+        }
+
+        try (DirectiveStore store = DirectiveStore.open(this.directory, SEGMENT_SIZE)) {
+            assertEquals(3, store.size());
+            assertEquals("[After]", String.valueOf(store.read("tcm:5-4-64").getIndexField("title")));
+        }
+    }
+
+    @Test
+    public void testReopensAfterCorruptRecord() throws Exception {
+        try (DirectiveStore store = DirectiveStore.open(this.directory, SEGMENT_SIZE)) {
+            store.record(item("tcm:5-1-64", "First"));
+            store.record(item("tcm:5-2-64", "Corrupt"));
+        }
+        Path segment = this.lastSegment();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.put(0, (byte) (last.get(0) ^ 0xFF));
+            last.rewind();
+            channel.write(last, channel.size() - 1);
+        }
+
+        try (DirectiveStore store = DirectiveStore.openReadOnly(this.directory)) {
+            assertEquals(1, store.size());
+            assertTrue(store.contains("tcm:5-1-64"));
+        }
+    }
+
+    @Test
+    public void testReopensSealedSegments() throws Exception {
+        try (DirectiveStore store = DirectiveStore.open(this.directory, 512)) {
+            for (int i = 0; i < 50; i++) {
+                store.record(item("tcm:5-" + i + "-64", "Item " + i));
+            }
+        }
+        assertTrue(this.directory.toFile().list((dir, name) -> name.endsWith(".idx")).length > 1);
+
+        try (DirectiveStore store = DirectiveStore.open(this.directory, 512)) {
+            assertEquals(50, store.size());
+            for (int i = 0; i < 50; i++) {
+                assertEquals("[Item " + i + "]",
+                        String.valueOf(store.read("tcm:5-" + i + "-64").getIndexField("title")));
+            }
+        }
+    }
+
+    @Test
+    public void testReplayHandsOverCurrentRecords() throws Exception {
+        List<String> replayed = new ArrayList<>();
+        try (DirectiveStore store = DirectiveStore.open(this.directory, 512)) {
+            store.record(item("tcm:5-1-64", "First"));
+            store.record(item("tcm:5-2-64", "Second"));
+            store.record(item("tcm:5-1-64", "Updated"));
+            store.record(item("tcm:5-3-64", "Removed"));
+            store.record(removal("tcm:5-3-64"));
+
+            long count = store.replay(data -> replayed.add(data.getUniqueIndexId() + "="
+                    + data.getIndexField("title")));
+
+            assertEquals(2, count);
+        }
+        assertEquals(Arrays.asList("tcm:5-2-64=[Second]", "tcm:5-1-64=[Updated]"), replayed);
+    }
+
+    @Test
+    public void testSecondWriterIsRefused() throws Exception {
+        try (DirectiveStore store = DirectiveStore.open(this.directory, SEGMENT_SIZE)) {
+            store.record(item("tcm:5-1-64", "First"));
+            try {
+                DirectiveStore.open(this.directory, SEGMENT_SIZE).close();
+                fail("A second writer should be refused");
+            } catch (IOException e) {
+                // Expected.
+            }
+            store.flush();
+            try (DirectiveStore reader = DirectiveStore.openReadOnly(this.directory)) {
+                assertTrue(reader.contains("tcm:5-1-64"));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReadOnlyStoreRefusesRecords() throws Exception {
+        DirectiveStore.open(this.directory, SEGMENT_SIZE).close();
+        try (DirectiveStore store = DirectiveStore.openReadOnly(this.directory)) {
+            store.record(item("tcm:5-1-64", "First"));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.tridion.storage.si4t;
+
+import com.tridion.storage.si4t.DispatchLanes.Lane;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * DispatchLanesTest.
+ */
+public class DispatchLanesTest {
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        this.threads.shutdownNow();
+    }
+
+    private static DispatchLanes newLanes(int... concurrency) {
+        return new DispatchLanes("storage", 10, 100, 5, concurrency);
+    }
+
+    private static SearchIndexData page(FactoryAction action, int payloadSize) {
+        SearchIndexData data = new SearchIndexData(action, IndexType.PAGE, "5", "storage");
+        data.setUniqueIndexId("tcm:5-1-64");
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < payloadSize; i++) {
+            value.append('x');
+        }
+        data.addIndexField("body", value.toString());
+        return data;
+    }
+
+    private void awaitWaiting(DispatchLanes lanes, Lane lane, int count) throws InterruptedException {
+        for (int i = 0; i < 1000 && lanes.getWaitingCount(lane) < count; i++) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, lanes.getWaitingCount(lane));
+    }
+
+    @Test
+    public void testClassifiesActions() {
+        DispatchLanes lanes = newLanes(1, 1, 1, 1);
+        BinaryIndexData binary = new BinaryIndexData(FactoryAction.PERSIST, IndexType.BINARY, "5", "storage");
+        BinaryIndexData binaryRemoval = new BinaryIndexData(FactoryAction.REMOVE, IndexType.BINARY, "5",
+                "storage");
+
+        assertEquals(Lane.REMOVAL, lanes.classify(page(FactoryAction.REMOVE, 1000)));
+        assertEquals(Lane.REMOVAL, lanes.classify(binaryRemoval));
+        assertEquals(Lane.HEAVY, lanes.classify(binary));
+        assertEquals(Lane.SMALL, lanes.classify(page(FactoryAction.PERSIST, 10)));
+        assertEquals(Lane.STANDARD, lanes.classify(page(FactoryAction.UPDATE, 11)));
+        assertEquals(Lane.STANDARD, lanes.classify(page(FactoryAction.UPDATE, 100)));
+        assertEquals(Lane.HEAVY, lanes.classify(page(FactoryAction.PERSIST, 101)));
+    }
+
+    @Test
+    public void testHeavyLaneUsesSmallerBatches() {
+        DispatchLanes lanes = newLanes(1, 1, 1, 1);
+
+        assertEquals(5, lanes.getBatchSize(Lane.HEAVY, 50));
+        assertEquals(3, lanes.getBatchSize(Lane.HEAVY, 3));
+        assertEquals(50, lanes.getBatchSize(Lane.STANDARD, 50));
+        assertEquals(50, lanes.getBatchSize(Lane.REMOVAL, 50));
+    }
+
+    @Test
+    public void testFullHeavyLaneDoesNotHoldUpOtherLanes() throws Exception {
+        DispatchLanes lanes = newLanes(1, 1, 1, 1);
+        lanes.acquire(Lane.HEAVY, 5);
+        Future<?> heavy = this.threads.submit(() -> {
+            lanes.acquire(Lane.HEAVY, 5);
+            lanes.release(Lane.HEAVY);
+            return null;
+        });
+        this.awaitWaiting(lanes, Lane.HEAVY, 1);
+
+        Future<?> others = this.threads.submit(() -> {
+            lanes.acquire(Lane.REMOVAL, 20);
+            lanes.acquire(Lane.SMALL, 30);
+            lanes.acquire(Lane.STANDARD, 40);
+            return null;
+        });
+        others.get(10, TimeUnit.SECONDS);
+
+        assertFalse(heavy.isDone());
+        assertEquals(1, lanes.getInFlightCount(Lane.REMOVAL));
+        assertEquals(1, lanes.getInFlightCount(Lane.SMALL));
+        assertEquals(1, lanes.getInFlightCount(Lane.STANDARD));
+        assertEquals(1, lanes.getInFlightCount(Lane.HEAVY));
+        lanes.release(Lane.HEAVY);
+        heavy.get(10, TimeUnit.SECONDS);
+        assertEquals(0, lanes.getInFlightCount(Lane.HEAVY));
+        assertEquals(0, lanes.getWaitingCount(Lane.HEAVY));
+        assertEquals(2, lanes.getBatchCount(Lane.HEAVY));
+        assertEquals(10, lanes.getActionCount(Lane.HEAVY));
+        assertEquals(1, lanes.getBatchCount(Lane.REMOVAL));
+        assertEquals(20, lanes.getActionCount(Lane.REMOVAL));
+    }
+
+    @Test
+    public void testConcurrentBatchesStayWithinLaneBudgets() throws Exception {
+        int[] concurrency = {4, 3, 2, 1};
+        DispatchLanes lanes = newLanes(concurrency);
+        AtomicIntegerArray inFlight = new AtomicIntegerArray(concurrency.length);
+        AtomicIntegerArray peak = new AtomicIntegerArray(concurrency.length);
+        List<Future<?>> batches = new ArrayList<>();
+        for (int t = 0; t < 12; t++) {
+            Lane lane = Lane.values()[t % concurrency.length];
+            batches.add(this.threads.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    lanes.acquire(lane, 1);
+                    int current = inFlight.incrementAndGet(lane.ordinal());
+                    peak.accumulateAndGet(lane.ordinal(), current, Math::max);
+                    inFlight.decrementAndGet(lane.ordinal());
+                    lanes.release(lane);
+                }
+                return null;
+            }));
+        }
+
+        for (Future<?> batch : batches) {
+            batch.get(30, TimeUnit.SECONDS);
+        }
+
+        for (Lane lane : Lane.values()) {
+            assertTrue(peak.get(lane.ordinal()) <= concurrency[lane.ordinal()]);
+            assertEquals(600, lanes.getBatchCount(lane));
+            assertEquals(0, lanes.getInFlightCount(lane));
+        }
+    }
+}
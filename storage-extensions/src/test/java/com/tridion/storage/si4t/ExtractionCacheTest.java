@@ -0,0 +1,178 @@
+package com.tridion.storage.si4t;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * ExtractionCacheTest.
+ */
+public class ExtractionCacheTest {
+
+    @Test
+    public void testDigestIsStableAndSensitiveToContent() {
+        String digest = ContentDigest.of(bytes("Hello"));
+
+        assertEquals(digest, ContentDigest.of(bytes("Hello")));
+        assertEquals(64, digest.length());
+        assertNotEquals(digest, ContentDigest.of(bytes("Hellp")));
+        assertNotEquals(ContentDigest.of(new byte[0]), ContentDigest.of(new byte[1]));
+        assertNull(ContentDigest.of(null));
+    }
+
+    @Test
+    public void testHitsAndMisses() throws IndexingException {
+        ExtractionCache cache = new ExtractionCache(10000);
+        ExtractedText text = text("Hello");
+        AtomicInteger extractions = new AtomicInteger();
+
+        assertSame(text, cache.get("digest", () -> {
+            extractions.incrementAndGet();
+            return text;
+        }));
+        assertSame(text, cache.get("digest", () -> {
+            extractions.incrementAndGet();
+            return text("Other");
+        }));
+
+        assertEquals(1, extractions.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void testDifferentContentDoesNotShareText() throws IndexingException {
+        ExtractionCache cache = new ExtractionCache(10000);
+        String first = ContentDigest.of(bytes("first"));
+        String second = ContentDigest.of(bytes("second"));
+
+        cache.get(first, () -> text("first"));
+        cache.get(second, () -> text("second"));
+
+        assertEquals("first", cache.get(first, () -> text("wrong")).getText());
+        assertEquals("second", cache.get(second, () -> text("wrong")).getText());
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void testWithoutDigestTextIsAlwaysExtracted() throws IndexingException {
+        ExtractionCache cache = new ExtractionCache(10000);
+
+        cache.get(null, () -> text("Hello"));
+        cache.get(null, () -> text("Hello"));
+
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() throws IndexingException {
+        ExtractionCache cache = new ExtractionCache(10000);
+        try {
+            cache.get("digest", () -> {
+                throw new IndexingException("Corrupt");
+            });
+            fail("Expected an IndexingException");
+        } catch (IndexingException expected) {
+        }
+
+        assertEquals("Hello", cache.get("digest", () -> text("Hello")).getText());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws IndexingException {
+        // Room for three entries of a single character.
+        ExtractionCache cache = new ExtractionCache(700);
+        cache.get("a", () -> text("a"));
+        cache.get("b", () -> text("b"));
+        cache.get("c", () -> text("c"));
+        cache.get("a", () -> text("wrong"));
+
+        cache.get("d", () -> text("d"));
+
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(cache.getWeightedSize() <= 700);
+        assertEquals("a", cache.get("a", () -> text("wrong")).getText());
+        assertEquals("d", cache.get("d", () -> text("wrong")).getText());
+        assertEquals("extracted", cache.get("b", () -> text("extracted")).getText());
+    }
+
+    @Test
+    public void testLargeTextIsNotCached() throws IndexingException {
+        ExtractionCache cache = new ExtractionCache(1000);
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            large.append('x');
+        }
+
+        cache.get("digest", () -> text(large.toString()));
+
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getWeightedSize());
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneExtraction() throws Exception {
+        ExtractionCache cache = new ExtractionCache(10000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger extractions = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ExtractedText> first = executor.submit(() -> cache.get("digest", () -> {
+                extractions.incrementAndGet();
+                started.countDown();
+                await(release);
+                return text("Hello");
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<ExtractedText> second = executor.submit(() -> cache.get("digest", () -> {
+                extractions.incrementAndGet();
+                return text("Other");
+            }));
+            while (cache.getSharedExtractionCount() == 0 && !second.isDone()) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertEquals("Hello", first.get(5, TimeUnit.SECONDS).getText());
+            assertEquals("Hello", second.get(5, TimeUnit.SECONDS).getText());
+            assertEquals(1, extractions.get());
+            assertEquals(1, cache.getSharedExtractionCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ExtractedText text(String text) {
+        return new ExtractedText(text, null, false);
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
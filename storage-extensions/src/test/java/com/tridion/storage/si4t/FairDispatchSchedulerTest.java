@@ -0,0 +1,182 @@
+package com.tridion.storage.si4t;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FairDispatchSchedulerTest.
+ */
+public class FairDispatchSchedulerTest {
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+    private final List<String> granted = Collections.synchronizedList(new ArrayList<>());
+    private final List<Future<?>> batches = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        this.threads.shutdownNow();
+    }
+
+    /**
+     * Queues a batch which records its publication once it has a slot, and waits until
+     * it is queued, so the batches queue in a known order.
+     */
+    private void queue(FairDispatchScheduler scheduler, String publicationId, int actions) throws Exception {
+        long waiting = scheduler.getWaitingCount();
+        this.batches.add(this.threads.submit(() -> {
+            scheduler.acquire(publicationId, actions);
+            this.granted.add(publicationId);
+            scheduler.release();
+            return null;
+        }));
+        for (int i = 0; i < 1000 && scheduler.getWaitingCount() == waiting; i++) {
+            Thread.sleep(5);
+        }
+        assertEquals(waiting + 1, scheduler.getWaitingCount());
+    }
+
+    private void awaitBatches() throws Exception {
+        for (Future<?> batch : this.batches) {
+            batch.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testFreeSlotIsGrantedDirectly() throws Exception {
+        FairDispatchScheduler scheduler = new FairDispatchScheduler("storage", 2, 100,
+                Collections.<String, Integer>emptyMap());
+
+        scheduler.acquire("5", 10);
+        scheduler.acquire("6", 10);
+
+        assertEquals(2, scheduler.getInFlightCount());
+        assertEquals(0, scheduler.getDelayedGrantCount());
+        scheduler.release();
+        scheduler.release();
+        assertEquals(0, scheduler.getInFlightCount());
+        assertEquals(2, scheduler.getGrantCount());
+    }
+
+    @Test
+    public void testSlotsAreSharedByWeight() throws Exception {
+        Map<String, Integer> weights = new HashMap<>();
+        weights.put("6", 2);
+        FairDispatchScheduler scheduler = new FairDispatchScheduler("storage", 1, 100, weights);
+        scheduler.acquire("0", 1);
+        for (int i = 0; i < 6; i++) {
+            this.queue(scheduler, "5", 50);
+        }
+        for (int i = 0; i < 6; i++) {
+            this.queue(scheduler, "6", 50);
+        }
+
+        scheduler.release();
+        this.awaitBatches();
+
+        // Per round publication 5 sends 100 actions and publication 6 sends 200.
+        assertEquals(Arrays.asList("5", "5", "6", "6", "6", "6", "5", "5", "6", "6", "5", "5"), this.granted);
+        assertEquals(12, scheduler.getDelayedGrantCount());
+        assertEquals(0, scheduler.getWaitingCount());
+        assertEquals(0, scheduler.getInFlightCount());
+    }
+
+    @Test
+    public void testSmallPublishIsServedWithinOneRound() throws Exception {
+        FairDispatchScheduler scheduler = new FairDispatchScheduler("storage", 1, 100,
+                Collections.<String, Integer>emptyMap());
+        scheduler.acquire("0", 1);
+        for (int i = 0; i < 10; i++) {
+            this.queue(scheduler, "5", 100);
+        }
+        this.queue(scheduler, "6", 1);
+
+        scheduler.release();
+        this.awaitBatches();
+
+        assertEquals(1, this.granted.indexOf("6"));
+        assertEquals(11, this.granted.size());
+    }
+
+    @Test
+    public void testBatchLargerThanQuantumIsServed() throws Exception {
+        FairDispatchScheduler scheduler = new FairDispatchScheduler("storage", 1, 100,
+                Collections.<String, Integer>emptyMap());
+        scheduler.acquire("0", 1);
+        this.queue(scheduler, "5", 250);
+        this.queue(scheduler, "6", 50);
+
+        scheduler.release();
+        this.awaitBatches();
+
+        // Publication 5 needs three rounds of deficit for its batch.
+        assertEquals(Arrays.asList("6", "5"), this.granted);
+    }
+
+    @Test
+    public void testInterruptedWaiterLeavesQueue() throws Exception {
+        FairDispatchScheduler scheduler = new FairDispatchScheduler("storage", 1, 100,
+                Collections.<String, Integer>emptyMap());
+        scheduler.acquire("0", 1);
+        this.queue(scheduler, "5", 10);
+        Future<?> interrupted = this.batches.remove(0);
+
+        interrupted.cancel(true);
+        for (int i = 0; i < 1000 && scheduler.getWaitingCount() > 0; i++) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(0, scheduler.getWaitingCount());
+        assertEquals(1, scheduler.getGrantCount());
+        this.queue(scheduler, "6", 10);
+        scheduler.release();
+        this.awaitBatches();
+        assertEquals(Collections.singletonList("6"), this.granted);
+        assertEquals(0, scheduler.getInFlightCount());
+    }
+
+    @Test
+    public void testConcurrentBatchesNeverExceedSlots() throws Exception {
+        FairDispatchScheduler scheduler = new FairDispatchScheduler("storage", 3, 100,
+                Collections.<String, Integer>emptyMap());
+        int[] inFlight = new int[2];
+        for (int t = 0; t < 8; t++) {
+            String publicationId = String.valueOf(t % 3);
+            this.batches.add(this.threads.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    scheduler.acquire(publicationId, 1 + i % 150);
+                    synchronized (inFlight) {
+                        inFlight[0]++;
+                        inFlight[1] = Math.max(inFlight[1], inFlight[0]);
+                    }
+                    synchronized (inFlight) {
+                        inFlight[0]--;
+                    }
+                    scheduler.release();
+                }
+                return null;
+            }));
+        }
+
+        this.awaitBatches();
+
+        assertTrue(inFlight[1] <= 3);
+        assertEquals(1600, scheduler.getGrantCount());
+        assertEquals(0, scheduler.getInFlightCount());
+        assertEquals(0, scheduler.getWaitingCount());
+        assertTrue(scheduler.getDelayedGrantCount() <= scheduler.getGrantCount());
+    }
+}
@@ -0,0 +1,145 @@
+package com.tridion.storage.si4t;
+
+import org.junit.After;
+import org.junit.Test;
+import org.si4t.RecordingIndexer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * GroupCommitCoordinatorTest.
+ */
+public class GroupCommitCoordinatorTest {
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+    private final RecordingIndexer index = new RecordingIndexer();
+
+    @After
+    public void tearDown() {
+        this.threads.shutdownNow();
+    }
+
+    @Test
+    public void testSingleRequestCommits() throws Exception {
+        GroupCommitCoordinator coordinator = new GroupCommitCoordinator("storage", 0, 0);
+
+        coordinator.commit(this.index, "5");
+
+        assertEquals(1, this.index.getCommitCount());
+        assertEquals(1, coordinator.getRequestCount());
+        assertEquals(1, coordinator.getCommitCount());
+    }
+
+    @Test
+    public void testRequestsWithinWindowShareOneCommit() throws Exception {
+        GroupCommitCoordinator coordinator = new GroupCommitCoordinator("storage", 1000, 5000);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(this.threads.submit(() -> {
+                start.await();
+                coordinator.commit(this.index, "5");
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> request : requests) {
+            request.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, this.index.getCommitCount());
+        assertEquals(5, coordinator.getRequestCount());
+        assertEquals(1, coordinator.getCommitCount());
+    }
+
+    @Test
+    public void testFollowerOfCommitInFlightWaitsForNextCommit() throws Exception {
+        GroupCommitCoordinator coordinator = new GroupCommitCoordinator("storage", 0, 5000);
+        CountDownLatch gate = this.index.holdCommits();
+        Future<?> leader = this.threads.submit(() -> {
+            coordinator.commit(this.index, "5");
+            return null;
+        });
+        assertTrue(this.index.awaitCommitStarted());
+
+        // Started after the commit in flight, so that commit does not cover its changes.
+        Future<?> next = this.threads.submit(() -> {
+            coordinator.commit(this.index, "5");
+            return null;
+        });
+        assertNotDone(next);
+
+        gate.countDown();
+        leader.get(10, TimeUnit.SECONDS);
+        next.get(10, TimeUnit.SECONDS);
+        assertEquals(2, this.index.getCommitCount());
+    }
+
+    @Test
+    public void testPublicationsCommitIndependently() throws Exception {
+        GroupCommitCoordinator coordinator = new GroupCommitCoordinator("storage", 0, 5000);
+        RecordingIndexer held = new RecordingIndexer();
+        CountDownLatch gate = held.holdCommits();
+        Future<?> blocked = this.threads.submit(() -> {
+            coordinator.commit(held, "5");
+            return null;
+        });
+        assertTrue(held.awaitCommitStarted());
+
+        coordinator.commit(this.index, "6");
+
+        assertEquals(1, this.index.getCommitCount());
+        assertFalse(blocked.isDone());
+        gate.countDown();
+        blocked.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testFailureIsThrownToAllMembers() throws Exception {
+        GroupCommitCoordinator coordinator = new GroupCommitCoordinator("storage", 1000, 5000);
+        this.index.failCommits(1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(this.threads.submit(() -> {
+                start.await();
+                coordinator.commit(this.index, "5");
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> request : requests) {
+            try {
+                request.get(10, TimeUnit.SECONDS);
+                fail("The failed commit should be thrown to every member");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IndexingException);
+            }
+        }
+        assertEquals(1, coordinator.getCommitCount());
+    }
+
+    private static void assertNotDone(Future<?> future) throws Exception {
+        try {
+            future.get(200, TimeUnit.MILLISECONDS);
+            fail("Expected the request to wait");
+        } catch (TimeoutException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.tridion.storage.si4t;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * RegisterSpillTest.
+ */
+public class RegisterSpillTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("si4t-spill-test");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = this.directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.directory.toFile().delete();
+    }
+
+    private static SearchIndexData item(String id, String title) {
+        SearchIndexData data = new SearchIndexData(FactoryAction.UPDATE, IndexType.PAGE, "5", "storage");
+        data.setUniqueIndexId(id);
+        data.addIndexField("title", title);
+        data.addIndexField("tag", "a");
+        data.addIndexField("tag", "\u00e9\u4e2d");
+        data.addIndexField("empty", null);
+        return data;
+    }
+
+    private static SearchIndexData roundTrip(SearchIndexData data) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        IndexDataCodec.write(new DataOutputStream(bytes), data);
+        return IndexDataCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private static void assertSameItem(SearchIndexData expected, SearchIndexData actual) {
+        assertEquals(expected.getAction(), actual.getAction());
+        assertEquals(expected.getIndexType(), actual.getIndexType());
+        assertEquals(expected.getPublicationItemId(), actual.getPublicationItemId());
+        assertEquals(expected.getStorageId(), actual.getStorageId());
+        assertEquals(expected.getUniqueIndexId(), actual.getUniqueIndexId());
+        assertEquals(expected.readFields(), actual.readFields());
+    }
+
+    @Test
+    public void testCodecRoundTrip() throws Exception {
+        SearchIndexData data = item("tcm:5-1-64", "Hello");
+
+        SearchIndexData read = roundTrip(data);
+
+        assertSameItem(data, read);
+        assertEquals(data.getFieldDigest(), read.getFieldDigest());
+    }
+
+    @Test
+    public void testDigestDependsOnFieldsNotOnTheirOrder() {
+        SearchIndexData first = new SearchIndexData(FactoryAction.UPDATE, IndexType.PAGE, "5", "storage");
+        first.addIndexField("a", "1");
+        first.addIndexField("b", "2");
+        SearchIndexData second = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, "5", "other");
+        second.addIndexField("b", "2");
+        second.addIndexField("a", "1");
+
+        assertEquals(IndexDataCodec.fieldDigest(first), IndexDataCodec.fieldDigest(second));
+        second.addIndexField("a", "3");
+        assertNotEquals(IndexDataCodec.fieldDigest(first), IndexDataCodec.fieldDigest(second));
+    }
+
+    @Test
+    public void testOnlyStringFieldsAreEncodable() {
+        SearchIndexData data = item("tcm:5-1-64", "Hello");
+        assertTrue(IndexDataCodec.isEncodable(data));
+
+        data.addIndexField("count", 3);
+        assertFalse(IndexDataCodec.isEncodable(data));
+        assertFalse(IndexDataCodec.isEncodable(new BaseIndexData(FactoryAction.REMOVE, IndexType.PAGE, "5",
+                "storage")));
+    }
+
+    @Test
+    public void testSpilledItemKeepsItsFields() throws Exception {
+        RegisterSpill spill = new RegisterSpill(new RegisterSpill.Settings(0, this.directory), "tx");
+        SearchIndexData data = item("tcm:5-1-64", "Hello");
+
+        BaseIndexData spilled = spill.admit(data);
+
+        assertTrue(spilled instanceof SpilledIndexData);
+        assertSameItem(data, ((SpilledIndexData) spilled).load());
+        spill.close();
+    }
+
+    @Test
+    public void testFieldsOtherThanTextStayInMemory() {
+        RegisterSpill spill = new RegisterSpill(new RegisterSpill.Settings(0, this.directory), "tx");
+        SearchIndexData data = item("tcm:5-1-64", "Hello");
+        data.addIndexField("count", 3);
+
+        assertSame(data, spill.admit(data));
+        assertEquals(data.getEstimatedSize(), spill.getInMemoryBytes());
+        spill.close();
+    }
+
+    @Test
+    public void testSpillsOnceBudgetIsUsedAndReadsBack() throws Exception {
+        SearchIndexData first = item("tcm:5-1-64", "First");
+        RegisterSpill.Settings settings = new RegisterSpill.Settings(first.getEstimatedSize(), this.directory);
+        RegisterSpill spill = new RegisterSpill(settings, "tx");
+
+        assertSame(first, spill.admit(first));
+        List<SearchIndexData> items = new ArrayList<>();
+        List<BaseIndexData> admitted = new ArrayList<>();
+        for (int i = 2; i < 10; i++) {
+            SearchIndexData item = item("tcm:5-" + i + "-64", "Item " + i);
+            items.add(item);
+            admitted.add(spill.admit(item));
+        }
+
+        assertEquals(8, settings.getSpilledCount());
+        assertTrue(settings.getSpilledBytes() > 0);
+        // Read back out of order.
+        for (int i = admitted.size() - 1; i >= 0; i--) {
+            assertTrue(admitted.get(i) instanceof SpilledIndexData);
+            assertSameItem(items.get(i), ((SpilledIndexData) admitted.get(i)).load());
+        }
+        spill.close();
+    }
+
+    @Test
+    public void testRemovalsStayInMemory() {
+        RegisterSpill spill = new RegisterSpill(new RegisterSpill.Settings(0, this.directory), "tx");
+        BaseIndexData removal = new BaseIndexData(FactoryAction.REMOVE, IndexType.PAGE, "5", "storage");
+        removal.setUniqueIndexId("tcm:5-1-64");
+
+        assertSame(removal, spill.admit(removal));
+        assertEquals(removal.getEstimatedSize(), spill.getInMemoryBytes());
+        spill.close();
+    }
+
+    @Test
+    public void testReleaseAccountsReplacedActions() {
+        RegisterSpill spill = new RegisterSpill(new RegisterSpill.Settings(1 << 20, this.directory), "tx");
+        SearchIndexData data = item("tcm:5-1-64", "Hello");
+        spill.admit(data);
+
+        spill.release(data);
+        spill.release(null);
+
+        assertEquals(0, spill.getInMemoryBytes());
+        spill.close();
+    }
+
+    @Test
+    public void testCloseLeavesNoSegment() throws Exception {
+        RegisterSpill spill = new RegisterSpill(new RegisterSpill.Settings(0, this.directory), "tx");
+        BaseIndexData spilled = spill.admit(item("tcm:5-1-64", "Hello"));
+        assertTrue(spilled instanceof SpilledIndexData);
+
+        spill.close();
+
+        assertEquals(0, this.directory.toFile().list().length);
+        try {
+            ((SpilledIndexData) spilled).load();
+            fail("A closed spill can not be read");
+        } catch (IndexingException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testConcurrentSpillsReadBack() throws Exception {
+        RegisterSpill spill = new RegisterSpill(new RegisterSpill.Settings(0, this.directory), "tx");
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+        try {
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                writers.add(threads.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 200; i++) {
+                        SearchIndexData item = item("tcm:5-" + thread + "-" + i, "Item " + thread + "/" + i);
+                        SearchIndexData read = ((SpilledIndexData) spill.admit(item)).load();
+                        assertSameItem(item, read);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            threads.shutdownNow();
+            spill.close();
+        }
+    }
+}
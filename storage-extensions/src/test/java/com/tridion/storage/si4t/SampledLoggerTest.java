@@ -0,0 +1,87 @@
+package com.tridion.storage.si4t;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SampledLoggerTest.
+ */
+public class SampledLoggerTest {
+
+    // Records the messages of an slf4j Logger which has all levels enabled.
+    private static Logger recordingLogger(List<String> messages) {
+        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[]{Logger.class},
+                (proxy, method, args) -> {
+                    if (method.getName().startsWith("is")) {
+                        return true;
+                    }
+                    if (method.getName().equals("getName")) {
+                        return "test.items";
+                    }
+                    if (args != null && args.length > 0 && args[0] instanceof String) {
+                        messages.add(method.getName() + ":" + args[0]);
+                    }
+                    return null;
+                });
+    }
+
+    @Test
+    public void testLogsEverythingByDefault() {
+        List<String> messages = new ArrayList<>();
+        SampledLogger logger = new SampledLogger(recordingLogger(messages), new SampledLogger.Sampling());
+        for (int i = 0; i < 500; i++) {
+            logger.info("Item {}", i);
+        }
+
+        assertEquals(500, messages.size());
+    }
+
+    @Test
+    public void testLogsOneInSampleRate() {
+        List<String> messages = new ArrayList<>();
+        SampledLogger.Sampling sampling = new SampledLogger.Sampling();
+        sampling.configure(10, 0);
+        SampledLogger logger = new SampledLogger(recordingLogger(messages), sampling);
+        for (int i = 0; i < 100; i++) {
+            logger.debug("Item {}", i);
+        }
+
+        assertEquals(10, messages.size());
+        assertEquals("debug:Item {}", messages.get(0));
+    }
+
+    @Test
+    public void testLimitsMessagesPerSecond() {
+        List<String> messages = new ArrayList<>();
+        SampledLogger.Sampling sampling = new SampledLogger.Sampling();
+        sampling.configure(1, 5);
+        SampledLogger logger = new SampledLogger(recordingLogger(messages), sampling);
+        for (int i = 0; i < 100; i++) {
+            logger.trace("Item {}", i);
+        }
+
+        // A new one second window may start during the loop.
+        assertTrue(String.valueOf(messages), messages.size() >= 5 && messages.size() <= 11);
+    }
+
+    @Test
+    public void testStoragesHaveTheirOwnSampling() {
+        SampledLogger.Sampling sampling = new SampledLogger.Sampling();
+        assertSame(sampling.getLogger(SampledLoggerTest.class), sampling.getLogger(SampledLoggerTest.class));
+        assertNotSame(sampling.getLogger(SampledLoggerTest.class),
+                new SampledLogger.Sampling().getLogger(SampledLoggerTest.class));
+        assertSame(SearchIndexProcessor.getItemLog(SampledLoggerTest.class, "sampled-a"),
+                SearchIndexProcessor.getItemLog(SampledLoggerTest.class, "sampled-a"));
+        assertNotSame(SearchIndexProcessor.getItemLog(SampledLoggerTest.class, "sampled-a"),
+                SearchIndexProcessor.getItemLog(SampledLoggerTest.class, "sampled-b"));
+    }
+}
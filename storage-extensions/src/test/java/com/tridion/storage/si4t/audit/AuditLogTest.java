@@ -0,0 +1,153 @@
+package com.tridion.storage.si4t.audit;
+
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * AuditLogTest.
+ */
+public class AuditLogTest {
+
+    private static final Pattern FIELD = Pattern.compile("\"(uniqueIndexId|transactionId|storageId|publicationId)\":\"([^\"]*)\"");
+
+    @After
+    public void tearDown() {
+        AuditLog.configure(0);
+    }
+
+    @Test
+    public void testCapacityIsRoundedUpAndZeroDisables() {
+        AuditLog.configure(5);
+        assertEquals(8, AuditLog.get().getCapacity());
+
+        AuditLog.configure(0);
+        assertNull(AuditLog.get());
+        AuditLog.record(AuditLog.Event.REGISTERED, "tcm:0-1-66560", "storage", "tcm:5-1-64", "5",
+                FactoryAction.PERSIST, IndexType.PAGE);
+    }
+
+    @Test
+    public void testSameCapacityKeepsTheLog() {
+        AuditLog.configure(8);
+        AuditLog log = AuditLog.get();
+        AuditLog.configure(7);
+        assertSame(log, AuditLog.get());
+    }
+
+    @Test
+    public void testKeepsTheMostRecentEvents() {
+        AuditLog.configure(4);
+        for (int i = 1; i <= 6; i++) {
+            record("tcm:5-" + i + "-64");
+        }
+
+        AuditLog log = AuditLog.get();
+        assertEquals(6, log.getEventCount());
+        assertEquals("", log.findEvents("tcm:5-2-64"));
+        assertTrue(log.findEvents("tcm:5-3-64").contains("transaction: tcm:5-3-64"));
+        assertTrue(log.findEvents("tcm:5-6-64").contains("REGISTERED PERSIST PAGE"));
+    }
+
+    @Test
+    public void testConcurrentWritersNeverMixEvents() throws Exception {
+        // A single slot, so that every writer laps the others.
+        AuditLog.configure(1);
+        AuditLog log = AuditLog.get();
+        int writers = 4;
+        int eventsPerWriter = 20000;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> mixed = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            String prefix = "w" + w + "-";
+            threads.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < eventsPerWriter; i++) {
+                    record(prefix + i);
+                }
+            }));
+        }
+        File dump = File.createTempFile("si4t-audit", ".json");
+        Thread reader = new Thread(() -> {
+            await(start);
+            try {
+                while (writing.get() && mixed.get() == null) {
+                    log.dumpToFile(dump.getPath());
+                    for (String line : Files.readAllLines(dump.toPath(), StandardCharsets.UTF_8)) {
+                        if (!isConsistent(line)) {
+                            mixed.compareAndSet(null, line);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                mixed.compareAndSet(null, e.toString());
+            }
+        });
+        reader.start();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writing.set(false);
+        reader.join();
+        dump.delete();
+
+        assertNull(mixed.get(), mixed.get());
+        assertEquals(writers * eventsPerWriter, log.getEventCount());
+        for (int w = 0; w < writers; w++) {
+            String id = "w" + w + "-" + (eventsPerWriter - 1);
+            String events = log.findEvents(id);
+            if (!events.isEmpty()) {
+                assertTrue(events, events.contains("transaction: " + id + ", storage: " + id));
+            }
+        }
+    }
+
+    private static boolean isConsistent(String line) {
+        Matcher matcher = FIELD.matcher(line);
+        String value = null;
+        int fields = 0;
+        while (matcher.find()) {
+            if (value != null && !value.equals(matcher.group(2))) {
+                return false;
+            }
+            value = matcher.group(2);
+            fields++;
+        }
+        return fields == 4;
+    }
+
+    private static void record(String id) {
+        AuditLog.record(AuditLog.Event.REGISTERED, id, id, id, id, FactoryAction.PERSIST, IndexType.PAGE);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
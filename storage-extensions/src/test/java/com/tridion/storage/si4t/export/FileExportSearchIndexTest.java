@@ -0,0 +1,122 @@
+package com.tridion.storage.si4t.export;
+
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.SearchIndexData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FileExportSearchIndexTest.
+ */
+public class FileExportSearchIndexTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("si4t-file-export-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private FileExportSearchIndex index(ExportSettings.Format format) {
+        return new FileExportSearchIndex(this.directory, new ExportSettings(format, Compression.NONE, 1024 * 1024,
+                60000));
+    }
+
+    private static SearchIndexData item(String id) {
+        SearchIndexData data = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, "5", "storage");
+        data.setUniqueIndexId(id);
+        data.addIndexField("title", "Hello");
+        data.addIndexField("id", "not the item id");
+        return data;
+    }
+
+    private static BaseIndexData removal(String id) {
+        BaseIndexData data = new BaseIndexData(FactoryAction.REMOVE, IndexType.PAGE, "5", "storage");
+        data.setUniqueIndexId(id);
+        return data;
+    }
+
+    private String segment(String name) throws IOException {
+        return new String(Files.readAllBytes(this.directory.resolve("5").resolve(name)), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testNdjsonRecords() throws Exception {
+        FileExportSearchIndex index = this.index(ExportSettings.Format.NDJSON);
+        index.addItemToIndex(item("tcm:5-1-64"));
+        index.removeItemFromIndex(removal("tcm:5-2-64"));
+        index.commit("5");
+
+        String expected = "{\"action\":\"add\",\"id\":\"tcm:5-1-64\",\"publicationId\":\"5\",\"indexType\":\"PAGE\","
+                + "\"fields\":{" + fields() + "}}\n"
+                + "{\"action\":\"remove\",\"id\":\"tcm:5-2-64\",\"publicationId\":\"5\",\"indexType\":\"PAGE\"}\n";
+        assertEquals(expected, this.segment("segment-000001.ndjson"));
+    }
+
+    @Test
+    public void testOpenSearchRecordsNestFields() throws Exception {
+        FileExportSearchIndex index = this.index(ExportSettings.Format.OPENSEARCH);
+        index.addItemToIndex(item("tcm:5-1-64"));
+        index.removeItemFromIndex(removal("tcm:5-2-64"));
+        index.commit("5");
+
+        String expected = "{\"index\":{\"_id\":\"tcm:5-1-64\"}}\n"
+                + "{\"id\":\"tcm:5-1-64\",\"publicationid\":\"5\",\"indextype\":\"PAGE\","
+                + "\"fields\":{" + fields() + "}}\n"
+                + "{\"delete\":{\"_id\":\"tcm:5-2-64\"}}\n";
+        assertEquals(expected, this.segment("segment-000001.ndjson"));
+    }
+
+    @Test
+    public void testCommitSealsOnlyItsPublication() throws Exception {
+        FileExportSearchIndex index = this.index(ExportSettings.Format.NDJSON);
+        index.addItemToIndex(item("tcm:5-1-64"));
+        index.commit("6");
+
+        assertTrue(Files.exists(this.directory.resolve("5").resolve("segment-000001.ndjson.inprogress")));
+
+        index.commit("5");
+        index.addItemToIndex(item("tcm:5-3-64"));
+        index.commit("5");
+
+        assertFalse(Files.exists(this.directory.resolve("5").resolve("segment-000001.ndjson.inprogress")));
+        assertEquals(2, Files.readAllLines(this.directory.resolve("5").resolve("manifest.ndjson")).size());
+        assertTrue(Files.exists(this.directory.resolve("5").resolve("segment-000002.ndjson")));
+    }
+
+    private static String fields() {
+        // The order of the fields follows the iteration order of the field map.
+        SearchIndexData data = item("tcm:5-1-64");
+        StringBuilder fields = new StringBuilder();
+        for (String name : data.readFields().keySet()) {
+            if (fields.length() > 0) {
+                fields.append(',');
+            }
+            fields.append('"').append(name).append("\":[\"")
+                    .append("id".equals(name) ? "not the item id" : "Hello").append("\"]");
+        }
+        return fields.toString();
+    }
+}
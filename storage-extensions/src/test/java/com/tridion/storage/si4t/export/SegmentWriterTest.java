@@ -0,0 +1,122 @@
+package com.tridion.storage.si4t.export;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SegmentWriterTest.
+ */
+public class SegmentWriterTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("si4t-segment-writer-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static ExportSettings settings(long maxBytes, long maxAge) {
+        return new ExportSettings(ExportSettings.Format.NDJSON, Compression.NONE, maxBytes, maxAge);
+    }
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.map(f -> f.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private List<String> lines(String file) throws IOException {
+        return Files.readAllLines(this.directory.resolve(file), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSegmentIsInProgressUntilSealed() throws Exception {
+        SegmentWriter writer = new SegmentWriter(this.directory, "5", settings(1024, 60000));
+        writer.write("{\"a\":1}", false);
+
+        assertEquals(Arrays.asList("segment-000001.ndjson.inprogress"), this.files());
+
+        writer.seal();
+
+        assertEquals(Arrays.asList("manifest.ndjson", "segment-000001.ndjson"), this.files());
+        assertEquals(Arrays.asList("{\"a\":1}"), this.lines("segment-000001.ndjson"));
+    }
+
+    @Test
+    public void testRollsWhenSegmentIsFull() throws Exception {
+        SegmentWriter writer = new SegmentWriter(this.directory, "5", settings(10, 60000));
+        writer.write("{\"a\":1}", false);
+        writer.write("{\"b\":2}", true);
+        writer.write("{\"c\":3}", false);
+        writer.seal();
+
+        assertEquals(Arrays.asList("manifest.ndjson", "segment-000001.ndjson", "segment-000002.ndjson"),
+                this.files());
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"b\":2}"), this.lines("segment-000001.ndjson"));
+        assertEquals(Arrays.asList("{\"c\":3}"), this.lines("segment-000002.ndjson"));
+
+        List<String> manifest = this.lines("manifest.ndjson");
+        assertEquals(2, manifest.size());
+        assertTrue(manifest.get(0), manifest.get(0).contains("\"documents\":1,\"removals\":1,\"bytes\":16"));
+        assertTrue(manifest.get(1), manifest.get(1).contains("\"segment\":\"segment-000002.ndjson\""));
+    }
+
+    @Test
+    public void testIdleSegmentIsSealedWhenDue() throws Exception {
+        SegmentWriter writer = new SegmentWriter(this.directory, "5", settings(1024, 50));
+        writer.write("{\"a\":1}", false);
+        writer.rollIfDue();
+
+        assertEquals(Arrays.asList("segment-000001.ndjson.inprogress"), this.files());
+
+        Thread.sleep(60);
+        writer.rollIfDue();
+
+        assertEquals(Arrays.asList("manifest.ndjson", "segment-000001.ndjson"), this.files());
+    }
+
+    @Test
+    public void testSealWithoutWritesDoesNothing() throws Exception {
+        SegmentWriter writer = new SegmentWriter(this.directory, "5", settings(1024, 50));
+        writer.seal();
+        writer.rollIfDue();
+
+        assertEquals(0, this.files().size());
+    }
+
+    @Test
+    public void testSequenceContinuesAfterRestart() throws Exception {
+        SegmentWriter writer = new SegmentWriter(this.directory, "5", settings(1024, 60000));
+        writer.write("{\"a\":1}", false);
+        writer.seal();
+
+        writer = new SegmentWriter(this.directory, "5", settings(1024, 60000));
+        writer.write("{\"b\":2}", false);
+        writer.seal();
+
+        assertEquals(Arrays.asList("manifest.ndjson", "segment-000001.ndjson", "segment-000002.ndjson"),
+                this.files());
+    }
+}
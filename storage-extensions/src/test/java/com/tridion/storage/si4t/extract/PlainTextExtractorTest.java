@@ -0,0 +1,58 @@
+package com.tridion.storage.si4t.extract;
+
+import com.tridion.storage.si4t.ExtractedText;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PlainTextExtractorTest.
+ */
+public class PlainTextExtractorTest {
+
+    private final PlainTextExtractor extractor = new PlainTextExtractor();
+
+    @Test
+    public void testSupportsTextTypesOnly() {
+        assertTrue(this.extractor.supports("txt"));
+        assertTrue(this.extractor.supports("csv"));
+        assertFalse(this.extractor.supports("pdf"));
+        assertFalse(this.extractor.supports("TXT"));
+    }
+
+    @Test
+    public void testReadsUtf8() throws IOException {
+        ExtractedText text = this.extract("caf\u00e9 cr\u00e8me", 100);
+        assertEquals("caf\u00e9 cr\u00e8me", text.getText());
+        assertFalse(text.isTruncated());
+    }
+
+    @Test
+    public void testTextOfExactlyMaxLengthIsNotTruncated() throws IOException {
+        ExtractedText text = this.extract("abcde", 5);
+        assertEquals("abcde", text.getText());
+        assertFalse(text.isTruncated());
+    }
+
+    @Test
+    public void testLongerTextIsTruncated() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append((char) ('a' + i % 26));
+        }
+        ExtractedText text = this.extract(content.toString(), 10000);
+        assertEquals(content.substring(0, 10000), text.getText());
+        assertTrue(text.isTruncated());
+    }
+
+    private ExtractedText extract(String content, int maxLength) throws IOException {
+        return this.extractor.extract(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), "txt",
+                maxLength);
+    }
+}
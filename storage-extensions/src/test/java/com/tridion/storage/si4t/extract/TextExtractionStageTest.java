@@ -0,0 +1,188 @@
+package com.tridion.storage.si4t.extract;
+
+import com.tridion.storage.si4t.BinaryIndexData;
+import com.tridion.storage.si4t.ExtractedText;
+import com.tridion.storage.si4t.ExtractionCache;
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * TextExtractionStageTest.
+ */
+public class TextExtractionStageTest {
+
+    private final List<File> files = new ArrayList<>();
+    private TextExtractionStage stage;
+
+    @After
+    public void tearDown() {
+        if (this.stage != null) {
+            this.stage.shutdown();
+        }
+        for (File file : this.files) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testExtractsTheStoredFile() throws IOException {
+        this.stage = stage(Collections.singletonList(new PlainTextExtractor()), 1000, 1024);
+        BinaryIndexData data = this.binary("tcm:5-1", "txt", "Hello world");
+
+        this.stage.extract("tcm:0-1-66560", data, null);
+
+        assertEquals("Hello world", data.getExtractedText().getText());
+        assertEquals(1, this.stage.getExtractedCount());
+    }
+
+    @Test
+    public void testUnsupportedAndOversizedBinariesAreSkipped() throws IOException {
+        this.stage = stage(Collections.singletonList(new PlainTextExtractor()), 1000, 4);
+        BinaryIndexData pdf = this.binary("tcm:5-1", "pdf", "abc");
+        BinaryIndexData large = this.binary("tcm:5-2", "txt", "Hello world");
+        BinaryIndexData missing = new BinaryIndexData(FactoryAction.PERSIST, IndexType.BINARY, "5", "storage");
+        missing.setFileType("txt");
+
+        this.stage.extract("tcm:0-1-66560", pdf, null);
+        this.stage.extract("tcm:0-1-66560", large, null);
+        this.stage.extract("tcm:0-1-66560", missing, null);
+
+        assertNull(pdf.getExtractedText());
+        assertNull(large.getExtractedText());
+        assertNull(missing.getExtractedText());
+        assertEquals(3, this.stage.getSkippedCount());
+        assertEquals(0, this.stage.getExtractedCount());
+    }
+
+    @Test
+    public void testFirstSupportingExtractorIsUsed() throws IOException {
+        TextExtractor upper = new FixedExtractor("HELLO");
+        this.stage = stage(Arrays.asList(upper, new PlainTextExtractor()), 1000, 1024);
+        BinaryIndexData data = this.binary("tcm:5-1", "TXT", "hello");
+
+        this.stage.extract("tcm:0-1-66560", data, null);
+
+        assertEquals("HELLO", data.getExtractedText().getText());
+    }
+
+    @Test
+    public void testFailingExtractionIndexesWithoutText() throws IOException {
+        TextExtractor failing = new TextExtractor() {
+            @Override
+            public boolean supports(String fileType) {
+                return true;
+            }
+
+            @Override
+            public ExtractedText extract(InputStream content, String fileType, int maxLength) throws IOException {
+                throw new IOException("Corrupt");
+            }
+        };
+        this.stage = stage(Collections.singletonList(failing), 1000, 1024);
+        BinaryIndexData data = this.binary("tcm:5-1", "txt", "hello");
+
+        this.stage.extract("tcm:0-1-66560", data, null);
+
+        assertNull(data.getExtractedText());
+        assertEquals(1, this.stage.getFailureCount());
+    }
+
+    @Test
+    public void testSlowExtractionTimesOutAndIsInterrupted() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        TextExtractor blocking = new TextExtractor() {
+            @Override
+            public boolean supports(String fileType) {
+                return true;
+            }
+
+            @Override
+            public ExtractedText extract(InputStream content, String fileType, int maxLength) {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return new ExtractedText("late", null, false);
+            }
+        };
+        this.stage = stage(Collections.singletonList(blocking), 50, 1024);
+        BinaryIndexData data = this.binary("tcm:5-1", "txt", "hello");
+
+        this.stage.extract("tcm:0-1-66560", data, null);
+
+        assertNull(data.getExtractedText());
+        assertEquals(1, this.stage.getTimeoutCount());
+        assertEquals(1, this.stage.getFailureCount());
+        assertEquals(true, interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCachedTextIsShared() throws IOException {
+        this.stage = stage(Collections.singletonList(new PlainTextExtractor()), 1000, 1024);
+        ExtractionCache cache = new ExtractionCache(1024 * 1024);
+        BinaryIndexData first = this.binary("tcm:5-1", "txt", "Hello");
+        BinaryIndexData second = this.binary("tcm:5-2", "txt", "Hello");
+        first.setContentDigest("digest");
+        second.setContentDigest("digest");
+
+        this.stage.extract("tcm:0-1-66560", first, cache);
+        this.stage.extract("tcm:0-1-66560", second, cache);
+
+        assertEquals("Hello", second.getExtractedText().getText());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, this.stage.getExtractedCount());
+    }
+
+    private BinaryIndexData binary(String id, String fileType, String content) throws IOException {
+        File file = File.createTempFile("si4t-extract", "." + fileType);
+        this.files.add(file);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        BinaryIndexData data = new BinaryIndexData(FactoryAction.PERSIST, IndexType.BINARY, "5", "storage");
+        data.setUniqueIndexId(id);
+        data.setFileType(fileType);
+        data.setContentFile(file);
+        return data;
+    }
+
+    private static TextExtractionStage stage(List<TextExtractor> extractors, long timeoutMillis, long maxInputSize) {
+        return new TextExtractionStage("storage", extractors, 1, 4, timeoutMillis, maxInputSize, 1000);
+    }
+
+    private static final class FixedExtractor implements TextExtractor {
+
+        private final String text;
+
+        private FixedExtractor(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean supports(String fileType) {
+            return "txt".equals(fileType);
+        }
+
+        @Override
+        public ExtractedText extract(InputStream content, String fileType, int maxLength) {
+            return new ExtractedText(this.text, null, false);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.tridion.storage.si4t.fanout;
+
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.SearchIndexData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.si4t.RecordingIndexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SecondaryTargetTest.
+ */
+public class SecondaryTargetTest {
+
+    private final RecordingIndexer index = new RecordingIndexer();
+    private Path directory;
+    private ReplayLog replayLog;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("si4t-fanout-test");
+        this.replayLog = new ReplayLog(this.directory.resolve("target.replay"));
+    }
+
+    @After
+    public void tearDown() {
+        this.replayLog.close();
+        File[] files = this.directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.directory.toFile().delete();
+    }
+
+    private SecondaryTarget newTarget(int queueSize, long queueTimeout, int maxRetries) {
+        return this.newTarget(queueSize, queueTimeout, Long.MAX_VALUE, maxRetries);
+    }
+
+    private SecondaryTarget newTarget(int queueSize, long queueTimeout, long queueMaxBytes, int maxRetries) {
+        return new SecondaryTarget("storage/secondary", this.index, queueSize, queueTimeout, queueMaxBytes,
+                maxRetries, 1, this.replayLog);
+    }
+
+    private static SearchIndexData item(String id) {
+        SearchIndexData data = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, "5", "storage");
+        data.setUniqueIndexId(id);
+        return data;
+    }
+
+    private static void add(SecondaryTarget target, String id) {
+        SearchIndexData data = item(id);
+        target.submit(data, delegate -> delegate.addItemToIndex(data));
+    }
+
+    private List<String> replayedIds() throws IOException {
+        if (!Files.exists(this.replayLog.getFile())) {
+            return Collections.emptyList();
+        }
+        List<String> ids = new ArrayList<>();
+        for (BaseIndexData data : ReplayLog.read(this.replayLog.getFile(), "storage")) {
+            ids.add(data.getUniqueIndexId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testSendsActionsAndCommitInOrder() throws Exception {
+        SecondaryTarget target = this.newTarget(10, 1000, 0);
+
+        add(target, "tcm:5-1-64");
+        add(target, "tcm:5-2-64");
+        target.commit("5");
+        target.commit("5");
+        target.destroy();
+
+        assertEquals(Arrays.asList("add:tcm:5-1-64", "add:tcm:5-2-64", "commit:5"), this.index.getCalls());
+        assertEquals(2, target.getSentCount());
+        assertEquals(1, target.getCommitCount());
+        assertEquals(0, target.getReplayLogCount());
+        assertTrue(this.index.isDestroyed());
+    }
+
+    @Test
+    public void testCommitWithoutActionsIsSkipped() throws Exception {
+        SecondaryTarget target = this.newTarget(10, 1000, 0);
+        target.commit("5");
+        add(target, "tcm:6-1-64");
+
+        target.destroy();
+
+        assertEquals(0, target.getCommitCount());
+    }
+
+    @Test
+    public void testFullQueueDropsToReplayLog() throws Exception {
+        SecondaryTarget target = this.newTarget(1, 50, 0);
+        CountDownLatch gate = this.index.holdCommits();
+        add(target, "tcm:5-1-64");
+        target.commit("5");
+        assertTrue(this.index.awaitCommitStarted());
+        add(target, "tcm:5-2-64");
+
+        long start = System.nanoTime();
+        add(target, "tcm:5-3-64");
+
+        assertTrue(System.nanoTime() - start >= 40000000L);
+        assertEquals(1, target.getDroppedCount());
+        assertEquals(Collections.singletonList("tcm:5-3-64"), this.replayedIds());
+        gate.countDown();
+        target.commit("5");
+        target.destroy();
+        assertEquals(Arrays.asList("add:tcm:5-1-64", "commit:5", "add:tcm:5-2-64", "commit:5"),
+                this.index.getCalls());
+        assertEquals(1, target.getReplayLogCount());
+    }
+
+    @Test
+    public void testFullQueueDropsAtOnceWithoutTimeout() throws Exception {
+        SecondaryTarget target = this.newTarget(1, 0, 0);
+        CountDownLatch gate = this.index.holdCommits();
+        add(target, "tcm:5-1-64");
+        target.commit("5");
+        assertTrue(this.index.awaitCommitStarted());
+        add(target, "tcm:5-2-64");
+
+        add(target, "tcm:5-3-64");
+
+        assertEquals(1, target.getDroppedCount());
+        assertEquals(Collections.singletonList("tcm:5-3-64"), this.replayedIds());
+        gate.countDown();
+        target.destroy();
+    }
+
+    @Test
+    public void testQueueIsBoundedInBytes() throws Exception {
+        SearchIndexData large = item("tcm:5-2-64");
+        large.addIndexField("body", new String(new char[1000]));
+        SecondaryTarget target = this.newTarget(10, 0, large.getEstimatedSize() / 2, 0);
+        CountDownLatch gate = this.index.holdCommits();
+        add(target, "tcm:5-1-64");
+        target.commit("5");
+        assertTrue(this.index.awaitCommitStarted());
+
+        // An empty queue takes any item, so a large item is never starved.
+        target.submit(large, delegate -> delegate.addItemToIndex(large));
+        assertEquals(large.getEstimatedSize(), target.getQueuedBytes());
+        add(target, "tcm:5-3-64");
+
+        assertEquals(1, target.getDroppedCount());
+        assertEquals(Collections.singletonList("tcm:5-3-64"), this.replayedIds());
+        gate.countDown();
+        target.commit("5");
+        target.destroy();
+        assertEquals(Arrays.asList("add:tcm:5-1-64", "commit:5", "add:tcm:5-2-64", "commit:5"),
+                this.index.getCalls());
+        assertEquals(0, target.getQueuedBytes());
+    }
+
+    @Test
+    public void testActionGivenUpOnIsLogged() throws Exception {
+        SecondaryTarget target = this.newTarget(10, 1000, 2);
+        this.index.failOn("tcm:5-2-64");
+
+        add(target, "tcm:5-1-64");
+        add(target, "tcm:5-2-64");
+        target.commit("5");
+        target.destroy();
+
+        assertEquals(1, target.getFailedCount());
+        assertEquals(2, target.getRetriedCount());
+        assertEquals(Collections.singletonList("tcm:5-2-64"), this.replayedIds());
+    }
+
+    @Test
+    public void testCommitGivenUpOnLogsItsActions() throws Exception {
+        SecondaryTarget target = this.newTarget(10, 1000, 1);
+        this.index.failCommits(2);
+
+        add(target, "tcm:5-1-64");
+        add(target, "tcm:5-2-64");
+        target.commit("5");
+        add(target, "tcm:5-3-64");
+        target.commit("5");
+        target.destroy();
+
+        assertEquals(1, target.getCommitCount());
+        assertEquals(Arrays.asList("tcm:5-1-64", "tcm:5-2-64"), this.replayedIds());
+    }
+
+    @Test
+    public void testDestroyLogsUncommittedActions() throws Exception {
+        SecondaryTarget target = this.newTarget(10, 1000, 0);
+
+        add(target, "tcm:5-1-64");
+        target.destroy();
+
+        assertEquals(Collections.singletonList("tcm:5-1-64"), this.replayedIds());
+    }
+
+    @Test
+    public void testDestroyedTargetDropsActions() throws Exception {
+        SecondaryTarget target = this.newTarget(10, 1000, 0);
+        target.destroy();
+
+        add(target, "tcm:5-1-64");
+
+        assertEquals(1, target.getDroppedCount());
+        assertFalse(this.index.getCalls().contains("add:tcm:5-1-64"));
+        assertEquals(Collections.singletonList("tcm:5-1-64"), this.replayedIds());
+    }
+
+    @Test
+    public void testReadKeepsLastActionOfEveryItem() throws Exception {
+        BaseIndexData removal = new BaseIndexData(FactoryAction.REMOVE, IndexType.PAGE, "5", "storage");
+        removal.setUniqueIndexId("tcm:5-1-64");
+        this.replayLog.append(ReplayLog.line(item("tcm:5-1-64")));
+        this.replayLog.append(ReplayLog.line(item("tcm:5-2-64")));
+        this.replayLog.append(ReplayLog.line(removal));
+        this.replayLog.close();
+
+        List<BaseIndexData> actions = ReplayLog.read(this.replayLog.getFile(), "other");
+
+        assertEquals(2, actions.size());
+        assertEquals("tcm:5-2-64", actions.get(0).getUniqueIndexId());
+        assertEquals(FactoryAction.PERSIST, actions.get(0).getAction());
+        assertEquals("tcm:5-1-64", actions.get(1).getUniqueIndexId());
+        assertEquals(FactoryAction.REMOVE, actions.get(1).getAction());
+        assertEquals(IndexType.PAGE, actions.get(1).getIndexType());
+        assertEquals("5", actions.get(1).getPublicationItemId());
+        assertEquals("other", actions.get(1).getStorageId());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadRefusesInvalidLine() throws Exception {
+        Files.write(this.replayLog.getFile(), "PERSIST\tPAGE\n".getBytes(StandardCharsets.UTF_8));
+
+        ReplayLog.read(this.replayLog.getFile(), "storage");
+    }
+}
@@ -0,0 +1,30 @@
+package com.tridion.storage.si4t.jfr;
+
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.SearchIndexData;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+
+/**
+ * IndexingEventsTest.
+ */
+public class IndexingEventsTest {
+
+    @Test
+    public void testEventsAreDisabledWithoutRecording() {
+        for (IndexingEventKind kind : IndexingEventKind.values()) {
+            assertNull(kind.name(), IndexingEvents.begin(kind));
+        }
+    }
+
+    @Test
+    public void testEndingADisabledEventDoesNothing() {
+        SearchIndexData data = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, "5", "storage");
+        data.setUniqueIndexId("tcm:5-1-64");
+
+        IndexingEvents.end(null, "tcm:0-1-66560", data, "ok");
+        IndexingEvents.end(null, null, "storage", null, null, null, 0, "ok");
+    }
+}
@@ -0,0 +1,96 @@
+package com.tridion.storage.si4t.metrics;
+
+import com.tridion.storage.si4t.IndexType;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * StorageMetricsTest.
+ */
+public class StorageMetricsTest {
+
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testRecordsPerStageTypeAndPublication() {
+        StorageMetrics metrics = new StorageMetrics("storage");
+        metrics.record(IndexingStage.PARSE, "5", IndexType.PAGE, 2 * MILLISECOND, false);
+        metrics.record(IndexingStage.PARSE, "5", IndexType.COMPONENT_PRESENTATION, 4 * MILLISECOND, true);
+        metrics.record(IndexingStage.PARSE, "6", IndexType.PAGE, 6 * MILLISECOND, false);
+
+        StageStatistics all = metrics.getStage(IndexingStage.PARSE, null);
+        assertEquals(3, all.getCount());
+        assertEquals(1, all.getErrorCount());
+        assertEquals(12000, all.getTotalMicros());
+        assertEquals(2, metrics.getStage(IndexingStage.PARSE, IndexType.PAGE).getCount());
+        assertEquals(2, metrics.getPublicationStage("5", IndexingStage.PARSE).getCount());
+        assertEquals(1, metrics.getPublicationStage("5", IndexingStage.PARSE).getErrorCount());
+        assertNull(metrics.getPublicationStage("7", IndexingStage.PARSE));
+    }
+
+    @Test
+    public void testPublicationCountersKeepNoHistogram() {
+        StorageMetrics metrics = new StorageMetrics("storage");
+        metrics.record(IndexingStage.COMMIT, "5", IndexType.PAGE, MILLISECOND, false);
+
+        assertTrue(metrics.getStage(IndexingStage.COMMIT, null).hasHistogram());
+        assertFalse(metrics.getPublicationStage("5", IndexingStage.COMMIT).hasHistogram());
+        assertEquals(0, metrics.getPublicationStage("5", IndexingStage.COMMIT).getMaxMicros());
+    }
+
+    @Test
+    public void testPercentiles() {
+        StorageMetrics metrics = new StorageMetrics("storage");
+        for (int i = 1; i <= 100; i++) {
+            metrics.record(IndexingStage.REGISTER, null, null, i * MILLISECOND, false);
+        }
+
+        StageStatistics statistics = metrics.getStage(IndexingStage.REGISTER, null);
+        // Two significant digits.
+        assertEquals(50000, statistics.getPercentileMicros(50), 500);
+        assertEquals(99000, statistics.getPercentileMicros(99), 1000);
+        assertEquals(100000, statistics.getMaxMicros(), 1000);
+        assertEquals(100, statistics.getHistogram().getTotalCount());
+    }
+
+    @Test
+    public void testMXBeanViewLeavesOutUnmeasuredStages() {
+        StorageMetrics metrics = new StorageMetrics("storage");
+        metrics.record(IndexingStage.DISPATCH, "5", IndexType.PAGE, 3 * MILLISECOND, false);
+        metrics.record(IndexingStage.DISPATCH, "5", IndexType.PAGE, 5 * MILLISECOND, true);
+
+        Map<String, Long> counts = metrics.getCounts();
+        assertEquals(2, counts.size());
+        assertEquals(Long.valueOf(2), counts.get("DISPATCH"));
+        assertEquals(Long.valueOf(2), counts.get("DISPATCH.PAGE"));
+        assertEquals(Long.valueOf(1), metrics.getErrorCounts().get("DISPATCH"));
+        assertEquals(Long.valueOf(4000), metrics.getMeanMicros().get("DISPATCH"));
+        assertEquals(Long.valueOf(2), metrics.getPublicationCounts().get("5.DISPATCH"));
+        assertEquals(1, metrics.getPublicationCounts().size());
+    }
+
+    @Test
+    public void testGauges() {
+        StorageMetrics metrics = new StorageMetrics("storage");
+        metrics.gauge("directiveCache.hits", () -> 3);
+        metrics.gauge("directiveCache.hits", () -> 4);
+
+        assertEquals(1, metrics.getGauges().size());
+        assertEquals(Long.valueOf(4), metrics.getGauges().get("directiveCache.hits"));
+    }
+
+    @Test
+    public void testRecordingWithoutStorageIsIgnored() {
+        IndexingMetrics.record(IndexingStage.PARSE, null, "5", IndexType.PAGE, System.nanoTime(), false);
+        IndexingMetrics.record(IndexingStage.PARSE, "metrics-test", "5", IndexType.PAGE, System.nanoTime(), false);
+
+        assertEquals(1, IndexingMetrics.forStorage("metrics-test").getStage(IndexingStage.PARSE, null).getCount());
+    }
+}
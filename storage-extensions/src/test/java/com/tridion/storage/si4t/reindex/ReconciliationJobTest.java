@@ -0,0 +1,214 @@
+package com.tridion.storage.si4t.reindex;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationException;
+import com.tridion.configuration.XMLConfigurationReader;
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.BinaryIndexData;
+import com.tridion.storage.si4t.DirectiveStore;
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.ListableSearchIndex;
+import com.tridion.storage.si4t.SearchIndexData;
+import com.tridion.storage.si4t.SearchIndexProcessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * ReconciliationJobTest.
+ */
+public class ReconciliationJobTest {
+
+    private static final String STORAGE_ID = "reconciliation-test";
+
+    private Path directory;
+    private DirectiveStore store;
+    private ListedIndex index;
+
+    @Before
+    public void setUp() throws IOException, ConfigurationException {
+        File configuration = File.createTempFile("si4t-reconciliation", ".xml");
+        try {
+            Files.write(configuration.toPath(), ("<Storage Id=\"" + STORAGE_ID + "\"><Indexer Class=\"" +
+                    ListedIndex.class.getName() + "\"/></Storage>").getBytes(StandardCharsets.UTF_8));
+            SearchIndexProcessor.getInstance().configureStorageInstance(STORAGE_ID,
+                    new XMLConfigurationReader().readConfiguration(configuration.getPath()));
+        } finally {
+            configuration.delete();
+        }
+
+        this.directory = Files.createTempDirectory("si4t-reconciliation");
+        this.store = DirectiveStore.open(this.directory, 1024 * 1024);
+        this.store.record(item("tcm:5-1-64", "Unchanged"));
+        this.store.record(item("tcm:5-2-64", "Changed"));
+        this.store.record(item("tcm:5-3-64", "Missing"));
+        this.store.record(item("tcm:6-1-64", "Other publication"));
+        this.store.flush();
+
+        // The index misses tcm:5-3-64, has another version of tcm:5-2-64 and an item which is not deployed.
+        this.index = new ListedIndex();
+        this.index.list("tcm:5-1-64", this.store.getFieldDigest("tcm:5-1-64"));
+        this.index.list("tcm:5-2-64", item("tcm:5-2-64", "Before").getFieldDigest());
+        this.index.list("tcm:5-4-64", null);
+        ListedIndex.CALLS.clear();
+    }
+
+    @After
+    public void tearDown() {
+        this.store.close();
+        File[] files = this.directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.directory.toFile().delete();
+    }
+
+    @Test
+    public void testDryRunCountsTheDifferencesWithoutSending() throws IndexingException {
+        ReconciliationJob job = new ReconciliationJob(STORAGE_ID, this.store, this.index, 10, -1, true);
+
+        job.run(Collections.singletonList("5"));
+
+        assertEquals(1, job.getAddedCount());
+        assertEquals(1, job.getUpdatedCount());
+        assertEquals(1, job.getRemovedCount());
+        assertEquals(1, job.getUnchangedCount());
+        assertTrue(ListedIndex.CALLS.isEmpty());
+    }
+
+    @Test
+    public void testMissingChangedAndExtraItemsAreRepaired() throws IndexingException {
+        ReconciliationJob job = new ReconciliationJob(STORAGE_ID, this.store, this.index, 10, -1, false);
+
+        job.run(Collections.singletonList("5"));
+
+        List<String> calls = new ArrayList<>(ListedIndex.CALLS);
+        assertTrue(calls.toString(), calls.containsAll(Arrays.asList("add:tcm:5-3-64", "update:tcm:5-2-64",
+                "remove:tcm:5-4-64", "commit:5")));
+        assertFalse(calls.toString(), calls.contains("update:tcm:5-1-64"));
+        assertFalse(calls.toString(), calls.contains("add:tcm:6-1-64"));
+        assertEquals(1, job.getAddedCount());
+        assertEquals(1, job.getUpdatedCount());
+        assertEquals(1, job.getRemovedCount());
+        assertEquals(1, job.getUnchangedCount());
+    }
+
+    @Test
+    public void testRemovalsAboveTheLimitAreNotSent() throws IndexingException {
+        ReconciliationJob job = new ReconciliationJob(STORAGE_ID, this.store, this.index, 10, 0, false);
+
+        job.run(Collections.singletonList("5"));
+
+        List<String> calls = new ArrayList<>(ListedIndex.CALLS);
+        assertTrue(calls.toString(), calls.containsAll(Arrays.asList("add:tcm:5-3-64", "update:tcm:5-2-64")));
+        assertFalse(calls.toString(), calls.contains("remove:tcm:5-4-64"));
+        assertEquals(0, job.getRemovedCount());
+    }
+
+    @Test
+    public void testUnsortedListingIsRejected() {
+        ListedIndex unsorted = new ListedIndex() {
+            @Override
+            public void listIndexedItems(String publicationId, IndexedItemHandler handler) throws IndexingException {
+                handler.accept("tcm:5-2-64", IndexType.PAGE, null);
+                handler.accept("tcm:5-1-64", IndexType.PAGE, null);
+            }
+        };
+        ReconciliationJob job = new ReconciliationJob(STORAGE_ID, this.store, unsorted, 10, -1, false);
+        try {
+            job.run(Collections.singletonList("5"));
+            fail("Expected an IndexingException");
+        } catch (IndexingException expected) {
+        }
+        assertTrue(ListedIndex.CALLS.isEmpty());
+    }
+
+    private static SearchIndexData item(String id, String title) {
+        String publicationId = id.substring(id.indexOf(':') + 1, id.indexOf('-'));
+        SearchIndexData data = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, publicationId, STORAGE_ID);
+        data.setUniqueIndexId(id);
+        data.addIndexField("title", title);
+        return data;
+    }
+
+    /**
+     * Lists the items given to it. All instances, including the ones the processor
+     * creates for a transaction, record their actions in CALLS.
+     */
+    public static class ListedIndex implements ListableSearchIndex {
+
+        static final List<String> CALLS = Collections.synchronizedList(new ArrayList<>());
+
+        private final Map<String, String> items = new TreeMap<>();
+
+        void list(String uniqueIndexId, String fieldDigest) {
+            this.items.put(uniqueIndexId, fieldDigest);
+        }
+
+        @Override
+        public void configure(Configuration configuration) {
+        }
+
+        @Override
+        public void addItemToIndex(SearchIndexData data) {
+            CALLS.add("add:" + data.getUniqueIndexId());
+        }
+
+        @Override
+        public void removeItemFromIndex(BaseIndexData data) {
+            CALLS.add("remove:" + data.getUniqueIndexId());
+        }
+
+        @Override
+        public void updateItemInIndex(SearchIndexData data) {
+            CALLS.add("update:" + data.getUniqueIndexId());
+        }
+
+        @Override
+        public void addBinaryToIndex(BinaryIndexData data) {
+            CALLS.add("addBinary:" + data.getUniqueIndexId());
+        }
+
+        @Override
+        public void removeBinaryFromIndex(BaseIndexData data) {
+            CALLS.add("removeBinary:" + data.getUniqueIndexId());
+        }
+
+        @Override
+        public void commit(String publicationId) {
+            CALLS.add("commit:" + publicationId);
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public void listIndexedItems(String publicationId, IndexedItemHandler handler) throws IndexingException {
+            for (Map.Entry<String, String> item : this.items.entrySet()) {
+                handler.accept(item.getKey(), IndexType.PAGE, item.getValue());
+            }
+        }
+    }
+}
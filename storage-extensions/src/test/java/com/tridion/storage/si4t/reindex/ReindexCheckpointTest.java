@@ -0,0 +1,89 @@
+package com.tridion.storage.si4t.reindex;
+
+import com.tridion.storage.si4t.IndexType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ReindexCheckpointTest.
+ */
+public class ReindexCheckpointTest {
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("si4t-reindex");
+        this.file = this.directory.resolve("checkpoint.properties");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+        Files.deleteIfExists(this.directory);
+    }
+
+    @Test
+    public void testNewCheckpointHasNothingDone() throws IOException {
+        ReindexCheckpoint checkpoint = ReindexCheckpoint.read(this.file);
+
+        assertNull(checkpoint.getLastPath());
+        assertFalse(checkpoint.isDone("5/tcm_5-1-64.html"));
+        assertFalse(Files.exists(this.file));
+    }
+
+    @Test
+    public void testPathsUpToTheLastBatchAreDone() throws IOException {
+        ReindexCheckpoint checkpoint = ReindexCheckpoint.read(this.file);
+        checkpoint.completed("5/tcm_5-20-64.html", 10, 9, 1);
+
+        assertTrue(checkpoint.isDone("5/tcm_5-1-64.html"));
+        assertTrue(checkpoint.isDone("5/tcm_5-20-64.html"));
+        assertFalse(checkpoint.isDone("5/tcm_5-21-64.html"));
+        assertFalse(checkpoint.isDone("6/tcm_6-1-64.html"));
+    }
+
+    @Test
+    public void testResumesFromTheWrittenCheckpoint() throws IOException {
+        ReindexCheckpoint checkpoint = ReindexCheckpoint.read(this.file);
+        checkpoint.completed("5/tcm_5-20-64.html", 10, 9, 1);
+        checkpoint.completed("6/tcm_6-3-64.html", 5, 5, 0);
+
+        ReindexCheckpoint resumed = ReindexCheckpoint.read(this.file);
+
+        assertEquals("6/tcm_6-3-64.html", resumed.getLastPath());
+        assertEquals(15, resumed.getFiles());
+        assertEquals(14, resumed.getIndexed());
+        assertEquals(1, resumed.getFailed());
+        assertTrue(resumed.isDone("5/tcm_5-99-64.html"));
+        assertFalse(Files.exists(this.file.resolveSibling("checkpoint.properties.tmp")));
+    }
+
+    @Test
+    public void testItemIsIdentifiedByItsFileName() {
+        ReindexItem page = ReindexItem.of(Paths.get("5", "tcm_5-1234-64.html"));
+        ReindexItem dcp = ReindexItem.of(Paths.get("dcp_5-100-200.xml"));
+
+        assertEquals(IndexType.PAGE, page.getType());
+        assertEquals("tcm:5-1234-64", page.getUniqueIndexId());
+        assertEquals(5, page.getPublicationId());
+        assertEquals(1234, page.getItemId());
+        assertEquals(IndexType.COMPONENT_PRESENTATION, dcp.getType());
+        assertEquals("dcp:5-100-200", dcp.getUniqueIndexId());
+        assertEquals(100, dcp.getItemId());
+        assertNull(ReindexItem.of(Paths.get("tcm_5-1234-16.html")));
+        assertNull(ReindexItem.of(Paths.get("index.html")));
+    }
+}
@@ -0,0 +1,133 @@
+package com.tridion.storage.si4t.report;
+
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.SearchIndexData;
+import com.tridion.storage.si4t.metrics.IndexingStage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TransactionReportTest.
+ */
+public class TransactionReportTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("si4t-transaction-report-test");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = this.directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.directory.toFile().delete();
+    }
+
+    private static SearchIndexData item(String id) {
+        SearchIndexData data = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, "5", "storage");
+        data.setUniqueIndexId(id);
+        data.addIndexField("title", "Hello");
+        return data;
+    }
+
+    @Test
+    public void testReportCountsActionsStagesAndFailures() {
+        TransactionReport report = new TransactionReport("tcm:0-1-66560", "storage");
+        report.registered(false);
+        report.registered(true);
+        report.skipped(3);
+        report.processed(item("tcm:5-1-64"), false);
+        BaseIndexData removal = new BaseIndexData(FactoryAction.REMOVE, IndexType.PAGE, "5", "storage");
+        removal.setUniqueIndexId("tcm:5-2-64");
+        report.processed(removal, true);
+        report.stage(IndexingStage.DISPATCH, 5000);
+        report.committed("5", 2000);
+        report.failed(new IOException("Connection refused"));
+
+        String json = report.toJson();
+
+        assertTrue(json, json.startsWith("{\"transactionId\":\"tcm:0-1-66560\",\"storageId\":\"storage\","));
+        assertTrue(json, json.contains("\"outcome\":\"failed\",\"registered\":2,\"coalesced\":1,\"skipped\":3,"
+                + "\"failedItems\":1,\"bytes\":5,"));
+        assertTrue(json, json.contains("\"processed\":{\"PERSIST\":{\"PAGE\":1},\"REMOVE\":{\"PAGE\":1}}"));
+        assertTrue(json, json.contains("\"stageMicros\":{\"DISPATCH\":5,\"COMMIT\":2}"));
+        assertTrue(json, json.contains("\"commitMicros\":{\"5\":2}"));
+        assertTrue(json, json.endsWith("\"failureCount\":1,\"failures\":[\"java.io.IOException: Connection refused\"]}"));
+        assertFalse(json, json.contains("allocatedBytes"));
+    }
+
+    @Test
+    public void testReportsAreOnlyKeptForEnabledStorages() throws Exception {
+        TransactionReportWriter writer = new TransactionReportWriter(this.directory.resolve("reports.jsonl"),
+                1024 * 1024, 1, 16);
+        TransactionReports.enable("report-test", writer);
+        try {
+            assertNull(TransactionReports.open("tcm:0-1-66560", "other"));
+            TransactionReport report = TransactionReports.open("tcm:0-1-66560", "report-test");
+            assertSame(report, TransactionReports.find("tcm:0-1-66560", "report-test"));
+            report.registered(false);
+
+            TransactionReports.finish("tcm:0-1-66560", "report-test");
+            assertNull(TransactionReports.find("tcm:0-1-66560", "report-test"));
+        } finally {
+            TransactionReports.disable("report-test");
+        }
+
+        List<String> lines = Files.readAllLines(this.directory.resolve("reports.jsonl"), StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0), lines.get(0).contains("\"registered\":1"));
+    }
+
+    @Test
+    public void testWriterRollsOverAndKeepsMaxFiles() throws Exception {
+        Path file = this.directory.resolve("reports.jsonl");
+        TransactionReportWriter writer = new TransactionReportWriter(file, 10, 2, 16);
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(writer.offer("line-" + i));
+        }
+        writer.close();
+
+        assertEquals(4, writer.getWrittenCount());
+        assertEquals(0, writer.getDroppedCount());
+        assertEquals("line-4\n", read(file));
+        assertEquals("line-3\n", read(this.directory.resolve("reports.jsonl.1")));
+        assertEquals("line-2\n", read(this.directory.resolve("reports.jsonl.2")));
+        assertFalse(Files.exists(this.directory.resolve("reports.jsonl.3")));
+    }
+
+    @Test
+    public void testClosedWriterDropsLines() throws Exception {
+        TransactionReportWriter writer = new TransactionReportWriter(this.directory.resolve("reports.jsonl"),
+                1024, 1, 16);
+        writer.close();
+
+        assertFalse(writer.offer("line"));
+        assertEquals(1, writer.getDroppedCount());
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
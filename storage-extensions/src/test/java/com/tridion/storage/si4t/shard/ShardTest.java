@@ -0,0 +1,171 @@
+package com.tridion.storage.si4t.shard;
+
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.SearchIndexData;
+import org.junit.After;
+import org.junit.Test;
+import org.si4t.RecordingIndexer;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * ShardTest.
+ */
+public class ShardTest {
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+    private final RecordingIndexer index = new RecordingIndexer();
+    private final Shard shard = new Shard("shard", this.index, 4);
+
+    @After
+    public void tearDown() {
+        this.threads.shutdownNow();
+        this.shard.destroy();
+    }
+
+    private static SearchIndexData item(String id) {
+        SearchIndexData data = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, "5", "storage");
+        data.setUniqueIndexId(id);
+        return data;
+    }
+
+    private void add(String id) throws IndexingException {
+        SearchIndexData data = item(id);
+        this.shard.submit(data, delegate -> delegate.addItemToIndex(data));
+    }
+
+    @Test
+    public void testFailureIsReportedToItsSubmitter() throws Exception {
+        this.index.failOn("tcm:5-2-64");
+
+        this.add("tcm:5-1-64");
+        try {
+            this.add("tcm:5-2-64");
+            fail("The failed action should be thrown to its submitter");
+        } catch (IndexingException e) {
+            assertTrue(e.getMessage().contains("tcm:5-2-64"));
+        }
+        this.add("tcm:5-3-64");
+
+        assertEquals(2, this.shard.getSentCount());
+        assertEquals(1, this.shard.getFailedCount());
+        assertEquals(Arrays.asList("add:tcm:5-1-64", "add:tcm:5-3-64"), this.index.getCalls());
+    }
+
+    @Test
+    public void testCommitCoversQueuedActions() throws Exception {
+        assertNull(this.shard.commit("5"));
+        this.add("tcm:5-1-64");
+
+        this.shard.commit("5").get(10, TimeUnit.SECONDS);
+        assertNull(this.shard.commit("5"));
+
+        this.add("tcm:5-2-64");
+        this.shard.commit("5").get(10, TimeUnit.SECONDS);
+        assertEquals(2, this.shard.getCommitCount());
+        assertEquals(Arrays.asList("add:tcm:5-1-64", "commit:5", "add:tcm:5-2-64", "commit:5"),
+                this.index.getCalls());
+    }
+
+    @Test
+    public void testPendingCommitIsReused() throws Exception {
+        CountDownLatch gate = this.index.holdCommits();
+        this.add("tcm:5-1-64");
+        Future<Void> commit = this.shard.commit("5");
+        assertTrue(this.index.awaitCommitStarted());
+
+        assertSame(commit, this.shard.commit("5"));
+
+        gate.countDown();
+        commit.get(10, TimeUnit.SECONDS);
+        assertEquals(1, this.index.getCommitCount());
+    }
+
+    @Test
+    public void testActionAfterPendingCommitGetsNewCommit() throws Exception {
+        CountDownLatch gate = this.index.holdCommits();
+        this.add("tcm:5-1-64");
+        Future<Void> first = this.shard.commit("5");
+        assertTrue(this.index.awaitCommitStarted());
+        Future<?> later = this.threads.submit(() -> {
+            this.add("tcm:5-2-64");
+            return null;
+        });
+        // The pending commit is returned until the action has taken its sequence number.
+        Future<Void> second = this.shard.commit("5");
+        for (int i = 0; i < 1000 && second == first; i++) {
+            Thread.sleep(10);
+            second = this.shard.commit("5");
+        }
+
+        assertNotSame(first, second);
+        assertEquals(1, this.shard.getQueuedCount());
+        gate.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        later.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("add:tcm:5-1-64", "commit:5", "add:tcm:5-2-64", "commit:5"),
+                this.index.getCalls());
+    }
+
+    @Test
+    public void testFailedCommitIsRetried() throws Exception {
+        this.index.failCommits(1);
+        this.add("tcm:5-1-64");
+        try {
+            this.shard.commit("5").get(10, TimeUnit.SECONDS);
+            fail("The commit should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IndexingException);
+        }
+
+        this.shard.commit("5").get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, this.index.getCommitCount());
+        assertNull(this.shard.commit("5"));
+    }
+
+    @Test
+    public void testPublicationsCommitSeparately() throws Exception {
+        this.add("tcm:5-1-64");
+        SearchIndexData other = new SearchIndexData(FactoryAction.PERSIST, IndexType.PAGE, "6", "storage");
+        other.setUniqueIndexId("tcm:6-1-64");
+        this.shard.submit(other, delegate -> delegate.addItemToIndex(other));
+
+        this.shard.commit("6").get(10, TimeUnit.SECONDS);
+
+        assertNull(this.shard.commit("6"));
+        this.shard.commit("5").get(10, TimeUnit.SECONDS);
+        assertEquals(2, this.index.getCommitCount());
+    }
+
+    @Test
+    public void testDestroyRefusesActionsAndDestroysDelegate() throws Exception {
+        this.add("tcm:5-1-64");
+
+        this.shard.destroy();
+
+        assertTrue(this.index.isDestroyed());
+        try {
+            this.add("tcm:5-2-64");
+            fail("A destroyed shard should refuse actions");
+        } catch (IndexingException e) {
+            assertEquals(0, this.shard.getQueuedCount());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.tridion.storage.si4t.slowlog;
+
+import com.tridion.storage.si4t.FactoryAction;
+import com.tridion.storage.si4t.IndexType;
+import com.tridion.storage.si4t.metrics.IndexingStage;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SlowItemLogTest.
+ */
+public class SlowItemLogTest {
+
+    @Test
+    public void testOnlyConfiguredStagesAreSlow() {
+        SlowItemLog log = log(3);
+
+        assertTrue(log.isSlow(IndexingStage.PARSE, TimeUnit.MILLISECONDS.toNanos(6)));
+        assertFalse(log.isSlow(IndexingStage.PARSE, TimeUnit.MILLISECONDS.toNanos(5)));
+        assertFalse(log.isSlow(IndexingStage.EXTRACT, Long.MAX_VALUE - 1));
+        assertEquals(1, log.getThresholdMillis().size());
+        assertEquals(Long.valueOf(5), log.getThresholdMillis().get("PARSE"));
+    }
+
+    @Test
+    public void testKeepsTheMostRecentItemsNewestFirst() {
+        SlowItemLog log = log(3);
+        for (int i = 1; i <= 5; i++) {
+            log.add(item("tcm:5-" + i + "-64"));
+        }
+
+        List<SlowItem> recent = log.getRecent(10);
+
+        assertEquals(3, recent.size());
+        assertEquals("tcm:5-5-64", recent.get(0).getUniqueIndexId());
+        assertEquals("tcm:5-3-64", recent.get(2).getUniqueIndexId());
+        assertEquals(1, log.getRecent(1).size());
+        assertEquals(5, log.getSlowCount());
+        assertEquals(Long.valueOf(5), log.getSlowCounts().get("PARSE"));
+    }
+
+    @Test
+    public void testClearKeepsTheCounts() {
+        SlowItemLog log = log(3);
+        log.add(item("tcm:5-1-64"));
+
+        log.clear();
+
+        assertTrue(log.getRecent(10).isEmpty());
+        assertEquals(1, log.getSlowCount());
+    }
+
+    @Test
+    public void testItemDescribesTheStage() {
+        SlowItemLog log = log(3);
+        log.add(item("tcm:5-1-64"));
+
+        SlowItem item = log.getRecent(1).get(0);
+        String json = item.toJson();
+
+        assertEquals("deploy", item.getPhase());
+        assertEquals(5000, item.getDurationMicros());
+        assertTrue(json, json.contains("\"stage\":\"PARSE\""));
+        assertTrue(json, json.contains("\"storageId\":\"storage\""));
+        assertTrue(json, json.contains("\"thresholdMicros\":5000"));
+        assertTrue(json, json.contains("\"uniqueIndexId\":\"tcm:5-1-64\""));
+        assertTrue(json, json.contains("\"outcome\":\"failed\""));
+        assertEquals("index", SlowItem.builder(IndexingStage.INDEXER_CALL, 0).build().getPhase());
+    }
+
+    private static SlowItemLog log(int capacity) {
+        Map<IndexingStage, Long> thresholds = new EnumMap<>(IndexingStage.class);
+        thresholds.put(IndexingStage.PARSE, 5L);
+        return new SlowItemLog("storage", thresholds, capacity, null);
+    }
+
+    private static SlowItem.Builder item(String id) {
+        return SlowItem.builder(IndexingStage.PARSE, TimeUnit.MILLISECONDS.toNanos(5))
+                .transaction("tcm:0-1-66560")
+                .item(id, "5", IndexType.PAGE, FactoryAction.PERSIST)
+                .failed(true);
+    }
+}
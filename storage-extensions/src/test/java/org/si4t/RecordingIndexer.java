@@ -0,0 +1,149 @@
+package org.si4t;
+
+import com.tridion.configuration.Configuration;
+import com.tridion.configuration.ConfigurationException;
+import com.tridion.storage.si4t.BaseIndexData;
+import com.tridion.storage.si4t.BinaryIndexData;
+import com.tridion.storage.si4t.IndexingException;
+import com.tridion.storage.si4t.SearchIndex;
+import com.tridion.storage.si4t.SearchIndexData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RecordingIndexer.
+ * <p/>
+ * Records the calls it receives, in order. Commits can be held until they are released,
+ * and actions or commits can be made to fail.
+ */
+public class RecordingIndexer implements SearchIndex {
+
+    private final List<String> calls = new ArrayList<>();
+    private final Set<String> failingIds = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger commits = new AtomicInteger();
+    private final AtomicInteger failingCommits = new AtomicInteger();
+    private final CountDownLatch commitStarted = new CountDownLatch(1);
+    private volatile CountDownLatch commitGate;
+    private volatile boolean destroyed;
+
+    @Override
+    public void configure(Configuration configuration) throws ConfigurationException {
+    }
+
+    @Override
+    public void addItemToIndex(SearchIndexData data) throws IndexingException {
+        this.apply("add", data);
+    }
+
+    @Override
+    public void removeItemFromIndex(BaseIndexData data) throws IndexingException {
+        this.apply("remove", data);
+    }
+
+    @Override
+    public void updateItemInIndex(SearchIndexData data) throws IndexingException {
+        this.apply("update", data);
+    }
+
+    @Override
+    public void addBinaryToIndex(BinaryIndexData data) throws IndexingException {
+        this.apply("addBinary", data);
+    }
+
+    @Override
+    public void removeBinaryFromIndex(BaseIndexData data) throws IndexingException {
+        this.apply("removeBinary", data);
+    }
+
+    private void apply(String call, BaseIndexData data) throws IndexingException {
+        if (this.failingIds.contains(data.getUniqueIndexId())) {
+            throw new IndexingException("Failing: " + data.getUniqueIndexId());
+        }
+        this.record(call + ":" + data.getUniqueIndexId());
+    }
+
+    @Override
+    public void commit(String publicationId) throws IndexingException {
+        this.commitStarted.countDown();
+        CountDownLatch gate = this.commitGate;
+        if (gate != null) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IndexingException("Interrupted", e);
+            }
+        }
+        if (this.failingCommits.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            throw new IndexingException("Failing commit of: " + publicationId);
+        }
+        this.commits.incrementAndGet();
+        this.record("commit:" + publicationId);
+    }
+
+    @Override
+    public void destroy() {
+        this.destroyed = true;
+    }
+
+    private synchronized void record(String call) {
+        this.calls.add(call);
+    }
+
+    public synchronized List<String> getCalls() {
+        return new ArrayList<>(this.calls);
+    }
+
+    public int getCommitCount() {
+        return this.commits.get();
+    }
+
+    public boolean isDestroyed() {
+        return this.destroyed;
+    }
+
+    /**
+     * Lets the actions on an item fail.
+     *
+     * @param uniqueIndexId the item
+     */
+    public void failOn(String uniqueIndexId) {
+        this.failingIds.add(uniqueIndexId);
+    }
+
+    /**
+     * Lets the next commits fail.
+     *
+     * @param count the number of commits to fail
+     */
+    public void failCommits(int count) {
+        this.failingCommits.set(count);
+    }
+
+    /**
+     * Holds commits until the returned latch is counted down.
+     *
+     * @return the gate of the commits
+     */
+    public CountDownLatch holdCommits() {
+        CountDownLatch gate = new CountDownLatch(1);
+        this.commitGate = gate;
+        return gate;
+    }
+
+    /**
+     * Waits until a commit has started.
+     *
+     * @return true if a commit started within 10 seconds
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public boolean awaitCommitStarted() throws InterruptedException {
+        return this.commitStarted.await(10, TimeUnit.SECONDS);
+    }
+}